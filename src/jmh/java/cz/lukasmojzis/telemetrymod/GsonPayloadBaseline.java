@@ -0,0 +1,62 @@
+package cz.lukasmojzis.telemetrymod;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import net.minecraft.item.ItemStack;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * The Gson tree based JSON encoding that {@link TransactionJsonEncoder} replaced, kept as the baseline for benchmarks.
+ */
+class GsonPayloadBaseline {
+
+    /**
+     * Creates a JSON payload from the transaction data by building a Gson tree.
+     *
+     * @param entry The transaction data to be sent.
+     * @return A JSON string representing the transaction data.
+     */
+    static String createJsonPayload(TransactionBundle entry) {
+        long gameTick = entry.getGameTick();
+        Map<String, Map<String, Map<PlayerProperty, Object>>> gameTickTransactionBundles = entry.getTransactions();
+
+        JsonObject payload = new JsonObject();
+
+        for (Map.Entry<String, Map<String, Map<PlayerProperty, Object>>> transactionBundleEntry : gameTickTransactionBundles.entrySet()) {
+            for (Map.Entry<String, Map<PlayerProperty, Object>> transactionEntry : transactionBundleEntry.getValue().entrySet()) {
+                JsonObject gameTickObject = new JsonObject();
+                gameTickObject.add("tick", new JsonPrimitive(gameTick));
+                JsonObject playerTransactionObject = new JsonObject();
+
+                for (Map.Entry<PlayerProperty, Object> property : transactionEntry.getValue().entrySet()) {
+                    Object propertyValue = property.getValue();
+
+                    if (propertyValue instanceof Number) {
+                        playerTransactionObject.add(property.getKey().toString(), new JsonPrimitive((Number) propertyValue));
+                    } else if (propertyValue instanceof Boolean) {
+                        playerTransactionObject.add(property.getKey().toString(), new JsonPrimitive((Boolean) propertyValue));
+                    } else if (propertyValue instanceof String) {
+                        playerTransactionObject.add(property.getKey().toString(), new JsonPrimitive((String) propertyValue));
+                    } else if (propertyValue instanceof UUID || propertyValue instanceof Collection || propertyValue instanceof ItemStack) {
+                        playerTransactionObject.add(property.getKey().toString(), new JsonPrimitive(String.valueOf(propertyValue)));
+                    } else
+                        throw new Error(String.format("%s %s: %s cannot be converted to JSON", property.getValue().getClass(), property.getKey(), property.getValue()));
+                }
+
+                gameTickObject.add(transactionEntry.getKey(), playerTransactionObject);
+
+                JsonObject transactionPayload = new JsonObject();
+                String transactionId = UUID.randomUUID().toString();
+                transactionPayload.add("id", new JsonPrimitive(transactionId));
+                transactionPayload.add("data", gameTickObject);
+
+                payload.add(transactionBundleEntry.getKey(), transactionPayload);
+            }
+        }
+
+        return payload.toString();
+    }
+}
@@ -0,0 +1,99 @@
+package cz.lukasmojzis.telemetrymod;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the per-tick cost of the capture path on synthetic players: updating the state snapshots, publishing the
+ * changes through {@link TransactionController#addTransactionToBundle} and encoding the finished bundle, for a growing
+ * number of players and a growing backlog of unsent bundles. Run with {@code -prof gc} for the allocation rate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlayerStateBenchmark {
+
+    /**
+     * The number of tracked players.
+     */
+    @Param({"1", "8", "64"})
+    public int players;
+
+    /**
+     * The number of bundles waiting in the outbox before the measured operation.
+     */
+    @Param({"0", "10000"})
+    public int backlog;
+
+    /**
+     * Whether the default sampling policies of {@link ModConfig#sampling} are applied.
+     */
+    @Param({"false", "true"})
+    public boolean sampling;
+
+    private SyntheticPlayer[] fixtures;
+    private TransactionOutbox outbox;
+    private TransactionJsonEncoder encoder;
+    private long gameTick;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        fixtures = new SyntheticPlayer[players];
+        for (int i = 0; i < players; i++) {
+            fixtures[i] = new SyntheticPlayer(i);
+        }
+        ModConfig.sampling.enabled = sampling;
+        PropertyPolicy.reload();
+        outbox = TransactionController.getOutbox();
+        drainOutbox();
+        encoder = new TransactionJsonEncoder(new TransactionIdGenerator());
+        for (gameTick = 0; gameTick < backlog; gameTick++) {
+            captureTick();
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void drainOutbox() {
+        while (!outbox.isEmpty()) {
+            outbox.poll();
+        }
+    }
+
+    /**
+     * Updates the state snapshots of all players without publishing anything.
+     */
+    @Benchmark
+    public void updateState() {
+        for (SyntheticPlayer player : fixtures) {
+            player.tick();
+            player.state.clearDirty();
+        }
+    }
+
+    /**
+     * Updates the state snapshots of all players and publishes their changes into the outbox, then takes the oldest
+     * bundle out again, so the backlog stays constant.
+     */
+    @Benchmark
+    public TransactionBundle captureTick() {
+        long tick = gameTick++;
+        for (SyntheticPlayer player : fixtures) {
+            player.tick();
+            PlayerStatusTracker.publishChanges(player.state, player.policyFilter, player.name, tick);
+        }
+        return outbox.size() > backlog ? outbox.poll() : null;
+    }
+
+    /**
+     * Captures a tick and encodes the oldest bundle, the whole work a tick causes on the client.
+     */
+    @Benchmark
+    public String captureAndEncodeTick() {
+        TransactionBundle bundle = captureTick();
+        return bundle != null ? encoder.encode(bundle) : null;
+    }
+}
@@ -0,0 +1,88 @@
+package cz.lukasmojzis.telemetrymod;
+
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * A synthetic player that feeds a {@link PlayerStateSnapshot} the same way {@link PlayerStatusTracker#updateState}
+ * does, without a running Minecraft client.
+ * <p>
+ * Every tick all properties are written. The motion, position and walking properties change on every tick, as they
+ * do for a player who is running around, and every other property changes on average once every 200 ticks.
+ */
+class SyntheticPlayer {
+
+    private static final PlayerProperty[] PROPERTIES = PlayerProperty.values();
+    private static final int NOISE_SIZE = 4096;
+
+    final String name;
+    final PlayerStateSnapshot state = new PlayerStateSnapshot();
+    final PropertyPolicyFilter policyFilter = new PropertyPolicyFilter();
+
+    /**
+     * Random steps and change decisions, drawn up front so the benchmarks do not measure the random generator.
+     */
+    private final double[] steps = new double[NOISE_SIZE];
+    private final boolean[] coldChanges = new boolean[NOISE_SIZE];
+    private int noise = 0;
+
+    private final long[] longValues = new long[PROPERTIES.length];
+    private final double[] doubleValues = new double[PROPERTIES.length];
+    private final Object[] objectValues = new Object[PROPERTIES.length];
+
+    /**
+     * Constructs a player with reproducible values.
+     *
+     * @param index The index of the player, used for its name and as the random seed.
+     */
+    SyntheticPlayer(int index) {
+        this.name = "Player" + index;
+        Random random = new Random(index);
+        for (int i = 0; i < NOISE_SIZE; i++) {
+            steps[i] = random.nextGaussian() * 0.1;
+            coldChanges[i] = random.nextInt(200) == 0;
+        }
+        for (PlayerProperty property : PROPERTIES) {
+            objectValues[property.ordinal()] = property == PlayerProperty.UNIQUEID || property == PlayerProperty.PERSISTENTID
+                    ? UUID.nameUUIDFromBytes(name.getBytes()) : "BlockPos{x=12, y=64, z=-80}";
+        }
+    }
+
+    /**
+     * Advances the player by one tick and writes all of its properties into the snapshot.
+     */
+    void tick() {
+        for (PlayerProperty property : PROPERTIES) {
+            int slot = property.ordinal();
+            noise = (noise + 1) & (NOISE_SIZE - 1);
+            boolean changes = isHot(property) || coldChanges[noise];
+            PropertyType type = property.getType();
+            if (type.isLongSlot()) {
+                if (changes) longValues[slot] = type == PropertyType.BOOLEAN ? longValues[slot] ^ 1 : longValues[slot] + 1;
+                state.update(property, longValues[slot]);
+            } else if (type.isDoubleSlot()) {
+                if (changes) doubleValues[slot] += steps[noise];
+                state.update(property, type == PropertyType.FLOAT ? (double) (float) doubleValues[slot] : doubleValues[slot]);
+            } else {
+                if (changes && property == PlayerProperty.HELDITEMMAINHAND) objectValues[slot] = "1xitem.tool@" + (noise & 3);
+                state.update(property, objectValues[slot]);
+            }
+        }
+    }
+
+    private static boolean isHot(PlayerProperty property) {
+        switch (property) {
+            case MOTIONX:
+            case MOTIONY:
+            case MOTIONZ:
+            case POSX:
+            case POSY:
+            case POSZ:
+            case DISTANCE_WALKED_MODIFIED:
+            case RANDOMYAWVELOCITY:
+                return true;
+            default:
+                return false;
+        }
+    }
+}
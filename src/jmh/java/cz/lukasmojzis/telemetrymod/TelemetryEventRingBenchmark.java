@@ -0,0 +1,67 @@
+package cz.lukasmojzis.telemetrymod;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of publishing property changes into the {@link TelemetryEventRing} on the game thread while
+ * consumers read them on their own threads. Publishing is expected to stay flat as consumers are added, since the
+ * producer never waits for them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TelemetryEventRingBenchmark {
+
+    private static final int PROPERTY_COUNT = PlayerProperty.values().length;
+
+    /**
+     * The number of consumers reading the ring.
+     */
+    @Param({"0", "1", "3"})
+    public int consumers;
+
+    @Param({"YIELD", "SLEEP"})
+    public TelemetryEventRing.WaitStrategy waitStrategy;
+
+    private TelemetryEventRing ring;
+    private TelemetryEventConsumer[] running;
+    private long gameTick;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ring = new TelemetryEventRing(65536);
+        running = new TelemetryEventConsumer[consumers];
+        for (int i = 0; i < consumers; i++) {
+            running[i] = new TelemetryEventConsumer("Benchmark-" + i, ring, waitStrategy, (sequence, playerIndex, tick, ordinal, value) -> {
+            });
+            running[i].start();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        for (TelemetryEventConsumer consumer : running) {
+            consumer.stop();
+        }
+    }
+
+    /**
+     * Publishes a change of every property of a player for a new tick, which is what the game thread does in the
+     * worst case every tick.
+     */
+    @Benchmark
+    @OperationsPerInvocation(90)
+    public boolean publishTick() {
+        long tick = gameTick++;
+        boolean published = true;
+        for (int i = 0; i < 90; i++) {
+            published &= ring.publish(0, tick, i % PROPERTY_COUNT, tick + i);
+        }
+        return published;
+    }
+}
@@ -0,0 +1,56 @@
+package cz.lukasmojzis.telemetrymod;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the binary {@link TransactionBinaryEncoder} with the {@link TransactionJsonEncoder}
+ * on a bundle in which every property of a single player changed.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransactionBinaryEncoderBenchmark {
+
+    private TransactionBundle bundle;
+    private TransactionJsonEncoder jsonEncoder;
+    private TransactionBinaryEncoder binaryEncoder;
+
+    @Setup
+    public void setUp() {
+        bundle = new TransactionBundle(123456L);
+        for (PlayerProperty property : PlayerProperty.values()) {
+            bundle.add(new PlayerStateUpdate("Player", bundle.getGameTick(), property, null, TransactionJsonEncoderBenchmark.sampleValue(property)));
+        }
+
+        TransactionIdGenerator idGenerator = new TransactionIdGenerator();
+        jsonEncoder = new TransactionJsonEncoder(idGenerator);
+        binaryEncoder = new TransactionBinaryEncoder(new TransactionIdGenerator(idGenerator.getSessionId()));
+
+        TransactionBinaryDecoder decoder = new TransactionBinaryDecoder();
+        decoder.readSchema(TransactionBinaryEncoder.encodeSchema(idGenerator.getSessionId()));
+        ByteBuffer frame = binaryEncoder.encode(bundle);
+        int binaryBytes = frame.remaining();
+        String decoded = decoder.decode(frame);
+        String json = jsonEncoder.encode(bundle);
+        if (!decoded.equals(json)) {
+            throw new IllegalStateException(String.format("Encodings differ:%n%s%n%s", decoded, json));
+        }
+        System.out.printf("%nBundle size: JSON %d bytes, binary %d bytes%n", json.length(), binaryBytes);
+    }
+
+    @Benchmark
+    public String json() {
+        return jsonEncoder.encode(bundle);
+    }
+
+    @Benchmark
+    public ByteBuffer binary() {
+        return binaryEncoder.encode(bundle);
+    }
+}
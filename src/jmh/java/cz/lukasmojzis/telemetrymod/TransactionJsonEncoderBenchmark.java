@@ -0,0 +1,69 @@
+package cz.lukasmojzis.telemetrymod;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the streaming {@link TransactionJsonEncoder} with the Gson tree based encoding it replaced,
+ * on a bundle in which every property of a single player changed.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransactionJsonEncoderBenchmark {
+
+    private static final String ID_PATTERN = "\"id\":\"[0-9a-f-]{36}\"";
+
+    private TransactionBundle bundle;
+    private TransactionJsonEncoder encoder;
+
+    @Setup
+    public void setUp() {
+        bundle = new TransactionBundle(123456L);
+        for (PlayerProperty property : PlayerProperty.values()) {
+            bundle.add(new PlayerStateUpdate("Player", bundle.getGameTick(), property, null, sampleValue(property)));
+        }
+        encoder = new TransactionJsonEncoder(new TransactionIdGenerator());
+
+        String streamed = encoder.encode(bundle).replaceAll(ID_PATTERN, "");
+        String gson = GsonPayloadBaseline.createJsonPayload(bundle).replaceAll(ID_PATTERN, "");
+        if (!streamed.equals(gson)) {
+            throw new IllegalStateException(String.format("Encodings differ:%n%s%n%s", streamed, gson));
+        }
+    }
+
+    @Benchmark
+    public String gson() {
+        return GsonPayloadBaseline.createJsonPayload(bundle);
+    }
+
+    @Benchmark
+    public String streaming() {
+        return encoder.encode(bundle);
+    }
+
+    /**
+     * Returns a value of the right type for the property, resembling what a player in the overworld would report.
+     */
+    static Object sampleValue(PlayerProperty property) {
+        switch (property.getType()) {
+            case BOOLEAN:
+                return property.ordinal() % 2 == 0;
+            case INT:
+                return property.ordinal() * 7;
+            case LONG:
+                return property.ordinal() * 4096L;
+            case FLOAT:
+                return property.ordinal() / 3.0f;
+            case DOUBLE:
+                return property.ordinal() * 101.37;
+            default:
+                return property == PlayerProperty.UNIQUEID || property == PlayerProperty.PERSISTENTID ? UUID.nameUUIDFromBytes(property.toString().getBytes()) : "BlockPos{x=12, y=64, z=-80}";
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package cz.lukasmojzis.telemetrymod;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of enqueueing transactions into the {@link TransactionOutbox} while a backlog of unsent bundles
+ * is waiting. The cost per enqueued transaction is expected to stay flat as the backlog grows.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransactionOutboxBenchmark {
+
+    private static final PlayerProperty[] PROPERTIES = PlayerProperty.values();
+
+    /**
+     * The number of bundles waiting in the outbox before the measured operation.
+     */
+    @Param({"0", "1000", "10000", "100000"})
+    public int backlog;
+
+    private TransactionOutbox outbox;
+    private SyntheticTransaction transaction;
+    private long gameTick;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        outbox = new TransactionOutbox();
+        transaction = new SyntheticTransaction();
+        for (gameTick = 0; gameTick < backlog; gameTick++) {
+            enqueueTick(gameTick);
+        }
+    }
+
+    /**
+     * Enqueues every property of a player for a new tick and drains the oldest bundle, so the backlog stays constant.
+     * This is what a busy client does every tick while the telemetry server is unreachable.
+     */
+    @Benchmark
+    @OperationsPerInvocation(90)
+    public TransactionBundle appendTick() {
+        enqueueTick(gameTick++);
+        return outbox.poll();
+    }
+
+    /**
+     * Enqueues every property of a player into the tick that is already at the tail of the outbox.
+     */
+    @Benchmark
+    @OperationsPerInvocation(90)
+    public int coalesceTick() {
+        enqueueTick(gameTick);
+        return outbox.transactionCount();
+    }
+
+    private void enqueueTick(long tick) {
+        transaction.gameTick = tick;
+        for (int i = 0; i < 90; i++) {
+            transaction.property = PROPERTIES[i % PROPERTIES.length];
+            transaction.newValue = i;
+            outbox.enqueue(transaction);
+        }
+    }
+
+    /**
+     * A reusable transaction, so the benchmark measures the outbox and not the allocation of updates.
+     */
+    static class SyntheticTransaction implements ITransaction {
+        long gameTick;
+        PlayerProperty property;
+        Object newValue;
+
+        @Override
+        public String getPlayer() {
+            return "Player";
+        }
+
+        @Override
+        public long getGameTick() {
+            return gameTick;
+        }
+
+        @Override
+        public PlayerProperty getProperty() {
+            return property;
+        }
+
+        @Override
+        public Object getNewValue() {
+            return newValue;
+        }
+    }
+}
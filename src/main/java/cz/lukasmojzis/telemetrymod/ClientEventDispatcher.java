@@ -0,0 +1,30 @@
+package cz.lukasmojzis.telemetrymod;
+
+import net.minecraftforge.client.event.RenderGameOverlayEvent;
+import net.minecraftforge.fml.common.Mod;
+import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
+import net.minecraftforge.fml.relauncher.Side;
+
+/**
+ * The ClientEventDispatcher class listens to the game events that only exist on the client, such as rendering the
+ * game overlay. It is kept apart from the {@link EventDispatcher}, so the mod can also be loaded on a dedicated
+ * server, where these event classes are missing.
+ *
+ * @see net.minecraftforge.fml.common.Mod.EventBusSubscriber
+ * @see net.minecraftforge.fml.common.eventhandler.SubscribeEvent
+ */
+@Mod.EventBusSubscriber(value = Side.CLIENT, modid = TelemetryMod.MODID)
+public class ClientEventDispatcher {
+
+    /**
+     * Handles the game overlay rendering event.
+     * This event fires when the game overlay is rendered, which can be used to render additional custom elements on top of the game.
+     *
+     * @param event - RenderGameOverlayEvent.Text
+     * @see net.minecraftforge.client.event.RenderGameOverlayEvent.Text
+     */
+    @SubscribeEvent
+    public static void onRenderGameOverlay(RenderGameOverlayEvent.Text event) {
+        OverlayController.renderGameOverlay();
+    }
+}
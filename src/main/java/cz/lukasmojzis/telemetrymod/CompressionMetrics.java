@@ -0,0 +1,70 @@
+package cz.lukasmojzis.telemetrymod;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The CompressionMetrics class counts the bytes that went into and came out of a compression layer,
+ * together with the CPU time spent compressing.
+ */
+public class CompressionMetrics {
+
+    private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+
+    private final AtomicLong frames = new AtomicLong();
+    private final AtomicLong uncompressedBytes = new AtomicLong();
+    private final AtomicLong compressedBytes = new AtomicLong();
+    private final AtomicLong cpuTimeNanos = new AtomicLong();
+
+    /**
+     * Returns the CPU time of the current thread, or the wall clock time if the JVM cannot measure CPU time.
+     *
+     * @return The current time in nanoseconds, to be passed to {@link #record(int, int, long)}.
+     */
+    public static long now() {
+        return THREAD_MX_BEAN.isCurrentThreadCpuTimeSupported() ? THREAD_MX_BEAN.getCurrentThreadCpuTime() : System.nanoTime();
+    }
+
+    /**
+     * Records a compressed frame.
+     *
+     * @param uncompressed The size of the frame before compression in bytes.
+     * @param compressed   The size of the frame after compression in bytes.
+     * @param startedAt    The time the compression started at, as returned by {@link #now()}.
+     */
+    public void record(int uncompressed, int compressed, long startedAt) {
+        cpuTimeNanos.addAndGet(now() - startedAt);
+        frames.incrementAndGet();
+        uncompressedBytes.addAndGet(uncompressed);
+        compressedBytes.addAndGet(compressed);
+    }
+
+    /**
+     * Returns the number of compressed frames.
+     *
+     * @return The number of compressed frames.
+     */
+    public long getFrames() {
+        return frames.get();
+    }
+
+    /**
+     * Returns the achieved compression ratio, the compressed size divided by the uncompressed size.
+     *
+     * @return The compression ratio, or 1 if nothing was compressed yet.
+     */
+    public double getRatio() {
+        long uncompressed = uncompressedBytes.get();
+        return uncompressed == 0 ? 1 : (double) compressedBytes.get() / uncompressed;
+    }
+
+    /**
+     * Returns the total CPU time spent compressing.
+     *
+     * @return The CPU time in milliseconds.
+     */
+    public double getCpuTimeMillis() {
+        return cpuTimeNanos.get() / 1_000_000.0;
+    }
+}
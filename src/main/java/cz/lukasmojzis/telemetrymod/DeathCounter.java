@@ -0,0 +1,129 @@
+package cz.lukasmojzis.telemetrymod;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The DeathCounter class keeps the number of player deaths, both in total and per player, across sessions.
+ * <p>
+ * The counts are loaded from the global_deaths.txt file once and then kept in memory, so reading them never touches
+ * the disk. The first line of the file holds the total number of deaths, the same as it always did, and every further
+ * line holds the UUID of a player followed by the number of deaths of that player. Changes are written on the
+ * {@link TelemetryScheduler} thread, to a temporary file which then replaces the old one, so the file is never left
+ * half written.
+ */
+public class DeathCounter {
+
+    static final File GLOBAL_DEATHS_FILE = new File("global_deaths.txt");
+    private static final File TEMPORARY_FILE = new File(GLOBAL_DEATHS_FILE.getPath() + ".tmp");
+
+    private static final AtomicInteger globalDeathCount = new AtomicInteger();
+    private static final Map<UUID, AtomicInteger> playerDeathCounts = new ConcurrentHashMap<>();
+    private static final AtomicBoolean saveScheduled = new AtomicBoolean();
+    private static volatile boolean loaded = false;
+
+    /**
+     * Records the death of a player and schedules the counts to be written to the disk.
+     *
+     * @param playerId The UUID of the player who died.
+     */
+    public static void recordDeath(UUID playerId) {
+        load();
+        globalDeathCount.incrementAndGet();
+        playerDeathCounts.computeIfAbsent(playerId, id -> new AtomicInteger()).incrementAndGet();
+        scheduleSave();
+    }
+
+    /**
+     * Returns the total number of deaths of all players.
+     *
+     * @return The total number of deaths.
+     */
+    public static int getGlobalDeathCount() {
+        load();
+        return globalDeathCount.get();
+    }
+
+    /**
+     * Returns the number of deaths of a single player.
+     *
+     * @param playerId The UUID of the player.
+     * @return The number of deaths of the player.
+     */
+    public static int getDeathCount(UUID playerId) {
+        load();
+        AtomicInteger deathCount = playerDeathCounts.get(playerId);
+        return deathCount != null ? deathCount.get() : 0;
+    }
+
+    /**
+     * Loads the death counts from the disk, unless they were already loaded.
+     * A missing or unreadable file is treated as no deaths at all.
+     */
+    private static void load() {
+        if (loaded) return;
+        synchronized (DeathCounter.class) {
+            if (loaded) return;
+            if (GLOBAL_DEATHS_FILE.exists()) {
+                try (BufferedReader reader = Files.newBufferedReader(GLOBAL_DEATHS_FILE.toPath(), StandardCharsets.UTF_8)) {
+                    String line = reader.readLine();
+                    if (line != null) {
+                        globalDeathCount.set(Integer.parseInt(line.trim()));
+                    }
+                    while ((line = reader.readLine()) != null) {
+                        String[] fields = line.trim().split("\\s+");
+                        if (fields.length != 2) continue;
+                        playerDeathCounts.put(UUID.fromString(fields[0]), new AtomicInteger(Integer.parseInt(fields[1])));
+                    }
+                } catch (IOException | IllegalArgumentException e) {
+                    TelemetryMod.logger.error("Failed to read global death count", e);
+                }
+            }
+            loaded = true;
+        }
+    }
+
+    /**
+     * Schedules the counts to be written on the scheduler thread, unless a write is already waiting.
+     */
+    private static void scheduleSave() {
+        if (saveScheduled.compareAndSet(false, true)) {
+            TelemetryScheduler.execute(DeathCounter::save);
+        }
+    }
+
+    /**
+     * Writes the current counts to the temporary file and moves it over the deaths file.
+     */
+    private static void save() {
+        saveScheduled.set(false);
+        try {
+            try (BufferedWriter out = Files.newBufferedWriter(TEMPORARY_FILE.toPath(), StandardCharsets.UTF_8)) {
+                out.write(Integer.toString(globalDeathCount.get()));
+                out.newLine();
+                for (Map.Entry<UUID, AtomicInteger> entry : playerDeathCounts.entrySet()) {
+                    out.write(entry.getKey() + " " + entry.getValue().get());
+                    out.newLine();
+                }
+            }
+            try {
+                Files.move(TEMPORARY_FILE.toPath(), GLOBAL_DEATHS_FILE.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(TEMPORARY_FILE.toPath(), GLOBAL_DEATHS_FILE.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            TelemetryMod.logger.error("Failed to write global death count", e);
+        }
+    }
+}
@@ -1,9 +1,12 @@
 package cz.lukasmojzis.telemetrymod;
 
 import net.minecraft.entity.player.EntityPlayer;
-import net.minecraftforge.client.event.RenderGameOverlayEvent;
+import net.minecraft.entity.player.EntityPlayerMP;
 import net.minecraftforge.event.entity.living.LivingDeathEvent;
+import net.minecraftforge.event.entity.living.LivingEquipmentChangeEvent;
 import net.minecraftforge.event.entity.living.LivingEvent;
+import net.minecraftforge.event.entity.living.PotionEvent;
+import net.minecraftforge.event.entity.player.PlayerXpEvent;
 import net.minecraftforge.event.world.WorldEvent;
 import net.minecraftforge.fml.client.event.ConfigChangedEvent;
 import net.minecraftforge.fml.common.Mod;
@@ -50,9 +53,41 @@ public class EventDispatcher {
     public static void onPlayerLogin(PlayerEvent.PlayerLoggedInEvent event) {
         EntityPlayer player = event.player;
         PlayerStateController.onPlayerLogin(player);
+        if (player instanceof EntityPlayerMP) {
+            ServerPlayerController.onPlayerLogin((EntityPlayerMP) player);
+        }
         OBSRelay.onPlayerLogin();
     }
 
+    /**
+     * Handles the player respawn event.
+     * This event fires when a player respawns after death, with the new entity the server created for the player.
+     *
+     * @param event - PlayerRespawnEvent
+     * @see net.minecraftforge.fml.common.gameevent.PlayerEvent.PlayerRespawnEvent
+     */
+    @SubscribeEvent
+    public static void onPlayerRespawn(PlayerEvent.PlayerRespawnEvent event) {
+        if (event.player instanceof EntityPlayerMP) {
+            ServerPlayerController.onPlayerRespawn((EntityPlayerMP) event.player);
+        }
+    }
+
+    /**
+     * Handles the server tick event.
+     * This event fires once per server tick and drives the tracking of all players connected to the server.
+     *
+     * @param event - ServerTickEvent
+     * @see net.minecraftforge.fml.common.gameevent.TickEvent.ServerTickEvent
+     */
+    @SubscribeEvent
+    public static void onServerTick(TickEvent.ServerTickEvent event) {
+        if (event.phase == TickEvent.Phase.END) {
+            ServerPlayerController.onServerTick();
+            TransactionController.onServerTick();
+        }
+    }
+
     /**
      * Handles the player update event.
      * This event fires every tick for each living entity, and can be used to implement changes to player entities.
@@ -80,11 +115,112 @@ public class EventDispatcher {
         if (event.getEntityLiving() instanceof EntityPlayer) {
             EntityPlayer player = (EntityPlayer) event.getEntityLiving();
             if (player != null) {
-                TelemetryMod.onPlayerDeath();
+                TelemetryMod.onPlayerDeath(player);
+                PlayerStateController.markAllDirty(PlayerPropertyCapture.DEATHS);
+                ServerPlayerController.markAllDirty(PlayerPropertyCapture.DEATHS);
             }
         }
     }
 
+    /**
+     * Handles the potion added event.
+     * This event fires when a potion effect is added to a living entity.
+     *
+     * @param event - PotionAddedEvent
+     * @see net.minecraftforge.event.entity.living.PotionEvent.PotionAddedEvent
+     */
+    @SubscribeEvent
+    public static void onPotionAdded(PotionEvent.PotionAddedEvent event) {
+        onPlayerEvent(event, PlayerPropertyCapture.POTIONS);
+    }
+
+    /**
+     * Handles the potion remove event.
+     * This event fires when a potion effect is removed from a living entity, e.g. by drinking milk.
+     *
+     * @param event - PotionRemoveEvent
+     * @see net.minecraftforge.event.entity.living.PotionEvent.PotionRemoveEvent
+     */
+    @SubscribeEvent
+    public static void onPotionRemove(PotionEvent.PotionRemoveEvent event) {
+        onPlayerEvent(event, PlayerPropertyCapture.POTIONS);
+    }
+
+    /**
+     * Handles the potion expiry event.
+     * This event fires when a potion effect of a living entity runs out.
+     *
+     * @param event - PotionExpiryEvent
+     * @see net.minecraftforge.event.entity.living.PotionEvent.PotionExpiryEvent
+     */
+    @SubscribeEvent
+    public static void onPotionExpiry(PotionEvent.PotionExpiryEvent event) {
+        onPlayerEvent(event, PlayerPropertyCapture.POTIONS);
+    }
+
+    /**
+     * Handles the equipment change event.
+     * This event fires when a held item or a piece of armor of a living entity changes.
+     *
+     * @param event - LivingEquipmentChangeEvent
+     * @see net.minecraftforge.event.entity.living.LivingEquipmentChangeEvent
+     */
+    @SubscribeEvent
+    public static void onEquipmentChange(LivingEquipmentChangeEvent event) {
+        onPlayerEvent(event, PlayerPropertyCapture.EQUIPMENT);
+    }
+
+    /**
+     * Handles the experience change event.
+     * This event fires when the experience points of a player change.
+     *
+     * @param event - XpChange
+     * @see net.minecraftforge.event.entity.player.PlayerXpEvent.XpChange
+     */
+    @SubscribeEvent
+    public static void onXpChange(PlayerXpEvent.XpChange event) {
+        onPlayerEvent(event, PlayerPropertyCapture.EXPERIENCE);
+    }
+
+    /**
+     * Handles the experience level change event.
+     * This event fires when the experience level of a player changes, e.g. by enchanting.
+     *
+     * @param event - LevelChange
+     * @see net.minecraftforge.event.entity.player.PlayerXpEvent.LevelChange
+     */
+    @SubscribeEvent
+    public static void onXpLevelChange(PlayerXpEvent.LevelChange event) {
+        onPlayerEvent(event, PlayerPropertyCapture.EXPERIENCE);
+    }
+
+    /**
+     * Handles the player changed dimension event.
+     * This event fires when a player travels to another dimension.
+     *
+     * @param event - PlayerChangedDimensionEvent
+     * @see net.minecraftforge.fml.common.gameevent.PlayerEvent.PlayerChangedDimensionEvent
+     */
+    @SubscribeEvent
+    public static void onPlayerChangedDimension(PlayerEvent.PlayerChangedDimensionEvent event) {
+        PlayerStateController.markDirty(event.player, PlayerPropertyCapture.DIMENSION);
+        ServerPlayerController.markDirty(event.player, PlayerPropertyCapture.DIMENSION);
+    }
+
+    /**
+     * Signals the events of a living event to the tracker of its player, if the living entity is a player.
+     *
+     * @param event  The living event.
+     * @param events The events that happened, see {@link PlayerStatusTracker#markDirty(int)}.
+     */
+    private static void onPlayerEvent(LivingEvent event, int events) {
+        if (event.getEntityLiving() instanceof EntityPlayer) {
+            EntityPlayer player = (EntityPlayer) event.getEntityLiving();
+            PlayerStateController.markDirty(player, events);
+            ServerPlayerController.markDirty(player, events);
+        }
+    }
+
     /**
      * Handles the player logout event.
      * This event fires when a player logs out of the game.
@@ -95,6 +231,7 @@ public class EventDispatcher {
     @SubscribeEvent
     public static void onPlayerLogout(PlayerEvent.PlayerLoggedOutEvent event) {
         PlayerStateController.onPlayerLogout(event);
+        ServerPlayerController.onPlayerLogout(event.player);
         OBSRelay.onPlayerLogout();
     }
 
@@ -122,18 +259,6 @@ public class EventDispatcher {
         ModConfig.sync(event);
     }
 
-    /**
-     * Handles the game overlay rendering event.
-     * This event fires when the game overlay is rendered, which can be used to render additional custom elements on top of the game.
-     *
-     * @param event - RenderGameOverlayEvent.Text
-     * @see net.minecraftforge.client.event.RenderGameOverlayEvent.Text
-     */
-    @SubscribeEvent
-    public static void onRenderGameOverlay(RenderGameOverlayEvent.Text event) {
-        OverlayController.renderGameOverlay();
-    }
-
     @SubscribeEvent
     public static void onWorldLoad(WorldEvent.Load event) {
         TelemetryMod.currentWorld = event.getWorld();
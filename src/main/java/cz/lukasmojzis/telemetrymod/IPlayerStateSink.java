@@ -0,0 +1,46 @@
+package cz.lukasmojzis.telemetrymod;
+
+/**
+ * The IPlayerStateSink interface is implemented by the places the captured properties of a player are written to.
+ * Every value type has its own method, so primitive values are never boxed on the way.
+ */
+public interface IPlayerStateSink {
+
+    /**
+     * Updates a boolean property.
+     *
+     * @param property The property to update.
+     * @param value    The current value of the property.
+     * @return True if the value changed.
+     */
+    default boolean update(PlayerProperty property, boolean value) {
+        return update(property, value ? 1L : 0L);
+    }
+
+    /**
+     * Updates an int or long property.
+     *
+     * @param property The property to update.
+     * @param value    The current value of the property.
+     * @return True if the value changed.
+     */
+    boolean update(PlayerProperty property, long value);
+
+    /**
+     * Updates a float or double property.
+     *
+     * @param property The property to update.
+     * @param value    The current value of the property.
+     * @return True if the value changed.
+     */
+    boolean update(PlayerProperty property, double value);
+
+    /**
+     * Updates an object property.
+     *
+     * @param property The property to update.
+     * @param value    The current value of the property.
+     * @return True if the value changed.
+     */
+    boolean update(PlayerProperty property, Object value);
+}
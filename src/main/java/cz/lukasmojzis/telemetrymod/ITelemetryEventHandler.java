@@ -0,0 +1,27 @@
+package cz.lukasmojzis.telemetrymod;
+
+/**
+ * The ITelemetryEventHandler interface is implemented by the consumers of the {@link TelemetryEventRing}. Events are
+ * passed as primitives straight from the slots of the ring, so handling them does not allocate.
+ */
+public interface ITelemetryEventHandler {
+
+    /**
+     * Handles a change of a primitive property of a player.
+     *
+     * @param sequence    The sequence number of the event in the ring.
+     * @param playerIndex The index of the player, see {@link TelemetryEventRing#getPlayerName(int)}.
+     * @param gameTick    The game tick of the change.
+     * @param ordinal     The ordinal of the changed {@link PlayerProperty}.
+     * @param value       The new value: booleans as 1 or 0, ints and longs as they are, floats and doubles as the
+     *                    bits of the double value, see {@link Double#longBitsToDouble(long)}.
+     */
+    void onEvent(long sequence, int playerIndex, long gameTick, int ordinal, long value);
+
+    /**
+     * Called after the events available to a reader were handled, before it waits for more. Events committed together
+     * are never split across batches.
+     */
+    default void onEndOfBatch() {
+    }
+}
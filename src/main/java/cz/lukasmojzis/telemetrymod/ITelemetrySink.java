@@ -0,0 +1,51 @@
+package cz.lukasmojzis.telemetrymod;
+
+/**
+ * The ITelemetrySink interface is implemented by the outputs the finished transaction bundles are fanned out to by
+ * the {@link TransactionController}, e.g. the WebSocket sender and the local recorder.
+ * <p>
+ * Every bundle taken from the outbox is offered to every enabled sink. Bundles are never modified once they left the
+ * outbox, so all sinks share them. Each sink keeps its own queue of the bundles it was offered and consumes it at its
+ * own pace, with its own batching and overflow policy, so a stalled sink never holds up the others. A sink that
+ * throws is logged and skipped for that bundle only.
+ */
+public interface ITelemetrySink {
+
+    /**
+     * Returns the name of the sink, as used in log messages.
+     *
+     * @return The name of the sink.
+     */
+    String getName();
+
+    /**
+     * Returns whether the sink should be offered bundles, according to the configuration.
+     *
+     * @return True if the sink is enabled.
+     */
+    boolean isEnabled();
+
+    /**
+     * Starts the sink, e.g. its background thread.
+     */
+    void start();
+
+    /**
+     * Stops the sink. Bundles that were not consumed yet may be discarded.
+     */
+    void stop();
+
+    /**
+     * Offers a finished bundle to the sink. Called from the game thread; must never block.
+     *
+     * @param bundle The bundle, which must not be modified.
+     */
+    void offer(TransactionBundle bundle);
+
+    /**
+     * Returns the number of bundles the sink was offered and did not consume yet.
+     *
+     * @return The number of waiting bundles.
+     */
+    int getQueueDepth();
+}
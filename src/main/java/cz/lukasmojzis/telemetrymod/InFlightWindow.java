@@ -0,0 +1,148 @@
+package cz.lukasmojzis.telemetrymod;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * The InFlightWindow class keeps the frames sent to the telemetry server that the server has not acknowledged yet,
+ * in the order they were sent, so they can be sent again after a reconnect.
+ * <p>
+ * Every frame is keyed by the ID of the last transaction in it. Transaction IDs carry the monotonic sequence numbers
+ * of the {@link TransactionIdGenerator}, and a frame is always resent as the exact same bytes, so the server can
+ * deduplicate retransmitted transactions by their IDs. Acknowledgements are cumulative: acknowledging the ID of the
+ * last transaction of a frame acknowledges that frame and every frame sent before it.
+ * <p>
+ * Frames replayed from the {@link TelemetrySpool} also remember the spool position after their records, so the spool
+ * checkpoint only moves past records the server has acknowledged. They are resent from the window like any other
+ * frame, in the order they were sent, so frames replayed from the spool and frames sent from memory never overtake
+ * each other after a reconnect.
+ * <p>
+ * A window is not thread-safe; it is only used by the sender thread.
+ */
+public class InFlightWindow {
+
+    private final ArrayDeque<Frame> frames = new ArrayDeque<>();
+    private final int capacity;
+
+    /**
+     * Constructs an empty window.
+     *
+     * @param capacity The maximum number of frames in flight.
+     */
+    public InFlightWindow(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Returns whether another frame can be sent without exceeding the capacity of the window.
+     *
+     * @return True if the window has room for another frame.
+     */
+    public boolean hasRoom() {
+        return frames.size() < capacity;
+    }
+
+    /**
+     * Returns the number of frames in flight.
+     *
+     * @return The number of unacknowledged frames.
+     */
+    public int size() {
+        return frames.size();
+    }
+
+    /**
+     * Adds a text frame, before it is sent.
+     *
+     * @param text          The text of the frame.
+     * @param lastId        The ID of the last transaction in the frame.
+     * @param spoolPosition The spool position after the records of the frame, or -1 if it was not replayed from the
+     *                      spool.
+     * @param spoolRecords  The number of spool records in the frame.
+     */
+    public void add(String text, String lastId, long spoolPosition, int spoolRecords) {
+        frames.addLast(new Frame(text, null, lastId, spoolPosition, spoolRecords));
+    }
+
+    /**
+     * Adds a binary frame, before it is sent. The content of the frame is copied, since encoders reuse their buffers
+     * and sending consumes them.
+     *
+     * @param bytes  The content of the frame.
+     * @param lastId The ID of the last transaction in the frame.
+     */
+    public void add(ByteBuffer bytes, String lastId) {
+        ByteBuffer copy = ByteBuffer.allocate(bytes.remaining());
+        copy.put(bytes.duplicate()).flip();
+        frames.addLast(new Frame(null, copy, lastId, -1, 0));
+    }
+
+    /**
+     * Acknowledges the frame ending with the given transaction and every frame sent before it, and moves the spool
+     * checkpoint past the acknowledged spool records. An acknowledgement that matches no frame in flight is ignored.
+     *
+     * @param lastId The ID of the last transaction the server acknowledged.
+     * @param spool  The spool the frames were replayed from, or null if there is none.
+     * @return The number of acknowledged frames.
+     */
+    public int acknowledge(String lastId, TelemetrySpool spool) {
+        int matched = -1;
+        int index = 0;
+        for (Frame frame : frames) {
+            if (lastId.equals(frame.lastId)) matched = index;
+            index++;
+        }
+
+        long spoolPosition = -1;
+        int spoolRecords = 0;
+        for (int i = 0; i <= matched; i++) {
+            Frame frame = frames.pollFirst();
+            if (frame.spoolPosition >= 0) {
+                spoolPosition = frame.spoolPosition;
+                spoolRecords += frame.spoolRecords;
+            }
+        }
+        if (spool != null && spoolRecords > 0) spool.acknowledge(spoolPosition, spoolRecords);
+        return matched + 1;
+    }
+
+    /**
+     * Drops the frames replayed from the spool when the spool is closed, so the spool replays their records itself
+     * once it is opened again.
+     */
+    public void dropSpooled() {
+        Iterator<Frame> iterator = frames.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().spoolPosition >= 0) iterator.remove();
+        }
+    }
+
+    /**
+     * Returns the frames in flight, oldest first, to send them again on a new connection.
+     *
+     * @return The frames in flight.
+     */
+    public Iterable<Frame> frames() {
+        return frames;
+    }
+
+    /**
+     * A frame in flight.
+     */
+    public static class Frame {
+        final String text;
+        final ByteBuffer bytes;
+        final String lastId;
+        final long spoolPosition;
+        final int spoolRecords;
+
+        Frame(String text, ByteBuffer bytes, String lastId, long spoolPosition, int spoolRecords) {
+            this.text = text;
+            this.bytes = bytes;
+            this.lastId = lastId;
+            this.spoolPosition = spoolPosition;
+            this.spoolRecords = spoolRecords;
+        }
+    }
+}
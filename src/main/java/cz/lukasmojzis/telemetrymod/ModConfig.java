@@ -23,6 +23,40 @@ public class ModConfig {
     @Config.Name("Websocket")
     @Config.Comment("You can configure the Websocket here")
     public static WebsocketCategory websocket = new WebsocketCategory();
+
+    @Config.Name("Sampling")
+    @Config.Comment("You can limit how often high-frequency properties are reported here")
+    public static SamplingCategory sampling = new SamplingCategory();
+
+    @Config.Name("Server")
+    @Config.Comment("You can configure the tracking of all players on a server here")
+    public static ServerCategory server = new ServerCategory();
+
+    @Config.Name("Recording")
+    @Config.Comment("You can configure the local recording of the telemetry here")
+    public static RecordingCategory recording = new RecordingCategory();
+
+    @Config.Name("Datagram")
+    @Config.Comment("You can configure the UDP datagrams with the live state of the player here")
+    public static DatagramCategory datagram = new DatagramCategory();
+
+    @Config.Name("Event Ring")
+    @Config.Comment("You can configure the ring buffer handing player property changes to background consumers here")
+    public static EventRingCategory eventRing = new EventRingCategory();
+
+    @Config.Name("Show Telemetry Metrics")
+    @Config.Comment("Show the self-metrics of the telemetry pipeline on the overlay")
+    public static boolean showMetrics = false;
+
+    @Config.Name("Show Recent Transactions")
+    @Config.Comment("Keep the latest transactions in memory and show them on the overlay, newest first")
+    public static boolean showRecentTransactions = false;
+
+    @Config.Name("Recent Transactions")
+    @Config.Comment("The number of the latest transactions shown on the overlay")
+    @Config.RangeInt(min = 1, max = 50)
+    public static int recentTransactions = 10;
+
     @Config.Name("Report position changes")
     @Config.Comment("This is make telemetry report position changes")
     public static boolean reportPosition = false;
@@ -62,6 +96,7 @@ public class ModConfig {
     static void sync(ConfigChangedEvent event) {
         if (event.getModID().equals(TelemetryMod.MODID)) {
             ConfigManager.sync(TelemetryMod.MODID, Config.Type.INSTANCE);
+            PropertyPolicy.reload();
         }
     }
 
@@ -91,6 +126,41 @@ public class ModConfig {
         @Config.Name("Camera Source Name")
         @Config.Comment("Name of the Camera source within OBS. Only select the final sources and not the utility sources.")
         public String cameraSourceName = "Camera";
+
+        @Config.Name("Max Requests Per Second")
+        @Config.Comment("The maximum number of request batches sent to OBS per second; changes in between are merged into the latest ones")
+        @Config.RangeInt(min = 1, max = 60)
+        public int maxRequestsPerSecond = 10;
+
+        @Config.Name("Blur Filter Name")
+        @Config.RequiresWorldRestart()
+        @Config.Comment("Name of an existing filter on the camera source that is enabled while the player is low on health, nauseous or blind. Leave empty to disable")
+        public String blurFilterName = "";
+
+        @Config.Name("Blur Health Threshold")
+        @Config.Comment("The blur filter is enabled at or below this much health")
+        @Config.RangeInt(min = 0, max = 20)
+        public int blurHealthThreshold = 6;
+
+        @Config.Name("Death Scene Name")
+        @Config.RequiresWorldRestart()
+        @Config.Comment("Name of the scene holding the source shown while the player is dead. Leave empty to disable")
+        public String deathSceneName = "";
+
+        @Config.Name("Death Source Name")
+        @Config.RequiresWorldRestart()
+        @Config.Comment("Name of the source shown in the death scene while the player is dead. Leave empty to disable")
+        public String deathSourceName = "";
+
+        @Config.Name("Health Text Source Name")
+        @Config.RequiresWorldRestart()
+        @Config.Comment("Name of a text source showing the health of the player. Leave empty to disable")
+        public String healthTextSourceName = "";
+
+        @Config.Name("Deaths Text Source Name")
+        @Config.RequiresWorldRestart()
+        @Config.Comment("Name of a text source showing the number of deaths of the player. Leave empty to disable")
+        public String deathsTextSourceName = "";
     }
 
     /**
@@ -110,5 +180,227 @@ public class ModConfig {
         @Config.Name("Connection Timeout")
         @Config.Comment("Timeout Connection if not connected in this amount of seconds")
         public int connectionTimeout = 3;
+
+        @Config.Name("Wire Format")
+        @Config.RequiresMcRestart()
+        @Config.Comment("Format of the telemetry frames. BINARY is only used if the Websocket server accepts the telemetrymod.binary.v1 subprotocol, otherwise JSON is sent")
+        public TelemetryWebSocketClient.WireFormat wireFormat = TelemetryWebSocketClient.WireFormat.JSON;
+
+        @Config.Name("Batch Frames")
+        @Config.Comment("Pack consecutive tick bundles into one frame (a JSON array of bundles) instead of sending one frame per bundle")
+        public boolean batchFrames = false;
+
+        @Config.Name("Max Frame Size")
+        @Config.Comment("Maximum size of a batched frame in bytes. A single bundle larger than this is still sent in a frame of its own")
+        @Config.RangeInt(min = 1024)
+        public int maxFrameBytes = 65536;
+
+        @Config.Name("Handoff Capacity")
+        @Config.Comment("Maximum number of tick bundles waiting for the background sender")
+        @Config.RequiresWorldRestart()
+        @Config.RangeInt(min = 16)
+        public int handoffCapacity = 1024;
+
+        @Config.Name("Overflow Policy")
+        @Config.Comment({"What happens when the background sender falls behind and its queue is full:",
+                "KEEP_IN_OUTBOX keeps the remaining bundles in a backlog in memory until the sender catches up,",
+                "DROP_OLDEST drops the oldest waiting bundles"})
+        public TelemetrySender.OverflowPolicy overflowPolicy = TelemetrySender.OverflowPolicy.KEEP_IN_OUTBOX;
+
+        @Config.Name("High-Water Mark")
+        @Config.Comment("The background sender stops sending once this many kilobytes are waiting to be written to the socket")
+        @Config.RangeInt(min = 16)
+        public int highWaterMarkKilobytes = 1024;
+
+        @Config.Name("Low-Water Mark")
+        @Config.Comment("The background sender resumes sending once the kilobytes waiting to be written to the socket drop to this many")
+        @Config.RangeInt(min = 0)
+        public int lowWaterMarkKilobytes = 256;
+
+        @Config.Name("Acknowledgements")
+        @Config.RequiresMcRestart()
+        @Config.Comment({"Keep sent frames until the Websocket server acknowledges them with {\"ack\":\"<transaction id>\"},",
+                "and send the unacknowledged ones again after reconnecting. Only enable this if the server sends acknowledgements"})
+        public boolean acknowledgements = false;
+
+        @Config.Name("Max Frames In Flight")
+        @Config.RequiresMcRestart()
+        @Config.Comment("Maximum number of frames waiting for an acknowledgement before the background sender stops sending")
+        @Config.RangeInt(min = 1)
+        public int maxFramesInFlight = 256;
+
+        @Config.Name("Per-Message Deflate")
+        @Config.RequiresMcRestart()
+        @Config.Comment("Offer the permessage-deflate WebSocket extension, which compresses every frame if the Websocket server accepts it")
+        public boolean perMessageDeflate = false;
+
+        @Config.Name("Compress Batched Frames")
+        @Config.Comment("Compress batched binary frames with a preset dictionary. Only used with the BINARY wire format")
+        public boolean compressBatchedFrames = false;
+
+        @Config.Name("Compression Level")
+        @Config.Comment("Compression level from 1 (fastest) to 9 (smallest)")
+        @Config.RangeInt(min = 1, max = 9)
+        public int compressionLevel = 6;
+
+        @Config.Name("Compression Min Frame Size")
+        @Config.Comment("Frames smaller than this amount of bytes are sent uncompressed")
+        @Config.RangeInt(min = 0)
+        public int compressionMinFrameBytes = 256;
+
+        @Config.Name("Metrics Interval")
+        @Config.Comment("Send a metrics frame with the self-metrics of the mod every this many seconds (0 = never)")
+        @Config.RangeInt(min = 0)
+        public int metricsIntervalSeconds = 10;
+
+        @Config.Name("Spool to Disk")
+        @Config.Comment("Keep unsent telemetry in files in the world save directory instead of memory while the Websocket server is unreachable, and replay it after reconnecting")
+        public boolean spoolEnabled = false;
+
+        @Config.Name("Spool Segment Size")
+        @Config.Comment("Size of a single spool file in megabytes")
+        @Config.RangeInt(min = 1, max = 1024)
+        public int spoolSegmentMegabytes = 16;
+
+        @Config.Name("Spool Size Limit")
+        @Config.Comment("Maximum size of all spool files in megabytes. The oldest unsent telemetry is dropped beyond this limit")
+        @Config.RangeInt(min = 1)
+        public int spoolMaxMegabytes = 1024;
+    }
+
+    /**
+     * A subcategory for configuring the sampling policies of high-frequency properties.
+     */
+    public static class SamplingCategory {
+
+        @Config.Name("Enable sampling policies")
+        @Config.Comment("Enable this to report the properties listed below according to their sampling policy instead of on every change")
+        public boolean enabled = false;
+
+        @Config.Name("Policies")
+        @Config.Comment({"One property per line: <property> [every=<ticks>] [deadband=<absolute change>] [relative=<relative change>] [maxSilence=<ticks>]",
+                "every: report at most one change every this many ticks",
+                "deadband, relative: do not report numeric changes up to this absolute change, or this fraction of the reported value",
+                "maxSilence: report the current value at least every this many ticks, even if it did not change (0 = never)"})
+        public String[] policies = {
+                "motionX every=2 deadband=0.005 maxSilence=20",
+                "motionY every=2 deadband=0.005 maxSilence=20",
+                "motionZ every=2 deadband=0.005 maxSilence=20",
+                "posX every=2 deadband=0.05 maxSilence=20",
+                "posY every=2 deadband=0.05 maxSilence=20",
+                "posZ every=2 deadband=0.05 maxSilence=20",
+                "distanceWalkedModified every=10 deadband=0.5 maxSilence=100",
+                "randomYawVelocity every=10 deadband=0.1 maxSilence=100"
+        };
+
+        @Config.Name("Slow Poll Interval")
+        @Config.Comment({"Poll the properties that almost never change, e.g. the name or the maximum health, every this many ticks",
+                "Properties changed by events, e.g. potion effects, held items or experience, are also polled this often in case their events do not reach the client"})
+        @Config.RangeInt(min = 1)
+        public int slowPollTicks = 20;
+    }
+
+    /**
+     * A subcategory for configuring the tracking of all players on a dedicated server.
+     */
+    public static class ServerCategory {
+
+        @Config.Name("Track all players")
+        @Config.Comment({"Enable this to report the properties of every player connected to a dedicated server, not only of the local player",
+                "Singleplayer and LAN worlds are not tracked by the server; their host is reported by the client"})
+        public boolean enabled = false;
+
+        @Config.Name("Tick Budget")
+        @Config.Comment({"The maximum number of milliseconds the tracking may add to a server tick",
+                "Players that do not fit into the budget are captured in the next tick"})
+        @Config.RangeInt(min = 1)
+        public int tickBudgetMillis = 2;
+
+        @Config.Name("Diff Threads")
+        @Config.Comment({"The number of threads comparing the captured player states with the reported ones and building the transactions",
+                "0 = do it on the server thread"})
+        @Config.RangeInt(min = 0, max = 64)
+        @Config.RequiresMcRestart
+        public int diffThreads = 2;
+    }
+
+    /**
+     * A subcategory for configuring the local recording of the telemetry.
+     */
+    public static class RecordingCategory {
+
+        @Config.Name("Record sessions")
+        @Config.Comment({"Enable this to record the telemetry of every session into a local file, whether or not it is sent to a Websocket server",
+                "Recordings are kept in the telemetrymod/recordings folder of the world, or in telemetrymod-recordings on multiplayer servers"})
+        public boolean enabled = false;
+
+        @Config.Name("Block Ticks")
+        @Config.Comment("The number of ticks covered by a block of the recording; smaller blocks are faster to seek but compress less")
+        @Config.RangeInt(min = 20)
+        public int blockTicks = 200;
+
+        @Config.Name("Keyframe Blocks")
+        @Config.Comment("The number of blocks between two keyframes holding the complete player state; fewer make seeking faster, more make recordings smaller")
+        @Config.RangeInt(min = 1)
+        public int keyframeBlocks = 6;
+
+        @Config.Name("Queue Capacity")
+        @Config.Comment("Maximum number of tick bundles waiting to be recorded; bundles that do not fit are left out of the recording")
+        @Config.RequiresMcRestart()
+        @Config.RangeInt(min = 16)
+        public int queueCapacity = 1024;
+
+        @Config.Name("Replay Tick")
+        @Config.Comment({"Debug: shows the state of the local player at this game tick of the latest recording in the overlay",
+                "Set to -1 to turn it off"})
+        @Config.RangeInt(min = -1)
+        public int replayTick = -1;
+    }
+
+    /**
+     * A subcategory for configuring the UDP datagrams with the live state of the player.
+     */
+    public static class DatagramCategory {
+
+        @Config.Name("Send datagrams")
+        @Config.Comment({"Enable this to send the position, health, air and hurt state of the player as a UDP datagram every tick",
+                "Meant for live overlays on the same machine or network; lost datagrams are not sent again",
+                "The position is only included while position changes are reported",
+                "While events are published, the datagrams are sent by an event consumer, for every tick in which the player changed"})
+        public boolean enabled = false;
+
+        @Config.Name("Host")
+        @Config.Comment("The host the datagrams are sent to")
+        public String host = "127.0.0.1";
+
+        @Config.Name("Port")
+        @Config.Comment("The UDP port the datagrams are sent to")
+        @Config.RangeInt(min = 1, max = 65535)
+        public int port = 8766;
+    }
+
+    /**
+     * A subcategory for configuring the ring buffer handing player property changes to background consumers.
+     */
+    public static class EventRingCategory {
+
+        @Config.Name("Publish events")
+        @Config.Comment({"Enable this to publish every change of a primitive property of the local player into an in-memory ring buffer",
+                "The events are read by consumers on their own threads, e.g. the datagram sink, or addons encoding or forwarding them"})
+        @Config.RequiresMcRestart
+        public boolean enabled = false;
+
+        @Config.Name("Capacity")
+        @Config.Comment({"The number of events the ring buffer holds, rounded up to a power of two",
+                "Events are dropped while the slowest consumer is this many events behind"})
+        @Config.RequiresMcRestart
+        @Config.RangeInt(min = 1024)
+        public int capacity = 65536;
+
+        @Config.Name("Wait Strategy")
+        @Config.Comment({"How the consumers wait for new events:",
+                "BUSY_SPIN has the lowest latency but keeps a core busy, YIELD yields the processor between checks,",
+                "SLEEP sleeps briefly between checks and uses hardly any CPU while idle"})
+        public TelemetryEventRing.WaitStrategy waitStrategy = TelemetryEventRing.WaitStrategy.SLEEP;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,271 @@
+package cz.lukasmojzis.telemetrymod;
+
+import com.google.gson.JsonObject;
+import io.obswebsocket.community.client.message.request.Request;
+import io.obswebsocket.community.client.message.request.RequestBatch;
+import io.obswebsocket.community.client.message.response.RequestBatchResponse;
+import io.obswebsocket.community.client.message.response.RequestResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The OBSCommandScheduler class sends the values the game wants its {@link OBSTarget}s to have to OBS, off the game
+ * thread.
+ * <p>
+ * The game thread only sets the desired values and calls {@link #flush()} once per tick. Changes are coalesced,
+ * latest wins: when a value changes several times while a request is in flight or while the rate limit holds requests
+ * back, only the last value is sent. All targets changed since the last request are sent together, as one
+ * obs-websocket RequestBatch. There is never more than one batch in flight, and batches are at least
+ * {@code 1 / maxRequestsPerSecond} apart. A response only confirms the value of a target if no newer value of it was
+ * confirmed already, so a late response can never roll a target back. Every batch has an ID, and only the response to
+ * the current batch ends it: a response arriving after its batch timed out or was abandoned by {@link #resend()} is
+ * still applied to the targets, but does not let another batch overtake the one in flight.
+ * <p>
+ * All the work is done on the single thread of the {@link TelemetryScheduler}, which the state of the scheduler is
+ * confined to.
+ */
+public class OBSCommandScheduler {
+
+    private static final long REQUEST_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private final List<OBSTarget<?>> targets = new CopyOnWriteArrayList<>();
+
+    // Only used by the scheduler thread.
+    private boolean inFlight = false;
+    private long currentBatch = 0;
+    private long inFlightSince;
+    private long lastSentAt;
+    private boolean pumpScheduled = false;
+    private ScheduledFuture<?> timeout;
+
+    /**
+     * Adds a target to be kept in sync with OBS.
+     *
+     * @param target The target.
+     * @param <T>    The type of the values of the target.
+     * @return The target.
+     */
+    public <T extends OBSTarget<?>> T add(T target) {
+        targets.add(target);
+        return target;
+    }
+
+    /**
+     * Removes all targets.
+     */
+    public void clear() {
+        targets.clear();
+    }
+
+    /**
+     * Sends the changed targets to OBS as soon as the rate limit allows it. Called from the game thread once per tick,
+     * after the desired values were set.
+     */
+    public void flush() {
+        TelemetryScheduler.execute(this::pump);
+    }
+
+    /**
+     * Forgets what was sent to OBS, so all desired values are sent again, e.g. after reconnecting. Responses to
+     * requests sent before are still accepted, but cannot confirm a newer value.
+     */
+    public void resend() {
+        TelemetryScheduler.execute(() -> {
+            for (OBSTarget<?> target : targets) {
+                target.sentGeneration = -1;
+                target.onConnect();
+            }
+            inFlight = false;
+            currentBatch++;
+            cancelTimeout();
+            pump();
+        });
+    }
+
+    /**
+     * Sends the pending targets as one batch if no batch is in flight and the rate limit allows it.
+     * Runs on the scheduler thread.
+     */
+    private void pump() {
+        if (!OBSRelay.connected || OBSRelay.obsController == null) return;
+        long now = System.nanoTime();
+        if (inFlight) {
+            if (now - inFlightSince < REQUEST_TIMEOUT_NANOS) return;
+            TelemetryMod.logger.warn("OBS did not respond to the last request batch in time; sending the latest values again");
+            inFlight = false;
+            currentBatch++;
+        }
+
+        boolean pending = false;
+        for (OBSTarget<?> target : targets) {
+            if (target.isPending()) {
+                pending = true;
+                break;
+            }
+        }
+        if (!pending) return;
+
+        long interval = TimeUnit.SECONDS.toNanos(1) / Math.max(1, ModConfig.OBS.maxRequestsPerSecond);
+        long wait = lastSentAt + interval - now;
+        if (lastSentAt != 0 && wait > 0) {
+            if (!pumpScheduled) {
+                pumpScheduled = true;
+                TelemetryScheduler.schedule(() -> {
+                    pumpScheduled = false;
+                    pump();
+                }, wait, TimeUnit.NANOSECONDS);
+            }
+            return;
+        }
+
+        List<Sent<?>> batch = new ArrayList<>();
+        for (OBSTarget<?> target : targets) {
+            Sent<?> sent = Sent.of(target);
+            if (sent != null) batch.add(sent);
+        }
+        if (batch.isEmpty()) return;
+
+        RequestBatch.RequestBatchBuilder requests = RequestBatch.builder().haltOnFailure(false).executionType(RequestBatch.RequestBatchExecutionType.SerialRealtime);
+        for (Sent<?> sent : batch) {
+            sent.target.sentGeneration = sent.generation;
+            requests.request(sent.request);
+        }
+        long batchId = ++currentBatch;
+        inFlight = true;
+        inFlightSince = now;
+        lastSentAt = now;
+        cancelTimeout();
+        timeout = TelemetryScheduler.schedule(this::pump, REQUEST_TIMEOUT_NANOS, TimeUnit.NANOSECONDS);
+        OBSRelay.obsController.sendRequestBatch(requests.build(), response -> TelemetryScheduler.execute(() -> onResponse(batchId, batch, response)));
+    }
+
+    /**
+     * Handles the response to a batch, confirming or resending every target of the batch, and sends the next batch if
+     * this one is still the current one. Runs on the scheduler thread.
+     *
+     * @param batchId  The ID of the batch.
+     * @param batch    The targets sent in the batch, in the order of the requests.
+     * @param response The response of OBS.
+     */
+    private void onResponse(long batchId, List<Sent<?>> batch, RequestBatchResponse response) {
+        List<RequestResponse.Data> results = response != null && response.getData() != null ? response.getData().getResults() : null;
+        for (int i = 0; i < batch.size(); i++) {
+            RequestResponse.Data result = results != null && i < results.size() ? results.get(i) : null;
+            boolean successful = result != null && result.getRequestStatus() != null && Boolean.TRUE.equals(result.getRequestStatus().getResult());
+            batch.get(i).onResponse(successful);
+        }
+        if (batchId != currentBatch) return;
+        inFlight = false;
+        cancelTimeout();
+        pump();
+    }
+
+    /**
+     * Cancels the pending check whether the batch in flight timed out, so there is never more than one.
+     */
+    private void cancelTimeout() {
+        if (timeout == null) return;
+        timeout.cancel(false);
+        timeout = null;
+    }
+
+    /**
+     * A value of a target sent in a batch.
+     *
+     * @param <T> The type of the values of the target.
+     */
+    private static class Sent<T> {
+        final OBSTarget<T> target;
+        final long generation;
+        final T value;
+        final Request<?> request;
+
+        private Sent(OBSTarget<T> target, long generation, T value, Request<?> request) {
+            this.target = target;
+            this.generation = generation;
+            this.value = value;
+            this.request = request;
+        }
+
+        static <T> Sent<T> of(OBSTarget<T> target) {
+            if (!target.isPending()) return null;
+            long generation = target.getDesiredGeneration();
+            T value = target.getDesired();
+            Request<?> request = target.buildRequest(value);
+            return request != null ? new Sent<>(target, generation, value, request) : null;
+        }
+
+        void onResponse(boolean successful) {
+            if (successful && generation > target.confirmedGeneration) {
+                target.confirmed = value;
+                target.confirmedGeneration = generation;
+            }
+            if (!successful && generation == target.sentGeneration) {
+                target.sentGeneration = -1;
+            }
+        }
+    }
+
+    /**
+     * The settings of the color correction filter: an added color, a multiplied color and whether the picture is
+     * desaturated. Instances are immutable; the game thread only creates one when the state changes.
+     */
+    public static final class FilterState {
+        static final FilterState NONE = new FilterState(false, 0, false, 0, false);
+
+        private final boolean hasColorAdd;
+        private final int colorAdd;
+        private final boolean hasColorMultiply;
+        private final int colorMultiply;
+        private final boolean desaturated;
+
+        FilterState(boolean hasColorAdd, int colorAdd, boolean hasColorMultiply, int colorMultiply, boolean desaturated) {
+            this.hasColorAdd = hasColorAdd;
+            this.colorAdd = colorAdd;
+            this.hasColorMultiply = hasColorMultiply;
+            this.colorMultiply = colorMultiply;
+            this.desaturated = desaturated;
+        }
+
+        /**
+         * Returns whether this state has the given settings, so the caller can skip creating an equal state.
+         */
+        boolean matches(boolean hasColorAdd, int colorAdd, boolean hasColorMultiply, int colorMultiply, boolean desaturated) {
+            return this.hasColorAdd == hasColorAdd && (!hasColorAdd || this.colorAdd == colorAdd)
+                    && this.hasColorMultiply == hasColorMultiply && (!hasColorMultiply || this.colorMultiply == colorMultiply)
+                    && this.desaturated == desaturated;
+        }
+
+        /**
+         * Builds the filter settings as sent to OBS.
+         *
+         * @return The filter settings.
+         */
+        JsonObject toJson() {
+            JsonObject settings = new JsonObject();
+            if (hasColorAdd) settings.addProperty("color_add", colorAdd);
+            if (desaturated) settings.addProperty("saturation", -1.0);
+            if (hasColorMultiply) settings.addProperty("color_multiply", colorMultiply);
+            return settings;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof FilterState)) return false;
+            FilterState other = (FilterState) o;
+            return other.matches(hasColorAdd, colorAdd, hasColorMultiply, colorMultiply, desaturated);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = hasColorAdd ? colorAdd : 0;
+            result = 31 * result + (hasColorMultiply ? colorMultiply : 0);
+            return 31 * result + (desaturated ? 1 : 0);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package cz.lukasmojzis.telemetrymod;
+
+import net.minecraft.entity.player.EntityPlayer;
+import net.minecraft.init.MobEffects;
+
+/**
+ * The OBSEffectsEngine class drives all the effects the player's status has in OBS: the color correction filter of
+ * the camera source, an optional blur filter, an optional scene item shown while the player is dead, and optional
+ * text sources showing the health and the deaths of the player.
+ * <p>
+ * Every effect is an {@link OBSTarget}. Once per tick the game thread works out the desired value of every target;
+ * the targets that changed are then sent to OBS together by the {@link OBSCommandScheduler}, as a single RequestBatch,
+ * instead of one request per effect. The optional effects are only set up when their names are configured in
+ * {@link ModConfig#OBS}.
+ */
+public class OBSEffectsEngine {
+
+    private static final OBSCommandScheduler scheduler = new OBSCommandScheduler();
+    private static OBSTarget.FilterSettings colorCorrection;
+    private static OBSTarget.FilterEnabled blur;
+    private static OBSTarget.SceneItemEnabled deathScreen;
+    private static OBSTarget.InputText healthText;
+    private static OBSTarget.InputText deathsText;
+
+    // The values last formatted into the text sources, so the texts are only formatted when they change.
+    private static int lastHealth = -1;
+    private static int lastDeaths = -1;
+
+    /**
+     * Sets up the targets of the effects from the configuration. Called when the player logs in, before OBS connects.
+     *
+     * @param colorCorrectionFilterName The name of the color correction filter on the camera source.
+     */
+    static void configure(String colorCorrectionFilterName) {
+        scheduler.clear();
+        colorCorrection = scheduler.add(new OBSTarget.FilterSettings(ModConfig.OBS.cameraSourceName, colorCorrectionFilterName));
+        colorCorrection.setDesired(OBSCommandScheduler.FilterState.NONE);
+        blur = isSet(ModConfig.OBS.blurFilterName) ? scheduler.add(new OBSTarget.FilterEnabled(ModConfig.OBS.cameraSourceName, ModConfig.OBS.blurFilterName)) : null;
+        deathScreen = isSet(ModConfig.OBS.deathSceneName) && isSet(ModConfig.OBS.deathSourceName) ? scheduler.add(new OBSTarget.SceneItemEnabled(ModConfig.OBS.deathSceneName, ModConfig.OBS.deathSourceName)) : null;
+        healthText = isSet(ModConfig.OBS.healthTextSourceName) ? scheduler.add(new OBSTarget.InputText(ModConfig.OBS.healthTextSourceName)) : null;
+        deathsText = isSet(ModConfig.OBS.deathsTextSourceName) ? scheduler.add(new OBSTarget.InputText(ModConfig.OBS.deathsTextSourceName)) : null;
+        lastHealth = -1;
+        lastDeaths = -1;
+    }
+
+    private static boolean isSet(String name) {
+        return name != null && !name.isEmpty();
+    }
+
+    /**
+     * Works out the desired value of every effect for the player's status, and sends the ones that changed to OBS.
+     * Called from the game thread once per tick; nothing is allocated unless an effect changed.
+     *
+     * @param player The player whose status drives the effects.
+     */
+    static void update(EntityPlayer player) {
+        if (colorCorrection == null) return;
+        boolean changed = updateColorCorrection(player);
+
+        if (blur != null) {
+            boolean blurred = player.isEntityAlive() && (player.getHealth() <= ModConfig.OBS.blurHealthThreshold
+                    || player.isPotionActive(MobEffects.NAUSEA) || player.isPotionActive(MobEffects.BLINDNESS));
+            changed |= blur.setDesired(blurred);
+        }
+        if (deathScreen != null) {
+            changed |= deathScreen.setDesired(!player.isEntityAlive());
+        }
+        if (healthText != null) {
+            int health = (int) Math.ceil(Math.max(0, player.getHealth()));
+            if (health != lastHealth) {
+                lastHealth = health;
+                changed |= healthText.setDesired(Integer.toString(health));
+            }
+        }
+        if (deathsText != null) {
+            int deaths = DeathCounter.getDeathCount(player.getUniqueID());
+            if (deaths != lastDeaths) {
+                lastDeaths = deaths;
+                changed |= deathsText.setDesired(Integer.toString(deaths));
+            }
+        }
+
+        if (changed) scheduler.flush();
+    }
+
+    /**
+     * Works out the color correction filter state for the player's status like hurt, dead, burning, poisoned,
+     * under water, and withered. A new state is only created when it differs from the desired one.
+     *
+     * @param player The player.
+     * @return True if the desired state changed.
+     */
+    private static boolean updateColorCorrection(EntityPlayer player) {
+        boolean hasColorAdd = false;
+        int colorAdd = 0;
+        boolean hasColorMultiply = false;
+        int colorMultiply = 0;
+        boolean desaturated = false;
+
+        if (player.hurtTime > 0) {
+            hasColorAdd = true;
+            colorAdd = OBSRelay.RGBA_HURT;
+        } else if (!player.isEntityAlive()) {
+            desaturated = true;
+        } else {
+            if (player.isBurning()) {
+                hasColorMultiply = true;
+                colorMultiply = OBSRelay.RGBA_BURNING;
+            } else if (player.isPotionActive(MobEffects.POISON)) {
+                hasColorMultiply = true;
+                colorMultiply = OBSRelay.RGBA_POISON;
+            } else if (player.getAir() < 0xFF) {
+                int level = Math.min(255, Math.max(64, 64 + player.getAir()));
+                hasColorMultiply = true;
+                colorMultiply = OBSRelay.convertRGBAtoRGBA(level, level, 255, 100);
+            }
+            if (player.isPotionActive(MobEffects.WITHER)) {
+                hasColorMultiply = true;
+                colorMultiply = OBSRelay.RGBA_WITHER;
+            }
+        }
+
+        OBSCommandScheduler.FilterState desired = colorCorrection.getDesired();
+        if (desired != null && desired.matches(hasColorAdd, colorAdd, hasColorMultiply, colorMultiply, desaturated)) return false;
+        return colorCorrection.setDesired(new OBSCommandScheduler.FilterState(hasColorAdd, colorAdd, hasColorMultiply, colorMultiply, desaturated));
+    }
+
+    /**
+     * Returns the scheduler sending the effects to OBS.
+     *
+     * @return The scheduler.
+     */
+    static OBSCommandScheduler getScheduler() {
+        return scheduler;
+    }
+}
@@ -4,11 +4,9 @@ import com.google.gson.JsonObject;
 import io.obswebsocket.community.client.OBSRemoteController;
 import io.obswebsocket.community.client.listener.lifecycle.ReasonThrowable;
 import net.minecraft.entity.player.EntityPlayer;
-import net.minecraft.init.MobEffects;
 
 import java.awt.*;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -27,14 +25,19 @@ public class OBSRelay {
     private static final Color COLOR_POISON = new Color(127, 255, 127, 255);
     private static final Color COLOR_BURNING = new Color(200, 120, 20, 255);
     private static final Color COLOR_WITHER = new Color(63, 63, 63, 255);
-    private static final int RECONNECT_TICKS = 60;
+    static final int RGBA_HURT = convertARGBtoRGBA(COLOR_HURT);
+    static final int RGBA_POISON = convertARGBtoRGBA(COLOR_POISON);
+    static final int RGBA_BURNING = convertARGBtoRGBA(COLOR_BURNING);
+    static final int RGBA_WITHER = convertARGBtoRGBA(COLOR_WITHER);
+    private static final long RECONNECT_BASE_DELAY_MS = 1000;
+    private static final long RECONNECT_MAX_DELAY_MS = 30000;
     public static OBSRemoteController obsController;
     static String status = "Disconnected";
     static boolean connect = false;
     static Long ticksWhenConnect;
     static boolean connected = false;
-    private static JsonObject colorCorrectionFilterSettings = new JsonObject();
-    private static ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    private static final ReconnectBackoff backoff = new ReconnectBackoff(RECONNECT_BASE_DELAY_MS, RECONNECT_MAX_DELAY_MS);
+    private static ScheduledFuture<?> pendingReconnect;
 
     /**
      * Constructs an OBSRelay object for a given player. The constructor initializes an OBSRemoteController object
@@ -85,20 +88,28 @@ public class OBSRelay {
 
     /**
      * Watches for the client state and maintains open connection with the OBS Websocket Server.
-     * If connection is enabled, it schedules a reconnect with the OBS Server.
+     * If connection is enabled, it schedules a reconnect with the OBS Server on the shared scheduler, after a delay
+     * growing with every failed attempt. A reconnect scheduled before is cancelled.
      *
      * @param player the EntityPlayer who is associated with the OBSRelay.
      */
-    private static void reconnect(EntityPlayer player) {
-        // cancel any previous reconnect attempts
-        executor.shutdownNow();
-
+    private static synchronized void reconnect(EntityPlayer player) {
+        cancelReconnect();
         if (connect) {
-            executor = Executors.newSingleThreadScheduledExecutor();
-            executor.schedule(() -> {
+            pendingReconnect = TelemetryScheduler.schedule(() -> {
                 setStatus("reconnecting", player);
                 obsController.connect();
-            }, RECONNECT_TICKS / 20, TimeUnit.SECONDS);
+            }, backoff.nextDelayMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Cancels the scheduled reconnect, if any.
+     */
+    private static synchronized void cancelReconnect() {
+        if (pendingReconnect != null) {
+            pendingReconnect.cancel(false);
+            pendingReconnect = null;
         }
     }
 
@@ -110,16 +121,20 @@ public class OBSRelay {
      */
     private static void onConnect(EntityPlayer player) {
         connected = true;
+        backoff.reset();
         setStatus("connected", player);
         ticksWhenConnect = WorldCalendar.getTotalWorldTicks();
         findOrCreateColorCorrectionFilter();
+        OBSEffectsEngine.getScheduler().resend();
     }
 
     /**
-     * When a player logs into the game, it creates a new OBSRelay for this player if OBS integration is enabled.
+     * When a player logs into the game, it creates a new OBSRelay for this player if OBS integration is enabled,
+     * and sets up the effects driven by the player's status.
      */
     static void onPlayerLogin() {
         connect = ModConfig.OBS.enabled;
+        if (connect) OBSEffectsEngine.configure(COLOR_CORRECTION_FILTER_NAME);
     }
 
     /**
@@ -138,52 +153,17 @@ public class OBSRelay {
     }
 
     /**
-     * Creates the color correction filter in OBS using the OBSRemoteController.
+     * Creates the color correction filter in OBS using the OBSRemoteController, and then sends the current filter
+     * state to it.
      */
     private static void createColorCorrectionFilter() {
-        obsController.createSourceFilter(ModConfig.OBS.cameraSourceName, COLOR_CORRECTION_FILTER_NAME, COLOR_CORRECTION_FILTER_KIND, colorCorrectionFilterSettings, (createSourceFilterResponse) -> {
+        obsController.createSourceFilter(ModConfig.OBS.cameraSourceName, COLOR_CORRECTION_FILTER_NAME, COLOR_CORRECTION_FILTER_KIND, new JsonObject(), (createSourceFilterResponse) -> {
             TelemetryMod.logger.info("Filter {} created!", COLOR_CORRECTION_FILTER_NAME);
             TelemetryMod.logger.info(createSourceFilterResponse);
+            OBSEffectsEngine.getScheduler().resend();
         });
     }
 
-    /**
-     * Method that adjusts the color correction filter in OBS based on the player's status
-     * like hurt, dead, burning, poisoned, under water, and withered. It uses OBSController
-     * to set the filter settings.
-     *
-     * @param player the EntityPlayer to adjust color correction filter for.
-     */
-    static void setColorCorrectionFilterState(EntityPlayer player) {
-        JsonObject filterSettings = new JsonObject();
-
-        if (player.hurtTime > 0) {
-            filterSettings.addProperty("color_add", convertARGBtoRGBA(COLOR_HURT));
-        } else if (!player.isEntityAlive()) {
-            filterSettings.addProperty("saturation", -1.0);
-        } else {
-            if (player.isBurning()) {
-                filterSettings.addProperty("color_multiply", convertARGBtoRGBA(COLOR_BURNING));
-            } else if (player.isPotionActive(MobEffects.POISON)) {
-                filterSettings.addProperty("color_multiply", convertARGBtoRGBA(COLOR_POISON));
-            } else if (player.getAir() < 0xFF) {
-                filterSettings.addProperty("color_multiply", convertARGBtoRGBA(new Color(Math.min(255, Math.max(64, 64 + player.getAir())), Math.min(255, Math.max(64, 64 + player.getAir())), 255, 100)));
-            }
-            if (player.isPotionActive(MobEffects.WITHER)) {
-                filterSettings.addProperty("color_multiply", convertARGBtoRGBA(COLOR_WITHER));
-            }
-        }
-
-
-        if (!colorCorrectionFilterSettings.equals(filterSettings)) {
-            obsController.setSourceFilterSettings(ModConfig.OBS.cameraSourceName, COLOR_CORRECTION_FILTER_NAME, filterSettings, false, (setSourceFilterEnabledResponse) -> {
-                if (setSourceFilterEnabledResponse.isSuccessful()) {
-                    colorCorrectionFilterSettings = filterSettings;
-                }
-            });
-        }
-    }
-
     /**
      * Helper method for converting a Color object into an integer in the RGBA format
      * that OBS can understand.
@@ -192,12 +172,20 @@ public class OBSRelay {
      * @return an integer representation of the color in RGBA format.
      */
     static int convertARGBtoRGBA(Color color) {
-        int r = color.getRed();
-        int g = color.getGreen();
-        int b = color.getBlue();
-        int a = color.getAlpha();
-
+        return convertRGBAtoRGBA(color.getRed(), color.getGreen(), color.getBlue(), color.getAlpha());
+    }
 
+    /**
+     * Helper method for packing color components into an integer in the RGBA format
+     * that OBS can understand, without creating a Color object.
+     *
+     * @param r the red component.
+     * @param g the green component.
+     * @param b the blue component.
+     * @param a the alpha component.
+     * @return an integer representation of the color in RGBA format.
+     */
+    static int convertRGBAtoRGBA(int r, int g, int b, int a) {
         return (a << 24) | (b << 16) | (g << 8) | r;
     }
 
@@ -207,7 +195,8 @@ public class OBSRelay {
      */
     static void onPlayerLogout() {
         connect = false;
-        obsController.disconnect();
+        cancelReconnect();
+        if (obsController != null) obsController.disconnect();
         status = null;
     }
 
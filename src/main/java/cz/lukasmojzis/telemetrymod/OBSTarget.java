@@ -0,0 +1,177 @@
+package cz.lukasmojzis.telemetrymod;
+
+import com.google.gson.JsonObject;
+import io.obswebsocket.community.client.message.request.Request;
+import io.obswebsocket.community.client.message.request.filters.SetSourceFilterEnabledRequest;
+import io.obswebsocket.community.client.message.request.filters.SetSourceFilterSettingsRequest;
+import io.obswebsocket.community.client.message.request.inputs.SetInputSettingsRequest;
+import io.obswebsocket.community.client.message.request.sceneitems.SetSceneItemEnabledRequest;
+
+import java.util.Objects;
+
+/**
+ * The OBSTarget class is a single setting in OBS driven by the {@link OBSEffectsEngine}, e.g. the settings of a
+ * filter or the visibility of a scene item, together with the value the game wants it to have.
+ * <p>
+ * The game thread sets the desired value; the {@link OBSCommandScheduler} builds the request for it off the game
+ * thread. Every desired value gets a generation number, so the scheduler can tell which value was sent and which was
+ * confirmed by OBS, even when responses arrive late.
+ *
+ * @param <T> The type of the values, which must be immutable and implement {@code equals}.
+ */
+public abstract class OBSTarget<T> {
+
+    // Written by the game thread, read by the scheduler thread.
+    private volatile T desired;
+    private volatile long desiredGeneration = 0;
+
+    // Only used by the scheduler thread.
+    long sentGeneration = -1;
+    long confirmedGeneration = -1;
+    T confirmed;
+
+    /**
+     * Sets the value the game wants. Called from the game thread; does nothing if the value did not change.
+     *
+     * @param value The desired value.
+     * @return True if the desired value changed.
+     */
+    public boolean setDesired(T value) {
+        if (Objects.equals(value, desired)) return false;
+        desired = value;
+        desiredGeneration++;
+        return true;
+    }
+
+    /**
+     * Returns the value the game wants.
+     *
+     * @return The desired value, or null if none was set yet.
+     */
+    public T getDesired() {
+        return desired;
+    }
+
+    /**
+     * Returns the value last confirmed by OBS.
+     *
+     * @return The confirmed value, or null if no value was confirmed yet.
+     */
+    public T getConfirmed() {
+        return confirmed;
+    }
+
+    long getDesiredGeneration() {
+        return desiredGeneration;
+    }
+
+    /**
+     * Returns whether the desired value still has to be sent.
+     */
+    boolean isPending() {
+        return desired != null && desiredGeneration != sentGeneration;
+    }
+
+    /**
+     * Builds the request setting a value in OBS.
+     *
+     * @param value The value to set.
+     * @return The request, or null if the target cannot be set yet.
+     */
+    abstract Request<?> buildRequest(T value);
+
+    /**
+     * Called when OBS (re)connects, so the target can look up what it needs before its first request.
+     */
+    void onConnect() {
+    }
+
+    /**
+     * The settings of a filter.
+     */
+    public static class FilterSettings extends OBSTarget<OBSCommandScheduler.FilterState> {
+        private final String sourceName;
+        private final String filterName;
+
+        public FilterSettings(String sourceName, String filterName) {
+            this.sourceName = sourceName;
+            this.filterName = filterName;
+        }
+
+        @Override
+        Request<?> buildRequest(OBSCommandScheduler.FilterState value) {
+            return SetSourceFilterSettingsRequest.builder().sourceName(sourceName).filterName(filterName).filterSettings(value.toJson()).overlay(false).build();
+        }
+    }
+
+    /**
+     * Whether a filter is enabled.
+     */
+    public static class FilterEnabled extends OBSTarget<Boolean> {
+        private final String sourceName;
+        private final String filterName;
+
+        public FilterEnabled(String sourceName, String filterName) {
+            this.sourceName = sourceName;
+            this.filterName = filterName;
+        }
+
+        @Override
+        Request<?> buildRequest(Boolean value) {
+            return SetSourceFilterEnabledRequest.builder().sourceName(sourceName).filterName(filterName).filterEnabled(value).build();
+        }
+    }
+
+    /**
+     * Whether a source is visible in a scene. The scene item id of the source is looked up when OBS connects;
+     * until it is known, the target is not sent.
+     */
+    public static class SceneItemEnabled extends OBSTarget<Boolean> {
+        private final String sceneName;
+        private final String sourceName;
+        private volatile Number sceneItemId;
+
+        public SceneItemEnabled(String sceneName, String sourceName) {
+            this.sceneName = sceneName;
+            this.sourceName = sourceName;
+        }
+
+        @Override
+        void onConnect() {
+            sceneItemId = null;
+            OBSRelay.obsController.getSceneItemId(sceneName, sourceName, 0, response -> {
+                if (response != null && response.isSuccessful()) {
+                    sceneItemId = response.getSceneItemId();
+                    OBSEffectsEngine.getScheduler().flush();
+                } else {
+                    TelemetryMod.logger.warn("Source {} not found in scene {}", sourceName, sceneName);
+                }
+            });
+        }
+
+        @Override
+        Request<?> buildRequest(Boolean value) {
+            Number id = sceneItemId;
+            if (id == null) return null;
+            return SetSceneItemEnabledRequest.builder().sceneName(sceneName).sceneItemId(id).sceneItemEnabled(value).build();
+        }
+    }
+
+    /**
+     * The text of a text source.
+     */
+    public static class InputText extends OBSTarget<String> {
+        private final String inputName;
+
+        public InputText(String inputName) {
+            this.inputName = inputName;
+        }
+
+        @Override
+        Request<?> buildRequest(String value) {
+            JsonObject settings = new JsonObject();
+            settings.addProperty("text", value);
+            return SetInputSettingsRequest.builder().inputName(inputName).inputSettings(settings).overlay(true).build();
+        }
+    }
+}
@@ -29,12 +29,66 @@ public class OverlayController {
         y = renderPlayTime(x, y);
         y = renderDeaths(x, y);
         y = renderBacklog(x, y);
+        y = renderMetrics(x, y);
+        y = renderReplay(x, y);
+        y = renderRecentTransactions(x, y);
 
     }
 
+    /**
+     * Renders the self-metrics of the telemetry pipeline, one metric per line, when they are enabled in the config.
+     *
+     * @param x The x-coordinate where the rendering should start.
+     * @param y The y-coordinate where the rendering should start.
+     * @return The updated y-coordinate for next item to be rendered.
+     */
+    private static int renderMetrics(int x, int y) {
+        if (!ModConfig.showMetrics) return y;
+        for (String line : TelemetryMetrics.describe()) {
+            TelemetryMod.minecraft.fontRenderer.drawStringWithShadow(line, x, y, COLOR_WHITE);
+            y += 10;
+        }
+        return y;
+    }
+
+    /**
+     * Renders the latest transactions kept by the ring sink, newest first, when they are enabled in the config.
+     *
+     * @param x The x-coordinate where the rendering should start.
+     * @param y The y-coordinate where the rendering should start.
+     * @return The updated y-coordinate for next item to be rendered.
+     */
+    private static int renderRecentTransactions(int x, int y) {
+        TelemetryRingSink ringSink = TransactionController.getRingSink();
+        if (!ModConfig.showRecentTransactions || ringSink == null) return y;
+        for (String line : ringSink.describeRecent(ModConfig.recentTransactions)) {
+            TelemetryMod.minecraft.fontRenderer.drawStringWithShadow(line, x, y, COLOR_WHITE);
+            y += 10;
+        }
+        return y;
+    }
+
+    /**
+     * Renders the state of the local player at the replay tick of the latest recording, when a replay tick is set in
+     * the config.
+     *
+     * @param x The x-coordinate where the rendering should start.
+     * @param y The y-coordinate where the rendering should start.
+     * @return The updated y-coordinate for next item to be rendered.
+     */
+    private static int renderReplay(int x, int y) {
+        if (ModConfig.recording.replayTick < 0 || TelemetryMod.minecraft.player == null) return y;
+        for (String line : RecordingReplay.describe(TelemetryMod.minecraft.player.getName(), ModConfig.recording.replayTick)) {
+            TelemetryMod.minecraft.fontRenderer.drawStringWithShadow(line, x, y, COLOR_WHITE);
+            y += 10;
+        }
+        return y;
+    }
+
     /**
      * Renders the current size of the transaction backlog when it's higher
-     * than 1 as this indicates connection issues.
+     * than 1 as this indicates connection issues, and the bytes still waiting
+     * in the outgoing queue of the WebSocket client, if any.
      *
      * @param x The x-coordinate where the rendering should start.
      * @param y The y-coordinate where the rendering should start.
@@ -47,6 +101,12 @@ public class OverlayController {
             TelemetryMod.minecraft.fontRenderer.drawStringWithShadow(transactionBacklogString, x, y, COLOR_WHITE);
             y += 10;
         }
+        long bytesInFlight = TelemetryMod.telemetryClient != null ? TelemetryMod.telemetryClient.getBufferedBytes() : 0;
+        if (bytesInFlight > 0) {
+            String bytesInFlightString = String.format("%s: %d KiB", "In flight", (bytesInFlight + 1023) >> 10);
+            TelemetryMod.minecraft.fontRenderer.drawStringWithShadow(bytesInFlightString, x, y, COLOR_WHITE);
+            y += 10;
+        }
         return y;
     }
 
@@ -3,106 +3,131 @@ package cz.lukasmojzis.telemetrymod;
 /**
  * The PlayerProperty enum represents various properties related to a player entity in the game.
  * These properties can be used to track and monitor specific aspects of the player's state.
- * Each enum constant provides a string representation of the property, which can be used to refer to it.
+ * Each enum constant provides a string representation of the property, which can be used to refer to it,
+ * and the type of the values it holds.
  */
 public enum PlayerProperty {
-    ACTIVE_POTION_EFFECTS("ActivePotionEffects"),
-    ADDED_TO_CHUNK("addedToChunk"),
-    AIR("Air"),
-    ARROW_HIT_TIMER("arrowHitTimer"),
-    ATTACKED_AT_YAW("attackedAtYaw"),
-    BED_LOCATION("bedLocation"),
-    CAPTURE_DROPS("captureDrops"),
-    CHUNK_COORDS_X("chunkCoordX"),
-    CHUNK_COORDS_Y("chunkCoordY"),
-    CHUNK_COORDS_Z("chunkCoordZ"),
-    COLLIDED("collided"),
-    COLLIDED_HORIZONTALLY("collidedHorizontally"),
-    COLLIDED_VERTICALLY("collidedVertically"),
-    DEATH_COUNT("deathCount"),
-    DIMENSION("dimension"),
-    DISTANCE_WALKED_MODIFIED("distanceWalkedModified"),
-    ENTITY_COLLISION_REDUCTION("entityCollisionReduction"),
-    EXPERIENCE_LEVEL("experienceLevel"),
-    EXPERIENCE_PROGRESS("experienceProgress"),
-    FALL_DISTANCE("fallDistance"),
-    FOODLEVEL("FoodLevel"),
-    FORCESPAWN("forceSpawn"),
-    HEALTH("Health"),
-    HEIGHT("height"),
-    HELDITEMMAINHAND("HeldItemMainhand"),
-    HELDITEMOFFHAND("HeldItemOffhand"),
-    IGNOREFRUSTUMCHECK("ignoreFrustumCheck"),
-    ISAIRBORNE("isAirBorne"),
-    ISBEINGRIDDEN("isBeingRidden"),
-    ISBURNING("isBurning"),
-    ISDEAD("isDead"),
-    ISENTITYALIVE("isEntityAlive"),
-    ISENTITYINSIDEOPAQUEBLOCK("isEntityInsideOpaqueBlock"),
-    ISGLOWING("isGlowing"),
-    ISHURT("isHurt"),
-    ISIMMUNETOEXPLOSIONS("isImmuneToExplosions"),
-    ISINLAVA("isInLava"),
-    ISINVISIBLE("isInvisible"),
-    ISINVULNERABLE("IsInvulnerable"),
-    ISINWATER("isInWater"),
-    ISNONBOSS("isNonBoss"),
-    ISOUTSIDEBORDER("isOutsideBorder"),
-    ISOVERWATER("isOverWater"),
-    ISPUSHEDBYWATER("isPushedByWater"),
-    ISRIDING("isRiding"),
-    ISSILENT("isSilent"),
-    ISSNEAKING("isSneaking"),
-    ISSPRINTING("isSprinting"),
-    ISTHIRSTY("isThirsty"),
-    ISWET("isWet"),
-    MAXFALLHEIGHT("MaxFallHeight"),
-    MAXHEALTH("MaxHealth"),
-    MAXHURTRESISTANTTIME("maxHurtResistantTime"),
-    MAXHURTTIME("maxHurtTime"),
-    MOTIONX("motionX"),
-    MOTIONY("motionY"),
-    MOTIONZ("motionZ"),
-    MOVEFORWARD("moveForward"),
-    MOVESTRAFING("moveStrafing"),
-    MOVEVERTICAL("moveVertical"),
-    NAME("Name"),
-    NOCLIP("noClip"),
-    ONGROUND("onGround"),
-    PERSISTENTID("PersistentID"),
-    POSX("posX"),
-    POSY("posY"),
-    POSZ("posZ"),
-    PREVENTENTITYSPAWNING("preventEntitySpawning"),
-    RANDOMUNUSED1("randomUnused1"),
-    RANDOMUNUSED2("randomUnused2"),
-    RANDOMYAWVELOCITY("randomYawVelocity"),
-    SATURATIONLEVEL("SaturationLevel"),
-    SCORE("Score"),
-    SERVERPOSX("serverPosX"),
-    SERVERPOSY("serverPosY"),
-    SERVERPOSZ("serverPosZ"),
-    STEPHEIGHT("stepHeight"),
-    TEMPERATURELEVEL("TemperatureLevel"),
-    THIRSTLEVEL("ThirstLevel"),
-    TICKSELYTRAFLYING("TicksElytraFlying"),
-    TIMEUNTILPORTAL("timeUntilPortal"),
-    TOTALARMORVALUE("TotalArmorValue"),
-    UNIQUEID("UniqueID"),
-    UPDATEBLOCKED("updateBlocked"),
-    VELOCITYCHANGED("velocityChanged"),
-    WIDTH("width"),
-    YOFFSET("YOffset");
+    ACTIVE_POTION_EFFECTS("ActivePotionEffects", PropertyType.OBJECT),
+    ADDED_TO_CHUNK("addedToChunk", PropertyType.BOOLEAN),
+    AIR("Air", PropertyType.INT),
+    ARROW_HIT_TIMER("arrowHitTimer", PropertyType.INT),
+    ATTACKED_AT_YAW("attackedAtYaw", PropertyType.FLOAT),
+    BED_LOCATION("bedLocation", PropertyType.OBJECT),
+    CAPTURE_DROPS("captureDrops", PropertyType.BOOLEAN),
+    CHUNK_COORDS_X("chunkCoordX", PropertyType.INT),
+    CHUNK_COORDS_Y("chunkCoordY", PropertyType.INT),
+    CHUNK_COORDS_Z("chunkCoordZ", PropertyType.INT),
+    COLLIDED("collided", PropertyType.BOOLEAN),
+    COLLIDED_HORIZONTALLY("collidedHorizontally", PropertyType.BOOLEAN),
+    COLLIDED_VERTICALLY("collidedVertically", PropertyType.BOOLEAN),
+    DEATH_COUNT("deathCount", PropertyType.INT),
+    DIMENSION("dimension", PropertyType.INT),
+    DISTANCE_WALKED_MODIFIED("distanceWalkedModified", PropertyType.FLOAT),
+    ENTITY_COLLISION_REDUCTION("entityCollisionReduction", PropertyType.FLOAT),
+    EXPERIENCE_LEVEL("experienceLevel", PropertyType.INT),
+    EXPERIENCE_PROGRESS("experienceProgress", PropertyType.FLOAT),
+    FALL_DISTANCE("fallDistance", PropertyType.FLOAT),
+    FOODLEVEL("FoodLevel", PropertyType.INT),
+    FORCESPAWN("forceSpawn", PropertyType.BOOLEAN),
+    HEALTH("Health", PropertyType.FLOAT),
+    HEIGHT("height", PropertyType.FLOAT),
+    HELDITEMMAINHAND("HeldItemMainhand", PropertyType.OBJECT),
+    HELDITEMOFFHAND("HeldItemOffhand", PropertyType.OBJECT),
+    IGNOREFRUSTUMCHECK("ignoreFrustumCheck", PropertyType.BOOLEAN),
+    ISAIRBORNE("isAirBorne", PropertyType.BOOLEAN),
+    ISBEINGRIDDEN("isBeingRidden", PropertyType.BOOLEAN),
+    ISBURNING("isBurning", PropertyType.BOOLEAN),
+    ISDEAD("isDead", PropertyType.BOOLEAN),
+    ISENTITYALIVE("isEntityAlive", PropertyType.BOOLEAN),
+    ISENTITYINSIDEOPAQUEBLOCK("isEntityInsideOpaqueBlock", PropertyType.BOOLEAN),
+    ISGLOWING("isGlowing", PropertyType.BOOLEAN),
+    ISHURT("isHurt", PropertyType.BOOLEAN),
+    ISIMMUNETOEXPLOSIONS("isImmuneToExplosions", PropertyType.BOOLEAN),
+    ISINLAVA("isInLava", PropertyType.BOOLEAN),
+    ISINVISIBLE("isInvisible", PropertyType.BOOLEAN),
+    ISINVULNERABLE("IsInvulnerable", PropertyType.BOOLEAN),
+    ISINWATER("isInWater", PropertyType.BOOLEAN),
+    ISNONBOSS("isNonBoss", PropertyType.BOOLEAN),
+    ISOUTSIDEBORDER("isOutsideBorder", PropertyType.BOOLEAN),
+    ISOVERWATER("isOverWater", PropertyType.BOOLEAN),
+    ISPUSHEDBYWATER("isPushedByWater", PropertyType.BOOLEAN),
+    ISRIDING("isRiding", PropertyType.BOOLEAN),
+    ISSILENT("isSilent", PropertyType.BOOLEAN),
+    ISSNEAKING("isSneaking", PropertyType.BOOLEAN),
+    ISSPRINTING("isSprinting", PropertyType.BOOLEAN),
+    ISTHIRSTY("isThirsty", PropertyType.BOOLEAN),
+    ISWET("isWet", PropertyType.BOOLEAN),
+    MAXFALLHEIGHT("MaxFallHeight", PropertyType.INT),
+    MAXHEALTH("MaxHealth", PropertyType.FLOAT),
+    MAXHURTRESISTANTTIME("maxHurtResistantTime", PropertyType.INT),
+    MAXHURTTIME("maxHurtTime", PropertyType.INT),
+    MOTIONX("motionX", PropertyType.DOUBLE),
+    MOTIONY("motionY", PropertyType.DOUBLE),
+    MOTIONZ("motionZ", PropertyType.DOUBLE),
+    MOVEFORWARD("moveForward", PropertyType.FLOAT),
+    MOVESTRAFING("moveStrafing", PropertyType.FLOAT),
+    MOVEVERTICAL("moveVertical", PropertyType.FLOAT),
+    NAME("Name", PropertyType.OBJECT),
+    NOCLIP("noClip", PropertyType.BOOLEAN),
+    ONGROUND("onGround", PropertyType.BOOLEAN),
+    PERSISTENTID("PersistentID", PropertyType.OBJECT),
+    PLAYER_DEATH_COUNT("playerDeathCount", PropertyType.INT),
+    POSX("posX", PropertyType.DOUBLE),
+    POSY("posY", PropertyType.DOUBLE),
+    POSZ("posZ", PropertyType.DOUBLE),
+    PREVENTENTITYSPAWNING("preventEntitySpawning", PropertyType.BOOLEAN),
+    RANDOMUNUSED1("randomUnused1", PropertyType.FLOAT),
+    RANDOMUNUSED2("randomUnused2", PropertyType.FLOAT),
+    RANDOMYAWVELOCITY("randomYawVelocity", PropertyType.FLOAT),
+    SATURATIONLEVEL("SaturationLevel", PropertyType.FLOAT),
+    SCORE("Score", PropertyType.INT),
+    SERVERPOSX("serverPosX", PropertyType.LONG),
+    SERVERPOSY("serverPosY", PropertyType.LONG),
+    SERVERPOSZ("serverPosZ", PropertyType.LONG),
+    STEPHEIGHT("stepHeight", PropertyType.FLOAT),
+    TEMPERATURELEVEL("TemperatureLevel", PropertyType.INT),
+    THIRSTLEVEL("ThirstLevel", PropertyType.INT),
+    TICKSELYTRAFLYING("TicksElytraFlying", PropertyType.INT),
+    TIMEUNTILPORTAL("timeUntilPortal", PropertyType.INT),
+    TOTALARMORVALUE("TotalArmorValue", PropertyType.INT),
+    UNIQUEID("UniqueID", PropertyType.OBJECT),
+    UPDATEBLOCKED("updateBlocked", PropertyType.BOOLEAN),
+    VELOCITYCHANGED("velocityChanged", PropertyType.BOOLEAN),
+    WIDTH("width", PropertyType.FLOAT),
+    YOFFSET("YOffset", PropertyType.DOUBLE);
 
     private final String property;
+    private final PropertyType type;
+    private final String jsonKey;
 
     /**
-     * Constructs a new PlayerProperty enum constant with the given property name.
+     * Constructs a new PlayerProperty enum constant with the given property name and value type.
      *
      * @param property The name of the player property.
+     * @param type     The type of the values the player property holds.
      */
-    PlayerProperty(String property) {
+    PlayerProperty(String property, PropertyType type) {
         this.property = property;
+        this.type = type;
+        this.jsonKey = TransactionJsonEncoder.quote(property) + ":";
+    }
+
+    /**
+     * Returns the type of the values this player property holds.
+     *
+     * @return The value type of the player property.
+     */
+    public PropertyType getType() {
+        return type;
+    }
+
+    /**
+     * Returns the quoted and escaped name of the player property followed by a colon, ready to be written as a JSON key.
+     *
+     * @return The JSON key of the player property.
+     */
+    public String getJsonKey() {
+        return jsonKey;
     }
 
     /**
@@ -0,0 +1,200 @@
+package cz.lukasmojzis.telemetrymod;
+
+import com.charles445.simpledifficulty.api.temperature.ITemperatureCapability;
+import com.charles445.simpledifficulty.api.thirst.IThirstCapability;
+import net.minecraft.entity.player.EntityPlayer;
+import net.minecraft.potion.PotionEffect;
+
+import java.util.Collection;
+
+/**
+ * The PlayerPropertyCapture class reads the properties of a player into an {@link IPlayerStateSink}, split into
+ * tiers by how often they change: the hot properties, which can change on every tick, the slow properties, which
+ * almost never change, and the event-driven properties, which only change on a known set of Forge events.
+ * <p>
+ * The same capture is used by the {@link PlayerStatusTracker} of the local player and by the
+ * {@link ServerPlayerController} for all players of a server.
+ */
+public class PlayerPropertyCapture {
+
+    /**
+     * The events that changed the potion effects, the equipment, the experience, the dimension or the death counts
+     * of a player, whose event-driven properties have to be captured again.
+     */
+    static final int POTIONS = 1;
+    static final int EQUIPMENT = 1 << 1;
+    static final int EXPERIENCE = 1 << 2;
+    static final int DIMENSION = 1 << 3;
+    static final int DEATHS = 1 << 4;
+    static final int ALL_EVENTS = POTIONS | EQUIPMENT | EXPERIENCE | DIMENSION | DEATHS;
+
+    /**
+     * This method captures the hot properties, the ones that can change on every tick, e.g. the position, the motion
+     * or the health of the player.
+     *
+     * @param player The EntityPlayer whose state is to be captured.
+     * @param sink   The state to write the captured values to.
+     */
+    static void captureHot(EntityPlayer player, IPlayerStateSink sink) {
+        if (ModConfig.reportCollided) {
+            sink.update(PlayerProperty.COLLIDED, player.collided);
+            sink.update(PlayerProperty.COLLIDED_HORIZONTALLY, player.collidedHorizontally);
+            sink.update(PlayerProperty.COLLIDED_VERTICALLY, player.collidedVertically);
+        }
+        if (ModConfig.reportDistanceWalked) {
+            sink.update(PlayerProperty.DISTANCE_WALKED_MODIFIED, player.distanceWalkedModified);
+        }
+        if (ModConfig.reportMotion) {
+            sink.update(PlayerProperty.MOTIONX, player.motionX);
+            sink.update(PlayerProperty.MOTIONY, player.motionY);
+            sink.update(PlayerProperty.MOTIONZ, player.motionZ);
+        }
+        if (ModConfig.reportPosition) {
+            sink.update(PlayerProperty.POSX, player.posX);
+            sink.update(PlayerProperty.POSY, player.posY);
+            sink.update(PlayerProperty.POSZ, player.posZ);
+        }
+        if (ModConfig.reportChunkCoords) {
+            sink.update(PlayerProperty.CHUNK_COORDS_X, player.chunkCoordX);
+            sink.update(PlayerProperty.CHUNK_COORDS_Y, player.chunkCoordY);
+            sink.update(PlayerProperty.CHUNK_COORDS_Z, player.chunkCoordZ);
+        }
+        if (ModConfig.reportFlight) {
+            sink.update(PlayerProperty.FALL_DISTANCE, player.fallDistance);
+            sink.update(PlayerProperty.ISAIRBORNE, player.isAirBorne);
+            sink.update(PlayerProperty.ONGROUND, player.onGround);
+        }
+        if (ModConfig.reportWater) {
+            sink.update(PlayerProperty.ISINWATER, player.isInWater());
+            sink.update(PlayerProperty.ISOVERWATER, player.isOverWater());
+            sink.update(PlayerProperty.ISPUSHEDBYWATER, player.isPushedByWater());
+        }
+        if (ModConfig.reportMove) {
+            sink.update(PlayerProperty.MOVEFORWARD, player.moveForward);
+            sink.update(PlayerProperty.MOVESTRAFING, player.moveStrafing);
+            sink.update(PlayerProperty.MOVEVERTICAL, player.moveVertical);
+            sink.update(PlayerProperty.ISSNEAKING, player.isSneaking());
+            sink.update(PlayerProperty.ISSPRINTING, player.isSprinting());
+        }
+        sink.update(PlayerProperty.AIR, player.getAir());
+        sink.update(PlayerProperty.FOODLEVEL, player.getFoodStats().getFoodLevel());
+        sink.update(PlayerProperty.HEALTH, player.getHealth());
+        sink.update(PlayerProperty.MAXFALLHEIGHT, player.getMaxFallHeight());
+        sink.update(PlayerProperty.SATURATIONLEVEL, player.getFoodStats().getSaturationLevel());
+        sink.update(PlayerProperty.TICKSELYTRAFLYING, player.getTicksElytraFlying());
+        sink.update(PlayerProperty.ARROW_HIT_TIMER, player.arrowHitTimer);
+        sink.update(PlayerProperty.ATTACKED_AT_YAW, player.attackedAtYaw);
+        sink.update(PlayerProperty.ISHURT, player.hurtTime > 0);
+        sink.update(PlayerProperty.ISBEINGRIDDEN, player.isBeingRidden());
+        sink.update(PlayerProperty.ISBURNING, player.isBurning());
+        sink.update(PlayerProperty.ISDEAD, player.isDead);
+        sink.update(PlayerProperty.ISENTITYALIVE, player.isEntityAlive());
+        sink.update(PlayerProperty.ISENTITYINSIDEOPAQUEBLOCK, player.isEntityInsideOpaqueBlock());
+        sink.update(PlayerProperty.ISINLAVA, player.isInLava());
+        sink.update(PlayerProperty.ISOUTSIDEBORDER, player.isOutsideBorder());
+        sink.update(PlayerProperty.ISRIDING, player.isRiding());
+        sink.update(PlayerProperty.ISWET, player.isWet());
+        sink.update(PlayerProperty.RANDOMYAWVELOCITY, player.randomYawVelocity);
+        sink.update(PlayerProperty.SERVERPOSX, player.serverPosX);
+        sink.update(PlayerProperty.SERVERPOSY, player.serverPosY);
+        sink.update(PlayerProperty.SERVERPOSZ, player.serverPosZ);
+        sink.update(PlayerProperty.TIMEUNTILPORTAL, player.timeUntilPortal);
+        sink.update(PlayerProperty.VELOCITYCHANGED, player.velocityChanged);
+    }
+
+    /**
+     * This method captures the slow properties, the ones that almost never change, e.g. the name, the maximum health
+     * or the bed location of the player.
+     *
+     * @param player      The EntityPlayer whose state is to be captured.
+     * @param sink        The state to write the captured values to.
+     * @param thirst      The thirst capability of the player, or null if SimpleDifficulty is not loaded.
+     * @param temperature The temperature capability of the player, or null if SimpleDifficulty is not loaded.
+     */
+    static void captureSlow(EntityPlayer player, IPlayerStateSink sink, IThirstCapability thirst, ITemperatureCapability temperature) {
+        if (ModConfig.reportDimensions) {
+            sink.update(PlayerProperty.HEIGHT, player.height);
+            sink.update(PlayerProperty.WIDTH, player.width);
+        }
+        sink.update(PlayerProperty.ISINVULNERABLE, player.getIsInvulnerable());
+        sink.update(PlayerProperty.MAXHEALTH, player.getMaxHealth());
+        sink.update(PlayerProperty.NAME, player.getName());
+        sink.update(PlayerProperty.PERSISTENTID, player.getPersistentID());
+        sink.update(PlayerProperty.UNIQUEID, player.getUniqueID());
+        sink.update(PlayerProperty.YOFFSET, player.getYOffset());
+        sink.update(PlayerProperty.ADDED_TO_CHUNK, player.addedToChunk);
+        sink.update(PlayerProperty.BED_LOCATION, player.getBedLocation().toString());
+        sink.update(PlayerProperty.CAPTURE_DROPS, player.captureDrops);
+        sink.update(PlayerProperty.ENTITY_COLLISION_REDUCTION, player.entityCollisionReduction);
+        sink.update(PlayerProperty.FORCESPAWN, player.forceSpawn);
+        sink.update(PlayerProperty.IGNOREFRUSTUMCHECK, player.ignoreFrustumCheck);
+        sink.update(PlayerProperty.ISGLOWING, player.isGlowing());
+        sink.update(PlayerProperty.ISIMMUNETOEXPLOSIONS, player.isImmuneToExplosions());
+        sink.update(PlayerProperty.ISINVISIBLE, player.isInvisible());
+        sink.update(PlayerProperty.ISNONBOSS, player.isNonBoss());
+        sink.update(PlayerProperty.ISSILENT, player.isSilent());
+        sink.update(PlayerProperty.MAXHURTRESISTANTTIME, player.maxHurtResistantTime);
+        sink.update(PlayerProperty.MAXHURTTIME, player.maxHurtTime);
+        sink.update(PlayerProperty.NOCLIP, player.noClip);
+        sink.update(PlayerProperty.PREVENTENTITYSPAWNING, player.preventEntitySpawning);
+        sink.update(PlayerProperty.RANDOMUNUSED1, player.randomUnused1);
+        sink.update(PlayerProperty.RANDOMUNUSED2, player.randomUnused2);
+        sink.update(PlayerProperty.STEPHEIGHT, player.stepHeight);
+        sink.update(PlayerProperty.UPDATEBLOCKED, player.updateBlocked);
+        if (temperature != null) {
+            sink.update(PlayerProperty.TEMPERATURELEVEL, temperature.getTemperatureLevel());
+        }
+        if (thirst != null){
+            sink.update(PlayerProperty.THIRSTLEVEL, thirst.getThirstLevel());
+            sink.update(PlayerProperty.ISTHIRSTY, thirst.isThirsty());
+        }
+    }
+
+    /**
+     * This method captures the event-driven properties of the events that happened since the last update.
+     *
+     * @param player The EntityPlayer whose state is to be captured.
+     * @param sink   The state to write the captured values to.
+     * @param events The events that happened.
+     */
+    static void captureEvents(EntityPlayer player, IPlayerStateSink sink, int events) {
+        if ((events & POTIONS) != 0) {
+            sink.update(PlayerProperty.ACTIVE_POTION_EFFECTS, describePotionEffects(player.getActivePotionEffects()));
+        }
+        if ((events & EQUIPMENT) != 0) {
+            sink.update(PlayerProperty.HELDITEMMAINHAND, player.getHeldItemMainhand());
+            sink.update(PlayerProperty.HELDITEMOFFHAND, player.getHeldItemOffhand());
+            sink.update(PlayerProperty.TOTALARMORVALUE, player.getTotalArmorValue());
+        }
+        if ((events & EXPERIENCE) != 0) {
+            sink.update(PlayerProperty.EXPERIENCE_LEVEL, player.experienceLevel);
+            sink.update(PlayerProperty.EXPERIENCE_PROGRESS, player.experience);
+            sink.update(PlayerProperty.SCORE, player.getScore());
+        }
+        if ((events & DIMENSION) != 0 && ModConfig.reportDimension) {
+            sink.update(PlayerProperty.DIMENSION, player.dimension);
+        }
+        if ((events & DEATHS) != 0) {
+            sink.update(PlayerProperty.DEATH_COUNT, DeathCounter.getGlobalDeathCount());
+            sink.update(PlayerProperty.PLAYER_DEATH_COUNT, DeathCounter.getDeathCount(player.getUniqueID()));
+        }
+    }
+
+    /**
+     * This method describes the active potion effects as a string, the name and the level of every effect, e.g.
+     * {@code [effect.moveSpeed x 2, effect.jump x 1]}. The collection returned by the player is a live view of its
+     * effects, so it has to be copied into a value before it can be compared with the next one; the remaining
+     * duration is left out, so the value only changes when an effect is added, removed or changes its level.
+     *
+     * @param effects The active potion effects of the player.
+     * @return The description of the effects.
+     */
+    static String describePotionEffects(Collection<PotionEffect> effects) {
+        StringBuilder description = new StringBuilder("[");
+        for (PotionEffect effect : effects) {
+            if (description.length() > 1) description.append(", ");
+            description.append(effect.getEffectName()).append(" x ").append(effect.getAmplifier() + 1);
+        }
+        return description.append(']').toString();
+    }
+}
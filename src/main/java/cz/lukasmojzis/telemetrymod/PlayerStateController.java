@@ -3,8 +3,9 @@ package cz.lukasmojzis.telemetrymod;
 import net.minecraft.entity.player.EntityPlayer;
 import net.minecraftforge.fml.common.gameevent.PlayerEvent;
 
-import java.util.HashMap;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * The PlayerStateController class provides functionality to track and manage the state of players in the game.
@@ -12,7 +13,8 @@ import java.util.UUID;
  */
 public class PlayerStateController {
     // A map to store player states with their corresponding UUIDs as keys.
-    private static final HashMap<UUID, PlayerStatusTracker> playerStates = new HashMap<>();
+    // Events of the integrated server look players up from the server thread, so the map has to be concurrent.
+    private static final Map<UUID, PlayerStatusTracker> playerStates = new ConcurrentHashMap<>();
 
     /**
      * Called when a player logs in to the game.
@@ -57,6 +59,31 @@ public class PlayerStateController {
         }
     }
 
+    /**
+     * Signals that an event changed some of the event-driven properties of a player, so they are captured on the
+     * next poll of the player state. Events of players that are not tracked are ignored.
+     *
+     * @param player The player the event happened to.
+     * @param events The events that happened, see {@link PlayerStatusTracker#markDirty(int)}.
+     */
+    static void markDirty(EntityPlayer player, int events) {
+        PlayerStatusTracker playerState = playerStates.get(player.getUniqueID());
+        if (playerState != null) {
+            playerState.markDirty(events);
+        }
+    }
+
+    /**
+     * Signals that an event changed some of the event-driven properties of all tracked players.
+     *
+     * @param events The events that happened, see {@link PlayerStatusTracker#markDirty(int)}.
+     */
+    static void markAllDirty(int events) {
+        for (PlayerStatusTracker playerState : playerStates.values()) {
+            playerState.markDirty(events);
+        }
+    }
+
     /**
      * Retrieves the PlayerStatusTracker associated with a specific player.
      *
@@ -0,0 +1,172 @@
+package cz.lukasmojzis.telemetrymod;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The PlayerStateDiffer class diffs the frames captured by the server thread against the {@link PlayerStateTable}
+ * on a fork-join pool, and merges the resulting transactions into the outbox.
+ * <p>
+ * The rows of a frame are diffed in parallel, since every row only touches its own slots of the table. Submitted
+ * frames wait in a queue drained by a single task on the pool, so frames are processed one after another, in the
+ * order they were submitted, and the transactions of a frame are merged row by row once the whole frame is diffed, so
+ * they reach the outbox in tick order. A frame that fails, even with an error, is still returned to the pool and
+ * never holds up the frames after it.
+ * <p>
+ * The differ keeps a bounded pool of frames. When all of them are waiting to be diffed, no frame can be acquired and
+ * the server skips capturing for that tick instead of queueing more work.
+ */
+public class PlayerStateDiffer {
+
+    private static final int MAX_FRAMES = 20;
+    private static final int ROWS_PER_TASK = 8;
+
+    private final PlayerStateTable table;
+    private final ForkJoinPool pool;
+    private final ConcurrentLinkedQueue<PlayerStateFrame> freeFrames = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger frameCount = new AtomicInteger();
+    private final ConcurrentLinkedQueue<PlayerStateFrame> submitted = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean draining = new AtomicBoolean();
+
+    /**
+     * Constructs a differ.
+     *
+     * @param table   The table the frames are diffed against.
+     * @param threads The number of threads of the fork-join pool, or 0 to diff on the thread submitting the frames.
+     */
+    public PlayerStateDiffer(PlayerStateTable table, int threads) {
+        this.table = table;
+        this.pool = threads > 0 ? new ForkJoinPool(threads, PlayerStateDiffer::newThread, null, false) : null;
+    }
+
+    private static ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setName("TelemetryMod Differ-" + thread.getPoolIndex());
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * Acquires an empty frame to capture into.
+     *
+     * @return The frame, or null if all frames are still waiting to be diffed.
+     */
+    public PlayerStateFrame acquire() {
+        PlayerStateFrame frame = freeFrames.poll();
+        if (frame != null) return frame;
+        if (frameCount.incrementAndGet() > MAX_FRAMES) {
+            frameCount.decrementAndGet();
+            return null;
+        }
+        return new PlayerStateFrame();
+    }
+
+    /**
+     * Submits a captured frame to be diffed after all frames submitted before it. Must be called from a single thread.
+     *
+     * @param frame The captured frame.
+     */
+    public void submit(PlayerStateFrame frame) {
+        if (pool == null) {
+            process(frame);
+        } else {
+            submitted.offer(frame);
+            scheduleDrain();
+        }
+    }
+
+    /**
+     * Starts the drain task on the pool, unless it is running already.
+     */
+    private void scheduleDrain() {
+        if (!submitted.isEmpty() && !pool.isShutdown() && draining.compareAndSet(false, true)) {
+            pool.execute(this::drain);
+        }
+    }
+
+    /**
+     * Processes the submitted frames until none is left. Only one drain task runs at a time; if processing a frame
+     * throws, a new drain task takes over the frames after it.
+     */
+    private void drain() {
+        try {
+            PlayerStateFrame frame;
+            while ((frame = submitted.poll()) != null) {
+                process(frame);
+            }
+        } finally {
+            draining.set(false);
+            scheduleDrain();
+        }
+    }
+
+    /**
+     * Shuts the fork-join pool down once the frames submitted so far are diffed.
+     */
+    public void shutdown() {
+        if (pool != null) pool.shutdown();
+    }
+
+    /**
+     * Diffs all rows of a frame, merges their transactions into the outbox and returns the frame to the pool.
+     *
+     * @param frame The frame to process.
+     */
+    private void process(PlayerStateFrame frame) {
+        long startedAt = System.nanoTime();
+        try {
+            table.ensurePublishedCapacity(frame.rows.length);
+            if (pool == null) {
+                for (int index = 0; index < frame.rowCount; index++) {
+                    table.diff(frame, index);
+                }
+            } else {
+                new DiffTask(frame, 0, frame.rowCount).invoke();
+            }
+            for (int index = 0; index < frame.rowCount; index++) {
+                List<PlayerStateUpdate> changes = frame.changes.get(index);
+                for (int i = 0; i < changes.size(); i++) {
+                    TransactionController.addTransactionToBundle(changes.get(i));
+                }
+            }
+        } catch (RuntimeException e) {
+            TelemetryMod.logger.error("Failed to diff the captured player states", e);
+        } finally {
+            frame.clear();
+            freeFrames.offer(frame);
+            TelemetryMetrics.SERVER_DIFF_TIME.record(System.nanoTime() - startedAt);
+        }
+    }
+
+    /**
+     * A fork-join task diffing a range of the rows of a frame, split in halves down to {@value #ROWS_PER_TASK} rows.
+     */
+    private class DiffTask extends RecursiveAction {
+        private final PlayerStateFrame frame;
+        private final int from;
+        private final int to;
+
+        DiffTask(PlayerStateFrame frame, int from, int to) {
+            this.frame = frame;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= ROWS_PER_TASK) {
+                for (int index = from; index < to; index++) {
+                    table.diff(frame, index);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new DiffTask(frame, from, middle), new DiffTask(frame, middle, to));
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package cz.lukasmojzis.telemetrymod;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The PlayerStateFrame class holds the raw values captured from the players of the server in a single tick, in the
+ * same struct-of-arrays layout as the {@link PlayerStateTable}. The server thread only copies the values into the
+ * frame, without comparing them to anything; the frame is then diffed against the table off the server thread.
+ * <p>
+ * Frames are pooled and reused, so capturing into them does not allocate once they have grown to the number of
+ * players on the server.
+ */
+public class PlayerStateFrame {
+
+    private static final PlayerProperty[] PROPERTIES = PlayerProperty.values();
+    private static final int PROPERTY_COUNT = PROPERTIES.length;
+    static final int WORDS_PER_ROW = (PROPERTY_COUNT + 63) >>> 6;
+
+    private int capacity = 0;
+
+    final long[][] longColumns = new long[PROPERTY_COUNT][];
+    final double[][] doubleColumns = new double[PROPERTY_COUNT][];
+    final Object[][] objectColumns = new Object[PROPERTY_COUNT][];
+
+    /**
+     * The properties captured in this frame, {@value #WORDS_PER_ROW} words per row.
+     */
+    long[] captured = new long[0];
+
+    /**
+     * The rows captured in this frame, in the order they were captured, and what is known about each of them.
+     */
+    int[] rows = new int[0];
+    String[] names = new String[0];
+    long[] gameTicks = new long[0];
+    boolean[] resets = new boolean[0];
+    int rowCount = 0;
+
+    /**
+     * The transactions built by diffing the captured rows, one list per captured row.
+     */
+    final List<List<PlayerStateUpdate>> changes = new ArrayList<>();
+
+    private final Cursor cursor = new Cursor();
+
+    /**
+     * Constructs an empty frame.
+     */
+    public PlayerStateFrame() {
+        for (int slot = 0; slot < PROPERTY_COUNT; slot++) {
+            PropertyType type = PROPERTIES[slot].getType();
+            if (type.isLongSlot()) longColumns[slot] = new long[0];
+            else if (type.isDoubleSlot()) doubleColumns[slot] = new double[0];
+            else objectColumns[slot] = new Object[0];
+        }
+    }
+
+    /**
+     * Prepares the frame for capturing the rows of a table with the given capacity.
+     *
+     * @param tableCapacity The number of rows of the table.
+     */
+    void reset(int tableCapacity) {
+        if (tableCapacity > capacity) grow(tableCapacity);
+        rowCount = 0;
+    }
+
+    /**
+     * Starts capturing a row and binds the cursor of the frame to it. The cursor is shared, so it is only valid
+     * until the next call.
+     *
+     * @param row      The row of the table.
+     * @param name     The name of the player of the row.
+     * @param gameTick The game tick the row is captured at.
+     * @param reset    True if the row was allocated to a new player since it was last captured.
+     * @return The cursor bound to the row.
+     */
+    IPlayerStateSink beginRow(int row, String name, long gameTick, boolean reset) {
+        int index = rowCount++;
+        rows[index] = row;
+        names[index] = name;
+        gameTicks[index] = gameTick;
+        resets[index] = reset;
+        Arrays.fill(captured, row * WORDS_PER_ROW, (row + 1) * WORDS_PER_ROW, 0);
+        cursor.row = row;
+        return cursor;
+    }
+
+    /**
+     * Returns the list the changes of a captured row are collected in, empty.
+     *
+     * @param index The index of the captured row.
+     * @return The empty list of changes.
+     */
+    List<PlayerStateUpdate> changesOf(int index) {
+        List<PlayerStateUpdate> list = changes.get(index);
+        list.clear();
+        return list;
+    }
+
+    /**
+     * Drops the references the frame holds to captured objects and transactions, before it goes back to the pool.
+     */
+    void clear() {
+        for (int index = 0; index < rowCount; index++) {
+            int row = rows[index];
+            names[index] = null;
+            changes.get(index).clear();
+            for (Object[] column : objectColumns) {
+                if (column != null) column[row] = null;
+            }
+        }
+        rowCount = 0;
+    }
+
+    private void grow(int newCapacity) {
+        for (int slot = 0; slot < PROPERTY_COUNT; slot++) {
+            if (longColumns[slot] != null) longColumns[slot] = Arrays.copyOf(longColumns[slot], newCapacity);
+            if (doubleColumns[slot] != null) doubleColumns[slot] = Arrays.copyOf(doubleColumns[slot], newCapacity);
+            if (objectColumns[slot] != null) objectColumns[slot] = Arrays.copyOf(objectColumns[slot], newCapacity);
+        }
+        captured = Arrays.copyOf(captured, newCapacity * WORDS_PER_ROW);
+        rows = Arrays.copyOf(rows, newCapacity);
+        names = Arrays.copyOf(names, newCapacity);
+        gameTicks = Arrays.copyOf(gameTicks, newCapacity);
+        resets = Arrays.copyOf(resets, newCapacity);
+        while (changes.size() < newCapacity) changes.add(new ArrayList<>());
+        capacity = newCapacity;
+    }
+
+    /**
+     * A cursor copying the captured properties of a single row into the frame. The frame does not compare the values
+     * with anything, so every update is reported as a change.
+     */
+    private class Cursor implements IPlayerStateSink {
+        private int row;
+
+        @Override
+        public boolean update(PlayerProperty property, long value) {
+            longColumns[property.ordinal()][row] = value;
+            markCaptured(property.ordinal());
+            return true;
+        }
+
+        @Override
+        public boolean update(PlayerProperty property, double value) {
+            doubleColumns[property.ordinal()][row] = value;
+            markCaptured(property.ordinal());
+            return true;
+        }
+
+        @Override
+        public boolean update(PlayerProperty property, Object value) {
+            objectColumns[property.ordinal()][row] = value;
+            markCaptured(property.ordinal());
+            return true;
+        }
+
+        private void markCaptured(int slot) {
+            captured[row * WORDS_PER_ROW + (slot >>> 6)] |= 1L << slot;
+        }
+    }
+}
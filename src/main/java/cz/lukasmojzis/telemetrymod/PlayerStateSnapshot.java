@@ -0,0 +1,187 @@
+package cz.lukasmojzis.telemetrymod;
+
+import java.util.BitSet;
+import java.util.Objects;
+
+/**
+ * The PlayerStateSnapshot class holds the latest known value of every {@link PlayerProperty} of a single player.
+ * <p>
+ * Values are stored in flat slot arrays indexed by {@link PlayerProperty#ordinal()}: boolean, int and long values
+ * in a long slot, float and double values in a double slot, and everything else in an object slot. Comparing and
+ * storing primitive values therefore never allocates. Every property whose value changed is marked in a dirty set,
+ * and the value it had before the change is kept until the dirty set is cleared, so boxed values only have to be
+ * created for the properties that actually changed.
+ */
+public class PlayerStateSnapshot implements IPlayerStateSink {
+
+    private static final int PROPERTY_COUNT = PlayerProperty.values().length;
+
+    private final long[] longSlots = new long[PROPERTY_COUNT];
+    private final double[] doubleSlots = new double[PROPERTY_COUNT];
+    private final Object[] objectSlots = new Object[PROPERTY_COUNT];
+
+    private final long[] previousLongSlots = new long[PROPERTY_COUNT];
+    private final double[] previousDoubleSlots = new double[PROPERTY_COUNT];
+    private final Object[] previousObjectSlots = new Object[PROPERTY_COUNT];
+
+    /**
+     * The properties that have a value.
+     */
+    private final BitSet present = new BitSet(PROPERTY_COUNT);
+
+    /**
+     * The properties that had a value before their latest change.
+     */
+    private final BitSet previouslyPresent = new BitSet(PROPERTY_COUNT);
+
+    /**
+     * The properties that changed since the dirty set was last cleared.
+     */
+    private final BitSet dirty = new BitSet(PROPERTY_COUNT);
+
+    /**
+     * Stores a value of a property held in a long slot, marking the property dirty if the value changed.
+     *
+     * @param property The property to update.
+     * @param value    The new value; booleans are stored as 1 or 0.
+     * @return True if the value changed.
+     */
+    public boolean update(PlayerProperty property, long value) {
+        int slot = property.ordinal();
+        if (present.get(slot) && longSlots[slot] == value) return false;
+        markChanged(slot);
+        longSlots[slot] = value;
+        return true;
+    }
+
+    /**
+     * Stores a value of a property held in a double slot, marking the property dirty if the value changed.
+     * Values are compared by their bits, the same way {@link Double#equals(Object)} and {@link Float#equals(Object)} do.
+     *
+     * @param property The property to update.
+     * @param value    The new value; floats are widened without loss.
+     * @return True if the value changed.
+     */
+    public boolean update(PlayerProperty property, double value) {
+        int slot = property.ordinal();
+        if (present.get(slot) && Double.doubleToLongBits(doubleSlots[slot]) == Double.doubleToLongBits(value)) return false;
+        markChanged(slot);
+        doubleSlots[slot] = value;
+        return true;
+    }
+
+    /**
+     * Stores a value of a property held in an object slot, marking the property dirty if the value changed.
+     *
+     * @param property The property to update.
+     * @param value    The new value.
+     * @return True if the value changed.
+     */
+    public boolean update(PlayerProperty property, Object value) {
+        int slot = property.ordinal();
+        if (present.get(slot) && Objects.equals(objectSlots[slot], value)) return false;
+        markChanged(slot);
+        objectSlots[slot] = value;
+        return true;
+    }
+
+    /**
+     * Remembers the current value of a slot as its previous value, unless the slot already changed since the dirty
+     * set was last cleared, and marks the slot dirty.
+     *
+     * @param slot The ordinal of the changed property.
+     */
+    private void markChanged(int slot) {
+        if (dirty.get(slot)) return;
+        previousLongSlots[slot] = longSlots[slot];
+        previousDoubleSlots[slot] = doubleSlots[slot];
+        previousObjectSlots[slot] = objectSlots[slot];
+        previouslyPresent.set(slot, present.get(slot));
+        present.set(slot);
+        dirty.set(slot);
+    }
+
+    /**
+     * Returns whether the property has a value.
+     *
+     * @param property The property to check.
+     * @return True if a value was stored for the property.
+     */
+    public boolean has(PlayerProperty property) {
+        return present.get(property.ordinal());
+    }
+
+    /**
+     * Returns the raw content of the long slot of a property.
+     *
+     * @param property The property to read.
+     * @return The stored value, or 0 if the property has no value.
+     */
+    public long getLong(PlayerProperty property) {
+        return longSlots[property.ordinal()];
+    }
+
+    /**
+     * Returns the raw content of the double slot of a property.
+     *
+     * @param property The property to read.
+     * @return The stored value, or 0 if the property has no value.
+     */
+    public double getDouble(PlayerProperty property) {
+        return doubleSlots[property.ordinal()];
+    }
+
+    /**
+     * Returns the value of a property, boxed into the wrapper type of the property.
+     *
+     * @param property The property to read.
+     * @return The stored value, or null if the property has no value.
+     */
+    public Object get(PlayerProperty property) {
+        int slot = property.ordinal();
+        if (!present.get(slot)) return null;
+        return box(property, longSlots[slot], doubleSlots[slot], objectSlots[slot]);
+    }
+
+    /**
+     * Returns the value a dirty property had before its change, boxed into the wrapper type of the property.
+     *
+     * @param property The property to read.
+     * @return The value before the change, or null if the property had no value before.
+     */
+    public Object getPrevious(PlayerProperty property) {
+        int slot = property.ordinal();
+        if (!previouslyPresent.get(slot)) return null;
+        return box(property, previousLongSlots[slot], previousDoubleSlots[slot], previousObjectSlots[slot]);
+    }
+
+    /**
+     * Boxes the content of one slot of the property according to the type of the property.
+     */
+    private static Object box(PlayerProperty property, long longValue, double doubleValue, Object objectValue) {
+        PropertyType type = property.getType();
+        if (type.isLongSlot()) return type.boxLong(longValue);
+        if (type.isDoubleSlot()) return type.boxDouble(doubleValue);
+        return objectValue;
+    }
+
+    /**
+     * Returns the ordinals of the properties that changed since the dirty set was last cleared.
+     * The returned set is live and must not be modified by the caller.
+     *
+     * @return The dirty set.
+     */
+    public BitSet getDirty() {
+        return dirty;
+    }
+
+    /**
+     * Clears the dirty set and forgets the previous values of the changed properties.
+     */
+    public void clearDirty() {
+        for (int slot = dirty.nextSetBit(0); slot >= 0; slot = dirty.nextSetBit(slot + 1)) {
+            previousObjectSlots[slot] = null;
+        }
+        dirty.clear();
+    }
+}
@@ -0,0 +1,285 @@
+package cz.lukasmojzis.telemetrymod;
+
+import net.minecraft.entity.player.EntityPlayer;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The PlayerStateTable class holds the last published state of many players in a struct-of-arrays layout: every
+ * property has its own column, an array with one slot per row, and every player is a row. Diffing a property of
+ * all players therefore walks a single primitive array instead of one snapshot object per player.
+ * <p>
+ * The server thread allocates the rows and captures them into a {@link PlayerStateFrame}; the frame is then diffed
+ * against the published columns by {@link #diff(PlayerStateFrame, int)}, off the server thread. The row bookkeeping
+ * is only used from the server thread, the published columns only from the differ, and the rows of a single frame
+ * may be diffed in parallel. Sampling policies are not applied to the rows of the table.
+ */
+public class PlayerStateTable {
+
+    private static final PlayerProperty[] PROPERTIES = PlayerProperty.values();
+    private static final int PROPERTY_COUNT = PROPERTIES.length;
+    private static final int WORDS_PER_ROW = (PROPERTY_COUNT + 63) >>> 6;
+
+    private int capacity;
+    private int publishedCapacity;
+
+    /**
+     * The published columns of the properties, indexed by ordinal. Every property has a column of the kind its type
+     * is stored in, the other two are null.
+     */
+    private final long[][] longColumns = new long[PROPERTY_COUNT][];
+    private final double[][] doubleColumns = new double[PROPERTY_COUNT][];
+    private final Object[][] objectColumns = new Object[PROPERTY_COUNT][];
+
+    /**
+     * The properties that have a published value, {@value #WORDS_PER_ROW} words per row.
+     */
+    private long[] present;
+
+    private EntityPlayer[] players;
+    private String[] names;
+    private int[] dirtyEvents;
+    private long[] lastSlowPollTicks;
+    private boolean[] resets;
+
+    /**
+     * The rows that are in use.
+     */
+    private final BitSet used = new BitSet();
+
+    /**
+     * Constructs an empty table.
+     *
+     * @param initialCapacity The number of rows to allocate up front; the table grows when they are used up.
+     */
+    public PlayerStateTable(int initialCapacity) {
+        capacity = Math.max(1, initialCapacity);
+        for (int slot = 0; slot < PROPERTY_COUNT; slot++) {
+            PropertyType type = PROPERTIES[slot].getType();
+            if (type.isLongSlot()) longColumns[slot] = new long[capacity];
+            else if (type.isDoubleSlot()) doubleColumns[slot] = new double[capacity];
+            else objectColumns[slot] = new Object[capacity];
+        }
+        present = new long[capacity * WORDS_PER_ROW];
+        publishedCapacity = capacity;
+        players = new EntityPlayer[capacity];
+        names = new String[capacity];
+        dirtyEvents = new int[capacity];
+        lastSlowPollTicks = new long[capacity];
+        resets = new boolean[capacity];
+    }
+
+    /**
+     * Allocates an empty row for a player. All event-driven properties of the new row are marked dirty and its
+     * slow properties are due, so the first capture reads all properties.
+     *
+     * @param player The player.
+     * @return The allocated row.
+     */
+    public int allocate(EntityPlayer player) {
+        int row = used.nextClearBit(0);
+        if (row >= capacity) grow(capacity * 2);
+        used.set(row);
+        players[row] = player;
+        names[row] = player.getName();
+        dirtyEvents[row] = PlayerPropertyCapture.ALL_EVENTS;
+        lastSlowPollTicks[row] = Long.MIN_VALUE;
+        resets[row] = true;
+        return row;
+    }
+
+    /**
+     * Releases a row, so it can be allocated to another player.
+     *
+     * @param row The row to release.
+     */
+    public void release(int row) {
+        used.clear(row);
+        players[row] = null;
+        names[row] = null;
+    }
+
+    /**
+     * Returns the next row in use, at or after the given row.
+     *
+     * @param row The row to start at.
+     * @return The next row in use, or -1 if there is none.
+     */
+    public int nextRow(int row) {
+        return used.nextSetBit(row);
+    }
+
+    /**
+     * Returns the player of a row.
+     *
+     * @param row The row.
+     * @return The player, or null if the row is not in use.
+     */
+    public EntityPlayer getPlayer(int row) {
+        return players[row];
+    }
+
+    /**
+     * Replaces the player of a row, e.g. with the new entity created for the player on respawn.
+     *
+     * @param row    The row.
+     * @param player The player.
+     */
+    public void setPlayer(int row, EntityPlayer player) {
+        players[row] = player;
+    }
+
+    /**
+     * Returns the number of rows in use.
+     *
+     * @return The number of rows in use.
+     */
+    public int size() {
+        return used.cardinality();
+    }
+
+    /**
+     * Signals that some events changed the event-driven properties of a row.
+     *
+     * @param row    The row.
+     * @param events The events that happened.
+     */
+    public void markDirty(int row, int events) {
+        dirtyEvents[row] |= events;
+    }
+
+    /**
+     * Returns the events signalled for a row since the last call and clears them.
+     *
+     * @param row The row.
+     * @return The events that happened.
+     */
+    public int takeDirtyEvents(int row) {
+        int events = dirtyEvents[row];
+        dirtyEvents[row] = 0;
+        return events;
+    }
+
+    /**
+     * Returns whether the slow properties of a row are due to be captured, and if so, remembers that they were.
+     *
+     * @param row      The row.
+     * @param gameTick The current game tick.
+     * @param interval The number of ticks between two captures of the slow properties.
+     * @return True if the slow properties have to be captured.
+     */
+    public boolean takeSlowPoll(int row, long gameTick, int interval) {
+        long last = lastSlowPollTicks[row];
+        if (last != Long.MIN_VALUE && gameTick - last < interval && gameTick >= last) return false;
+        lastSlowPollTicks[row] = gameTick;
+        return true;
+    }
+
+    /**
+     * Returns the number of rows the table has room for.
+     *
+     * @return The capacity of the table.
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Starts capturing a row into a frame.
+     *
+     * @param frame    The frame to capture into.
+     * @param row      The row to capture.
+     * @param gameTick The game tick the row is captured at.
+     * @return The sink to write the captured values of the row to.
+     */
+    IPlayerStateSink beginRow(PlayerStateFrame frame, int row, long gameTick) {
+        boolean reset = resets[row];
+        resets[row] = false;
+        return frame.beginRow(row, names[row], gameTick, reset);
+    }
+
+    private void grow(int newCapacity) {
+        players = Arrays.copyOf(players, newCapacity);
+        names = Arrays.copyOf(names, newCapacity);
+        dirtyEvents = Arrays.copyOf(dirtyEvents, newCapacity);
+        lastSlowPollTicks = Arrays.copyOf(lastSlowPollTicks, newCapacity);
+        resets = Arrays.copyOf(resets, newCapacity);
+        capacity = newCapacity;
+    }
+
+    /**
+     * Makes sure the published columns have room for every row of a frame. Called by the differ before the rows of
+     * the frame are diffed in parallel.
+     *
+     * @param rows The number of rows needed.
+     */
+    void ensurePublishedCapacity(int rows) {
+        if (rows <= publishedCapacity) return;
+        for (int slot = 0; slot < PROPERTY_COUNT; slot++) {
+            if (longColumns[slot] != null) longColumns[slot] = Arrays.copyOf(longColumns[slot], rows);
+            if (doubleColumns[slot] != null) doubleColumns[slot] = Arrays.copyOf(doubleColumns[slot], rows);
+            if (objectColumns[slot] != null) objectColumns[slot] = Arrays.copyOf(objectColumns[slot], rows);
+        }
+        present = Arrays.copyOf(present, rows * WORDS_PER_ROW);
+        publishedCapacity = rows;
+    }
+
+    /**
+     * Diffs a row captured in a frame against the values last published for it, and collects a PlayerStateUpdate
+     * transaction for every changed property into the changes of the row. Different rows can be diffed in parallel.
+     *
+     * @param frame The frame holding the captured row.
+     * @param index The index of the captured row in the frame.
+     */
+    void diff(PlayerStateFrame frame, int index) {
+        int row = frame.rows[index];
+        String name = frame.names[index];
+        long gameTick = frame.gameTicks[index];
+        List<PlayerStateUpdate> changes = frame.changesOf(index);
+        if (frame.resets[index]) {
+            Arrays.fill(present, row * WORDS_PER_ROW, (row + 1) * WORDS_PER_ROW, 0);
+            for (Object[] column : objectColumns) {
+                if (column != null) column[row] = null;
+            }
+        }
+
+        for (int word = 0; word < WORDS_PER_ROW; word++) {
+            long captured = frame.captured[row * WORDS_PER_ROW + word];
+            while (captured != 0) {
+                int slot = (word << 6) + Long.numberOfTrailingZeros(captured);
+                captured &= captured - 1;
+
+                PlayerProperty property = PROPERTIES[slot];
+                PropertyType type = property.getType();
+                long presentBit = 1L << slot;
+                boolean had = (present[row * WORDS_PER_ROW + word] & presentBit) != 0;
+                Object previous;
+                Object value;
+                if (type.isLongSlot()) {
+                    long newValue = frame.longColumns[slot][row];
+                    if (had && longColumns[slot][row] == newValue) continue;
+                    previous = had ? type.boxLong(longColumns[slot][row]) : null;
+                    value = type.boxLong(newValue);
+                    longColumns[slot][row] = newValue;
+                } else if (type.isDoubleSlot()) {
+                    double newValue = frame.doubleColumns[slot][row];
+                    if (had && Double.doubleToLongBits(doubleColumns[slot][row]) == Double.doubleToLongBits(newValue)) continue;
+                    previous = had ? type.boxDouble(doubleColumns[slot][row]) : null;
+                    value = type.boxDouble(newValue);
+                    doubleColumns[slot][row] = newValue;
+                } else {
+                    Object newValue = frame.objectColumns[slot][row];
+                    if (had && Objects.equals(objectColumns[slot][row], newValue)) continue;
+                    previous = had ? objectColumns[slot][row] : null;
+                    value = newValue;
+                    objectColumns[slot][row] = newValue;
+                }
+                present[row * WORDS_PER_ROW + word] |= presentBit;
+                changes.add(new PlayerStateUpdate(name, gameTick, property, previous, value));
+            }
+        }
+    }
+}
@@ -6,9 +6,8 @@ import com.charles445.simpledifficulty.api.thirst.IThirstCapability;
 import net.minecraft.entity.player.EntityPlayer;
 import net.minecraftforge.fml.common.Loader;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Objects;
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * The PlayerStatusTracker class is responsible for tracking and managing the current status of a player in the game.
@@ -27,9 +26,16 @@ import java.util.Objects;
  */
 public class PlayerStatusTracker {
     private final EntityPlayer player;
-    private final Map<PlayerProperty, Object> state = new HashMap<>();
+    private static final PlayerProperty[] PROPERTIES = PlayerProperty.values();
+    private final PlayerStateSnapshot state = new PlayerStateSnapshot();
+    private final PropertyPolicyFilter policyFilter = new PropertyPolicyFilter();
     private final IThirstCapability thirst;
     private final ITemperatureCapability temperature;
+    private final TelemetryEventRing eventRing;
+    private final int playerIndex;
+
+    private final AtomicInteger dirtyEvents = new AtomicInteger(PlayerPropertyCapture.ALL_EVENTS);
+    private int ticksSinceSlowPoll = Integer.MAX_VALUE - 1;
 
     /**
      * The PlayerStatusTracker constructor is responsible for initializing an instance of the PlayerStatusTracker.
@@ -47,12 +53,16 @@ public class PlayerStatusTracker {
             thirst = null;
             temperature = null;
         }
+        eventRing = TransactionController.getEventRing();
+        playerIndex = eventRing != null ? eventRing.registerPlayer(player.getName()) : -1;
         updateState(player);
     }
 
     /**
-     * This method updates the state of the player, capturing all the required fields depending on the ModConfig setup.
-     * It then compares the newly calculated values with the existing ones in the state map, if any changes are found,
+     * This method updates the state of the player, capturing the fields required by the ModConfig setup tier by tier:
+     * the hot properties on every update, the slow properties every {@link ModConfig.SamplingCategory#slowPollTicks}
+     * updates, and the event-driven properties only after one of their events was signalled by {@link #markDirty(int)}.
+     * It then compares the newly calculated values with the existing ones in the state snapshot, if any changes are found,
      * these are then logged as a transaction.
      * Note: This method will not function if the world is remotely controlled or if OBSRelay is not connected.
      *
@@ -60,139 +70,115 @@ public class PlayerStatusTracker {
      */
     public void updateState(EntityPlayer player) {
         if (!player.world.isRemote) return;
-        if (OBSRelay.connected) OBSRelay.setColorCorrectionFilterState(player);
+        long startedAt = System.nanoTime();
+        if (OBSRelay.connected) OBSEffectsEngine.update(player);
 
-        if (ModConfig.reportCollided) {
-            updateField(PlayerProperty.COLLIDED, player.collided);
-            updateField(PlayerProperty.COLLIDED_HORIZONTALLY, player.collidedHorizontally);
-            updateField(PlayerProperty.COLLIDED_VERTICALLY, player.collidedVertically);
-        }
-        if (ModConfig.reportDistanceWalked) {
-            updateField(PlayerProperty.DISTANCE_WALKED_MODIFIED, player.distanceWalkedModified);
-        }
-        if (ModConfig.reportMotion) {
-            updateField(PlayerProperty.MOTIONX, player.motionX);
-            updateField(PlayerProperty.MOTIONY, player.motionY);
-            updateField(PlayerProperty.MOTIONZ, player.motionZ);
-        }
-        if (ModConfig.reportPosition) {
-            updateField(PlayerProperty.POSX, player.posX);
-            updateField(PlayerProperty.POSY, player.posY);
-            updateField(PlayerProperty.POSZ, player.posZ);
-        }
-        if (ModConfig.reportChunkCoords) {
-            updateField(PlayerProperty.CHUNK_COORDS_X, player.chunkCoordX);
-            updateField(PlayerProperty.CHUNK_COORDS_Y, player.chunkCoordY);
-            updateField(PlayerProperty.CHUNK_COORDS_Z, player.chunkCoordZ);
-        }
-        if (ModConfig.reportFlight) {
-            updateField(PlayerProperty.FALL_DISTANCE, player.fallDistance);
-            updateField(PlayerProperty.ISAIRBORNE, player.isAirBorne);
-            updateField(PlayerProperty.ONGROUND, player.onGround);
-        }
-        if (ModConfig.reportDimension) {
-            updateField(PlayerProperty.DIMENSION, player.dimension);
-        }
-        if (ModConfig.reportDimensions) {
-            updateField(PlayerProperty.HEIGHT, player.height);
-            updateField(PlayerProperty.WIDTH, player.width);
-        }
-        if (ModConfig.reportWater) {
-            updateField(PlayerProperty.ISINWATER, player.isInWater());
-            updateField(PlayerProperty.ISOVERWATER, player.isOverWater());
-            updateField(PlayerProperty.ISPUSHEDBYWATER, player.isPushedByWater());
+        int events = dirtyEvents.getAndSet(0);
+        if (++ticksSinceSlowPoll >= ModConfig.sampling.slowPollTicks) {
+            ticksSinceSlowPoll = 0;
+            PlayerPropertyCapture.captureSlow(player, state, thirst, temperature);
+            // Most of the events are only fired on the server, so on a remote server they never reach the client.
+            // Polling the event-driven properties with the slow ones bounds how stale they can get there.
+            events = PlayerPropertyCapture.ALL_EVENTS;
         }
-        if (ModConfig.reportMove) {
-            updateField(PlayerProperty.MOVEFORWARD, player.moveForward);
-            updateField(PlayerProperty.MOVESTRAFING, player.moveStrafing);
-            updateField(PlayerProperty.MOVEVERTICAL, player.moveVertical);
-            updateField(PlayerProperty.ISSNEAKING, player.isSneaking());
-            updateField(PlayerProperty.ISSPRINTING, player.isSprinting());
-        }
-        updateField(PlayerProperty.ACTIVE_POTION_EFFECTS, player.getActivePotionEffects());
-        updateField(PlayerProperty.AIR, player.getAir());
-        updateField(PlayerProperty.FOODLEVEL, player.getFoodStats().getFoodLevel());
-        updateField(PlayerProperty.HEALTH, player.getHealth());
-        updateField(PlayerProperty.HELDITEMMAINHAND, player.getHeldItemMainhand());
-        updateField(PlayerProperty.HELDITEMOFFHAND, player.getHeldItemOffhand());
-        updateField(PlayerProperty.ISINVULNERABLE, player.getIsInvulnerable());
-        updateField(PlayerProperty.MAXFALLHEIGHT, player.getMaxFallHeight());
-        updateField(PlayerProperty.MAXHEALTH, player.getMaxHealth());
-        updateField(PlayerProperty.NAME, player.getName());
-        updateField(PlayerProperty.PERSISTENTID, player.getPersistentID());
-        updateField(PlayerProperty.SATURATIONLEVEL, player.getFoodStats().getSaturationLevel());
-        updateField(PlayerProperty.SCORE, player.getScore());
-        updateField(PlayerProperty.TICKSELYTRAFLYING, player.getTicksElytraFlying());
-        updateField(PlayerProperty.TOTALARMORVALUE, player.getTotalArmorValue());
-        updateField(PlayerProperty.UNIQUEID, player.getUniqueID());
-        updateField(PlayerProperty.YOFFSET, player.getYOffset());
-        updateField(PlayerProperty.ADDED_TO_CHUNK, player.addedToChunk);
-        updateField(PlayerProperty.ARROW_HIT_TIMER, player.arrowHitTimer);
-        updateField(PlayerProperty.ATTACKED_AT_YAW, player.attackedAtYaw);
-        updateField(PlayerProperty.BED_LOCATION, player.getBedLocation().toString());
-        updateField(PlayerProperty.CAPTURE_DROPS, player.captureDrops);
-        updateField(PlayerProperty.ENTITY_COLLISION_REDUCTION, player.entityCollisionReduction);
-        updateField(PlayerProperty.EXPERIENCE_LEVEL, player.experienceLevel);
-        updateField(PlayerProperty.EXPERIENCE_PROGRESS, player.experience);
-        updateField(PlayerProperty.FORCESPAWN, player.forceSpawn);
-        updateField(PlayerProperty.ISHURT, player.hurtTime > 0);
-        updateField(PlayerProperty.IGNOREFRUSTUMCHECK, player.ignoreFrustumCheck);
-        updateField(PlayerProperty.ISBEINGRIDDEN, player.isBeingRidden());
-        updateField(PlayerProperty.ISBURNING, player.isBurning());
-        updateField(PlayerProperty.ISDEAD, player.isDead);
-        updateField(PlayerProperty.ISENTITYALIVE, player.isEntityAlive());
-        updateField(PlayerProperty.ISENTITYINSIDEOPAQUEBLOCK, player.isEntityInsideOpaqueBlock());
-        updateField(PlayerProperty.ISGLOWING, player.isGlowing());
-        updateField(PlayerProperty.ISIMMUNETOEXPLOSIONS, player.isImmuneToExplosions());
-        updateField(PlayerProperty.ISINLAVA, player.isInLava());
-        updateField(PlayerProperty.ISINVISIBLE, player.isInvisible());
-        updateField(PlayerProperty.ISNONBOSS, player.isNonBoss());
-        updateField(PlayerProperty.ISOUTSIDEBORDER, player.isOutsideBorder());
-        updateField(PlayerProperty.ISRIDING, player.isRiding());
-        updateField(PlayerProperty.ISSILENT, player.isSilent());
-        updateField(PlayerProperty.ISWET, player.isWet());
-        updateField(PlayerProperty.MAXHURTRESISTANTTIME, player.maxHurtResistantTime);
-        updateField(PlayerProperty.MAXHURTTIME, player.maxHurtTime);
-        updateField(PlayerProperty.NOCLIP, player.noClip);
-        updateField(PlayerProperty.PREVENTENTITYSPAWNING, player.preventEntitySpawning);
-        updateField(PlayerProperty.RANDOMUNUSED1, player.randomUnused1);
-        updateField(PlayerProperty.RANDOMUNUSED2, player.randomUnused2);
-        updateField(PlayerProperty.RANDOMYAWVELOCITY, player.randomYawVelocity);
-        updateField(PlayerProperty.SERVERPOSX, player.serverPosX);
-        updateField(PlayerProperty.SERVERPOSY, player.serverPosY);
-        updateField(PlayerProperty.SERVERPOSZ, player.serverPosZ);
-        updateField(PlayerProperty.STEPHEIGHT, player.stepHeight);
-        updateField(PlayerProperty.TIMEUNTILPORTAL, player.timeUntilPortal);
-        updateField(PlayerProperty.UPDATEBLOCKED, player.updateBlocked);
-        updateField(PlayerProperty.VELOCITYCHANGED, player.velocityChanged);
-        updateField(PlayerProperty.DEATH_COUNT, TelemetryMod.readGlobalDeathCount());
-        if (temperature != null) {
-            updateField(PlayerProperty.TEMPERATURELEVEL, temperature.getTemperatureLevel());
+        PlayerPropertyCapture.captureHot(player, state);
+        if (events != 0) PlayerPropertyCapture.captureEvents(player, state, events);
+
+        TelemetryDatagramSink datagramSink = TransactionController.getDatagramSink();
+        if (datagramSink != null && datagramSink.isEnabled() && !datagramSink.isConsumingEvents()) {
+            datagramSink.send(player.getName(), state, WorldCalendar.getTotalWorldTicks());
         }
-        if (thirst != null){
-            updateField(PlayerProperty.THIRSTLEVEL, thirst.getThirstLevel());
-            updateField(PlayerProperty.ISTHIRSTY, thirst.isThirsty());
+        if (eventRing != null) publishEvents(eventRing, state, playerIndex, WorldCalendar.getTotalWorldTicks());
+        publishChanges(player);
+        TelemetryMetrics.UPDATE_STATE_TIME.record(System.nanoTime() - startedAt);
+    }
+
+    /**
+     * This method signals that an event changed some of the event-driven properties of the player, so they are
+     * captured on the next update. It may be called from any thread, e.g. from the integrated server.
+     *
+     * @param events The events that happened, a combination of {@link PlayerPropertyCapture#POTIONS},
+     *               {@link PlayerPropertyCapture#EQUIPMENT}, {@link PlayerPropertyCapture#EXPERIENCE},
+     *               {@link PlayerPropertyCapture#DIMENSION} and {@link PlayerPropertyCapture#DEATHS}.
+     */
+    public void markDirty(int events) {
+        dirtyEvents.getAndAccumulate(events, (current, added) -> current | added);
+    }
+
+    /**
+     * This method publishes every primitive property that changed during the current update to the event ring, without
+     * allocating. The changes are committed together, so consumers always see all changes of an update at once.
+     * Sampling policies do not apply to the event ring; its consumers see every change.
+     *
+     * @param eventRing   The event ring.
+     * @param state       The state snapshot holding the changes.
+     * @param playerIndex The index of the player in the event ring.
+     * @param gameTick    The current game tick.
+     */
+    static void publishEvents(TelemetryEventRing eventRing, PlayerStateSnapshot state, int playerIndex, long gameTick) {
+        BitSet dirty = state.getDirty();
+        for (int slot = dirty.nextSetBit(0); slot >= 0; slot = dirty.nextSetBit(slot + 1)) {
+            PlayerProperty property = PROPERTIES[slot];
+            PropertyType type = property.getType();
+            if (type.isLongSlot()) {
+                eventRing.stage(playerIndex, gameTick, slot, state.getLong(property));
+            } else if (type.isDoubleSlot()) {
+                eventRing.stage(playerIndex, gameTick, slot, Double.doubleToLongBits(state.getDouble(property)));
+            }
         }
+        eventRing.commit();
     }
 
     /**
-     * This method updates a specific field (property) in the state map and logs any changes that occur.
-     * If the new value is different from the current value, a PlayerStateUpdate transaction is created and added to the bundle.
+     * This method logs every property that changed during the current update as a PlayerStateUpdate transaction
+     * and adds it to the bundle. Values are only boxed here, for the properties that actually changed.
+     * Properties with a {@link PropertyPolicy} are published when their policy allows it, with the previously
+     * published value as the old value, including keyframes of properties that did not change at all.
      *
-     * @param property The property of the player to update.
-     * @param newValue The new value to be set for the property.
+     * @param player The EntityPlayer whose state was updated.
      */
-    private void updateField(PlayerProperty property, Object newValue) {
-        Object current = state.get(property);
-        if (!Objects.equals(current, newValue)) {
-            PlayerStateUpdate playerStateUpdate = new PlayerStateUpdate(player.getName(), WorldCalendar.getTotalWorldTicks(), property, current, newValue);
+    private void publishChanges(EntityPlayer player) {
+        publishChanges(state, policyFilter, player.getName(), WorldCalendar.getTotalWorldTicks());
+    }
+
+    /**
+     * This method publishes the changes of a state snapshot as PlayerStateUpdate transactions. It does not need a
+     * player entity, so the publishing path can also be driven by synthetic snapshots, e.g. in benchmarks.
+     *
+     * @param state        The state snapshot holding the changes.
+     * @param policyFilter The policy filter of the player.
+     * @param playerName   The name of the player.
+     * @param gameTick     The current game tick.
+     */
+    static void publishChanges(PlayerStateSnapshot state, PropertyPolicyFilter policyFilter, String playerName, long gameTick) {
+        BitSet dirty = state.getDirty();
+
+        for (int slot = dirty.nextSetBit(0); slot >= 0; slot = dirty.nextSetBit(slot + 1)) {
+            if (PropertyPolicy.of(slot) != null) {
+                policyFilter.markChanged(slot);
+                continue;
+            }
+            PlayerProperty property = PROPERTIES[slot];
+            PlayerStateUpdate playerStateUpdate = new PlayerStateUpdate(playerName, gameTick, property, state.getPrevious(property), state.get(property));
             TransactionController.addTransactionToBundle(playerStateUpdate);
-            state.put(property, newValue);
+        }
+        state.clearDirty();
+
+        for (int slot = 0; slot < PROPERTIES.length; slot++) {
+            PropertyPolicy policy = PropertyPolicy.of(slot);
+            if (policy == null) continue;
+            PlayerProperty property = PROPERTIES[slot];
+            if (!policyFilter.shouldPublish(property, policy, state, gameTick)) continue;
+
+            Object value = state.get(property);
+            PlayerStateUpdate playerStateUpdate = new PlayerStateUpdate(playerName, gameTick, property, policyFilter.getPublished(property), value);
+            TransactionController.addTransactionToBundle(playerStateUpdate);
+            policyFilter.markPublished(property, value, state, gameTick);
         }
     }
 
     /**
-     * This method retrieves the current value of a specified field (property) from the state map.
+     * This method retrieves the current value of a specified field (property) from the state snapshot.
      *
      * @param property The property of the player to retrieve.
      * @return The current value of the specified property, or null if the property is not currently set.
@@ -202,7 +188,17 @@ public class PlayerStatusTracker {
     }
 
     /**
-     * This method retrieves the current value of a specified field (property) from the state map.
+     * This method gives read access to the primitive state snapshot of the player, for consumers that want to read
+     * values without boxing them.
+     *
+     * @return The state snapshot of the player.
+     */
+    public PlayerStateSnapshot getSnapshot() {
+        return state;
+    }
+
+    /**
+     * This method retrieves the current value of a specified field (property) from the state snapshot.
      * If the property is not currently set, it returns the provided default value.
      *
      * @param property     The property of the player to retrieve.
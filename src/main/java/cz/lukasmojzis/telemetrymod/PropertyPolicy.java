@@ -0,0 +1,138 @@
+package cz.lukasmojzis.telemetrymod;
+
+/**
+ * The PropertyPolicy class describes how often changes of a single {@link PlayerProperty} are published.
+ * <p>
+ * A policy limits the property to at most one transaction every {@code every} ticks, ignores numeric changes that
+ * stay within an absolute or relative deadband around the last published value, and publishes a keyframe of the
+ * current value at least every {@code maxSilence} ticks, so the downstream view never drifts further than the
+ * deadband and never stays stale for longer than the keyframe interval.
+ * <p>
+ * Policies are configured in {@link ModConfig#sampling}, one property per line, e.g.
+ * {@code motionX every=2 deadband=0.005 relative=0.01 maxSilence=20}. Omitted settings keep their defaults,
+ * which publish every change.
+ */
+public class PropertyPolicy {
+
+    private static final PlayerProperty[] PROPERTIES = PlayerProperty.values();
+
+    /**
+     * The policy of every property, indexed by ordinal, or null for properties whose changes are all published.
+     */
+    private static volatile PropertyPolicy[] policies = new PropertyPolicy[PROPERTIES.length];
+
+    final int every;
+    final double deadband;
+    final double relative;
+    final int maxSilence;
+
+    /**
+     * Constructs a policy.
+     *
+     * @param every      The minimum number of ticks between two published changes.
+     * @param deadband   The absolute change of a numeric value that is not published.
+     * @param relative   The change of a numeric value, relative to the published value, that is not published.
+     * @param maxSilence The maximum number of ticks without a published value before a keyframe is published,
+     *                   or 0 to publish no keyframes.
+     */
+    public PropertyPolicy(int every, double deadband, double relative, int maxSilence) {
+        this.every = every;
+        this.deadband = deadband;
+        this.relative = relative;
+        this.maxSilence = maxSilence;
+    }
+
+    /**
+     * Returns the policy of a property.
+     *
+     * @param slot The ordinal of the property.
+     * @return The policy of the property, or null if all of its changes are published.
+     */
+    static PropertyPolicy of(int slot) {
+        return policies[slot];
+    }
+
+    /**
+     * Returns whether a numeric value moved outside of the deadband around the published value.
+     *
+     * @param published The last published value.
+     * @param current   The current value.
+     * @return True if the change has to be published.
+     */
+    boolean exceedsDeadband(double published, double current) {
+        double change = Math.abs(current - published);
+        return change > deadband && change > relative * Math.abs(published);
+    }
+
+    /**
+     * Rebuilds the policies from the configuration. Lines that cannot be parsed are logged and skipped.
+     */
+    static void reload() {
+        PropertyPolicy[] loaded = new PropertyPolicy[PROPERTIES.length];
+        if (ModConfig.sampling.enabled) {
+            for (String line : ModConfig.sampling.policies) {
+                try {
+                    parse(line.trim(), loaded);
+                } catch (IllegalArgumentException e) {
+                    TelemetryMod.logger.warn("Ignoring sampling policy \"{}\": {}", line, e.getMessage());
+                }
+            }
+        }
+        policies = loaded;
+    }
+
+    /**
+     * Parses a single configuration line into the policy of its property.
+     *
+     * @param line     The configuration line.
+     * @param policies The policies to store the parsed policy in.
+     * @throws IllegalArgumentException If the line cannot be parsed.
+     */
+    private static void parse(String line, PropertyPolicy[] policies) {
+        if (line.isEmpty()) return;
+        String[] tokens = line.split("\\s+");
+        PlayerProperty property = findProperty(tokens[0]);
+
+        int every = 1;
+        double deadband = 0;
+        double relative = 0;
+        int maxSilence = 0;
+        for (int i = 1; i < tokens.length; i++) {
+            int separator = tokens[i].indexOf('=');
+            if (separator < 0) throw new IllegalArgumentException(String.format("Expected key=value, got %s", tokens[i]));
+            String key = tokens[i].substring(0, separator);
+            String value = tokens[i].substring(separator + 1);
+            switch (key) {
+                case "every":
+                    every = Math.max(1, Integer.parseInt(value));
+                    break;
+                case "deadband":
+                    deadband = Math.max(0, Double.parseDouble(value));
+                    break;
+                case "relative":
+                    relative = Math.max(0, Double.parseDouble(value));
+                    break;
+                case "maxSilence":
+                    maxSilence = Math.max(0, Integer.parseInt(value));
+                    break;
+                default:
+                    throw new IllegalArgumentException(String.format("Unknown setting %s", key));
+            }
+        }
+        policies[property.ordinal()] = new PropertyPolicy(every, deadband, relative, maxSilence);
+    }
+
+    /**
+     * Finds a property by its name, as sent in the telemetry, or by the name of its enum constant.
+     *
+     * @param name The name of the property.
+     * @return The property.
+     * @throws IllegalArgumentException If there is no such property.
+     */
+    private static PlayerProperty findProperty(String name) {
+        for (PlayerProperty property : PROPERTIES) {
+            if (property.toString().equalsIgnoreCase(name) || property.name().equalsIgnoreCase(name)) return property;
+        }
+        throw new IllegalArgumentException(String.format("Unknown property %s", name));
+    }
+}
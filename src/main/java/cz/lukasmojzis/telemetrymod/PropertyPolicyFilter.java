@@ -0,0 +1,103 @@
+package cz.lukasmojzis.telemetrymod;
+
+import java.util.BitSet;
+import java.util.Objects;
+
+/**
+ * The PropertyPolicyFilter class applies the {@link PropertyPolicy} of every property to the changes of a single
+ * player, deciding which changes are published as transactions.
+ * <p>
+ * For every property with a policy it remembers the value that was last published and the tick it was published
+ * at. A change that is held back stays pending, and the latest value is published as soon as the policy allows it.
+ */
+public class PropertyPolicyFilter {
+
+    private static final int PROPERTY_COUNT = PlayerProperty.values().length;
+
+    private final long[] publishedLongs = new long[PROPERTY_COUNT];
+    private final double[] publishedDoubles = new double[PROPERTY_COUNT];
+    private final Object[] publishedValues = new Object[PROPERTY_COUNT];
+    private final long[] publishedTicks = new long[PROPERTY_COUNT];
+
+    /**
+     * The properties that have a published value.
+     */
+    private final BitSet published = new BitSet(PROPERTY_COUNT);
+
+    /**
+     * The properties whose current value may differ from their published value.
+     */
+    private final BitSet pending = new BitSet(PROPERTY_COUNT);
+
+    /**
+     * Marks a changed property as pending.
+     *
+     * @param slot The ordinal of the changed property.
+     */
+    void markChanged(int slot) {
+        pending.set(slot);
+    }
+
+    /**
+     * Decides whether the current value of a property with a policy is published in this tick.
+     *
+     * @param property The property.
+     * @param policy   The policy of the property.
+     * @param state    The state snapshot holding the current value.
+     * @param gameTick The current game tick.
+     * @return True if the current value has to be published.
+     */
+    boolean shouldPublish(PlayerProperty property, PropertyPolicy policy, PlayerStateSnapshot state, long gameTick) {
+        int slot = property.ordinal();
+        if (!state.has(property)) return false;
+        if (!published.get(slot)) return true;
+
+        long silence = gameTick - publishedTicks[slot];
+        if (silence < 0 || policy.maxSilence > 0 && silence >= policy.maxSilence) return true;
+        if (!pending.get(slot) || silence < policy.every) return false;
+
+        PropertyType type = property.getType();
+        boolean equal;
+        boolean changed;
+        if (type.isLongSlot()) {
+            equal = publishedLongs[slot] == state.getLong(property);
+            changed = type == PropertyType.BOOLEAN ? !equal : policy.exceedsDeadband(publishedLongs[slot], state.getLong(property));
+        } else if (type.isDoubleSlot()) {
+            equal = Double.doubleToLongBits(publishedDoubles[slot]) == Double.doubleToLongBits(state.getDouble(property));
+            changed = policy.exceedsDeadband(publishedDoubles[slot], state.getDouble(property));
+        } else {
+            equal = Objects.equals(publishedValues[slot], state.get(property));
+            changed = !equal;
+        }
+        if (equal) pending.clear(slot);
+        return changed;
+    }
+
+    /**
+     * Returns the value of a property that was published last.
+     *
+     * @param property The property.
+     * @return The last published value, or null if no value was published yet.
+     */
+    Object getPublished(PlayerProperty property) {
+        return publishedValues[property.ordinal()];
+    }
+
+    /**
+     * Remembers the value of a property that is being published.
+     *
+     * @param property The property.
+     * @param value    The boxed value being published.
+     * @param state    The state snapshot holding the value.
+     * @param gameTick The current game tick.
+     */
+    void markPublished(PlayerProperty property, Object value, PlayerStateSnapshot state, long gameTick) {
+        int slot = property.ordinal();
+        publishedLongs[slot] = state.getLong(property);
+        publishedDoubles[slot] = state.getDouble(property);
+        publishedValues[slot] = value;
+        publishedTicks[slot] = gameTick;
+        published.set(slot);
+        pending.clear(slot);
+    }
+}
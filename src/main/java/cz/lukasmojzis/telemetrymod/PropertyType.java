@@ -0,0 +1,69 @@
+package cz.lukasmojzis.telemetrymod;
+
+/**
+ * The PropertyType enum describes the type of the values a {@link PlayerProperty} holds.
+ * Primitive types are kept unboxed in a long or double slot while they are tracked,
+ * and are only boxed into their wrapper type when a value has to leave the tracker.
+ */
+public enum PropertyType {
+    BOOLEAN,
+    INT,
+    LONG,
+    FLOAT,
+    DOUBLE,
+    OBJECT;
+
+    /**
+     * Returns whether values of this type are stored in a long slot.
+     *
+     * @return True for boolean, int and long values.
+     */
+    public boolean isLongSlot() {
+        return this == BOOLEAN || this == INT || this == LONG;
+    }
+
+    /**
+     * Returns whether values of this type are stored in a double slot.
+     *
+     * @return True for float and double values.
+     */
+    public boolean isDoubleSlot() {
+        return this == FLOAT || this == DOUBLE;
+    }
+
+    /**
+     * Boxes the content of a long slot into the wrapper type of this property type.
+     *
+     * @param value The content of the long slot.
+     * @return The boxed value, as a Boolean, Integer or Long.
+     */
+    public Object boxLong(long value) {
+        switch (this) {
+            case BOOLEAN:
+                return value != 0;
+            case INT:
+                return (int) value;
+            case LONG:
+                return value;
+            default:
+                throw new IllegalStateException(String.format("%s values are not stored in a long slot", this));
+        }
+    }
+
+    /**
+     * Boxes the content of a double slot into the wrapper type of this property type.
+     *
+     * @param value The content of the double slot.
+     * @return The boxed value, as a Float or Double.
+     */
+    public Object boxDouble(double value) {
+        switch (this) {
+            case FLOAT:
+                return (float) value;
+            case DOUBLE:
+                return value;
+            default:
+                throw new IllegalStateException(String.format("%s values are not stored in a double slot", this));
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package cz.lukasmojzis.telemetrymod;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The ReconnectBackoff class works out how long to wait before the next reconnect attempt. The delay doubles with
+ * every failed attempt, from the base delay up to the maximum delay, and is jittered between half and all of it, so
+ * clients that lost the connection at the same time do not all reconnect at the same time.
+ */
+public class ReconnectBackoff {
+
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+    private int attempts = 0;
+
+    /**
+     * Constructs a backoff.
+     *
+     * @param baseDelayMillis The delay before the first attempt, in milliseconds.
+     * @param maxDelayMillis  The maximum delay, in milliseconds.
+     */
+    public ReconnectBackoff(long baseDelayMillis, long maxDelayMillis) {
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+    }
+
+    /**
+     * Returns the delay before the next attempt and counts the attempt.
+     *
+     * @return The delay in milliseconds.
+     */
+    public synchronized long nextDelayMillis() {
+        long delay = baseDelayMillis << Math.min(attempts, 20);
+        if (delay <= 0 || delay > maxDelayMillis) delay = maxDelayMillis;
+        attempts++;
+        long half = delay / 2;
+        return half + ThreadLocalRandom.current().nextLong(delay - half + 1);
+    }
+
+    /**
+     * Starts over from the base delay, once a connection was established.
+     */
+    public synchronized void reset() {
+        attempts = 0;
+    }
+}
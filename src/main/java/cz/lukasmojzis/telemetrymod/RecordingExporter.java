@@ -0,0 +1,116 @@
+package cz.lukasmojzis.telemetrymod;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The RecordingExporter class exports the changes stored in a recording as CSV or JSON Lines, one change per line
+ * with its tick, player, property and new value, for analysis outside the game.
+ * <p>
+ * It can be run from the command line with the mod on the classpath:
+ * {@code RecordingExporter <recording> <csv|jsonl> [fromTick] [toTick]}, which writes the export to the standard
+ * output.
+ */
+public class RecordingExporter {
+
+    /**
+     * Writes the changes within a range of ticks as CSV with a header line. Values are quoted when they contain a
+     * separator, a quote or a line break.
+     *
+     * @param reader   The recording.
+     * @param fromTick The first tick, inclusive.
+     * @param toTick   The last tick, inclusive.
+     * @param out      The writer to write to.
+     * @throws IOException If the export cannot be written.
+     */
+    public static void exportCsv(RecordingReader reader, long fromTick, long toTick, Writer out) throws IOException {
+        out.write("tick,player,property,value\n");
+        export(reader, fromTick, toTick, out, update -> {
+            StringBuilder line = new StringBuilder();
+            line.append(update.getGameTick()).append(',');
+            appendCsv(line, update.getPlayer()).append(',');
+            appendCsv(line, update.getProperty().toString()).append(',');
+            if (update.getNewValue() != null) appendCsv(line, String.valueOf(update.getNewValue()));
+            return line.append('\n');
+        });
+    }
+
+    /**
+     * Writes the changes within a range of ticks as JSON Lines, one object per change, with the values encoded the
+     * same way as in the transactions sent to the WebSocket server.
+     *
+     * @param reader   The recording.
+     * @param fromTick The first tick, inclusive.
+     * @param toTick   The last tick, inclusive.
+     * @param out      The writer to write to.
+     * @throws IOException If the export cannot be written.
+     */
+    public static void exportJsonLines(RecordingReader reader, long fromTick, long toTick, Writer out) throws IOException {
+        export(reader, fromTick, toTick, out, update -> {
+            StringBuilder line = new StringBuilder();
+            line.append("{\"tick\":").append(update.getGameTick()).append(",\"player\":");
+            TransactionJsonEncoder.appendString(line, update.getPlayer());
+            line.append(",\"property\":");
+            TransactionJsonEncoder.appendString(line, update.getProperty().toString());
+            line.append(",\"value\":");
+            if (update.getNewValue() == null) line.append("null");
+            else TransactionJsonEncoder.appendValue(line, update.getProperty(), update.getNewValue());
+            return line.append("}\n");
+        });
+    }
+
+    /**
+     * Exports a recording from the command line.
+     *
+     * @param args The recording, the format and optionally the first and the last tick.
+     * @throws IOException If the recording cannot be read or the export cannot be written.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || !(args[1].equals("csv") || args[1].equals("jsonl"))) {
+            System.err.println("Usage: RecordingExporter <recording> <csv|jsonl> [fromTick] [toTick]");
+            System.exit(2);
+            return;
+        }
+        long fromTick = args.length > 2 ? Long.parseLong(args[2]) : Long.MIN_VALUE;
+        long toTick = args.length > 3 ? Long.parseLong(args[3]) : Long.MAX_VALUE;
+        try (RecordingReader reader = new RecordingReader(new File(args[0]));
+             Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8))) {
+            if (args[1].equals("csv")) exportCsv(reader, fromTick, toTick, out);
+            else exportJsonLines(reader, fromTick, toTick, out);
+        }
+    }
+
+    private static void export(RecordingReader reader, long fromTick, long toTick, Writer out, LineFormat format) throws IOException {
+        try {
+            reader.forEachUpdate(fromTick, toTick, update -> {
+                try {
+                    out.append(format.format(update));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        out.flush();
+    }
+
+    private static StringBuilder appendCsv(StringBuilder out, String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return out.append(value);
+        }
+        return out.append('"').append(value.replace("\"", "\"\"")).append('"');
+    }
+
+    /**
+     * Formats a change as a line of the export.
+     */
+    private interface LineFormat {
+        CharSequence format(PlayerStateUpdate update);
+    }
+}
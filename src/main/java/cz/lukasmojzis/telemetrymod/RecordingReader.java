@@ -0,0 +1,403 @@
+package cz.lukasmojzis.telemetrymod;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * The RecordingReader class reads the recordings written by the {@link RecordingWriter}, with random access by game
+ * tick.
+ * <p>
+ * The recording is memory-mapped, and only the records needed for a lookup are decoded: the state at a tick is
+ * rebuilt from the closest keyframe before it and the blocks between the keyframe and the tick, which are found
+ * through the tick index of the recording. Recordings that were not closed have no index; their records are indexed
+ * by hopping from record header to record header when the reader is opened, and a record cut short at the end of the
+ * file is ignored. The reader assumes the ticks of a recording only ever increase.
+ * <p>
+ * Properties are matched to {@link PlayerProperty} by name, so recordings stay readable when properties are added;
+ * properties that no longer exist are skipped.
+ * <p>
+ * A reader is not thread-safe.
+ */
+public class RecordingReader implements Closeable {
+
+    private static final Map<String, PlayerProperty> PROPERTIES_BY_NAME = new HashMap<>();
+
+    static {
+        for (PlayerProperty property : PlayerProperty.values()) {
+            PROPERTIES_BY_NAME.put(property.toString(), property);
+        }
+    }
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final UUID sessionId;
+    private final long startedAt;
+
+    // The properties and their types by the ordinals used in the recording.
+    private final PlayerProperty[] properties;
+    private final PropertyType[] types;
+
+    // The index of the blocks and keyframes, in file order.
+    private byte[] recordTypes = new byte[64];
+    private long[] recordFirstTicks = new long[64];
+    private long[] recordLastTicks = new long[64];
+    private int[] recordOffsets = new int[64];
+    private int recordCount = 0;
+
+    /**
+     * Opens a recording.
+     *
+     * @param file The recording file.
+     * @throws IOException If the file cannot be read or is not a recording.
+     */
+    public RecordingReader(File file) throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) throw new IOException(String.format("Recording %s is too large to be mapped", file));
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+            if (buffer.remaining() < Integer.BYTES + 1 || buffer.getInt() != RecordingWriter.MAGIC) {
+                throw new IOException(String.format("%s is not a telemetry recording", file));
+            }
+            byte version = buffer.get();
+            if (version != RecordingWriter.VERSION) {
+                throw new IOException(String.format("Recording %s has the unsupported version %d", file, version));
+            }
+            sessionId = new UUID(buffer.getLong(), buffer.getLong());
+            startedAt = buffer.getLong();
+            int propertyCount = (int) readVarint(buffer);
+            properties = new PlayerProperty[propertyCount];
+            types = new PropertyType[propertyCount];
+            for (int ordinal = 0; ordinal < propertyCount; ordinal++) {
+                types[ordinal] = PropertyType.values()[buffer.get()];
+                String name = readString(buffer);
+                properties[ordinal] = PROPERTIES_BY_NAME.get(name);
+            }
+
+            if (!readIndex()) scanRecords(buffer.position());
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e instanceof IOException ? (IOException) e : new IOException(String.format("Recording %s is corrupt", file), e);
+        }
+    }
+
+    /**
+     * Returns the session UUID of the transaction IDs of the recorded session.
+     *
+     * @return The session UUID.
+     */
+    public UUID getSessionId() {
+        return sessionId;
+    }
+
+    /**
+     * Returns the time the recording was started at.
+     *
+     * @return The start time in milliseconds since the epoch.
+     */
+    public long getStartedAt() {
+        return startedAt;
+    }
+
+    /**
+     * Returns the first tick of the recording.
+     *
+     * @return The first recorded tick, or -1 if the recording is empty.
+     */
+    public long getFirstTick() {
+        return recordCount > 0 ? recordFirstTicks[0] : -1;
+    }
+
+    /**
+     * Returns the last tick of the recording.
+     *
+     * @return The last recorded tick, or -1 if the recording is empty.
+     */
+    public long getLastTick() {
+        long lastTick = -1;
+        for (int i = 0; i < recordCount; i++) {
+            lastTick = Math.max(lastTick, recordLastTicks[i]);
+        }
+        return lastTick;
+    }
+
+    /**
+     * Reconstructs the state of all players at a tick: the latest value of every property recorded at or before the
+     * tick.
+     *
+     * @param tick The game tick.
+     * @return The values of the properties by player name, then by property.
+     */
+    public Map<String, Map<PlayerProperty, Object>> stateAt(long tick) {
+        Map<String, Object[]> state = new LinkedHashMap<>();
+        int start = 0;
+        for (int i = recordCount - 1; i >= 0; i--) {
+            if (recordTypes[i] == RecordingWriter.KEYFRAME && recordFirstTicks[i] <= tick) {
+                readKeyframe(recordOffsets[i], state);
+                start = i + 1;
+                break;
+            }
+        }
+        for (int i = start; i < recordCount && recordFirstTicks[i] <= tick; i++) {
+            if (recordTypes[i] != RecordingWriter.BLOCK) continue;
+            readBlock(recordOffsets[i], tick, null, state);
+        }
+
+        Map<String, Map<PlayerProperty, Object>> result = new LinkedHashMap<>();
+        for (Map.Entry<String, Object[]> player : state.entrySet()) {
+            Map<PlayerProperty, Object> values = new LinkedHashMap<>();
+            Object[] playerState = player.getValue();
+            for (int ordinal = 0; ordinal < playerState.length; ordinal++) {
+                if (playerState[ordinal] != null && properties[ordinal] != null) values.put(properties[ordinal], playerState[ordinal]);
+            }
+            result.put(player.getKey(), values);
+        }
+        return result;
+    }
+
+    /**
+     * Passes every change recorded within a range of ticks to the consumer, in tick order, as a PlayerStateUpdate
+     * with the value the property had before the change.
+     *
+     * @param fromTick The first tick, inclusive.
+     * @param toTick   The last tick, inclusive.
+     * @param consumer The consumer of the changes.
+     */
+    public void forEachUpdate(long fromTick, long toTick, Consumer<PlayerStateUpdate> consumer) {
+        Map<String, Object[]> state = new HashMap<>();
+        int start = 0;
+        for (int i = recordCount - 1; i >= 0; i--) {
+            if (recordTypes[i] == RecordingWriter.KEYFRAME && recordFirstTicks[i] < fromTick) {
+                readKeyframe(recordOffsets[i], state);
+                start = i + 1;
+                break;
+            }
+        }
+
+        List<Run> runs = new ArrayList<>();
+        for (int i = start; i < recordCount && recordFirstTicks[i] <= toTick; i++) {
+            if (recordTypes[i] != RecordingWriter.BLOCK) continue;
+            if (recordLastTicks[i] < fromTick) {
+                readBlock(recordOffsets[i], toTick, null, state);
+                continue;
+            }
+            runs.clear();
+            readBlock(recordOffsets[i], toTick, runs, null);
+            runs.sort((a, b) -> Long.compare(a.tick, b.tick));
+            for (Run run : runs) {
+                Object[] playerState = state.computeIfAbsent(run.player, name -> new Object[properties.length]);
+                Object previous = playerState[run.ordinal];
+                playerState[run.ordinal] = run.value;
+                if (run.tick >= fromTick && properties[run.ordinal] != null) {
+                    consumer.accept(new PlayerStateUpdate(run.player, run.tick, properties[run.ordinal], previous, run.value));
+                }
+            }
+        }
+    }
+
+    /**
+     * Closes the recording.
+     *
+     * @throws IOException If the file cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Reads the index at the end of a closed recording.
+     *
+     * @return True if the recording has an index.
+     */
+    private boolean readIndex() {
+        int size = buffer.limit();
+        if (size < RecordingWriter.TRAILER_BYTES || buffer.getInt(size - Integer.BYTES) != RecordingWriter.MAGIC) return false;
+        long indexOffset = buffer.getLong(size - RecordingWriter.TRAILER_BYTES);
+        if (indexOffset < 0 || indexOffset >= size || buffer.get((int) indexOffset) != RecordingWriter.INDEX) return false;
+
+        ByteBuffer index = buffer.duplicate();
+        index.position((int) indexOffset + 1);
+        int count = (int) readVarint(index);
+        long tick = 0;
+        long offset = 0;
+        for (int i = 0; i < count; i++) {
+            byte type = index.get();
+            tick += readZigzag(index);
+            long lastTick = tick + readVarint(index);
+            offset += readVarint(index);
+            addRecord(type, tick, lastTick, (int) offset);
+        }
+        return true;
+    }
+
+    /**
+     * Indexes the records of a recording without an index by hopping from record header to record header.
+     *
+     * @param offset The offset of the first record.
+     */
+    private void scanRecords(int offset) {
+        int size = buffer.limit();
+        while (offset + RecordingWriter.BLOCK_HEADER_BYTES <= size) {
+            byte type = buffer.get(offset);
+            if (type != RecordingWriter.BLOCK && type != RecordingWriter.KEYFRAME) break;
+            int length = buffer.getInt(offset + 1);
+            if (length < 0 || offset + RecordingWriter.BLOCK_HEADER_BYTES + (long) length > size) break;
+            addRecord(type, buffer.getLong(offset + 1 + Integer.BYTES), buffer.getLong(offset + 1 + Integer.BYTES + Long.BYTES), offset);
+            offset += RecordingWriter.BLOCK_HEADER_BYTES + length;
+        }
+    }
+
+    private void addRecord(byte type, long firstTick, long lastTick, int offset) {
+        if (recordCount == recordOffsets.length) {
+            recordTypes = Arrays.copyOf(recordTypes, recordCount * 2);
+            recordFirstTicks = Arrays.copyOf(recordFirstTicks, recordCount * 2);
+            recordLastTicks = Arrays.copyOf(recordLastTicks, recordCount * 2);
+            recordOffsets = Arrays.copyOf(recordOffsets, recordCount * 2);
+        }
+        recordTypes[recordCount] = type;
+        recordFirstTicks[recordCount] = firstTick;
+        recordLastTicks[recordCount] = lastTick;
+        recordOffsets[recordCount] = offset;
+        recordCount++;
+    }
+
+    /**
+     * Reads a keyframe into the state, replacing the state of the players it holds.
+     */
+    private void readKeyframe(int offset, Map<String, Object[]> state) {
+        ByteBuffer in = payloadOf(offset);
+        int playerCount = (int) readVarint(in);
+        for (int p = 0; p < playerCount; p++) {
+            Object[] playerState = new Object[properties.length];
+            state.put(readString(in), playerState);
+            int valueCount = (int) readVarint(in);
+            for (int v = 0; v < valueCount; v++) {
+                int ordinal = (int) readVarint(in);
+                playerState[ordinal] = readValue(in, types[ordinal], 0, 0);
+            }
+        }
+    }
+
+    /**
+     * Reads the runs of a block up to a tick, either applying them to the state or collecting them.
+     *
+     * @param offset The offset of the block.
+     * @param toTick The last tick to read, inclusive.
+     * @param runs   The list to collect the runs in, or null to apply them to the state.
+     * @param state  The state to apply the runs to, if they are not collected.
+     */
+    private void readBlock(int offset, long toTick, List<Run> runs, Map<String, Object[]> state) {
+        long firstTick = buffer.getLong(offset + 1 + Integer.BYTES);
+        ByteBuffer in = payloadOf(offset);
+        int playerCount = (int) readVarint(in);
+        for (int p = 0; p < playerCount; p++) {
+            String player = readString(in);
+            Object[] playerState = state != null ? state.computeIfAbsent(player, name -> new Object[properties.length]) : null;
+            int columnCount = (int) readVarint(in);
+            for (int c = 0; c < columnCount; c++) {
+                int ordinal = (int) readVarint(in);
+                int runCount = (int) readVarint(in);
+                int dataLength = (int) readVarint(in);
+                int end = in.position() + dataLength;
+                PropertyType type = types[ordinal];
+                long tick = firstTick;
+                long previousLong = 0;
+                long previousBits = 0;
+                for (int r = 0; r < runCount; r++) {
+                    tick += readVarint(in);
+                    if (tick > toTick) break;
+                    Object value = readValue(in, type, previousLong, previousBits);
+                    if (type.isLongSlot()) previousLong = type == PropertyType.BOOLEAN ? ((Boolean) value ? 1 : 0) : ((Number) value).longValue();
+                    else if (type.isDoubleSlot()) previousBits = RecordingWriter.floatingBits(type, value);
+                    if (runs != null) runs.add(new Run(tick, player, ordinal, value));
+                    else playerState[ordinal] = value;
+                }
+                in.position(end);
+            }
+        }
+    }
+
+    /**
+     * Returns a buffer positioned at the payload of a record.
+     */
+    private ByteBuffer payloadOf(int offset) {
+        ByteBuffer payload = buffer.duplicate();
+        payload.position(offset + RecordingWriter.BLOCK_HEADER_BYTES);
+        return payload;
+    }
+
+    /**
+     * Reads a value relative to the previous value of its column, boxed into the wrapper type of the property type.
+     */
+    private static Object readValue(ByteBuffer in, PropertyType type, long previousLong, long previousBits) {
+        switch (type) {
+            case BOOLEAN:
+            case INT:
+            case LONG:
+                return type.boxLong(previousLong + readZigzag(in));
+            case FLOAT:
+            case DOUBLE:
+                long bits = RecordingWriter.reverseBits(type, readVarint(in)) ^ previousBits;
+                return type == PropertyType.FLOAT ? Float.intBitsToFloat((int) bits) : type.boxDouble(Double.longBitsToDouble(bits));
+            default:
+                int length = (int) readVarint(in);
+                if (length == 0) return null;
+                byte[] bytes = new byte[length - 1];
+                in.get(bytes);
+                return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[(int) readVarint(in)];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static long readZigzag(ByteBuffer in) {
+        long value = readVarint(in);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static long readVarint(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+    }
+
+    /**
+     * A single run of a column, i.e. a change of a property at a tick.
+     */
+    private static class Run {
+        final long tick;
+        final String player;
+        final int ordinal;
+        final Object value;
+
+        Run(long tick, String player, int ordinal, Object value) {
+            this.tick = tick;
+            this.player = player;
+            this.ordinal = ordinal;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package cz.lukasmojzis.telemetrymod;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The RecordingReplay class looks up the state of a player at a tick of the latest recording, for the jump-to-tick
+ * debug mode of the overlay.
+ * <p>
+ * The overlay asks for the lines to render every frame, so the lookup is done once per requested tick on the
+ * {@link TelemetryScheduler} and its result is cached; until it is done, the overlay shows the previous result.
+ */
+public class RecordingReplay {
+
+    private static final long RETRY_INTERVAL_MS = 5000;
+
+    // The lookup the cached lines are for.
+    private static volatile File file;
+    private static volatile String player;
+    private static volatile long tick = -1;
+    private static volatile long lookedUpAt;
+    private static volatile boolean lookingUp = false;
+    private static volatile List<String> lines = Collections.emptyList();
+
+    /**
+     * Returns the lines describing the state of a player at a tick of the latest recording. Starts a lookup in the
+     * background when the player, the tick or the latest recording changed. Called from the game thread.
+     *
+     * @param playerName The name of the player.
+     * @param replayTick The game tick.
+     * @return The lines to render.
+     */
+    static List<String> describe(String playerName, long replayTick) {
+        File latest = TransactionController.getLastRecording();
+        if (latest == null) return Collections.singletonList("Replay: nothing recorded yet");
+        boolean stale = !latest.equals(file) || !playerName.equals(player) || replayTick != tick
+                || System.currentTimeMillis() - lookedUpAt >= RETRY_INTERVAL_MS;
+        if (stale && !lookingUp) {
+            lookingUp = true;
+            TelemetryScheduler.execute(() -> lookUp(latest, playerName, replayTick));
+        }
+        return lines;
+    }
+
+    /**
+     * Reads the state of a player at a tick from a recording into the cached lines. Runs on the scheduler thread.
+     *
+     * @param recording  The recording.
+     * @param playerName The name of the player.
+     * @param replayTick The game tick.
+     */
+    private static void lookUp(File recording, String playerName, long replayTick) {
+        List<String> result = new ArrayList<>();
+        try (RecordingReader reader = new RecordingReader(recording)) {
+            result.add(String.format("Replay: tick %d of %d-%d", replayTick, reader.getFirstTick(), reader.getLastTick()));
+            Map<PlayerProperty, Object> state = reader.stateAt(replayTick).get(playerName);
+            if (state == null) {
+                result.add("No state recorded");
+            } else {
+                for (Map.Entry<PlayerProperty, Object> entry : state.entrySet()) {
+                    result.add(String.format("%s: %s", entry.getKey(), entry.getValue()));
+                }
+            }
+        } catch (IOException e) {
+            result.add("Replay: " + e.getMessage());
+        } finally {
+            file = recording;
+            player = playerName;
+            tick = replayTick;
+            lookedUpAt = System.currentTimeMillis();
+            lines = result;
+            lookingUp = false;
+        }
+    }
+}
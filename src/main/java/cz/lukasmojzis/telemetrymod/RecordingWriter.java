@@ -0,0 +1,474 @@
+package cz.lukasmojzis.telemetrymod;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * The RecordingWriter class writes the transaction bundles of a session into a compact, columnar time-series file.
+ * <p>
+ * The file is a sequence of blocks, each covering a range of game ticks. Within a block, every property of every
+ * player is a column of its own, holding only the ticks at which the value changed, so a value that stays the same
+ * for many ticks is stored once, as a single run. Ticks are stored as deltas to the previous run of the column, and
+ * integer values as deltas to the previous value of the column; floating point values are XORed with the previous
+ * value, so the bits they share cancel out, and bit-reversed, so the low mantissa bits, which are zero for most values
+ * the game reports, become leading zeros the varint drops. Every block starts from scratch, so it can be decoded on
+ * its own.
+ * <p>
+ * After every few blocks, a keyframe holds the complete state of all players as of the last tick of the block before
+ * it, so a reader can reconstruct the state at any tick from the closest keyframe and the blocks after it, instead of
+ * from the start of the recording. The format is:
+ * <pre>
+ * varint        unsigned LEB128, 7 bits per byte, least significant group first
+ * zigzag        a signed value mapped to an unsigned one ((v &lt;&lt; 1) ^ (v &gt;&gt; 63)), written as a varint
+ * string        varint byte length, followed by the UTF-8 bytes
+ *
+ * header        int magic, byte version (2), long session UUID most and least significant bits,
+ *               long start time in milliseconds since the epoch, varint property count, then for every property
+ *               in ordinal order: byte PropertyType ordinal, string property name
+ * block         byte 0x01, int payload length, long first tick, long last tick, then the payload:
+ *                 varint player count, then for every player:
+ *                   string player name, varint column count, then for every column:
+ *                     varint property ordinal, varint run count, varint data length, then for every run:
+ *                       varint tick delta (to the first tick of the block for the first run), value
+ * value         BOOLEAN, INT and LONG: zigzag delta to the previous value of the column (0 before the first),
+ *               FLOAT and DOUBLE: varint of the bit-reversed XOR of the bits of the value and the bits of the
+ *               previous value (0 before the first), 32 bits for FLOAT and 64 bits for DOUBLE,
+ *               OBJECT: varint byte length + 1 (0 for null), followed by the UTF-8 bytes of its string value
+ * keyframe      byte 0x03, int payload length, long tick, long tick, then the payload:
+ *                 varint player count, then for every player:
+ *                   string player name, varint value count, then for every non-null value:
+ *                     varint property ordinal, value (as the first value of a column)
+ * index         byte 0x02, varint record count, then for every block and keyframe:
+ *                 byte record type, zigzag first tick delta to the previous record, varint tick span,
+ *                 varint file offset delta
+ * trailer       long file offset of the index, int magic
+ * </pre>
+ * All fixed-size numbers are big-endian. The index and the trailer are written when the recording is closed; the
+ * record headers make a recording that was not closed, e.g. after a crash, readable by hopping from record to
+ * record. {@link RecordingReader} is the reference reader of this format.
+ * <p>
+ * A writer is not thread-safe; it is only used by the recorder thread.
+ */
+public class RecordingWriter implements Closeable {
+
+    static final int MAGIC = 0x544D5243;
+    static final byte VERSION = 2;
+    static final byte BLOCK = 0x01;
+    static final byte INDEX = 0x02;
+    static final byte KEYFRAME = 0x03;
+    static final int BLOCK_HEADER_BYTES = 1 + Integer.BYTES + 2 * Long.BYTES;
+    static final int TRAILER_BYTES = Long.BYTES + Integer.BYTES;
+
+    private static final int WRITE_BUFFER_BYTES = 64 * 1024;
+    private static final int MAX_BLOCK_BYTES = 256 * 1024;
+    private static final PlayerProperty[] PROPERTIES = PlayerProperty.values();
+
+    private final FileChannel channel;
+    private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES);
+    private final int blockTicks;
+    private final int keyframeBlocks;
+    private long position = 0;
+
+    // The latest value of every property of every player, as of the end of the current block.
+    private final Map<String, Object[]> state = new LinkedHashMap<>();
+    private int blocksSinceKeyframe = 0;
+
+    // The columns of the current block, by player name and property ordinal.
+    private final Map<String, Column[]> columns = new LinkedHashMap<>();
+    private final Buffer payload = new Buffer();
+    private long blockFirstTick = Long.MIN_VALUE;
+    private long blockLastTick;
+    private int blockBytes = 0;
+
+    // The index of the written blocks and keyframes.
+    private byte[] recordTypes = new byte[64];
+    private long[] recordFirstTicks = new long[64];
+    private long[] recordLastTicks = new long[64];
+    private long[] recordOffsets = new long[64];
+    private int recordCount = 0;
+
+    /**
+     * Creates a recording file and writes its header.
+     *
+     * @param file           The file to create.
+     * @param sessionId      The session UUID of the transaction IDs of the recorded session.
+     * @param blockTicks     The maximum number of ticks covered by a block.
+     * @param keyframeBlocks The number of blocks between two keyframes.
+     * @throws IOException If the file cannot be created.
+     */
+    public RecordingWriter(File file, UUID sessionId, int blockTicks, int keyframeBlocks) throws IOException {
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        this.blockTicks = Math.max(1, blockTicks);
+        this.keyframeBlocks = Math.max(1, keyframeBlocks);
+
+        Buffer header = new Buffer();
+        header.writeInt(MAGIC);
+        header.writeByte(VERSION);
+        header.writeLong(sessionId.getMostSignificantBits());
+        header.writeLong(sessionId.getLeastSignificantBits());
+        header.writeLong(System.currentTimeMillis());
+        header.writeVarint(PROPERTIES.length);
+        for (PlayerProperty property : PROPERTIES) {
+            header.writeByte((byte) property.getType().ordinal());
+            header.writeString(property.toString());
+        }
+        write(header.bytes, 0, header.length);
+    }
+
+    /**
+     * Adds the transactions of a bundle to the current block, starting a new block when the current one covers
+     * enough ticks or bytes, or when the ticks of the session went backwards.
+     *
+     * @param bundle The bundle to record.
+     * @throws IOException If a finished block cannot be written.
+     */
+    public void write(TransactionBundle bundle) throws IOException {
+        long tick = bundle.getGameTick();
+        if (blockFirstTick != Long.MIN_VALUE && (tick < blockLastTick || tick - blockFirstTick >= blockTicks || blockBytes >= MAX_BLOCK_BYTES)) {
+            flushBlock();
+        }
+        if (blockFirstTick == Long.MIN_VALUE) {
+            blockFirstTick = tick;
+            blockLastTick = tick;
+        }
+        blockLastTick = Math.max(blockLastTick, tick);
+
+        for (Map<String, Map<PlayerProperty, Object>> players : bundle.getTransactions().values()) {
+            for (Map.Entry<String, Map<PlayerProperty, Object>> player : players.entrySet()) {
+                Column[] playerColumns = columns.computeIfAbsent(player.getKey(), name -> new Column[PROPERTIES.length]);
+                Object[] playerState = state.computeIfAbsent(player.getKey(), name -> new Object[PROPERTIES.length]);
+                for (Map.Entry<PlayerProperty, Object> property : player.getValue().entrySet()) {
+                    int ordinal = property.getKey().ordinal();
+                    playerState[ordinal] = property.getValue();
+                    Column column = playerColumns[ordinal];
+                    if (column == null) column = playerColumns[ordinal] = new Column(property.getKey(), blockFirstTick);
+                    blockBytes += column.append(tick, property.getValue());
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the current block, if it holds any runs, and starts an empty one.
+     *
+     * @throws IOException If the block cannot be written.
+     */
+    public void flushBlock() throws IOException {
+        if (blockFirstTick == Long.MIN_VALUE) return;
+
+        payload.length = 0;
+        payload.writeVarint(columns.size());
+        for (Map.Entry<String, Column[]> player : columns.entrySet()) {
+            payload.writeString(player.getKey());
+            int columnCount = 0;
+            for (Column column : player.getValue()) {
+                if (column != null) columnCount++;
+            }
+            payload.writeVarint(columnCount);
+            for (Column column : player.getValue()) {
+                if (column == null) continue;
+                payload.writeVarint(column.property.ordinal());
+                payload.writeVarint(column.runs);
+                payload.writeVarint(column.data.length);
+                payload.write(column.data.bytes, 0, column.data.length);
+            }
+        }
+
+        writeRecord(BLOCK, blockFirstTick, blockLastTick);
+        long lastTick = blockLastTick;
+        columns.clear();
+        blockFirstTick = Long.MIN_VALUE;
+        blockBytes = 0;
+
+        if (++blocksSinceKeyframe >= keyframeBlocks) {
+            writeKeyframe(lastTick);
+            blocksSinceKeyframe = 0;
+        }
+    }
+
+    /**
+     * Writes a keyframe with the latest value of every property of every player. Properties without a value, or with
+     * a null value, are left out.
+     *
+     * @param tick The tick the state belongs to.
+     * @throws IOException If the keyframe cannot be written.
+     */
+    private void writeKeyframe(long tick) throws IOException {
+        payload.length = 0;
+        payload.writeVarint(state.size());
+        for (Map.Entry<String, Object[]> player : state.entrySet()) {
+            payload.writeString(player.getKey());
+            Object[] values = player.getValue();
+            int valueCount = 0;
+            for (int ordinal = 0; ordinal < values.length; ordinal++) {
+                if (values[ordinal] != null) valueCount++;
+            }
+            payload.writeVarint(valueCount);
+            for (int ordinal = 0; ordinal < values.length; ordinal++) {
+                if (values[ordinal] == null) continue;
+                payload.writeVarint(ordinal);
+                writeValue(payload, PROPERTIES[ordinal], values[ordinal], 0, 0);
+            }
+        }
+        writeRecord(KEYFRAME, tick, tick);
+    }
+
+    /**
+     * Writes the payload as a record of the given type and adds it to the index.
+     */
+    private void writeRecord(byte type, long firstTick, long lastTick) throws IOException {
+        if (recordCount == recordOffsets.length) {
+            recordTypes = Arrays.copyOf(recordTypes, recordCount * 2);
+            recordFirstTicks = Arrays.copyOf(recordFirstTicks, recordCount * 2);
+            recordLastTicks = Arrays.copyOf(recordLastTicks, recordCount * 2);
+            recordOffsets = Arrays.copyOf(recordOffsets, recordCount * 2);
+        }
+        recordTypes[recordCount] = type;
+        recordFirstTicks[recordCount] = firstTick;
+        recordLastTicks[recordCount] = lastTick;
+        recordOffsets[recordCount] = position;
+        recordCount++;
+
+        Buffer header = new Buffer();
+        header.writeByte(type);
+        header.writeInt(payload.length);
+        header.writeLong(firstTick);
+        header.writeLong(lastTick);
+        write(header.bytes, 0, header.length);
+        write(payload.bytes, 0, payload.length);
+    }
+
+    /**
+     * Returns the bits of a FLOAT or DOUBLE value as they are XORed with the previous value of the column: the 32 bits
+     * of the float for FLOAT, so the zeros a float gains when widened to a double are not stored, and the 64 bits of
+     * the double for DOUBLE.
+     *
+     * @param type  The type of the column.
+     * @param value The value, or null.
+     * @return The bits of the value, 0 for null.
+     */
+    static long floatingBits(PropertyType type, Object value) {
+        if (value == null) return 0;
+        if (type == PropertyType.FLOAT) return Float.floatToIntBits(((Number) value).floatValue()) & 0xFFFFFFFFL;
+        return Double.doubleToLongBits(((Number) value).doubleValue());
+    }
+
+    /**
+     * Reverses the order of the 32 bits of a FLOAT or the 64 bits of a DOUBLE. The XOR of two close values only has
+     * bits set in the mantissa, and for most values the game reports, such as half hearts or block coordinates, the
+     * low mantissa bits are zero; reversed, these become leading zeros and the varint stays short. Reversing twice
+     * restores the bits.
+     *
+     * @param type The type of the column.
+     * @param bits The bits.
+     * @return The reversed bits.
+     */
+    static long reverseBits(PropertyType type, long bits) {
+        return type == PropertyType.FLOAT ? Integer.reverse((int) bits) & 0xFFFFFFFFL : Long.reverse(bits);
+    }
+
+    /**
+     * Writes a value relative to the previous value of its column.
+     *
+     * @param out           The buffer to write to.
+     * @param property      The property the value belongs to.
+     * @param value         The value.
+     * @param previousLong  The previous value of a BOOLEAN, INT or LONG column.
+     * @param previousBits  The bits of the previous value of a FLOAT or DOUBLE column, see {@link #floatingBits}.
+     */
+    private static void writeValue(Buffer out, PlayerProperty property, Object value, long previousLong, long previousBits) {
+        switch (property.getType()) {
+            case BOOLEAN:
+                out.writeZigzag((Boolean.TRUE.equals(value) ? 1 : 0) - previousLong);
+                break;
+            case INT:
+            case LONG:
+                out.writeZigzag((value != null ? ((Number) value).longValue() : 0) - previousLong);
+                break;
+            case FLOAT:
+            case DOUBLE:
+                out.writeVarint(reverseBits(property.getType(), floatingBits(property.getType(), value) ^ previousBits));
+                break;
+            default:
+                if (value == null) {
+                    out.writeVarint(0);
+                } else {
+                    byte[] bytes = String.valueOf(value).getBytes(StandardCharsets.UTF_8);
+                    out.writeVarint(bytes.length + 1L);
+                    out.write(bytes, 0, bytes.length);
+                }
+        }
+    }
+
+    /**
+     * Writes the buffered bytes to the file, without finishing the current block.
+     *
+     * @throws IOException If the bytes cannot be written.
+     */
+    public void flush() throws IOException {
+        writeBuffer.flip();
+        while (writeBuffer.hasRemaining()) {
+            channel.write(writeBuffer);
+        }
+        writeBuffer.clear();
+    }
+
+    /**
+     * Returns the number of bytes written to the recording so far.
+     *
+     * @return The size of the recording in bytes.
+     */
+    public long size() {
+        return position;
+    }
+
+    /**
+     * Writes the current block, the index and the trailer, and closes the file.
+     *
+     * @throws IOException If the file cannot be written.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flushBlock();
+            long indexOffset = position;
+            Buffer index = new Buffer();
+            index.writeByte(INDEX);
+            index.writeVarint(recordCount);
+            long previousTick = 0;
+            long previousOffset = 0;
+            for (int i = 0; i < recordCount; i++) {
+                index.writeByte(recordTypes[i]);
+                index.writeZigzag(recordFirstTicks[i] - previousTick);
+                index.writeVarint(recordLastTicks[i] - recordFirstTicks[i]);
+                index.writeVarint(recordOffsets[i] - previousOffset);
+                previousTick = recordFirstTicks[i];
+                previousOffset = recordOffsets[i];
+            }
+            index.writeLong(indexOffset);
+            index.writeInt(MAGIC);
+            write(index.bytes, 0, index.length);
+            flush();
+            channel.force(false);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Copies bytes into the write buffer, writing it to the file whenever it is full.
+     */
+    private void write(byte[] bytes, int offset, int length) throws IOException {
+        position += length;
+        while (length > 0) {
+            if (!writeBuffer.hasRemaining()) flush();
+            int chunk = Math.min(length, writeBuffer.remaining());
+            writeBuffer.put(bytes, offset, chunk);
+            offset += chunk;
+            length -= chunk;
+        }
+    }
+
+    /**
+     * The runs of a single property of a single player within the current block.
+     */
+    private static class Column {
+        final PlayerProperty property;
+        final Buffer data = new Buffer();
+        int runs = 0;
+        long lastTick;
+        long previousLong = 0;
+        long previousBits = 0;
+
+        Column(PlayerProperty property, long blockFirstTick) {
+            this.property = property;
+            this.lastTick = blockFirstTick;
+        }
+
+        /**
+         * Appends a run starting at the given tick.
+         *
+         * @return The number of bytes appended.
+         */
+        int append(long tick, Object value) {
+            int before = data.length;
+            data.writeVarint(tick - lastTick);
+            lastTick = tick;
+            writeValue(data, property, value, previousLong, previousBits);
+            if (property.getType().isLongSlot()) {
+                previousLong = property.getType() == PropertyType.BOOLEAN ? (Boolean.TRUE.equals(value) ? 1 : 0) : value != null ? ((Number) value).longValue() : 0;
+            } else if (property.getType().isDoubleSlot()) {
+                previousBits = floatingBits(property.getType(), value);
+            }
+            runs++;
+            return data.length - before;
+        }
+    }
+
+    /**
+     * A growable byte buffer with the primitive encodings of the format.
+     */
+    static class Buffer {
+        byte[] bytes = new byte[256];
+        int length = 0;
+
+        void write(byte[] source, int offset, int count) {
+            ensureCapacity(count);
+            System.arraycopy(source, offset, bytes, length, count);
+            length += count;
+        }
+
+        void writeString(String value) {
+            byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(encoded.length);
+            write(encoded, 0, encoded.length);
+        }
+
+        void writeZigzag(long value) {
+            writeVarint((value << 1) ^ (value >> 63));
+        }
+
+        void writeVarint(long value) {
+            ensureCapacity(10);
+            while ((value & ~0x7FL) != 0) {
+                bytes[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[length++] = (byte) value;
+        }
+
+        void writeInt(int value) {
+            ensureCapacity(4);
+            for (int shift = 24; shift >= 0; shift -= 8) {
+                bytes[length++] = (byte) (value >>> shift);
+            }
+        }
+
+        void writeLong(long value) {
+            ensureCapacity(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                bytes[length++] = (byte) (value >>> shift);
+            }
+        }
+
+        void writeByte(byte value) {
+            ensureCapacity(1);
+            bytes[length++] = value;
+        }
+
+        private void ensureCapacity(int count) {
+            if (length + count > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + count));
+            }
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package cz.lukasmojzis.telemetrymod;
+
+import com.charles445.simpledifficulty.api.SDCapabilities;
+import net.minecraft.entity.player.EntityPlayer;
+import net.minecraft.entity.player.EntityPlayerMP;
+import net.minecraftforge.fml.common.Loader;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The ServerPlayerController class tracks the state of every player connected to the server, when the server mode
+ * is enabled in {@link ModConfig#server}. Unlike the {@link PlayerStateController}, which only tracks the local player
+ * of the client, it is meant for dedicated servers with many players. An integrated server, i.e. singleplayer or a
+ * world opened to LAN, is never tracked: its host is already tracked by the client, and both would report the same
+ * player under the same name.
+ * <p>
+ * The state of all players is kept in a single {@link PlayerStateTable}. Every server tick the players are captured
+ * round-robin, continuing where the previous tick stopped, until all of them were captured or the configured tick
+ * budget is used up, so telemetry never adds more than the budget to a server tick; players left over are captured
+ * first in the next tick. The server thread only copies the raw values into a {@link PlayerStateFrame}; diffing them
+ * and building the transactions is left to the {@link PlayerStateDiffer}.
+ */
+public class ServerPlayerController {
+
+    // The rows of the tracked players with their UUIDs as keys.
+    private static final Map<UUID, Integer> playerRows = new ConcurrentHashMap<>();
+    private static final PlayerStateTable table = new PlayerStateTable(128);
+    private static PlayerStateDiffer differ;
+
+    // The row the next tick starts capturing at.
+    private static int nextRow = 0;
+
+    /**
+     * Called when a player logs in to the server. Allocates a row for the player.
+     *
+     * @param player The player who logged in.
+     */
+    static void onPlayerLogin(EntityPlayerMP player) {
+        if (!isDedicatedServer()) return;
+        UUID playerUUID = player.getUniqueID();
+        Integer previousRow = playerRows.remove(playerUUID);
+        if (previousRow != null) table.release(previousRow);
+        playerRows.put(playerUUID, table.allocate(player));
+    }
+
+    /**
+     * Called when a player respawns. The server creates a new entity for the respawned player, so it replaces the
+     * entity of the row and all properties are captured again.
+     *
+     * @param player The respawned player.
+     */
+    static void onPlayerRespawn(EntityPlayerMP player) {
+        Integer row = playerRows.get(player.getUniqueID());
+        if (row == null) return;
+        table.setPlayer(row, player);
+        table.markDirty(row, PlayerPropertyCapture.ALL_EVENTS);
+    }
+
+    /**
+     * Called when a player logs out of the server. Releases the row of the player.
+     *
+     * @param player The player who logged out.
+     */
+    static void onPlayerLogout(EntityPlayer player) {
+        Integer row = playerRows.remove(player.getUniqueID());
+        if (row != null) table.release(row);
+    }
+
+    /**
+     * Signals that an event changed some of the event-driven properties of a player.
+     *
+     * @param player The player the event happened to.
+     * @param events The events that happened, see {@link PlayerPropertyCapture}.
+     */
+    static void markDirty(EntityPlayer player, int events) {
+        if (!(player instanceof EntityPlayerMP)) return;
+        Integer row = playerRows.get(player.getUniqueID());
+        if (row != null) table.markDirty(row, events);
+    }
+
+    /**
+     * Signals that an event changed some of the event-driven properties of all tracked players.
+     *
+     * @param events The events that happened, see {@link PlayerPropertyCapture}.
+     */
+    static void markAllDirty(int events) {
+        for (int row : playerRows.values()) {
+            table.markDirty(row, events);
+        }
+    }
+
+    /**
+     * Called at the end of every server tick, this method captures the players round-robin within the tick budget.
+     */
+    static void onServerTick() {
+        if (!ModConfig.server.enabled || playerRows.isEmpty() || !isDedicatedServer()) return;
+        long startedAt = System.nanoTime();
+        long budget = TimeUnit.MILLISECONDS.toNanos(ModConfig.server.tickBudgetMillis);
+        int slowPollTicks = ModConfig.sampling.slowPollTicks;
+
+        if (differ == null) differ = new PlayerStateDiffer(table, ModConfig.server.diffThreads);
+        PlayerStateFrame frame = differ.acquire();
+        if (frame == null) {
+            TelemetryMetrics.SERVER_TICKS_SKIPPED.increment();
+            return;
+        }
+        frame.reset(table.capacity());
+
+        int count = table.size();
+        int row = nextRow;
+        for (int captured = 0; captured < count; captured++) {
+            row = table.nextRow(row);
+            if (row < 0) row = table.nextRow(0);
+            if (row < 0) break;
+            capture(frame, row, slowPollTicks);
+            row++;
+            if (System.nanoTime() - startedAt >= budget) break;
+        }
+        nextRow = row;
+        differ.submit(frame);
+        TelemetryMetrics.SERVER_CAPTURE_TIME.record(System.nanoTime() - startedAt);
+    }
+
+    /**
+     * Returns whether the running server is a dedicated server rather than the integrated server of a client.
+     *
+     * @return True on a dedicated server.
+     */
+    private static boolean isDedicatedServer() {
+        return TelemetryMod.server != null && TelemetryMod.server.isDedicatedServer();
+    }
+
+    /**
+     * Called when the server stops. Releases the rows of all players and shuts the differ down, so no threads are
+     * left behind when the next world is loaded.
+     */
+    static void onServerStopped() {
+        for (int row : playerRows.values()) {
+            table.release(row);
+        }
+        playerRows.clear();
+        nextRow = 0;
+        if (differ != null) {
+            differ.shutdown();
+            differ = null;
+        }
+    }
+
+    /**
+     * Returns the number of tracked players.
+     *
+     * @return The number of tracked players.
+     */
+    public static int size() {
+        return playerRows.size();
+    }
+
+    /**
+     * Captures the hot properties of a player into a frame, and the slow and event-driven ones when they are due.
+     *
+     * @param frame         The frame to capture into.
+     * @param row           The row of the player.
+     * @param slowPollTicks The number of ticks between two captures of the slow properties.
+     */
+    private static void capture(PlayerStateFrame frame, int row, int slowPollTicks) {
+        EntityPlayer player = table.getPlayer(row);
+        long gameTick = player.world.getTotalWorldTime();
+        IPlayerStateSink sink = table.beginRow(frame, row, gameTick);
+
+        int events = table.takeDirtyEvents(row);
+        if (table.takeSlowPoll(row, gameTick, slowPollTicks)) {
+            events = PlayerPropertyCapture.ALL_EVENTS;
+            if (Loader.isModLoaded("simpledifficulty")) {
+                PlayerPropertyCapture.captureSlow(player, sink, player.getCapability(SDCapabilities.THIRST, null), player.getCapability(SDCapabilities.TEMPERATURE, null));
+            } else {
+                PlayerPropertyCapture.captureSlow(player, sink, null, null);
+            }
+        }
+        PlayerPropertyCapture.captureHot(player, sink);
+        if (events != 0) PlayerPropertyCapture.captureEvents(player, sink, events);
+    }
+}
@@ -0,0 +1,266 @@
+package cz.lukasmojzis.telemetrymod;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Arrays;
+
+/**
+ * The TelemetryDatagramSink class sends the latest state of the hot properties of a player as a UDP datagram every
+ * tick, for live overlays that want the freshest state rather than every change.
+ * <p>
+ * Unlike the other sinks, it does not consume transaction bundles: it reads the {@link PlayerStateSnapshot} of the
+ * player right after the {@link PlayerStatusTracker} updated it, so a backlog of bundles never delays it. When the
+ * {@link TelemetryEventRing} is enabled, the sink consumes the ring on an event consumer thread instead: it keeps the
+ * state of every player from the published changes and sends a datagram for every tick in which the player changed,
+ * so the game thread never touches the socket. A datagram that is lost is simply superseded by the next one. Every
+ * datagram has the same fixed layout, big-endian:
+ * <pre>
+ * offset  0  int     magic
+ *         4  byte    version (1)
+ *         5  byte    flags: 0x01 hurt, 0x02 the position is valid
+ *         6  short   air
+ *         8  long    sequence number, incremented with every datagram
+ *        16  long    game tick
+ *        24  double  position x
+ *        32  double  position y
+ *        40  double  position z
+ *        48  float   health
+ *        52  float   maximum health
+ *        56  byte[]  player name, ASCII, padded with zeros to {@value #NAME_BYTES} bytes
+ * </pre>
+ * The datagram is written into a preallocated direct buffer and sent through a non-blocking channel, so sending does
+ * not allocate and never blocks the game thread; when the socket buffer is full, the datagram is dropped.
+ */
+public class TelemetryDatagramSink implements ITelemetrySink, ITelemetryEventHandler {
+
+    static final int MAGIC = 0x544D5544;
+    static final byte VERSION = 1;
+    static final int FLAG_HURT = 0x01;
+    static final int FLAG_POSITION = 0x02;
+    static final int NAME_BYTES = 16;
+    static final int DATAGRAM_BYTES = 56 + NAME_BYTES;
+
+    private static final int PROPERTY_COUNT = PlayerProperty.values().length;
+
+    private final ByteBuffer datagram = ByteBuffer.allocateDirect(DATAGRAM_BYTES);
+    private final TelemetryEventRing eventRing;
+    private DatagramChannel channel;
+    private String host;
+    private int port;
+    private long sequence = 0;
+    private volatile TelemetryEventConsumer consumer;
+
+    // Only used by the event consumer thread: the values last published for every player index, whether the position
+    // of the player was published, and the player and tick of the changes not sent yet.
+    private long[][] eventValues = new long[0][];
+    private boolean[] eventPositions = new boolean[0];
+    private int pendingPlayer = -1;
+    private long pendingTick;
+
+    /**
+     * Constructs a datagram sink.
+     *
+     * @param eventRing The event ring to consume, or null to send the datagrams from the game thread.
+     */
+    public TelemetryDatagramSink(TelemetryEventRing eventRing) {
+        this.eventRing = eventRing;
+    }
+
+    @Override
+    public String getName() {
+        return "Datagram";
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return ModConfig.datagram.enabled;
+    }
+
+    /**
+     * Starts consuming the event ring, if it is enabled. The channel is opened with the first datagram.
+     */
+    @Override
+    public synchronized void start() {
+        if (eventRing == null || consumer != null) return;
+        consumer = new TelemetryEventConsumer(getName(), eventRing, ModConfig.eventRing.waitStrategy, this);
+        consumer.start();
+    }
+
+    /**
+     * Stops consuming the event ring and closes the channel.
+     */
+    @Override
+    public synchronized void stop() {
+        if (consumer != null) {
+            consumer.stop();
+            consumer = null;
+        }
+        closeChannel();
+        host = null;
+    }
+
+    /**
+     * Returns whether the datagrams are sent by the consumer of the event ring, rather than from the game thread.
+     *
+     * @return True if the sink consumes the event ring.
+     */
+    public boolean isConsumingEvents() {
+        return consumer != null;
+    }
+
+    /**
+     * Ignores the bundle; the datagrams are built from the state snapshots instead.
+     *
+     * @param bundle The bundle.
+     */
+    @Override
+    public void offer(TransactionBundle bundle) {
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return 0;
+    }
+
+    /**
+     * Sends the hot properties of a player from its state snapshot. Called from the game thread after every update
+     * of the snapshot.
+     *
+     * @param playerName The name of the player.
+     * @param snapshot   The updated state snapshot of the player.
+     * @param gameTick   The current game tick.
+     */
+    public void send(String playerName, PlayerStateSnapshot snapshot, long gameTick) {
+        int flags = 0;
+        if (snapshot.has(PlayerProperty.ISHURT) && snapshot.getLong(PlayerProperty.ISHURT) != 0) flags |= FLAG_HURT;
+        boolean position = snapshot.has(PlayerProperty.POSX);
+        if (position) flags |= FLAG_POSITION;
+
+        send(playerName, flags, snapshot.getLong(PlayerProperty.AIR), gameTick,
+                position ? snapshot.getDouble(PlayerProperty.POSX) : 0,
+                position ? snapshot.getDouble(PlayerProperty.POSY) : 0,
+                position ? snapshot.getDouble(PlayerProperty.POSZ) : 0,
+                snapshot.getDouble(PlayerProperty.HEALTH), snapshot.getDouble(PlayerProperty.MAXHEALTH));
+    }
+
+    /**
+     * Keeps a change published to the event ring, sending the changes of the previous player or tick first. Called
+     * from the event consumer thread.
+     */
+    @Override
+    public void onEvent(long sequence, int playerIndex, long gameTick, int ordinal, long value) {
+        if (pendingPlayer >= 0 && (playerIndex != pendingPlayer || gameTick != pendingTick)) onEndOfBatch();
+        if (playerIndex >= eventValues.length) {
+            int length = Math.max(playerIndex + 1, eventValues.length * 2);
+            eventValues = Arrays.copyOf(eventValues, length);
+            eventPositions = Arrays.copyOf(eventPositions, length);
+        }
+        long[] values = eventValues[playerIndex];
+        if (values == null) values = eventValues[playerIndex] = new long[PROPERTY_COUNT];
+        values[ordinal] = value;
+        if (ordinal == PlayerProperty.POSX.ordinal()) eventPositions[playerIndex] = true;
+        pendingPlayer = playerIndex;
+        pendingTick = gameTick;
+    }
+
+    /**
+     * Sends the state of the player whose changes were handled last. Called from the event consumer thread.
+     */
+    @Override
+    public void onEndOfBatch() {
+        int playerIndex = pendingPlayer;
+        if (playerIndex < 0) return;
+        pendingPlayer = -1;
+        String playerName = eventRing.getPlayerName(playerIndex);
+        if (playerName == null || !isEnabled()) return;
+
+        long[] values = eventValues[playerIndex];
+        boolean position = eventPositions[playerIndex];
+        int flags = (values[PlayerProperty.ISHURT.ordinal()] != 0 ? FLAG_HURT : 0) | (position ? FLAG_POSITION : 0);
+        send(playerName, flags, values[PlayerProperty.AIR.ordinal()], pendingTick,
+                Double.longBitsToDouble(values[PlayerProperty.POSX.ordinal()]),
+                Double.longBitsToDouble(values[PlayerProperty.POSY.ordinal()]),
+                Double.longBitsToDouble(values[PlayerProperty.POSZ.ordinal()]),
+                Double.longBitsToDouble(values[PlayerProperty.HEALTH.ordinal()]),
+                Double.longBitsToDouble(values[PlayerProperty.MAXHEALTH.ordinal()]));
+    }
+
+    /**
+     * Writes a datagram into the preallocated buffer and sends it.
+     */
+    private synchronized void send(String playerName, int flags, long air, long gameTick,
+                                   double x, double y, double z, double health, double maxHealth) {
+        if (!syncChannel()) return;
+
+        datagram.clear();
+        datagram.putInt(MAGIC);
+        datagram.put(VERSION);
+        datagram.put((byte) flags);
+        datagram.putShort((short) air);
+        datagram.putLong(++sequence);
+        datagram.putLong(gameTick);
+        datagram.putDouble(x);
+        datagram.putDouble(y);
+        datagram.putDouble(z);
+        datagram.putFloat((float) health);
+        datagram.putFloat((float) maxHealth);
+        int length = Math.min(playerName.length(), NAME_BYTES);
+        for (int i = 0; i < NAME_BYTES; i++) {
+            char c = i < length ? playerName.charAt(i) : 0;
+            datagram.put(c < 0x80 ? (byte) c : (byte) '?');
+        }
+        datagram.flip();
+
+        try {
+            if (channel.write(datagram) > 0) {
+                TelemetryMetrics.DATAGRAMS_SENT.increment();
+            } else {
+                TelemetryMetrics.DATAGRAMS_DROPPED.increment();
+            }
+        } catch (IOException e) {
+            // E.g. a port unreachable reported for an earlier datagram; the next datagram tries again.
+            TelemetryMetrics.DATAGRAMS_DROPPED.increment();
+        }
+    }
+
+    /**
+     * Opens the channel, or reopens it when the configured destination changed. A destination that failed to open is
+     * not retried until the configuration changes.
+     *
+     * @return True if the channel is open.
+     */
+    private boolean syncChannel() {
+        String configuredHost = ModConfig.datagram.host;
+        int configuredPort = ModConfig.datagram.port;
+        if (configuredHost.equals(host) && configuredPort == port) return channel != null;
+
+        closeChannel();
+        host = configuredHost;
+        port = configuredPort;
+        try {
+            InetSocketAddress address = new InetSocketAddress(host, port);
+            if (address.isUnresolved()) throw new IOException(String.format("Cannot resolve %s", host));
+            channel = DatagramChannel.open();
+            channel.configureBlocking(false);
+            channel.connect(address);
+            TelemetryMod.logger.info("Sending telemetry datagrams to {}", address);
+            return true;
+        } catch (IOException e) {
+            TelemetryMod.logger.error("Failed to open the telemetry datagram channel to {}:{}", host, port, e);
+            closeChannel();
+            return false;
+        }
+    }
+
+    private void closeChannel() {
+        if (channel == null) return;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            TelemetryMod.logger.error("Failed to close the telemetry datagram channel", e);
+        }
+        channel = null;
+    }
+}
@@ -0,0 +1,69 @@
+package cz.lukasmojzis.telemetrymod;
+
+import org.java_websocket.extensions.IExtension;
+import org.java_websocket.extensions.permessage_deflate.PerMessageDeflateExtension;
+import org.java_websocket.framing.Framedata;
+import org.java_websocket.framing.FramedataImpl1;
+
+import java.nio.ByteBuffer;
+import java.util.zip.Deflater;
+
+/**
+ * The TelemetryDeflateExtension class is the WebSocket permessage-deflate extension with a configurable compression
+ * level. Frames smaller than the configured minimum are sent uncompressed, which the extension allows, and the sizes
+ * and CPU time of the compressed frames are recorded in {@link CompressionMetrics}.
+ */
+public class TelemetryDeflateExtension extends PerMessageDeflateExtension {
+
+    private final int level;
+    private final CompressionMetrics metrics;
+    private Deflater deflater;
+
+    /**
+     * Constructs the extension.
+     *
+     * @param level   The compression level, from 1 (fastest) to 9 (smallest).
+     * @param metrics The metrics to record the compressed frames in.
+     */
+    public TelemetryDeflateExtension(int level, CompressionMetrics metrics) {
+        this.level = level;
+        this.metrics = metrics;
+        this.deflater = new Deflater(level, true);
+        setDeflater(deflater);
+    }
+
+    /**
+     * Compresses a data frame, unless it is smaller than the configured minimum frame size.
+     *
+     * @param inputFrame The frame to compress.
+     */
+    @Override
+    public void encodeFrame(Framedata inputFrame) {
+        ByteBuffer payload = inputFrame.getPayloadData();
+        int uncompressed = payload.remaining();
+        if (uncompressed < ModConfig.websocket.compressionMinFrameBytes) return;
+
+        // The extension compresses the whole backing array, so a payload that is only a view of a larger
+        // (reused) array has to be copied first.
+        if (!payload.hasArray() || payload.arrayOffset() + payload.position() != 0 || payload.array().length != uncompressed) {
+            byte[] copy = new byte[uncompressed];
+            payload.duplicate().get(copy);
+            ((FramedataImpl1) inputFrame).setPayload(ByteBuffer.wrap(copy));
+        }
+
+        long startedAt = CompressionMetrics.now();
+        super.encodeFrame(inputFrame);
+        metrics.record(uncompressed, inputFrame.getPayloadData().remaining(), startedAt);
+
+        // The extension replaces its deflater with one of the default level when the context is not taken over.
+        if (getDeflater() != deflater) {
+            deflater = new Deflater(level, true);
+            setDeflater(deflater);
+        }
+    }
+
+    @Override
+    public IExtension copyInstance() {
+        return new TelemetryDeflateExtension(level, metrics);
+    }
+}
@@ -0,0 +1,82 @@
+package cz.lukasmojzis.telemetrymod;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The TelemetryEventConsumer class runs an {@link ITelemetryEventHandler} on a background thread of its own, reading
+ * the events of a {@link TelemetryEventRing} with a reader of its own, so a slow handler only holds up itself.
+ */
+public class TelemetryEventConsumer implements Runnable {
+
+    /**
+     * The time the consumer waits for new events before checking whether it should stop.
+     */
+    private static final long AWAIT_TIMEOUT_MS = 1000;
+
+    private final String name;
+    private final TelemetryEventRing ring;
+    private final TelemetryEventRing.Reader reader;
+    private final ITelemetryEventHandler handler;
+    private volatile Thread thread;
+
+    /**
+     * Constructs a consumer reading the events published from now on.
+     *
+     * @param name         The name of the consumer, used for its thread.
+     * @param ring         The ring to read.
+     * @param waitStrategy How the consumer waits for new events.
+     * @param handler      The handler of the events.
+     */
+    public TelemetryEventConsumer(String name, TelemetryEventRing ring, TelemetryEventRing.WaitStrategy waitStrategy, ITelemetryEventHandler handler) {
+        this.name = name;
+        this.ring = ring;
+        this.reader = ring.newReader(waitStrategy);
+        this.handler = handler;
+    }
+
+    /**
+     * Starts the consumer thread, unless it is already running.
+     */
+    public synchronized void start() {
+        if (thread != null) return;
+        thread = new Thread(this, "TelemetryMod Events-" + name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the consumer thread and removes its reader from the ring, so the producer no longer waits for it.
+     */
+    public synchronized void stop() {
+        if (thread == null) return;
+        thread.interrupt();
+        thread = null;
+        ring.removeReader(reader);
+    }
+
+    /**
+     * Returns the number of published events the consumer has not handled yet.
+     *
+     * @return The backlog of the consumer.
+     */
+    public long getBacklog() {
+        return reader.getBacklog();
+    }
+
+    /**
+     * Waits for events and passes them to the handler, until the consumer thread is stopped.
+     */
+    @Override
+    public void run() {
+        while (thread == Thread.currentThread()) {
+            try {
+                if (reader.await(AWAIT_TIMEOUT_MS, TimeUnit.MILLISECONDS)) reader.poll(handler);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (RuntimeException e) {
+                TelemetryMod.logger.error("The {} telemetry event consumer failed", name, e);
+            }
+        }
+    }
+}
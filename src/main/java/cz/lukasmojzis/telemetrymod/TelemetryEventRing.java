@@ -0,0 +1,276 @@
+package cz.lukasmojzis.telemetrymod;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The TelemetryEventRing class hands the changes of primitive player properties from the game thread to any number
+ * of consumers, through a preallocated ring of event slots.
+ * <p>
+ * Every slot holds a property ordinal, a game tick, a player index and the value as a long, in parallel primitive
+ * arrays, so publishing an event only writes into the arrays and never allocates. There is a single producer, the
+ * game thread, which claims the sequence numbers in order; every consumer reads all events with its own
+ * {@link Reader}, at its own pace, and waits for new events with the configured {@link WaitStrategy}. A slot is only
+ * reused once every reader has read it. The producer never waits for the readers: when the slowest reader is a whole
+ * ring behind, new events are dropped and counted instead, so a stalled consumer can never stall the game. The
+ * producer can also stage several events and commit them at once, so a reader sees all of them or none, e.g. all
+ * changes of a player in one tick.
+ * <p>
+ * Object properties, e.g. strings or item stacks, have no primitive value and are not published to the ring; they
+ * are only sent as transactions. The ring is a low-latency side channel next to the transaction bundles, not a
+ * replacement for them: the {@link TelemetryDatagramSink} consumes it, while the WebSocket sender and the recorder
+ * keep consuming the bundles of the {@link TransactionController}.
+ */
+public class TelemetryEventRing {
+
+    private static final long SLEEP_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+    private static final int SPIN_TRIES = 100;
+
+    /**
+     * Defines how a reader waits for new events.
+     */
+    public enum WaitStrategy {
+        /**
+         * Spins on the cursor. Lowest latency, but keeps a core busy.
+         */
+        BUSY_SPIN,
+        /**
+         * Spins for a while, then yields the processor between checks.
+         */
+        YIELD,
+        /**
+         * Spins for a while, then sleeps briefly between checks. Highest latency, but hardly any CPU while idle.
+         */
+        SLEEP
+    }
+
+    private final int mask;
+    private final int[] ordinals;
+    private final long[] gameTicks;
+    private final int[] playerIndices;
+    private final long[] values;
+
+    /**
+     * The sequence of the latest published event.
+     */
+    private final AtomicLong cursor = new AtomicLong(-1);
+
+    // Only used by the producer.
+    private long nextSequence = 0;
+    private long cachedMinimumSequence = -1;
+
+    private volatile Reader[] readers = new Reader[0];
+    private final List<String> playerNames = new ArrayList<>();
+    private volatile String[] playerNameArray = new String[0];
+
+    /**
+     * Constructs a ring with room for the given number of events, rounded up to a power of two.
+     *
+     * @param capacity The number of event slots.
+     */
+    public TelemetryEventRing(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.mask = size - 1;
+        this.ordinals = new int[size];
+        this.gameTicks = new long[size];
+        this.playerIndices = new int[size];
+        this.values = new long[size];
+    }
+
+    /**
+     * Returns the number of event slots.
+     *
+     * @return The capacity of the ring.
+     */
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Returns the index of a player, assigning the next free index to a player seen for the first time.
+     *
+     * @param name The name of the player.
+     * @return The index of the player.
+     */
+    public synchronized int registerPlayer(String name) {
+        int index = playerNames.indexOf(name);
+        if (index >= 0) return index;
+        playerNames.add(name);
+        playerNameArray = playerNames.toArray(new String[0]);
+        return playerNames.size() - 1;
+    }
+
+    /**
+     * Returns the name of a registered player.
+     *
+     * @param playerIndex The index of the player.
+     * @return The name of the player, or null if the index is unknown.
+     */
+    public String getPlayerName(int playerIndex) {
+        String[] names = playerNameArray;
+        return playerIndex >= 0 && playerIndex < names.length ? names[playerIndex] : null;
+    }
+
+    /**
+     * Publishes an event. Must only be called from the producer thread; never blocks.
+     *
+     * @param playerIndex The index of the player.
+     * @param gameTick    The game tick of the change.
+     * @param ordinal     The ordinal of the changed property.
+     * @param value       The new value, encoded as described in {@link ITelemetryEventHandler}.
+     * @return True if the event was published, false if it was dropped because a reader is a whole ring behind.
+     */
+    public boolean publish(int playerIndex, long gameTick, int ordinal, long value) {
+        if (!stage(playerIndex, gameTick, ordinal, value)) return false;
+        commit();
+        return true;
+    }
+
+    /**
+     * Writes an event into the ring without making it visible to the readers yet; {@link #commit()} makes all staged
+     * events visible at once. Must only be called from the producer thread; never blocks.
+     *
+     * @param playerIndex The index of the player.
+     * @param gameTick    The game tick of the change.
+     * @param ordinal     The ordinal of the changed property.
+     * @param value       The new value, encoded as described in {@link ITelemetryEventHandler}.
+     * @return True if the event was staged, false if it was dropped because a reader is a whole ring behind.
+     */
+    public boolean stage(int playerIndex, long gameTick, int ordinal, long value) {
+        long sequence = nextSequence;
+        long wrapPoint = sequence - capacity();
+        if (wrapPoint > cachedMinimumSequence) {
+            cachedMinimumSequence = minimumSequence(sequence - 1);
+            if (wrapPoint > cachedMinimumSequence) {
+                TelemetryMetrics.RING_EVENTS_DROPPED.increment();
+                return false;
+            }
+        }
+        int slot = (int) sequence & mask;
+        ordinals[slot] = ordinal;
+        gameTicks[slot] = gameTick;
+        playerIndices[slot] = playerIndex;
+        values[slot] = value;
+        nextSequence = sequence + 1;
+        return true;
+    }
+
+    /**
+     * Makes the staged events visible to the readers. Must only be called from the producer thread.
+     */
+    public void commit() {
+        cursor.lazySet(nextSequence - 1);
+    }
+
+    /**
+     * Adds a reader, which starts with the next published event.
+     *
+     * @param waitStrategy How the reader waits for new events.
+     * @return The reader.
+     */
+    public synchronized Reader newReader(WaitStrategy waitStrategy) {
+        Reader reader = new Reader(waitStrategy, cursor.get());
+        Reader[] current = readers;
+        Reader[] updated = Arrays.copyOf(current, current.length + 1);
+        updated[current.length] = reader;
+        readers = updated;
+        return reader;
+    }
+
+    /**
+     * Removes a reader, so the producer no longer waits for it to free slots.
+     *
+     * @param reader The reader.
+     */
+    public synchronized void removeReader(Reader reader) {
+        Reader[] current = readers;
+        List<Reader> updated = new ArrayList<>(Arrays.asList(current));
+        updated.remove(reader);
+        readers = updated.toArray(new Reader[0]);
+    }
+
+    /**
+     * Returns the sequence of the slowest reader.
+     *
+     * @param defaultSequence The sequence to return if there are no readers.
+     * @return The sequence of the latest event read by every reader.
+     */
+    private long minimumSequence(long defaultSequence) {
+        long minimum = defaultSequence;
+        for (Reader reader : readers) {
+            minimum = Math.min(minimum, reader.sequence.get());
+        }
+        return minimum;
+    }
+
+    /**
+     * A cursor reading all events of the ring in order. A reader must only be used by a single thread.
+     */
+    public class Reader {
+        private final WaitStrategy waitStrategy;
+
+        /**
+         * The sequence of the latest event read.
+         */
+        private final AtomicLong sequence;
+
+        private Reader(WaitStrategy waitStrategy, long sequence) {
+            this.waitStrategy = waitStrategy;
+            this.sequence = new AtomicLong(sequence);
+        }
+
+        /**
+         * Passes the events published since the last call to the handler, then frees their slots and tells the
+         * handler the batch ended.
+         *
+         * @param handler The handler of the events.
+         * @return The number of events handled.
+         */
+        public int poll(ITelemetryEventHandler handler) {
+            long from = sequence.get() + 1;
+            long available = cursor.get();
+            for (long next = from; next <= available; next++) {
+                int slot = (int) next & mask;
+                handler.onEvent(next, playerIndices[slot], gameTicks[slot], ordinals[slot], values[slot]);
+            }
+            if (available < from) return 0;
+            sequence.lazySet(available);
+            handler.onEndOfBatch();
+            return (int) (available - from + 1);
+        }
+
+        /**
+         * Waits until an event is published that this reader has not read yet, with the wait strategy of the reader.
+         *
+         * @param timeout The maximum time to wait.
+         * @param unit    The unit of the timeout.
+         * @return True if there is an event to read.
+         * @throws InterruptedException If the thread is interrupted while waiting.
+         */
+        public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            int tries = 0;
+            while (cursor.get() <= sequence.get()) {
+                if (Thread.interrupted()) throw new InterruptedException();
+                if (System.nanoTime() - deadline >= 0) return false;
+                if (waitStrategy == WaitStrategy.BUSY_SPIN || tries++ < SPIN_TRIES) continue;
+                if (waitStrategy == WaitStrategy.YIELD) Thread.yield();
+                else LockSupport.parkNanos(SLEEP_NANOS);
+            }
+            return true;
+        }
+
+        /**
+         * Returns the number of published events this reader has not read yet.
+         *
+         * @return The backlog of the reader.
+         */
+        public long getBacklog() {
+            return cursor.get() - sequence.get();
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package cz.lukasmojzis.telemetrymod;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * The TelemetryMetrics class is the registry of the metrics the Telemetry Mod keeps about itself: counters of the
+ * transactions and bytes going through the pipeline, gauges of its current state, and latency histograms of its
+ * hot paths.
+ * <p>
+ * All metrics are registered here, once, so they can be rendered on the overlay and sent as a metrics frame in a
+ * fixed order. Updating a metric is lock-free and does not allocate.
+ */
+public class TelemetryMetrics {
+
+    private static final Map<String, Counter> counters = new LinkedHashMap<>();
+    private static final Map<String, DoubleSupplier> gauges = new LinkedHashMap<>();
+    private static final Map<String, LatencyHistogram> histograms = new LinkedHashMap<>();
+
+    public static final Counter TRANSACTIONS_ENQUEUED = counter("transactionsEnqueued");
+    public static final Counter TRANSACTIONS_SENT = counter("transactionsSent");
+    public static final Counter BUNDLES_SENT = counter("bundlesSent");
+    public static final Counter BUNDLES_DROPPED = counter("bundlesDropped");
+    public static final Counter FRAMES_SENT = counter("framesSent");
+    public static final Counter BYTES_SENT = counter("bytesSent");
+    public static final Counter SEND_FAILURES = counter("sendFailures");
+    public static final Counter CONNECTIONS_OPENED = counter("connectionsOpened");
+    public static final Counter RECONNECT_ATTEMPTS = counter("reconnectAttempts");
+    public static final Counter SERVER_TICKS_SKIPPED = counter("serverTicksSkipped");
+    public static final Counter BACKPRESSURE_PAUSES = counter("backpressurePauses");
+    public static final Counter FRAMES_ACKNOWLEDGED = counter("framesAcknowledged");
+    public static final Counter FRAMES_RETRANSMITTED = counter("framesRetransmitted");
+    public static final Counter RECORDING_BUNDLES_WRITTEN = counter("recordingBundlesWritten");
+    public static final Counter RECORDING_BUNDLES_DROPPED = counter("recordingBundlesDropped");
+    public static final Counter RECORDING_BYTES_WRITTEN = counter("recordingBytesWritten");
+    public static final Counter SINK_FAILURES = counter("sinkFailures");
+    public static final Counter DATAGRAMS_SENT = counter("datagramsSent");
+    public static final Counter DATAGRAMS_DROPPED = counter("datagramsDropped");
+    public static final Counter RING_EVENTS_DROPPED = counter("ringEventsDropped");
+
+    public static final LatencyHistogram UPDATE_STATE_TIME = histogram("updateStateTime");
+    public static final LatencyHistogram ENCODE_TIME = histogram("encodeTime");
+    public static final LatencyHistogram SEND_TIME = histogram("sendTime");
+    public static final LatencyHistogram HANDOFF_LATENCY = histogram("handoffLatency");
+    public static final LatencyHistogram SERVER_CAPTURE_TIME = histogram("serverCaptureTime");
+    public static final LatencyHistogram SERVER_DIFF_TIME = histogram("serverDiffTime");
+
+    static {
+        gauge("queueDepth", TransactionController::size);
+        gauge("serverPlayers", ServerPlayerController::size);
+        gauge("bytesInFlight", () -> TelemetryMod.telemetryClient != null ? TelemetryMod.telemetryClient.getBufferedBytes() : 0);
+        gauge("framesInFlight", () -> {
+            TelemetrySender sender = TransactionController.getSender();
+            return sender != null ? sender.getFramesInFlight() : 0;
+        });
+        gauge("deflateRatio", () -> TelemetryWebSocketClient.getDeflateMetrics().getRatio());
+        gauge("deflateCpuMillis", () -> TelemetryWebSocketClient.getDeflateMetrics().getCpuTimeMillis());
+        gauge("frameCompressionRatio", () -> {
+            TelemetrySender sender = TransactionController.getSender();
+            return sender != null ? sender.getFrameCompressionMetrics().getRatio() : 1;
+        });
+    }
+
+    /**
+     * A monotonic counter.
+     */
+    public static class Counter {
+        private final LongAdder value = new LongAdder();
+
+        /**
+         * Increments the counter by one.
+         */
+        public void increment() {
+            value.increment();
+        }
+
+        /**
+         * Increments the counter by the given amount.
+         *
+         * @param amount The amount to add.
+         */
+        public void add(long amount) {
+            value.add(amount);
+        }
+
+        /**
+         * Returns the current value of the counter.
+         *
+         * @return The current value.
+         */
+        public long get() {
+            return value.sum();
+        }
+    }
+
+    private static Counter counter(String name) {
+        Counter counter = new Counter();
+        counters.put(name, counter);
+        return counter;
+    }
+
+    private static void gauge(String name, DoubleSupplier supplier) {
+        gauges.put(name, supplier);
+    }
+
+    private static LatencyHistogram histogram(String name) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histograms.put(name, histogram);
+        return histogram;
+    }
+
+    /**
+     * Appends a metrics frame with the current value of every metric, as a JSON object in the same shape as a
+     * transaction: {@code {"TelemetryMetrics":{"time":...,"counters":{...},"gauges":{...},"histograms":{...}}}}.
+     * Histogram values are in nanoseconds.
+     *
+     * @param out The builder to append to.
+     */
+    public static void appendJson(StringBuilder out) {
+        out.append("{\"TelemetryMetrics\":{\"time\":").append(System.currentTimeMillis());
+
+        out.append(",\"counters\":{");
+        boolean first = true;
+        for (Map.Entry<String, Counter> counter : counters.entrySet()) {
+            if (!first) out.append(',');
+            first = false;
+            TransactionJsonEncoder.appendString(out, counter.getKey());
+            out.append(':').append(counter.getValue().get());
+        }
+
+        out.append("},\"gauges\":{");
+        first = true;
+        for (Map.Entry<String, DoubleSupplier> gauge : gauges.entrySet()) {
+            if (!first) out.append(',');
+            first = false;
+            TransactionJsonEncoder.appendString(out, gauge.getKey());
+            out.append(':').append(gauge.getValue().getAsDouble());
+        }
+
+        out.append("},\"histograms\":{");
+        first = true;
+        for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+            if (!first) out.append(',');
+            first = false;
+            LatencyHistogram histogram = entry.getValue();
+            TransactionJsonEncoder.appendString(out, entry.getKey());
+            out.append(":{\"count\":").append(histogram.getCount())
+                    .append(",\"mean\":").append(histogram.getMean())
+                    .append(",\"p50\":").append(histogram.getPercentile(50))
+                    .append(",\"p90\":").append(histogram.getPercentile(90))
+                    .append(",\"p99\":").append(histogram.getPercentile(99))
+                    .append(",\"max\":").append(histogram.getMax())
+                    .append('}');
+        }
+        out.append("}}}");
+    }
+
+    /**
+     * Describes every metric in a short line of text, for the overlay.
+     *
+     * @return One line per metric.
+     */
+    public static List<String> describe() {
+        List<String> lines = new ArrayList<>();
+        for (Map.Entry<String, Counter> counter : counters.entrySet()) {
+            lines.add(String.format("%s: %d", counter.getKey(), counter.getValue().get()));
+        }
+        for (Map.Entry<String, DoubleSupplier> gauge : gauges.entrySet()) {
+            lines.add(String.format("%s: %.2f", gauge.getKey(), gauge.getValue().getAsDouble()));
+        }
+        for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            lines.add(String.format("%s: p50 %.3f ms, p99 %.3f ms, max %.3f ms", entry.getKey(),
+                    histogram.getPercentile(50) / 1e6, histogram.getPercentile(99) / 1e6, histogram.getMax() / 1e6));
+        }
+        return lines;
+    }
+}
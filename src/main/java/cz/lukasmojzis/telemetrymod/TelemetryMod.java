@@ -8,6 +8,7 @@ import net.minecraft.server.management.PlayerList;
 import net.minecraft.util.text.TextComponentString;
 import net.minecraft.util.text.TextFormatting;
 import net.minecraft.world.World;
+import net.minecraftforge.common.DimensionManager;
 import net.minecraftforge.common.MinecraftForge;
 import net.minecraftforge.fml.common.FMLCommonHandler;
 import net.minecraftforge.fml.common.Mod;
@@ -18,7 +19,6 @@ import net.minecraftforge.fml.common.event.FMLServerStartingEvent;
 import net.minecraftforge.fml.common.event.FMLServerStoppedEvent;
 import org.apache.logging.log4j.Logger;
 
-import java.io.*;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.List;
@@ -36,8 +36,6 @@ public class TelemetryMod {
     public static final String AUTHOR = "Lukáš Mojžíš>";
     public static final String VERSION = "1.0";
 
-    static final File GLOBAL_DEATHS_FILE = new File("global_deaths.txt");
-
 
     @Mod.Instance(MODID)
     public static TelemetryMod instance;
@@ -56,6 +54,7 @@ public class TelemetryMod {
     @EventHandler
     public static void onServerStarting(FMLServerStartingEvent event) {
         server = FMLCommonHandler.instance().getMinecraftServerInstance();
+        TransactionController.setSaveDirectory(DimensionManager.getCurrentSaveRootDirectory());
     }
 
     /**
@@ -81,66 +80,15 @@ public class TelemetryMod {
         }
     }
 
-    // Death Counting: onPlayerDeath, readGlobalDeathCount, createDeathsFile, and writeGlobalDeathCount are related
-    // to recording the number of player deaths. Whenever a player dies, onPlayerDeath increments a death count stored
-    // in global_deaths.txt.
-
     /**
      * Called when a player dies in the game.
-     * Increments the global death count and updates the global_deaths.txt file.
-     * The death count is used to track the total number of player deaths across sessions.
-     */
-    public static synchronized void onPlayerDeath() {
-        // TODO: Differentiate which player died
-        int deathCount = readGlobalDeathCount();
-        deathCount++;
-        writeGlobalDeathCount(deathCount);
-    }
-
-    /**
-     * Creates the global_deaths.txt file and initializes the death count to 0.
-     */
-    static int readGlobalDeathCount() {
-        if (!TelemetryMod.GLOBAL_DEATHS_FILE.exists()) {
-            createDeathsFile();
-            return 0;
-        }
-
-        try (BufferedReader reader = new BufferedReader(new FileReader(TelemetryMod.GLOBAL_DEATHS_FILE))) {
-            String line = reader.readLine();
-            if (line != null) {
-                return Integer.parseInt(line);
-            }
-        } catch (IOException e) {
-            TelemetryMod.logger.error("Failed to read global death count", e);
-        }
-        return 0;
-    }
-
-    /**
-     * Creates the global_deaths.txt file and initializes the death count to 0.
-     */
-    private static void createDeathsFile() {
-        try {
-            if (TelemetryMod.GLOBAL_DEATHS_FILE.createNewFile()) {
-                writeGlobalDeathCount(0);
-            }
-        } catch (IOException e) {
-            TelemetryMod.logger.error("Failed to create deaths file", e);
-        }
-    }
-
-    /**
-     * Writes the provided death count to the global_deaths.txt file.
+     * Records the death of the player in the {@link DeathCounter}, which keeps the total and per-player death
+     * counts across sessions.
      *
-     * @param deathCount The death count to be written.
+     * @param player The player who died.
      */
-    private static void writeGlobalDeathCount(int deathCount) {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(TelemetryMod.GLOBAL_DEATHS_FILE))) {
-            writer.write(Integer.toString(deathCount));
-        } catch (IOException e) {
-            TelemetryMod.logger.error("Failed to write global death count", e);
-        }
+    public static void onPlayerDeath(EntityPlayer player) {
+        DeathCounter.recordDeath(player.getUniqueID());
     }
 
     /**
@@ -152,7 +100,9 @@ public class TelemetryMod {
     @EventHandler
     public void preInit(FMLPreInitializationEvent event) {
         logger = event.getModLog();
-        minecraft = Minecraft.getMinecraft();
+        if (event.getSide().isClient()) {
+            minecraft = Minecraft.getMinecraft();
+        }
     }
 
     /**
@@ -165,23 +115,42 @@ public class TelemetryMod {
     public void init(FMLInitializationEvent event) {
         logger.info("The {} by {} has been initialized", NAME, AUTHOR);
         MinecraftForge.EVENT_BUS.register(this);
+        PropertyPolicy.reload();
         try {
             telemetryClient = new TelemetryWebSocketClient(new URI(ModConfig.websocket.uri));
         } catch (URISyntaxException e) {
             throw new RuntimeException(e);
         }
         telemetryClient.connect();
+        TransactionController.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(TelemetryMod::shutdown, "TelemetryMod Shutdown"));
     }
 
     /**
      * Called when the server is stopped.
-     * Resets the server, overworld, and calendar instances to null.
+     * Resets the server, overworld, and calendar instances to null and stops tracking the players of the server.
+     * On a dedicated server, stopping the server ends the game, so the background threads are shut down as well.
      *
      * @param event The FMLServerStoppedEvent.
      */
     @EventHandler
     public void onServerStopped(FMLServerStoppedEvent event) {
         server = null;
+        TransactionController.setSaveDirectory(null);
+        ServerPlayerController.onServerStopped();
+        if (minecraft == null) shutdown();
+    }
+
+    /**
+     * Shuts the background threads of the mod down: closes the connection to the telemetry server, stops the sender
+     * and shuts the shared scheduler down, after it wrote the death counts. Called when a dedicated server stops and
+     * on game exit; calling it again does nothing.
+     */
+    static synchronized void shutdown() {
+        if (TelemetryScheduler.isShutdown()) return;
+        if (telemetryClient != null) telemetryClient.shutdown();
+        TransactionController.stop();
+        TelemetryScheduler.shutdown();
     }
 
 }
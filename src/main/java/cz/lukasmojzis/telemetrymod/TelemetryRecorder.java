@@ -0,0 +1,235 @@
+package cz.lukasmojzis.telemetrymod;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The TelemetryRecorder class is the file {@link ITelemetrySink}: it records the transaction bundles of every session
+ * into a local file on a background thread, alongside the WebSocket output, so a session is recorded even when no
+ * telemetry server is reachable.
+ * <p>
+ * The game thread offers the bundles through a bounded queue; when the recorder falls behind, the bundles that do not
+ * fit are dropped from the recording, never from the other sinks. The recorder thread writes them with a
+ * {@link RecordingWriter}, one file per session. A session starts with the first bundle after the recording directory
+ * was set, i.e. when a world is loaded, and ends when the directory changes or the recorder is stopped.
+ */
+public class TelemetryRecorder implements ITelemetrySink, Runnable {
+
+    /**
+     * The file name extension of the recordings.
+     */
+    public static final String EXTENSION = ".tmrec";
+
+    /**
+     * The time the recorder waits for a new bundle before it writes out the current block.
+     */
+    private static final long IDLE_TIMEOUT_MS = 1000;
+
+    /**
+     * The time {@link #stop()} waits for the current session to be closed.
+     */
+    private static final long STOP_TIMEOUT_MS = 2000;
+
+    private final BlockingQueue<TransactionBundle> queue;
+    private volatile Thread thread;
+
+    /**
+     * The directory the recordings should be written to, as requested by the game thread.
+     */
+    private volatile File directory;
+    private File openDirectory;
+    private RecordingWriter writer;
+
+    /**
+     * The file of the latest session, as read by the game thread.
+     */
+    private volatile File lastFile;
+
+    /**
+     * Constructs a recorder with a queue of the given capacity.
+     *
+     * @param capacity The maximum number of bundles waiting to be recorded.
+     */
+    public TelemetryRecorder(int capacity) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+    }
+
+    @Override
+    public String getName() {
+        return "Recording";
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return ModConfig.recording.enabled;
+    }
+
+    /**
+     * Starts the recorder thread, unless it is already running.
+     */
+    @Override
+    public synchronized void start() {
+        if (thread != null) return;
+        thread = new Thread(this, "TelemetryMod Recorder");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the recorder thread. The current session is closed once the bundles waiting in the queue are written;
+     * this method waits a short while for that, so the recording is complete when the game exits.
+     */
+    @Override
+    public synchronized void stop() {
+        if (thread == null) return;
+        Thread stopped = thread;
+        thread = null;
+        stopped.interrupt();
+        try {
+            stopped.join(STOP_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Offers a bundle to be recorded. Called from the game thread; never blocks.
+     *
+     * @param bundle The bundle to record.
+     */
+    @Override
+    public void offer(TransactionBundle bundle) {
+        if (!queue.offer(bundle)) TelemetryMetrics.RECORDING_BUNDLES_DROPPED.increment();
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * Requests the recordings to be written to the given directory. The current session, if any, is closed and the
+     * next bundle starts a new one there.
+     *
+     * @param directory The recording directory, or null to stop recording.
+     */
+    public void setDirectory(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Takes bundles from the queue and writes them to the recording of the current session, until the recorder
+     * thread is stopped.
+     */
+    @Override
+    public void run() {
+        while (thread == Thread.currentThread()) {
+            try {
+                TransactionBundle bundle = queue.poll(IDLE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                syncDirectory();
+                if (bundle == null) {
+                    if (writer != null) {
+                        writer.flushBlock();
+                        writer.flush();
+                    }
+                    continue;
+                }
+                record(bundle);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (IOException e) {
+                TelemetryMod.logger.error("Failed to write the telemetry recording, stopping it", e);
+                closeWriter();
+                openDirectory = null;
+            }
+        }
+
+        try {
+            TransactionBundle bundle;
+            while ((bundle = queue.poll()) != null && writer != null) {
+                writer.write(bundle);
+            }
+        } catch (IOException e) {
+            TelemetryMod.logger.error("Failed to write the telemetry recording", e);
+        }
+        closeWriter();
+    }
+
+    /**
+     * Closes the current session when the requested directory differs from the one it is written to.
+     */
+    private void syncDirectory() {
+        File requested = directory;
+        if (requested == null ? openDirectory == null : requested.equals(openDirectory)) return;
+        closeWriter();
+        openDirectory = requested;
+    }
+
+    /**
+     * Returns the recording of the latest session, which is still being written if the session is not over.
+     *
+     * @return The recording file, or null if nothing was recorded yet.
+     */
+    public File getLastFile() {
+        return lastFile;
+    }
+
+    /**
+     * Writes a bundle to the recording of the current session, starting a new session if there is none.
+     *
+     * @param bundle The bundle to record.
+     * @throws IOException If the recording cannot be created or written.
+     */
+    private void record(TransactionBundle bundle) throws IOException {
+        if (openDirectory == null) return;
+        if (writer == null) {
+            if (!openDirectory.isDirectory() && !openDirectory.mkdirs()) {
+                throw new IOException(String.format("Failed to create recording directory %s", openDirectory));
+            }
+            File file = newSessionFile(openDirectory);
+            writer = new RecordingWriter(file, TransactionController.getIdGenerator().getSessionId(), ModConfig.recording.blockTicks, ModConfig.recording.keyframeBlocks);
+            lastFile = file;
+            TelemetryMod.logger.info("Recording telemetry to {}", file);
+        }
+        long sizeBefore = writer.size();
+        writer.write(bundle);
+        TelemetryMetrics.RECORDING_BUNDLES_WRITTEN.increment();
+        TelemetryMetrics.RECORDING_BYTES_WRITTEN.add(writer.size() - sizeBefore);
+    }
+
+    /**
+     * Closes the recording of the current session, if any.
+     */
+    private void closeWriter() {
+        if (writer == null) return;
+        try {
+            long sizeBefore = writer.size();
+            writer.close();
+            TelemetryMetrics.RECORDING_BYTES_WRITTEN.add(writer.size() - sizeBefore);
+        } catch (IOException e) {
+            TelemetryMod.logger.error("Failed to close the telemetry recording", e);
+        }
+        writer = null;
+    }
+
+    /**
+     * Returns a file for a new session in the given directory, named after the current time.
+     *
+     * @param directory The recording directory.
+     * @return The file of the new session, which does not exist yet.
+     */
+    private static File newSessionFile(File directory) {
+        String name = "session-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+        File file = new File(directory, name + EXTENSION);
+        for (int suffix = 2; file.exists(); suffix++) {
+            file = new File(directory, name + "-" + suffix + EXTENSION);
+        }
+        return file;
+    }
+}
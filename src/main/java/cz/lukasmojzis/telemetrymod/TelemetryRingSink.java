@@ -0,0 +1,82 @@
+package cz.lukasmojzis.telemetrymod;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The TelemetryRingSink class keeps the latest transaction bundles in memory, in a ring of fixed capacity, so the
+ * overlay can show the most recent transactions without touching any other sink. The oldest bundle is overwritten
+ * when the ring is full, so the sink never falls behind.
+ */
+public class TelemetryRingSink implements ITelemetrySink {
+
+    private final TransactionBundle[] ring;
+    private int next = 0;
+    private int count = 0;
+
+    /**
+     * Constructs a ring sink keeping the given number of bundles.
+     *
+     * @param capacity The number of bundles kept.
+     */
+    public TelemetryRingSink(int capacity) {
+        this.ring = new TransactionBundle[Math.max(1, capacity)];
+    }
+
+    @Override
+    public String getName() {
+        return "Ring";
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return ModConfig.showRecentTransactions;
+    }
+
+    @Override
+    public void start() {
+    }
+
+    @Override
+    public synchronized void stop() {
+        for (int i = 0; i < ring.length; i++) {
+            ring[i] = null;
+        }
+        count = 0;
+    }
+
+    @Override
+    public synchronized void offer(TransactionBundle bundle) {
+        ring[next] = bundle;
+        next = (next + 1) % ring.length;
+        if (count < ring.length) count++;
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return 0;
+    }
+
+    /**
+     * Describes the latest transactions, newest first, one transaction per line.
+     *
+     * @param max The maximum number of lines.
+     * @return The lines describing the transactions.
+     */
+    public synchronized List<String> describeRecent(int max) {
+        List<String> lines = new ArrayList<>(max);
+        for (int i = 1; i <= count && lines.size() < max; i++) {
+            TransactionBundle bundle = ring[(next - i + ring.length) % ring.length];
+            for (Map<String, Map<PlayerProperty, Object>> players : bundle.getTransactions().values()) {
+                for (Map.Entry<String, Map<PlayerProperty, Object>> player : players.entrySet()) {
+                    for (Map.Entry<PlayerProperty, Object> property : player.getValue().entrySet()) {
+                        if (lines.size() == max) return lines;
+                        lines.add(String.format("%d %s %s: %s", bundle.getGameTick(), player.getKey(), property.getKey(), property.getValue()));
+                    }
+                }
+            }
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,100 @@
+package cz.lukasmojzis.telemetrymod;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The TelemetryScheduler class is the single background scheduler for the I/O of the mod: reconnecting to the
+ * WebSocket and OBS servers, sending commands to OBS and writing the death counts.
+ * <p>
+ * It runs on one daemon thread, so tasks run one at a time, in the order they are due, and must never block; tasks
+ * scheduled by the same component can rely on that and share state without locking. The scheduler lives as long as
+ * the game and is shut down once, on game exit or when a dedicated server stops.
+ */
+public class TelemetryScheduler {
+
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 2000;
+
+    private static final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+        Thread thread = new Thread(runnable, "TelemetryMod Scheduler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        executor.setRemoveOnCancelPolicy(true);
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    }
+
+    /**
+     * Runs a task on the scheduler thread as soon as possible. Does nothing once the scheduler is shut down.
+     *
+     * @param task The task to run.
+     */
+    public static void execute(Runnable task) {
+        try {
+            executor.execute(guard(task));
+        } catch (RejectedExecutionException e) {
+            TelemetryMod.logger.debug("Dropped a task submitted after the scheduler was shut down");
+        }
+    }
+
+    /**
+     * Runs a task on the scheduler thread after a delay.
+     *
+     * @param task  The task to run.
+     * @param delay The delay.
+     * @param unit  The unit of the delay.
+     * @return The future to cancel the task with, or null if the scheduler is shut down.
+     */
+    public static ScheduledFuture<?> schedule(Runnable task, long delay, TimeUnit unit) {
+        try {
+            return executor.schedule(guard(task), delay, unit);
+        } catch (RejectedExecutionException e) {
+            TelemetryMod.logger.debug("Dropped a task scheduled after the scheduler was shut down");
+            return null;
+        }
+    }
+
+    /**
+     * Returns whether the scheduler is shut down.
+     *
+     * @return True if no more tasks are run.
+     */
+    public static boolean isShutdown() {
+        return executor.isShutdown();
+    }
+
+    /**
+     * Shuts the scheduler down. Tasks that are due already, e.g. writing the death counts, still run; delayed tasks,
+     * e.g. reconnects, are dropped. Waits a short while for the running tasks to finish.
+     */
+    static void shutdown() {
+        if (executor.isShutdown()) return;
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                TelemetryMod.logger.warn("The scheduler did not finish its tasks in time");
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Wraps a task so an exception thrown by it is logged instead of being swallowed by its future.
+     */
+    private static Runnable guard(Runnable task) {
+        return () -> {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                TelemetryMod.logger.error("A scheduled task failed", e);
+            }
+        };
+    }
+}
@@ -0,0 +1,727 @@
+package cz.lukasmojzis.telemetrymod;
+
+import org.java_websocket.exceptions.WebsocketNotConnectedException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The TelemetrySender class encodes and sends transaction bundles on a background thread, so neither JSON encoding
+ * nor a slow socket ever holds up the game thread.
+ * <p>
+ * The sender is the WebSocket {@link ITelemetrySink}: the game thread offers it finished bundles through a bounded
+ * handoff queue. When the queue is full, the configured {@link OverflowPolicy} decides whether the remaining bundles
+ * wait in the backlog of the sender or the oldest queued bundles are dropped. The sender thread takes the bundles, encodes them and sends them
+ * through the WebSocket client, one bundle per frame or batched, and keeps unsent bundles in order while the client
+ * is not connected.
+ * <p>
+ * When spooling is enabled, unsent bundles are not kept in memory while the client is not connected; they are
+ * encoded and appended to a {@link TelemetrySpool} instead. After reconnecting, the spooled bundles are replayed in
+ * tick order before any newer bundle is sent.
+ * <p>
+ * Sending is flow controlled by the bytes buffered in the outgoing queue of the WebSocket client. Once they reach the
+ * configured high-water mark, the sender stops taking bundles, even from the handoff queue, until the socket has
+ * drained the queue down to the low-water mark; meanwhile, the handoff queue fills up and its overflow policy
+ * applies, instead of the client's queue growing on the heap.
+ * <p>
+ * When acknowledgements are enabled, a frame is only delivered once the server acknowledged it. Sent frames wait in a
+ * bounded {@link InFlightWindow}, which stops sending while it is full, and spooled bundles are only checkpointed once
+ * acknowledged. After a reconnect, the unacknowledged frames are sent again, before any newer one.
+ */
+public class TelemetrySender implements ITelemetrySink, Runnable {
+
+    /**
+     * The time the sender waits before retrying after the WebSocket client was found closed.
+     */
+    private static final long RETRY_DELAY_MS = 5000;
+
+    /**
+     * The time the sender waits for a new bundle before checking whether it should stop.
+     */
+    private static final long POLL_TIMEOUT_MS = 1000;
+
+    /**
+     * The time the sender waits before checking the outgoing queue again, while it is above the low-water mark.
+     */
+    private static final long BACKPRESSURE_POLL_MS = 20;
+
+    private final BlockingQueue<TransactionBundle> handoffQueue;
+    private final BlockingQueue<TransactionBundle> backlog = new LinkedBlockingQueue<>();
+    private final ArrayDeque<TransactionBundle> pending = new ArrayDeque<>();
+    private final List<TransactionBundle> frameBundles = new ArrayList<>();
+    private final StringBuilder frame = new StringBuilder(1024);
+    private final TransactionJsonEncoder jsonEncoder = new TransactionJsonEncoder(TransactionController.getIdGenerator());
+    private final TransactionBinaryEncoder binaryEncoder = new TransactionBinaryEncoder(TransactionController.getIdGenerator());
+    private final CompressionMetrics frameCompressionMetrics = new CompressionMetrics();
+    private final TransactionFrameCompressor frameCompressor = new TransactionFrameCompressor(frameCompressionMetrics);
+
+    private final StringBuilder metricsFrame = new StringBuilder(1024);
+    private long lastMetricsFrameAt = System.nanoTime();
+
+    private volatile Thread thread;
+    private volatile int pendingCount = 0;
+    private volatile int spoolCount = 0;
+
+    /**
+     * True while the outgoing queue of the client is above the high-water mark and has not drained to the
+     * low-water mark yet.
+     */
+    private boolean throttled = false;
+
+    /**
+     * The frames waiting for an acknowledgement, or null if acknowledgements are disabled.
+     */
+    private final InFlightWindow window;
+    private int lastConnectionCount = 0;
+    private long frameLastSequence = 0;
+    private volatile int framesInFlight = 0;
+
+    /**
+     * The directory the spool should be opened in, as requested by the game thread.
+     */
+    private volatile File spoolDirectory;
+    private File openSpoolDirectory;
+    private TelemetrySpool spool;
+
+    /**
+     * Defines what happens to finished bundles when the handoff queue is full.
+     */
+    public enum OverflowPolicy {
+        /**
+         * Bundles that do not fit wait in an unbounded backlog until the sender catches up. Nothing is lost,
+         * but the backlog keeps growing while the sender is stalled.
+         */
+        KEEP_IN_OUTBOX,
+        /**
+         * The oldest queued bundles are dropped to make room for the newest ones, which bounds the memory
+         * used for telemetry at the cost of losing history.
+         */
+        DROP_OLDEST
+    }
+
+    /**
+     * Constructs a sender with a handoff queue of the given capacity.
+     *
+     * @param capacity The maximum number of bundles waiting in the handoff queue.
+     */
+    public TelemetrySender(int capacity) {
+        this.handoffQueue = new ArrayBlockingQueue<>(capacity);
+        this.window = ModConfig.websocket.acknowledgements ? new InFlightWindow(ModConfig.websocket.maxFramesInFlight) : null;
+    }
+
+    @Override
+    public String getName() {
+        return "WebSocket";
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return ModConfig.websocket.enabled;
+    }
+
+    /**
+     * Starts the sender thread, unless it is already running.
+     */
+    @Override
+    public synchronized void start() {
+        if (thread != null) return;
+        thread = new Thread(this, "TelemetryMod Sender");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the sender thread. Bundles that were not sent yet are discarded.
+     */
+    @Override
+    public synchronized void stop() {
+        if (thread == null) return;
+        thread.interrupt();
+        thread = null;
+    }
+
+    /**
+     * Moves a finished bundle to the handoff queue. Called from the game thread; it only moves references and never
+     * encodes or sends anything itself. While the backlog holds bundles, new bundles are appended to it, so the
+     * bundles are still taken in order.
+     *
+     * @param bundle The bundle to send.
+     */
+    @Override
+    public void offer(TransactionBundle bundle) {
+        bundle.handedOffAt = System.nanoTime();
+        if (ModConfig.websocket.overflowPolicy == OverflowPolicy.KEEP_IN_OUTBOX) {
+            if (!backlog.isEmpty() || !handoffQueue.offer(bundle)) backlog.add(bundle);
+            return;
+        }
+        while (!handoffQueue.offer(bundle)) {
+            if (handoffQueue.poll() != null) {
+                TelemetryMetrics.BUNDLES_DROPPED.increment();
+            }
+        }
+    }
+
+    /**
+     * Requests the spool to be kept in the given directory. The spool is opened, or moved, by the sender thread.
+     *
+     * @param directory The spool directory, or null to stop spooling.
+     */
+    public void setSpoolDirectory(File directory) {
+        this.spoolDirectory = directory;
+    }
+
+    /**
+     * Takes bundles from the handoff queue, encodes and sends them, until the sender thread is stopped.
+     */
+    @Override
+    public void run() {
+        while (thread == Thread.currentThread()) {
+            try {
+                syncSpool();
+                TelemetryWebSocketClient telemetryClient = TelemetryMod.telemetryClient;
+                boolean ready = telemetryClient != null && telemetryClient.isReadyToSend();
+                if (ready) syncWindow(telemetryClient);
+                if (ready && !canSend(telemetryClient)) {
+                    Thread.sleep(BACKPRESSURE_POLL_MS);
+                    continue;
+                }
+                boolean hasPending = takePending();
+
+                // The connection may have been closed or reopened while waiting for a bundle; a reopened one has to
+                // get the frames in flight first, so nothing is sent before the window was synced with it.
+                boolean open = ready && telemetryClient.isReadyToSend() && telemetryClient.getConnectionCount() == lastConnectionCount;
+                if (ready && !open) continue;
+                if (open) sendMetricsIfDue(telemetryClient);
+
+                if (spool != null) {
+                    drainHandoffQueue();
+                    if (!open || !spool.isEmpty()) spillPending();
+                    if (!open) continue;
+                    replaySpool(telemetryClient);
+                    if (!spool.isEmpty()) continue;
+                } else if (!hasPending) {
+                    continue;
+                }
+
+                if (!open) {
+                    TelemetryMod.logger.error("Failed to send transaction bundle: The Websocket client is not open!");
+                    Thread.sleep(RETRY_DELAY_MS);
+                    continue;
+                }
+
+                sendPending(telemetryClient);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (WebsocketNotConnectedException e) {
+                TelemetryMetrics.SEND_FAILURES.increment();
+                TelemetryMod.logger.error("Failed to send transaction bundle", e);
+                sleepQuietly();
+            } catch (IOException e) {
+                TelemetryMod.logger.error("Failed to read the telemetry spool, keeping unsent telemetry in memory", e);
+                closeSpool();
+            } catch (Exception e) {
+                handleUnexpectedError(e);
+            }
+        }
+        closeSpool();
+    }
+
+    /**
+     * Opens, moves or closes the spool to match the directory requested by the game thread and the configuration.
+     */
+    private void syncSpool() {
+        File requested = ModConfig.websocket.spoolEnabled ? spoolDirectory : null;
+        if (requested == null ? openSpoolDirectory == null : requested.equals(openSpoolDirectory)) return;
+
+        closeSpool();
+        openSpoolDirectory = requested;
+        if (requested == null) return;
+
+        try {
+            spool = new TelemetrySpool(requested, ModConfig.websocket.spoolSegmentMegabytes << 20, (long) ModConfig.websocket.spoolMaxMegabytes << 20);
+            spoolCount = spool.size();
+            TelemetryMod.logger.info("Spooling unsent telemetry to {} ({} bundles waiting)", requested, spool.size());
+        } catch (IOException e) {
+            TelemetryMod.logger.error("Failed to open the telemetry spool in {}, keeping unsent telemetry in memory", requested, e);
+        }
+    }
+
+    /**
+     * Closes the spool, if it is open. Spooled bundles stay on the disk until the spool is opened again.
+     */
+    private void closeSpool() {
+        if (spool == null) return;
+        if (window != null) window.dropSpooled();
+        spool.close();
+        spool = null;
+        spoolCount = 0;
+    }
+
+    /**
+     * Encodes all pending bundles and appends them to the spool. If the spool cannot be written,
+     * it is closed and the bundles stay in memory.
+     */
+    private void spillPending() {
+        TransactionBundle bundle;
+        long droppedBefore = spool.getDroppedRecords();
+        try {
+            while ((bundle = pending.peekFirst()) != null) {
+                long startedAt = System.nanoTime();
+                String json = jsonEncoder.encode(bundle);
+                TelemetryMetrics.ENCODE_TIME.record(System.nanoTime() - startedAt);
+                spool.append(bundle.getGameTick(), json);
+                pending.pollFirst();
+            }
+        } catch (IOException e) {
+            TelemetryMod.logger.error("Failed to write to the telemetry spool, keeping unsent telemetry in memory", e);
+            closeSpool();
+        }
+        if (spool != null) TelemetryMetrics.BUNDLES_DROPPED.add(spool.getDroppedRecords() - droppedBefore);
+        pendingCount = pending.size();
+        if (spool != null) spoolCount = spool.size();
+    }
+
+    /**
+     * Sends the spooled bundles in the order they were spooled, one record per frame or packed into batched frames.
+     * Records are acknowledged once the frame containing them was sent, or, with acknowledgements enabled, once the
+     * server acknowledged it. If sending fails, the unacknowledged records are replayed next time; with
+     * acknowledgements enabled, a frame joins the window before it is sent, so a frame that failed is sent again
+     * from the window after reconnecting, in its place among the other frames in flight.
+     *
+     * @param telemetryClient The WebSocket client to send the transaction data.
+     * @throws IOException If a spool segment cannot be read.
+     */
+    private void replaySpool(TelemetryWebSocketClient telemetryClient) throws IOException {
+        try {
+            while (spool.peekLength() > 0 && canSend(telemetryClient)) {
+                int records = 0;
+                if (ModConfig.websocket.batchFrames) {
+                    int maxFrameBytes = ModConfig.websocket.maxFrameBytes;
+                    frame.setLength(0);
+                    frame.append('[');
+                    int length;
+                    while ((length = spool.peekLength()) > 0 && (frame.length() == 1 || frame.length() + length + 2 <= maxFrameBytes)) {
+                        if (frame.length() > 1) frame.append(',');
+                        frame.append(spool.next());
+                        records++;
+                    }
+                    if (frame.length() == 1) break;
+                    frame.append(']');
+                    String text = frame.toString();
+                    if (window != null) window.add(text, lastIdOf(text), spool.readPosition(), records);
+                    send(telemetryClient, text);
+                } else {
+                    String record = spool.next();
+                    if (record == null) break;
+                    records++;
+                    if (window != null) window.add(record, lastIdOf(record), spool.readPosition(), records);
+                    send(telemetryClient, record);
+                }
+                TelemetryMetrics.BUNDLES_SENT.add(records);
+                if (window == null) spool.acknowledge();
+                spoolCount = spool.size();
+                framesInFlight = window != null ? window.size() : 0;
+            }
+        } catch (RuntimeException e) {
+            if (window == null) spool.rewind();
+            throw e;
+        }
+    }
+
+    /**
+     * Makes sure there is at least one bundle waiting to be sent, taking it from the handoff queue if necessary.
+     *
+     * @return True if there is a bundle to send.
+     * @throws InterruptedException If the sender thread is stopped while waiting.
+     */
+    private boolean takePending() throws InterruptedException {
+        if (!pending.isEmpty()) return true;
+
+        TransactionBundle bundle = pollHandoff();
+        if (bundle == null) bundle = handoffQueue.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        if (bundle == null) return false;
+        addPending(bundle);
+        return true;
+    }
+
+    /**
+     * Moves every bundle currently waiting in the handoff queue and the backlog to the pending bundles.
+     */
+    private void drainHandoffQueue() {
+        TransactionBundle bundle;
+        while ((bundle = pollHandoff()) != null) {
+            addPending(bundle);
+        }
+    }
+
+    /**
+     * Takes the oldest bundle handed off by the game thread. The backlog is only used once the handoff queue is
+     * full, so the bundles in the handoff queue are always older than the ones in the backlog.
+     *
+     * @return The oldest bundle, or null if there is none.
+     */
+    private TransactionBundle pollHandoff() {
+        TransactionBundle bundle = handoffQueue.poll();
+        return bundle != null ? bundle : backlog.poll();
+    }
+
+    /**
+     * Adds a bundle taken from the handoff queue to the pending bundles and records its handoff latency.
+     *
+     * @param bundle The bundle taken from the handoff queue.
+     */
+    private void addPending(TransactionBundle bundle) {
+        TelemetryMetrics.HANDOFF_LATENCY.record(System.nanoTime() - bundle.handedOffAt);
+        pending.addLast(bundle);
+        pendingCount = pending.size();
+    }
+
+    /**
+     * Sends all pending bundles, either one frame per bundle or packed into batched frames, in the binary format if
+     * the server accepted it and in the JSON format otherwise.
+     * A bundle is only removed from the pending bundles once the frame containing it was sent. With acknowledgements
+     * enabled, a frame joins the window before it is sent instead, so a frame that failed is sent again from the
+     * window after reconnecting.
+     *
+     * @param telemetryClient The WebSocket client to send the transaction data.
+     */
+    private void sendPending(TelemetryWebSocketClient telemetryClient) {
+        drainHandoffQueue();
+        boolean binary = telemetryClient.isBinaryProtocol();
+
+        while (!pending.isEmpty() && canSend(telemetryClient)) {
+            long startedAt = System.nanoTime();
+            String text = null;
+            ByteBuffer bytes = null;
+            int bundles = 1;
+            long lastSequence;
+            if (ModConfig.websocket.batchFrames) {
+                if (binary) {
+                    fillBinaryBatch();
+                    bytes = compressFrame(binaryEncoder.frame());
+                } else {
+                    fillBatch();
+                    text = frame.toString();
+                }
+                bundles = frameBundles.size();
+                lastSequence = frameLastSequence;
+            } else {
+                if (binary) {
+                    bytes = binaryEncoder.encode(pending.peekFirst());
+                } else {
+                    text = jsonEncoder.encode(pending.peekFirst());
+                }
+                lastSequence = TransactionController.getIdGenerator().lastSequence();
+            }
+            TelemetryMetrics.ENCODE_TIME.record(System.nanoTime() - startedAt);
+
+            // Sending a binary frame consumes its buffer, so the window has to copy it first.
+            if (window != null) {
+                if (text != null) window.add(text, idOf(lastSequence), -1, 0);
+                else window.add(bytes, idOf(lastSequence));
+                removeSent(bundles);
+            }
+            if (text != null) send(telemetryClient, text);
+            else send(telemetryClient, bytes);
+            if (window == null) removeSent(bundles);
+
+            pendingCount = pending.size();
+            framesInFlight = window != null ? window.size() : 0;
+        }
+    }
+
+    /**
+     * Removes the bundles of a frame from the pending bundles and records them as sent.
+     *
+     * @param bundles The number of bundles in the frame.
+     */
+    private void removeSent(int bundles) {
+        for (int i = 0; i < bundles; i++) {
+            markSent(pending.pollFirst());
+        }
+    }
+
+    /**
+     * Checks the bytes buffered in the outgoing queue of the client against the configured water marks. Sending stops
+     * once they reach the high-water mark, and resumes once they drop to the low-water mark.
+     *
+     * @param telemetryClient The WebSocket client.
+     * @return True if more frames can be sent.
+     */
+    private boolean canSend(TelemetryWebSocketClient telemetryClient) {
+        long buffered = telemetryClient.getBufferedBytes();
+        if (throttled) {
+            if (buffered <= (long) ModConfig.websocket.lowWaterMarkKilobytes << 10) throttled = false;
+        } else if (buffered >= (long) ModConfig.websocket.highWaterMarkKilobytes << 10) {
+            throttled = true;
+            TelemetryMetrics.BACKPRESSURE_PAUSES.increment();
+        }
+        return !throttled && (window == null || window.hasRoom());
+    }
+
+    /**
+     * Applies the acknowledgements received from the server to the frames in flight, and sends the unacknowledged
+     * frames again when the client has reconnected since the last call. Acknowledgements are discarded when they are
+     * disabled.
+     * <p>
+     * The frames are sent again in the order they were first sent, whether they were replayed from the spool or sent
+     * from memory, and before the spool replays anything after them, so a reconnect never reorders frames.
+     *
+     * @param telemetryClient The WebSocket client.
+     */
+    private void syncWindow(TelemetryWebSocketClient telemetryClient) {
+        String acknowledged;
+        while ((acknowledged = telemetryClient.pollAcknowledgement()) != null) {
+            if (window != null) TelemetryMetrics.FRAMES_ACKNOWLEDGED.add(window.acknowledge(acknowledged, spool));
+        }
+        if (spool != null) spoolCount = spool.size();
+
+        int connectionCount = telemetryClient.getConnectionCount();
+        if (window != null && connectionCount != lastConnectionCount) {
+            for (InFlightWindow.Frame inFlight : window.frames()) {
+                if (inFlight.text != null) send(telemetryClient, inFlight.text);
+                else send(telemetryClient, inFlight.bytes.duplicate());
+                TelemetryMetrics.FRAMES_RETRANSMITTED.increment();
+            }
+        }
+        lastConnectionCount = connectionCount;
+        framesInFlight = window != null ? window.size() : 0;
+    }
+
+    /**
+     * Returns the transaction ID of a sequence number.
+     *
+     * @param sequenceNumber The sequence number.
+     * @return The transaction ID.
+     */
+    private static String idOf(long sequenceNumber) {
+        StringBuilder id = new StringBuilder(36);
+        TransactionController.getIdGenerator().appendId(id, sequenceNumber);
+        return id.toString();
+    }
+
+    /**
+     * Returns the ID of the last transaction of a bundle, or of a batch of bundles, encoded as JSON.
+     *
+     * @param json The encoded bundle or batch.
+     * @return The ID of the last transaction, or null if there is none.
+     */
+    private static String lastIdOf(String json) {
+        int start = json.lastIndexOf("\"id\":\"");
+        if (start < 0) return null;
+        start += 6;
+        int end = json.indexOf('"', start);
+        return end < 0 ? null : json.substring(start, end);
+    }
+
+    /**
+     * Sends a text frame and records its size and the time it took.
+     *
+     * @param telemetryClient The WebSocket client to send the frame.
+     * @param text            The text of the frame.
+     */
+    private static void send(TelemetryWebSocketClient telemetryClient, String text) {
+        long startedAt = System.nanoTime();
+        telemetryClient.send(text);
+        TelemetryMetrics.SEND_TIME.record(System.nanoTime() - startedAt);
+        TelemetryMetrics.FRAMES_SENT.increment();
+        TelemetryMetrics.BYTES_SENT.add(utf8Length(text));
+    }
+
+    /**
+     * Returns the number of bytes a text takes in UTF-8, the encoding of WebSocket text frames, without encoding it.
+     *
+     * @param text The text.
+     * @return The length of the text in UTF-8.
+     */
+    static long utf8Length(CharSequence text) {
+        long length = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (!Character.isSurrogate(c)) {
+                length += 3;
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                // The encoder replaces a lone surrogate with '?'.
+                length++;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Sends a binary frame and records its size and the time it took.
+     *
+     * @param telemetryClient The WebSocket client to send the frame.
+     * @param bytes           The content of the frame.
+     */
+    private static void send(TelemetryWebSocketClient telemetryClient, ByteBuffer bytes) {
+        int length = bytes.remaining();
+        long startedAt = System.nanoTime();
+        telemetryClient.send(bytes);
+        TelemetryMetrics.SEND_TIME.record(System.nanoTime() - startedAt);
+        TelemetryMetrics.FRAMES_SENT.increment();
+        TelemetryMetrics.BYTES_SENT.add(length);
+    }
+
+    /**
+     * Records a bundle as sent.
+     *
+     * @param bundle The bundle that was sent.
+     */
+    private static void markSent(TransactionBundle bundle) {
+        TelemetryMetrics.BUNDLES_SENT.increment();
+        TelemetryMetrics.TRANSACTIONS_SENT.add(bundle.getTransactionCount());
+    }
+
+    /**
+     * Sends a metrics frame with the current value of every {@link TelemetryMetrics} metric, if the configured
+     * metrics interval has passed since the last one. The metrics frame is always a JSON text frame, also on binary
+     * connections, and carries no transaction ID: it is never acknowledged nor sent again, and is not counted in the
+     * metrics it reports.
+     *
+     * @param telemetryClient The WebSocket client to send the frame.
+     */
+    private void sendMetricsIfDue(TelemetryWebSocketClient telemetryClient) {
+        int interval = ModConfig.websocket.metricsIntervalSeconds;
+        if (interval <= 0 || System.nanoTime() - lastMetricsFrameAt < TimeUnit.SECONDS.toNanos(interval)) return;
+        lastMetricsFrameAt = System.nanoTime();
+
+        metricsFrame.setLength(0);
+        TelemetryMetrics.appendJson(metricsFrame);
+        telemetryClient.send(metricsFrame.toString());
+    }
+
+    /**
+     * Packs consecutive pending bundles into the batch frame, a JSON array of bundles bounded by the configured
+     * maximum frame size. The first bundle is always packed, even if it is larger than the maximum on its own.
+     */
+    private void fillBatch() {
+        int maxFrameBytes = ModConfig.websocket.maxFrameBytes;
+        frameBundles.clear();
+        frame.setLength(0);
+        frame.append('[');
+
+        for (TransactionBundle bundle : pending) {
+            int mark = frame.length();
+            if (!frameBundles.isEmpty()) frame.append(',');
+            jsonEncoder.appendBundle(frame, bundle);
+
+            if (frame.length() + 1 > maxFrameBytes && !frameBundles.isEmpty()) {
+                frame.setLength(mark);
+                break;
+            }
+            frameBundles.add(bundle);
+            frameLastSequence = TransactionController.getIdGenerator().lastSequence();
+        }
+
+        frame.append(']');
+    }
+
+    /**
+     * Packs consecutive pending bundles into a binary bundle frame bounded by the configured maximum frame size.
+     * The first bundle is always packed, even if it is larger than the maximum on its own.
+     */
+    private void fillBinaryBatch() {
+        int maxFrameBytes = ModConfig.websocket.maxFrameBytes;
+        frameBundles.clear();
+        binaryEncoder.startFrame();
+
+        for (TransactionBundle bundle : pending) {
+            if (!binaryEncoder.appendBundle(bundle, maxFrameBytes)) break;
+            frameBundles.add(bundle);
+            frameLastSequence = TransactionController.getIdGenerator().lastSequence();
+        }
+    }
+
+    /**
+     * Compresses a batched binary frame with the preset dictionary, if frame compression is enabled and the frame
+     * is not smaller than the configured minimum frame size.
+     *
+     * @param frame The batched binary frame.
+     * @return The frame to send.
+     */
+    private ByteBuffer compressFrame(ByteBuffer frame) {
+        if (!ModConfig.websocket.compressBatchedFrames || frame.remaining() < ModConfig.websocket.compressionMinFrameBytes) {
+            return frame;
+        }
+        return frameCompressor.compress(frame, ModConfig.websocket.compressionLevel);
+    }
+
+    /**
+     * Handles an unexpected error while sending. It reports the error to the players and disables the
+     * WebSocket output. The bundles that were being sent are discarded.
+     *
+     * @param e The unexpected exception.
+     */
+    private void handleUnexpectedError(Exception e) {
+        pending.clear();
+        pendingCount = 0;
+        TelemetryMod.logger.error("Unexpected error occurred", e);
+        try {
+            TelemetryMod.sendMessage(String.format("Unexpected error occurred: %s", e), null);
+            TelemetryMod.sendMessage("Please report the above error to the developer!", null);
+            TelemetryMod.sendMessage("Disabling TelemetryMod Websocket output.", null);
+            TelemetryMod.sendMessage("You can re-enable it in Mod Config > TelemetryMod > Websocket.", null);
+        } catch (Exception messageError) {
+            TelemetryMod.logger.error("Failed to report the error to the players", messageError);
+        }
+        ModConfig.websocket.enabled = false;
+    }
+
+    /**
+     * Waits for the retry delay, restoring the interrupt flag if the sender is stopped meanwhile.
+     */
+    private void sleepQuietly() {
+        try {
+            Thread.sleep(RETRY_DELAY_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns the number of bundles handed off by the game thread and not sent yet.
+     *
+     * @return The number of bundles in the handoff queue, the backlog, the pending bundles of the sender thread and
+     * the spool.
+     */
+    @Override
+    public int getQueueDepth() {
+        return handoffQueue.size() + backlog.size() + pendingCount + spoolCount;
+    }
+
+    /**
+     * Returns the number of frames sent and not acknowledged by the server yet.
+     *
+     * @return The number of frames in flight, always 0 if acknowledgements are disabled.
+     */
+    public int getFramesInFlight() {
+        return framesInFlight;
+    }
+
+    /**
+     * Returns the compression metrics of the batched binary frames compressed with the preset dictionary.
+     *
+     * @return The compression metrics.
+     */
+    public CompressionMetrics getFrameCompressionMetrics() {
+        return frameCompressionMetrics;
+    }
+
+}
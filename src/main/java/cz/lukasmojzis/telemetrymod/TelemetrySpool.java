@@ -0,0 +1,412 @@
+package cz.lukasmojzis.telemetrymod;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * The TelemetrySpool class is a durable, append-only queue of encoded transaction bundles on disk.
+ * It keeps unsent telemetry out of the heap while the telemetry server is unreachable, and survives game crashes.
+ * <p>
+ * Records are appended to memory-mapped segment files of a fixed size. When a record does not fit into the current
+ * segment, the spool rolls over to a new one. Each record is stored as its length, its game tick and its UTF-8
+ * encoded payload; a length of zero marks the end of the written data and a length of -1 marks the end of a segment.
+ * <p>
+ * Records are read through a cursor that starts at the acknowledged position. {@link #acknowledge()} checkpoints the
+ * cursor, so acknowledged records are never replayed again, and {@link #rewind()} moves the cursor back to the
+ * checkpoint, so records read but not acknowledged are replayed; {@link #acknowledge(long, int)} checkpoints an
+ * earlier position of the cursor instead, for records the telemetry server acknowledged only after the cursor moved
+ * on. Fully acknowledged segments are deleted, and when
+ * the spool grows beyond its size limit the oldest segments are deleted even if they were not acknowledged.
+ * <p>
+ * A spool is not thread-safe; it is only used by the sender thread.
+ */
+public class TelemetrySpool implements Closeable {
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".spool";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    private static final int RECORD_HEADER_BYTES = Integer.BYTES + Long.BYTES;
+    private static final int END_OF_SEGMENT = -1;
+
+    private final File directory;
+    private final int segmentBytes;
+    private final long maxBytes;
+
+    /**
+     * The segment files of the spool, by segment number.
+     */
+    private final TreeMap<Long, File> segments = new TreeMap<>();
+
+    private final MappedByteBuffer checkpoint;
+
+    private long writeSegment;
+    private MappedByteBuffer writeBuffer;
+
+    private long ackSegment;
+    private int ackOffset;
+
+    private long readSegment;
+    private MappedByteBuffer readBuffer;
+    private int readOffset;
+
+    private int unacknowledgedRecords = 0;
+    private int readRecords = 0;
+    private long droppedRecords = 0;
+
+    /**
+     * Opens the spool in the given directory, recovering the records and the checkpoint left there by an earlier run.
+     *
+     * @param directory    The directory holding the segment files.
+     * @param segmentBytes The size of a single segment file in bytes.
+     * @param maxBytes     The maximum total size of all segment files in bytes.
+     * @throws IOException If the directory or the files in it cannot be opened.
+     */
+    public TelemetrySpool(File directory, int segmentBytes, long maxBytes) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.maxBytes = maxBytes;
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException(String.format("Failed to create spool directory %s", directory));
+        }
+
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        if (files != null) {
+            for (File file : files) {
+                String number = file.getName().substring(SEGMENT_PREFIX.length(), file.getName().length() - SEGMENT_SUFFIX.length());
+                try {
+                    segments.put(Long.parseLong(number), file);
+                } catch (NumberFormatException e) {
+                    TelemetryMod.logger.warn("Ignoring unexpected file {} in the spool", file);
+                }
+            }
+        }
+
+        checkpoint = map(new File(directory, CHECKPOINT_FILE), 2 * Long.BYTES);
+        ackSegment = checkpoint.getLong(0);
+        ackOffset = (int) checkpoint.getLong(Long.BYTES);
+
+        if (segments.isEmpty()) {
+            ackSegment = 1;
+            ackOffset = 0;
+            writeSegment = 1;
+            writeBuffer = map(segmentFile(writeSegment), segmentBytes);
+        } else {
+            if (!segments.containsKey(ackSegment)) {
+                ackSegment = segments.firstKey();
+                ackOffset = 0;
+            }
+            writeSegment = segments.lastKey();
+            writeBuffer = map(segmentFile(writeSegment), segmentBytes);
+            writeBuffer.position(findEndOfData(writeBuffer, writeSegment == ackSegment ? ackOffset : 0));
+        }
+
+        deleteSegmentsBefore(ackSegment);
+        storeCheckpoint();
+        readSegment = ackSegment;
+        readOffset = ackOffset;
+        readBuffer = readSegment == writeSegment ? writeBuffer : map(segmentFile(readSegment), segmentBytes);
+        while (next() != null) unacknowledgedRecords++;
+        rewind();
+    }
+
+    /**
+     * Appends an encoded bundle to the spool, rolling over to a new segment when it does not fit into the current one.
+     *
+     * @param gameTick The game tick of the bundle.
+     * @param payload  The encoded bundle.
+     * @throws IOException If a new segment file cannot be created.
+     */
+    public void append(long gameTick, String payload) throws IOException {
+        byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+        int recordBytes = RECORD_HEADER_BYTES + bytes.length;
+        if (recordBytes + Integer.BYTES > segmentBytes) {
+            droppedRecords++;
+            TelemetryMod.logger.error("Dropping a transaction bundle of {} bytes, it does not fit into a spool segment", bytes.length);
+            return;
+        }
+
+        if (writeBuffer.remaining() < recordBytes + Integer.BYTES) {
+            writeBuffer.putInt(writeBuffer.position(), END_OF_SEGMENT);
+            rollOver();
+        }
+
+        int position = writeBuffer.position();
+        writeBuffer.position(position + Integer.BYTES);
+        writeBuffer.putLong(gameTick);
+        writeBuffer.put(bytes);
+        writeBuffer.putInt(position, bytes.length);
+        unacknowledgedRecords++;
+    }
+
+    /**
+     * Returns the payload size of the next record after the cursor, without moving the cursor past it.
+     *
+     * @return The size of the next payload in bytes, or 0 if the cursor reached the end of the written data.
+     * @throws IOException If the next segment file cannot be opened.
+     */
+    public int peekLength() throws IOException {
+        while (true) {
+            int length = readOffset + Integer.BYTES <= segmentBytes ? readBuffer.getInt(readOffset) : END_OF_SEGMENT;
+            if (length != END_OF_SEGMENT) return Math.max(length, 0);
+            if (readSegment >= writeSegment) return 0;
+
+            if (readBuffer != writeBuffer) unmap(readBuffer);
+            readSegment = segments.higherKey(readSegment);
+            readBuffer = readSegment == writeSegment ? writeBuffer : map(segmentFile(readSegment), segmentBytes);
+            readOffset = 0;
+        }
+    }
+
+    /**
+     * Reads the payload of the next record after the cursor and moves the cursor past it.
+     *
+     * @return The payload of the next record, or null if the cursor reached the end of the written data.
+     * @throws IOException If the next segment file cannot be opened.
+     */
+    public String next() throws IOException {
+        int length = peekLength();
+        if (length == 0) return null;
+
+        byte[] bytes = new byte[length];
+        ByteBuffer record = readBuffer.duplicate();
+        record.position(readOffset + RECORD_HEADER_BYTES);
+        record.get(bytes);
+        readOffset += RECORD_HEADER_BYTES + length;
+        readRecords++;
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Checkpoints the cursor, so every record read so far is never replayed again, and deletes the segments
+     * that were fully acknowledged.
+     */
+    public void acknowledge() {
+        if (readRecords == 0) return;
+
+        unacknowledgedRecords -= readRecords;
+        readRecords = 0;
+        ackSegment = readSegment;
+        ackOffset = readOffset;
+        storeCheckpoint();
+        deleteSegmentsBefore(ackSegment);
+    }
+
+    /**
+     * Returns the position of the cursor, to acknowledge the records read so far later with
+     * {@link #acknowledge(long, int)}.
+     *
+     * @return The position of the cursor.
+     */
+    public long readPosition() {
+        return readSegment << 32 | readOffset;
+    }
+
+    /**
+     * Checkpoints an earlier position of the cursor, so the records read before it are never replayed again, and
+     * deletes the segments that were fully acknowledged. Used when records are only acknowledged once the telemetry
+     * server confirmed them, while the cursor already moved on. A position at or before the checkpoint is ignored.
+     *
+     * @param position The position returned by {@link #readPosition()}.
+     * @param records  The number of records read between the checkpoint and the position.
+     */
+    public void acknowledge(long position, int records) {
+        long segment = position >>> 32;
+        int offset = (int) position;
+        if (segment < ackSegment || segment == ackSegment && offset <= ackOffset) return;
+
+        unacknowledgedRecords = Math.max(0, unacknowledgedRecords - records);
+        readRecords = Math.max(0, readRecords - records);
+        ackSegment = segment;
+        ackOffset = offset;
+        storeCheckpoint();
+        deleteSegmentsBefore(ackSegment);
+    }
+
+    /**
+     * Moves the cursor back to the last checkpoint, so the records read since then are read again.
+     *
+     * @throws IOException If the segment file of the checkpoint cannot be opened.
+     */
+    public void rewind() throws IOException {
+        if (readSegment != ackSegment) {
+            if (readBuffer != writeBuffer) unmap(readBuffer);
+            readBuffer = ackSegment == writeSegment ? writeBuffer : map(segmentFile(ackSegment), segmentBytes);
+        }
+        readSegment = ackSegment;
+        readOffset = ackOffset;
+        readRecords = 0;
+    }
+
+    /**
+     * Returns whether every record in the spool was acknowledged.
+     *
+     * @return True if there is nothing left to replay.
+     */
+    public boolean isEmpty() {
+        return unacknowledgedRecords == 0;
+    }
+
+    /**
+     * Returns the number of records in the spool that were not acknowledged yet.
+     *
+     * @return The number of unacknowledged records.
+     */
+    public int size() {
+        return unacknowledgedRecords;
+    }
+
+    /**
+     * Returns the number of records dropped because they did not fit into a segment or because their segment was
+     * deleted to keep the spool within its size limit.
+     *
+     * @return The number of dropped records.
+     */
+    public long getDroppedRecords() {
+        return droppedRecords;
+    }
+
+    /**
+     * Forces the written data and the checkpoint to the disk and releases the mapped segments.
+     */
+    @Override
+    public void close() {
+        writeBuffer.force();
+        checkpoint.force();
+        unmap(writeBuffer);
+        if (readBuffer != writeBuffer) unmap(readBuffer);
+        unmap(checkpoint);
+    }
+
+    /**
+     * Starts a new segment for writing and enforces the size limit of the spool.
+     *
+     * @throws IOException If the new segment file cannot be created.
+     */
+    private void rollOver() throws IOException {
+        writeBuffer.force();
+        if (readBuffer != writeBuffer) unmap(writeBuffer);
+
+        writeSegment++;
+        writeBuffer = map(segmentFile(writeSegment), segmentBytes);
+
+        while ((long) segments.size() * segmentBytes > maxBytes && segments.firstKey() < writeSegment) {
+            long oldest = segments.firstKey();
+            if (ackSegment == oldest) {
+                int lost = countRecords(oldest, ackOffset);
+                droppedRecords += lost;
+                unacknowledgedRecords -= lost;
+                TelemetryMod.logger.warn("The telemetry spool exceeded its size limit; dropping {} unsent transaction bundles", lost);
+                rewind();
+                ackSegment = segments.higherKey(oldest);
+                ackOffset = 0;
+                storeCheckpoint();
+                rewind();
+            }
+            deleteSegmentsBefore(ackSegment);
+        }
+    }
+
+    /**
+     * Counts the records of a segment that is not being written to, starting at a record boundary.
+     *
+     * @param segment The segment to count the records of.
+     * @param offset  The offset of the first record to count.
+     * @return The number of records from the offset to the end of the segment.
+     */
+    private int countRecords(long segment, int offset) {
+        MappedByteBuffer buffer = segment == readSegment ? readBuffer : null;
+        try {
+            if (buffer == null) buffer = map(segmentFile(segment), segmentBytes);
+            int count = 0;
+            while (offset + Integer.BYTES <= segmentBytes) {
+                int length = buffer.getInt(offset);
+                if (length <= 0) break;
+                offset += RECORD_HEADER_BYTES + length;
+                count++;
+            }
+            return count;
+        } catch (IOException e) {
+            TelemetryMod.logger.error("Failed to count the records of spool segment {}", segment, e);
+            return 0;
+        } finally {
+            if (buffer != null && buffer != readBuffer) unmap(buffer);
+        }
+    }
+
+    /**
+     * Finds the end of the written data in a segment, starting at a known record boundary.
+     */
+    private int findEndOfData(ByteBuffer buffer, int offset) {
+        while (offset + Integer.BYTES <= segmentBytes) {
+            int length = buffer.getInt(offset);
+            if (length <= 0 || offset + RECORD_HEADER_BYTES + length > segmentBytes) break;
+            offset += RECORD_HEADER_BYTES + length;
+        }
+        return offset;
+    }
+
+    /**
+     * Writes the acknowledged position to the checkpoint file.
+     */
+    private void storeCheckpoint() {
+        checkpoint.putLong(0, ackSegment);
+        checkpoint.putLong(Long.BYTES, ackOffset);
+    }
+
+    /**
+     * Deletes all segments before the given one.
+     */
+    private void deleteSegmentsBefore(long segment) {
+        List<Long> obsolete = new ArrayList<>(segments.headMap(segment).keySet());
+        for (Long number : obsolete) {
+            File file = segments.remove(number);
+            if (!file.delete()) {
+                file.deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * Returns the file of the given segment, registering it as a segment of the spool.
+     */
+    private File segmentFile(long segment) {
+        return segments.computeIfAbsent(segment, number -> new File(directory, String.format("%s%016d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX)));
+    }
+
+    /**
+     * Maps a file into memory, creating it with the given size if it does not exist yet.
+     */
+    private static MappedByteBuffer map(File file, int size) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    /**
+     * Releases a mapped buffer right away instead of waiting for the garbage collector, so its file can be deleted
+     * on every platform. Failing to do so is harmless, the mapping is then released by the garbage collector.
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(buffer);
+            if (cleaner != null) {
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+            }
+        } catch (Exception | LinkageError ignored) {
+            // Not supported by this runtime; the garbage collector releases the mapping eventually.
+        }
+    }
+}
@@ -1,13 +1,24 @@
 package cz.lukasmojzis.telemetrymod;
 
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import org.java_websocket.WebSocket;
+import org.java_websocket.WebSocketImpl;
 import org.java_websocket.client.WebSocketClient;
 import org.java_websocket.drafts.Draft_6455;
+import org.java_websocket.extensions.IExtension;
 import org.java_websocket.handshake.ServerHandshake;
+import org.java_websocket.protocols.IProtocol;
+import org.java_websocket.protocols.Protocol;
 
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -18,9 +29,11 @@ import java.util.concurrent.atomic.AtomicBoolean;
 public class TelemetryWebSocketClient extends WebSocketClient {
 
     /**
-     * The delay in milliseconds before attempting a reconnection after a connection failure.
+     * The delays in milliseconds before attempting a reconnection after a connection failure, doubling from the
+     * first to the last.
      */
-    private static final int RECONNECT_DELAY_MS = 5000;  // 5 seconds
+    private static final long RECONNECT_BASE_DELAY_MS = 1000;
+    private static final long RECONNECT_MAX_DELAY_MS = 60000;
 
     /**
      * The URI of the server to connect to.
@@ -28,9 +41,55 @@ public class TelemetryWebSocketClient extends WebSocketClient {
     private final URI serverUri;
 
     /**
-     * Atomic boolean to track if the client is currently connecting to the server.
+     * Atomic boolean to track if a reconnection attempt is scheduled.
      */
-    private final AtomicBoolean isConnecting = new AtomicBoolean();
+    private final AtomicBoolean reconnectScheduled = new AtomicBoolean();
+
+    /**
+     * The backoff of the reconnection attempts.
+     */
+    private final ReconnectBackoff backoff = new ReconnectBackoff(RECONNECT_BASE_DELAY_MS, RECONNECT_MAX_DELAY_MS);
+
+    /**
+     * True once the client is shut down, so it no longer reconnects.
+     */
+    private volatile boolean shutDown = false;
+
+    /**
+     * True once the current connection is open and ready for transaction frames, i.e. after the schema frame was
+     * sent on connections that use the binary format.
+     */
+    private volatile boolean ready = false;
+
+    /**
+     * The number of connections opened so far, so the sender can tell when it has to resend the frames in flight.
+     */
+    private volatile int connectionCount = 0;
+
+    /**
+     * The IDs of the transactions acknowledged by the server and not yet taken by the sender, oldest first.
+     */
+    private final Queue<String> acknowledgements = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The compression metrics of the permessage-deflate extension.
+     */
+    private static final CompressionMetrics deflateMetrics = new CompressionMetrics();
+
+    /**
+     * Defines the format in which the transaction bundles are sent.
+     */
+    public enum WireFormat {
+        /**
+         * Every bundle is sent as a JSON text frame.
+         */
+        JSON,
+        /**
+         * Bundles are sent as compact binary frames if the server accepts the {@value TransactionBinaryEncoder#PROTOCOL}
+         * subprotocol, and as JSON text frames otherwise.
+         */
+        BINARY
+    }
 
     /**
      * The constructor initializes the WebSocket client with a server URI.
@@ -38,35 +97,139 @@ public class TelemetryWebSocketClient extends WebSocketClient {
      * @param serverUri The URI of the server to connect to.
      */
     public TelemetryWebSocketClient(URI serverUri) {
-        super(serverUri, new Draft_6455(), new HashMap<>(), ModConfig.websocket.connectionTimeout);
-        this.isConnecting.set(false);
+        super(serverUri, createDraft(ModConfig.websocket.wireFormat), new HashMap<>(), ModConfig.websocket.connectionTimeout);
         this.serverUri = serverUri;
-        startConnectionWatcher();
+    }
+
+    /**
+     * Creates the WebSocket draft offering the subprotocols of the given wire format. The binary format is offered
+     * together with no subprotocol at all, so servers that do not know it fall back to JSON. The permessage-deflate
+     * extension is offered if it is enabled.
+     *
+     * @param wireFormat The preferred wire format.
+     * @return The draft to connect with.
+     */
+    private static Draft_6455 createDraft(WireFormat wireFormat) {
+        List<IProtocol> protocols = new ArrayList<>();
+        if (wireFormat == WireFormat.BINARY) {
+            protocols.add(new Protocol(TransactionBinaryEncoder.PROTOCOL));
+        }
+        protocols.add(new Protocol(""));
+        List<IExtension> extensions = new ArrayList<>();
+        if (ModConfig.websocket.perMessageDeflate) {
+            extensions.add(new TelemetryDeflateExtension(ModConfig.websocket.compressionLevel, deflateMetrics));
+        }
+        return new Draft_6455(extensions, protocols);
     }
 
     /**
      * This method is called when a connection is opened to the WebSocket server.
+     * If the server accepted the binary format, the schema and dictionary frames are sent before the connection is
+     * reported ready.
      *
      * @param serverHandshake The handshake data received from the server.
      */
     @Override
     public void onOpen(ServerHandshake serverHandshake) {
-        TelemetryMod.logger.info(String.format("Opened connection to telemetry server at: %s", this.serverUri));
-        this.isConnecting.set(false);
+        boolean binary = isBinaryProtocol();
+        TelemetryMod.logger.info(String.format("Opened connection to telemetry server at: %s, Format: %s", this.serverUri, binary ? WireFormat.BINARY : WireFormat.JSON));
+        if (binary) {
+            send(TransactionBinaryEncoder.encodeSchema(TransactionController.getIdGenerator().getSessionId()));
+            send(TransactionBinaryEncoder.encodeDictionary());
+        }
+        this.connectionCount++;
+        this.ready = true;
+        backoff.reset();
+        TelemetryMetrics.CONNECTIONS_OPENED.increment();
     }
 
     /**
-     * This method is called when a message is received from the WebSocket server.
+     * Returns the compression metrics of the permessage-deflate extension.
+     *
+     * @return The compression metrics.
+     */
+    public static CompressionMetrics getDeflateMetrics() {
+        return deflateMetrics;
+    }
+
+    /**
+     * Returns whether the connection is open and ready for transaction frames.
+     *
+     * @return True if transaction frames can be sent.
+     */
+    public boolean isReadyToSend() {
+        return ready && isOpen();
+    }
+
+    /**
+     * Returns the number of bytes sent on the current connection that are still waiting in the outgoing queue of the
+     * connection, i.e. were handed to {@code send} but have not been written to the socket yet.
+     *
+     * @return The number of buffered bytes.
+     */
+    public long getBufferedBytes() {
+        WebSocket connection = getConnection();
+        if (!(connection instanceof WebSocketImpl)) return 0;
+        long bytes = 0;
+        for (ByteBuffer buffer : ((WebSocketImpl) connection).outQueue) {
+            bytes += buffer.remaining();
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns whether the server accepted the binary format on the current connection.
+     *
+     * @return True if transaction bundles have to be sent in the binary format.
+     */
+    public boolean isBinaryProtocol() {
+        IProtocol protocol = getProtocol();
+        return protocol != null && TransactionBinaryEncoder.PROTOCOL.equals(protocol.getProvidedProtocol());
+    }
+
+    /**
+     * This method is called when a message is received from the WebSocket server. The only message the server sends
+     * is an acknowledgement, {@code {"ack":"<transaction id>"}}, confirming the transaction with the given ID and
+     * every transaction sent before it; it is queued for the sender.
      *
      * @param message The received message.
      */
     @Override
     public void onMessage(String message) {
-        // Handle any messages from the server here if needed
+        try {
+            JsonElement json = new JsonParser().parse(message);
+            JsonElement ack = json.isJsonObject() ? json.getAsJsonObject().get("ack") : null;
+            if (ack != null && ack.isJsonPrimitive()) {
+                acknowledgements.offer(ack.getAsString());
+                return;
+            }
+        } catch (JsonParseException | IllegalStateException e) {
+            // Not a JSON message; reported below.
+        }
+        TelemetryMod.logger.warn("Ignoring unexpected message from the telemetry server: {}", message);
     }
 
     /**
-     * This method is called when the connection to the WebSocket server is closed.
+     * Takes the oldest acknowledgement received from the server.
+     *
+     * @return The ID of the acknowledged transaction, or null if there is none.
+     */
+    public String pollAcknowledgement() {
+        return acknowledgements.poll();
+    }
+
+    /**
+     * Returns the number of connections opened so far.
+     *
+     * @return The number of opened connections.
+     */
+    public int getConnectionCount() {
+        return connectionCount;
+    }
+
+    /**
+     * This method is called when the connection to the WebSocket server is closed, or could not be opened at all.
+     * A reconnection attempt is scheduled unless the client is shut down.
      *
      * @param code   The exit code.
      * @param reason The reason for closing.
@@ -75,7 +238,8 @@ public class TelemetryWebSocketClient extends WebSocketClient {
     @Override
     public void onClose(int code, String reason, boolean remote) {
         TelemetryMod.logger.info(String.format("Closed connection to telemetry server at: %s, Code: %d, Reason: %s, Remote: %s", this.serverUri, code, reason, remote));
-        this.isConnecting.set(false);
+        this.ready = false;
+        scheduleReconnect();
     }
 
     /**
@@ -86,38 +250,51 @@ public class TelemetryWebSocketClient extends WebSocketClient {
     @Override
     public void onError(Exception e) {
         TelemetryMod.logger.error(String.format("Error in telemetry connection to server at: %s", this.serverUri), e);
-        this.isConnecting.set(false);
     }
 
     /**
-     * Attempt to reconnect to the WebSocket server.
-     * This method blocks until the reconnection is successful or an error occurs.
+     * Schedules a reconnection attempt on the shared scheduler after the backoff delay, unless one is scheduled
+     * already. Called from the threads of the connection, which must not reconnect themselves.
+     */
+    private void scheduleReconnect() {
+        if (shutDown || !reconnectScheduled.compareAndSet(false, true)) return;
+        long delay = backoff.nextDelayMillis();
+        if (TelemetryScheduler.schedule(this::startReconnectThread, delay, TimeUnit.MILLISECONDS) == null) {
+            reconnectScheduled.set(false);
+        }
+    }
+
+    /**
+     * Starts a reconnection attempt on a thread of its own. Reconnecting resets the old connection first, which waits
+     * until it is closed, and the tasks of the shared scheduler must never block.
+     */
+    private void startReconnectThread() {
+        Thread thread = new Thread(this::doReconnect, "TelemetryMod Reconnect");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Attempts to reconnect to the WebSocket server. The attempt does not wait for the connection to open: its
+     * outcome is reported to {@link #onOpen(ServerHandshake)} or {@link #onClose(int, String, boolean)}.
      */
     private void doReconnect() {
-        this.isConnecting.set(true);
+        reconnectScheduled.set(false);
+        if (shutDown || isOpen()) return;
+        TelemetryMetrics.RECONNECT_ATTEMPTS.increment();
         try {
-            TelemetryWebSocketClient.this.reconnectBlocking();
-        } catch (InterruptedException | IllegalStateException e) {
+            reconnect();
+        } catch (IllegalStateException e) {
             TelemetryMod.logger.error("Failed to reconnect", e);
-            if (e instanceof InterruptedException) {
-                Thread.currentThread().interrupt(); // Best practice for handling InterruptedException
-            }
+            scheduleReconnect();
         }
     }
 
     /**
-     * Start a thread to watch the connection status and attempt reconnection if necessary.
+     * Closes the connection for good; the client does not reconnect afterwards.
      */
-    private void startConnectionWatcher() {
-        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
-        executor.scheduleAtFixedRate(() -> {
-            try {
-                if (!isOpen() && !isConnecting.get()) {
-                    doReconnect();
-                }
-            } catch (Exception e) {
-                TelemetryMod.logger.error("Connection watcher encountered an error", e);
-            }
-        }, 0, RECONNECT_DELAY_MS, TimeUnit.MILLISECONDS);
+    public void shutdown() {
+        shutDown = true;
+        close();
     }
 }
@@ -0,0 +1,186 @@
+package cz.lukasmojzis.telemetrymod;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * The TransactionBinaryDecoder class is the reference decoder of the binary format written by
+ * {@link TransactionBinaryEncoder}. It translates bundle frames back into the JSON format written by
+ * {@link TransactionJsonEncoder}, so a receiving side can verify the binary format against the JSON one.
+ * <p>
+ * A decoder follows a single connection: it has to be given the schema frame before any bundle frame.
+ */
+public class TransactionBinaryDecoder {
+
+    private String[] propertyKeys;
+    private PropertyType[] propertyTypes;
+    private TransactionIdGenerator idGenerator;
+    private byte[] dictionary;
+
+    /**
+     * Reads the schema frame of a connection.
+     *
+     * @param frame The schema frame.
+     * @throws IllegalArgumentException If the frame is not a schema frame of a supported version.
+     */
+    public void readSchema(ByteBuffer frame) {
+        if (frame.get() != TransactionBinaryEncoder.SCHEMA_FRAME) throw new IllegalArgumentException("Not a schema frame");
+        byte version = frame.get();
+        if (version != TransactionBinaryEncoder.VERSION)
+            throw new IllegalArgumentException(String.format("Unsupported schema version %d", version));
+
+        idGenerator = new TransactionIdGenerator(new UUID(frame.getLong(), frame.getLong()));
+        int count = (int) readVarint(frame);
+        propertyKeys = new String[count];
+        propertyTypes = new PropertyType[count];
+        for (int i = 0; i < count; i++) {
+            propertyTypes[i] = PropertyType.values()[frame.get()];
+            propertyKeys[i] = TransactionJsonEncoder.quote(readString(frame)) + ":";
+        }
+    }
+
+    /**
+     * Reads the dictionary frame of a connection.
+     *
+     * @param frame The dictionary frame.
+     * @throws IllegalArgumentException If the frame is not a dictionary frame.
+     */
+    public void readDictionary(ByteBuffer frame) {
+        if (frame.get() != TransactionBinaryEncoder.DICTIONARY_FRAME) throw new IllegalArgumentException("Not a dictionary frame");
+        dictionary = new byte[frame.remaining()];
+        frame.get(dictionary);
+    }
+
+    /**
+     * Decodes a bundle frame, or a compressed frame containing one, into the JSON format: a single bundle as a
+     * JSON object, several bundles as a JSON array of objects.
+     *
+     * @param frame The bundle frame or compressed frame.
+     * @return The bundles of the frame in the JSON format.
+     * @throws IllegalStateException    If no schema frame, or no dictionary frame for a compressed frame, was read yet.
+     * @throws IllegalArgumentException If the frame is neither a bundle frame nor a valid compressed frame.
+     */
+    public String decode(ByteBuffer frame) {
+        if (propertyKeys == null) throw new IllegalStateException("No schema frame was read");
+        if (frame.get(frame.position()) == TransactionBinaryEncoder.COMPRESSED_FRAME) {
+            frame = inflate(frame);
+        }
+        if (frame.get() != TransactionBinaryEncoder.BUNDLE_FRAME) throw new IllegalArgumentException("Not a bundle frame");
+
+        StringBuilder out = new StringBuilder(frame.remaining() * 2);
+        long tick = 0;
+        int bundles = 0;
+        while (frame.hasRemaining()) {
+            out.append(bundles++ == 0 ? "" : ",");
+            tick += readZigzag(frame);
+            appendBundle(out, frame, tick);
+        }
+        return bundles == 1 ? out.toString() : "[" + out + "]";
+    }
+
+    private ByteBuffer inflate(ByteBuffer frame) {
+        if (dictionary == null) throw new IllegalStateException("No dictionary frame was read");
+        frame.get();
+        byte[] input = new byte[frame.remaining()];
+        frame.get(input);
+
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(input);
+            byte[] output = new byte[input.length * 4 + 64];
+            int length = 0;
+            while (!inflater.finished()) {
+                if (length == output.length) {
+                    byte[] grown = new byte[output.length * 2];
+                    System.arraycopy(output, 0, grown, 0, length);
+                    output = grown;
+                }
+                int inflated = inflater.inflate(output, length, output.length - length);
+                if (inflated == 0 && inflater.needsDictionary()) {
+                    inflater.setDictionary(dictionary);
+                } else if (inflated == 0 && inflater.needsInput()) {
+                    throw new IllegalArgumentException("Truncated compressed frame");
+                }
+                length += inflated;
+            }
+            return ByteBuffer.wrap(output, 0, length);
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Invalid compressed frame", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private void appendBundle(StringBuilder out, ByteBuffer frame, long tick) {
+        out.append('{');
+        long types = readVarint(frame);
+        for (long type = 0; type < types; type++) {
+            if (type > 0) out.append(',');
+            TransactionJsonEncoder.appendString(out, readString(frame));
+            out.append(":{\"id\":\"");
+            idGenerator.appendId(out, readVarint(frame));
+            out.append("\",\"data\":{\"tick\":").append(tick);
+
+            long players = readVarint(frame);
+            for (long player = 0; player < players; player++) {
+                out.append(',');
+                TransactionJsonEncoder.appendString(out, readString(frame));
+                out.append(":{");
+                long properties = readVarint(frame);
+                for (long property = 0; property < properties; property++) {
+                    if (property > 0) out.append(',');
+                    int ordinal = (int) readVarint(frame);
+                    out.append(propertyKeys[ordinal]);
+                    appendValue(out, frame, propertyTypes[ordinal]);
+                }
+                out.append('}');
+            }
+            out.append("}}");
+        }
+        out.append('}');
+    }
+
+    private static void appendValue(StringBuilder out, ByteBuffer frame, PropertyType type) {
+        switch (type) {
+            case BOOLEAN:
+                out.append(frame.get() != 0);
+                break;
+            case INT:
+            case LONG:
+                out.append(readZigzag(frame));
+                break;
+            case FLOAT:
+                out.append(frame.getFloat());
+                break;
+            case DOUBLE:
+                out.append(frame.getDouble());
+                break;
+            default:
+                TransactionJsonEncoder.appendString(out, readString(frame));
+        }
+    }
+
+    private static String readString(ByteBuffer frame) {
+        int length = (int) readVarint(frame);
+        byte[] bytes = new byte[length];
+        frame.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static long readZigzag(ByteBuffer frame) {
+        long value = readVarint(frame);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static long readVarint(ByteBuffer frame) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = frame.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+    }
+}
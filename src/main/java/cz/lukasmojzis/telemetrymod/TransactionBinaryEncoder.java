@@ -0,0 +1,269 @@
+package cz.lukasmojzis.telemetrymod;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * The TransactionBinaryEncoder class writes transaction bundles in the compact binary format of the
+ * {@value #PROTOCOL} WebSocket subprotocol, into a reusable byte buffer.
+ * <p>
+ * Properties are written as their {@link PlayerProperty} ordinal and values in the binary form of their
+ * {@link PropertyType}, so property names are only sent once per connection, in the schema frame. The format is:
+ * <pre>
+ * varint        unsigned LEB128, 7 bits per byte, least significant group first
+ * zigzag        a signed value mapped to an unsigned one ((v &lt;&lt; 1) ^ (v &gt;&gt; 63)), written as a varint
+ * string        varint byte length, followed by the UTF-8 bytes
+ *
+ * schema frame  byte 0x01, byte version (1),
+ *               long session UUID most significant bits, long session UUID least significant bits (big-endian),
+ *               varint property count, then for every property in ordinal order:
+ *                 byte PropertyType ordinal, string property name
+ * bundle frame  byte 0x02, then bundles until the end of the frame, each:
+ *                 zigzag tick (the first bundle of a frame) or tick delta to the previous bundle of the frame,
+ *                 varint transaction type count, then for every transaction type:
+ *                   string type name, varint transaction sequence number, varint player count,
+ *                   then for every player:
+ *                     string player name, varint property count, then for every property:
+ *                       varint property ordinal, value
+ * value         BOOLEAN: byte 0 or 1, INT and LONG: zigzag, FLOAT: 4 byte IEEE 754 (big-endian),
+ *               DOUBLE: 8 byte IEEE 754 (big-endian), OBJECT: string of its JSON string value
+ *
+ * dictionary    byte 0x03, then the preset dictionary of the compressed frames until the end of the frame
+ * frame
+ * compressed    byte 0x04, then a zlib stream (RFC 1950) using the preset dictionary, which inflates to a bundle frame
+ * frame
+ * </pre>
+ * The schema frame is the first frame on every connection, directly followed by the dictionary frame. Transaction IDs
+ * are the session UUID with the sequence number in its last 48 bits, the same as in the JSON format. Text frames may
+ * still appear on a binary connection; they carry bundles in the JSON format, e.g. when telemetry spooled earlier is
+ * replayed, or the metrics frame of {@link TelemetryMetrics#appendJson(StringBuilder)}, which is always sent as JSON.
+ * The metrics frame has no transaction ID, so it is outside the acknowledgement window: consumers must not acknowledge
+ * it, and it is not sent again after a reconnect.
+ * {@link TransactionBinaryDecoder} is the reference decoder of this format.
+ * <p>
+ * An encoder is not thread-safe; every thread that encodes bundles needs its own instance.
+ */
+public class TransactionBinaryEncoder {
+
+    /**
+     * The name of the WebSocket subprotocol of this format.
+     */
+    public static final String PROTOCOL = "telemetrymod.binary.v1";
+
+    static final byte SCHEMA_FRAME = 0x01;
+    static final byte BUNDLE_FRAME = 0x02;
+    static final byte DICTIONARY_FRAME = 0x03;
+    static final byte COMPRESSED_FRAME = 0x04;
+    static final byte VERSION = 1;
+
+    private final TransactionIdGenerator idGenerator;
+    private byte[] buffer = new byte[1024];
+    private int position = 0;
+    private long previousTick = 0;
+
+    /**
+     * Constructs an encoder that draws transaction sequence numbers from the given generator.
+     *
+     * @param idGenerator The generator of transaction IDs.
+     */
+    public TransactionBinaryEncoder(TransactionIdGenerator idGenerator) {
+        this.idGenerator = idGenerator;
+    }
+
+    /**
+     * Encodes the schema frame, which has to be sent first on every connection.
+     *
+     * @param sessionId The session UUID of the transaction IDs.
+     * @return The schema frame.
+     */
+    public static ByteBuffer encodeSchema(UUID sessionId) {
+        TransactionBinaryEncoder encoder = new TransactionBinaryEncoder(null);
+        encoder.writeByte(SCHEMA_FRAME);
+        encoder.writeByte(VERSION);
+        encoder.writeLong(sessionId.getMostSignificantBits());
+        encoder.writeLong(sessionId.getLeastSignificantBits());
+        PlayerProperty[] properties = PlayerProperty.values();
+        encoder.writeVarint(properties.length);
+        for (PlayerProperty property : properties) {
+            encoder.writeByte((byte) property.getType().ordinal());
+            encoder.writeString(property.toString());
+        }
+        return ByteBuffer.wrap(encoder.buffer, 0, encoder.position);
+    }
+
+    /**
+     * Encodes the dictionary frame, which has to be sent directly after the schema frame.
+     *
+     * @return The dictionary frame.
+     */
+    public static ByteBuffer encodeDictionary() {
+        byte[] dictionary = dictionary();
+        ByteBuffer frame = ByteBuffer.allocate(dictionary.length + 1);
+        frame.put(DICTIONARY_FRAME).put(dictionary);
+        frame.flip();
+        return frame;
+    }
+
+    /**
+     * Returns the preset dictionary of the compressed frames: the strings most bundle frames repeat,
+     * with the most common ones at the end, where zlib reaches them with the shortest distances.
+     *
+     * @return The preset dictionary.
+     */
+    static byte[] dictionary() {
+        TransactionBinaryEncoder encoder = new TransactionBinaryEncoder(null);
+        for (String value : new String[]{"effect.", " x 1, Duration: ", "item.", "tile.", "1xtile.air@0", "BlockPos{x=", ", y=", ", z=", PlayerStateUpdate.class.getSimpleName()}) {
+            encoder.writeString(value);
+        }
+        byte[] dictionary = new byte[encoder.position];
+        System.arraycopy(encoder.buffer, 0, dictionary, 0, dictionary.length);
+        return dictionary;
+    }
+
+    /**
+     * Encodes a single transaction bundle as a bundle frame.
+     *
+     * @param bundle The bundle to encode.
+     * @return The bundle frame, valid until the encoder is used again.
+     */
+    public ByteBuffer encode(TransactionBundle bundle) {
+        startFrame();
+        appendBundle(bundle, Integer.MAX_VALUE);
+        return frame();
+    }
+
+    /**
+     * Starts a new, empty bundle frame.
+     */
+    public void startFrame() {
+        position = 0;
+        previousTick = 0;
+        writeByte(BUNDLE_FRAME);
+    }
+
+    /**
+     * Appends a transaction bundle to the current bundle frame, unless the frame would grow larger than the given
+     * size. The first bundle of a frame is always appended.
+     *
+     * @param bundle        The bundle to append.
+     * @param maxFrameBytes The maximum size of the frame in bytes.
+     * @return True if the bundle was appended, false if it did not fit.
+     */
+    public boolean appendBundle(TransactionBundle bundle, int maxFrameBytes) {
+        int start = position;
+        long tickBefore = previousTick;
+
+        writeZigzag(bundle.getGameTick() - previousTick);
+        previousTick = bundle.getGameTick();
+
+        Map<String, Map<String, Map<PlayerProperty, Object>>> transactions = bundle.getTransactions();
+        writeVarint(transactions.size());
+        for (Map.Entry<String, Map<String, Map<PlayerProperty, Object>>> typeEntry : transactions.entrySet()) {
+            writeString(typeEntry.getKey());
+            writeVarint(idGenerator.nextSequence());
+            writeVarint(typeEntry.getValue().size());
+            for (Map.Entry<String, Map<PlayerProperty, Object>> playerEntry : typeEntry.getValue().entrySet()) {
+                writeString(playerEntry.getKey());
+                writeVarint(playerEntry.getValue().size());
+                for (Map.Entry<PlayerProperty, Object> property : playerEntry.getValue().entrySet()) {
+                    writeVarint(property.getKey().ordinal());
+                    writeValue(property.getKey(), property.getValue());
+                }
+            }
+        }
+
+        if (position > maxFrameBytes && start > 1) {
+            position = start;
+            previousTick = tickBefore;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the current frame.
+     *
+     * @return The current frame, valid until the encoder is used again.
+     */
+    public ByteBuffer frame() {
+        return ByteBuffer.wrap(buffer, 0, position);
+    }
+
+    /**
+     * Writes a single property value in the binary form of the property type.
+     *
+     * @param property      The property the value belongs to.
+     * @param propertyValue The value to write.
+     */
+    private void writeValue(PlayerProperty property, Object propertyValue) {
+        switch (property.getType()) {
+            case BOOLEAN:
+                writeByte((byte) (((Boolean) propertyValue) ? 1 : 0));
+                break;
+            case INT:
+            case LONG:
+                writeZigzag(((Number) propertyValue).longValue());
+                break;
+            case FLOAT:
+                writeInt(Float.floatToIntBits(((Number) propertyValue).floatValue()));
+                break;
+            case DOUBLE:
+                writeLong(Double.doubleToLongBits(((Number) propertyValue).doubleValue()));
+                break;
+            default:
+                if (propertyValue == null)
+                    throw new Error(String.format("%s: null cannot be converted to JSON", property));
+                writeString(String.valueOf(propertyValue));
+        }
+    }
+
+    private void writeString(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(bytes.length);
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    private void writeZigzag(long value) {
+        writeVarint((value << 1) ^ (value >> 63));
+    }
+
+    private void writeVarint(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    private void writeInt(int value) {
+        ensureCapacity(4);
+        for (int shift = 24; shift >= 0; shift -= 8) {
+            buffer[position++] = (byte) (value >>> shift);
+        }
+    }
+
+    private void writeLong(long value) {
+        ensureCapacity(8);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            buffer[position++] = (byte) (value >>> shift);
+        }
+    }
+
+    private void writeByte(byte value) {
+        ensureCapacity(1);
+        buffer[position++] = value;
+    }
+
+    private void ensureCapacity(int bytes) {
+        if (position + bytes > buffer.length) {
+            byte[] grown = new byte[Math.max(buffer.length * 2, position + bytes)];
+            System.arraycopy(buffer, 0, grown, 0, position);
+            buffer = grown;
+        }
+    }
+}
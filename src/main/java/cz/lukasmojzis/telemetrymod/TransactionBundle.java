@@ -0,0 +1,94 @@
+package cz.lukasmojzis.telemetrymod;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The TransactionBundle class holds all transactions that happened during a single game tick.
+ * Transactions are grouped by their type and by the player they belong to, and repeated updates of the same
+ * property within the tick are coalesced so only the latest value is kept.
+ * <p>
+ * Once a bundle is polled from the {@link TransactionOutbox} it is no longer modified, so it can be handed over to
+ * another thread as an immutable snapshot.
+ */
+public class TransactionBundle {
+
+    /**
+     * The game tick all transactions in this bundle belong to.
+     */
+    private final long gameTick;
+
+    /**
+     * The transactions of this bundle, keyed by transaction type, then by player name, then by property.
+     */
+    private final Map<String, Map<String, Map<PlayerProperty, Object>>> transactions = new HashMap<>();
+
+    /**
+     * The number of player transactions (transaction type and player pairs) in this bundle.
+     */
+    private int transactionCount = 0;
+
+    /**
+     * The time, in {@link System#nanoTime()} units, at which the game thread handed this bundle over to the sender.
+     */
+    long handedOffAt;
+
+    /**
+     * Constructs an empty bundle for the given game tick.
+     *
+     * @param gameTick The game tick all transactions in this bundle belong to.
+     */
+    public TransactionBundle(long gameTick) {
+        this.gameTick = gameTick;
+    }
+
+    /**
+     * Adds a transaction to this bundle, replacing any earlier value of the same property for the same player.
+     *
+     * @param transaction The transaction to be added.
+     * @return True if the transaction started a new player transaction within this bundle, false if it was coalesced.
+     */
+    boolean add(ITransaction transaction) {
+        Map<String, Map<PlayerProperty, Object>> playerTransactions = transactions.computeIfAbsent(transaction.getClass().getSimpleName(), k -> new HashMap<>());
+
+        Map<PlayerProperty, Object> playerTransaction = playerTransactions.get(transaction.getPlayer());
+        boolean created = false;
+
+        if (playerTransaction == null) {
+            playerTransaction = new HashMap<>();
+            playerTransactions.put(transaction.getPlayer(), playerTransaction);
+            transactionCount++;
+            created = true;
+        }
+
+        playerTransaction.put(transaction.getProperty(), transaction.getNewValue());
+        return created;
+    }
+
+    /**
+     * Returns the game tick all transactions in this bundle belong to.
+     *
+     * @return The game tick of this bundle.
+     */
+    public long getGameTick() {
+        return gameTick;
+    }
+
+    /**
+     * Returns the transactions of this bundle, keyed by transaction type, then by player name, then by property.
+     *
+     * @return The transactions of this bundle.
+     */
+    public Map<String, Map<String, Map<PlayerProperty, Object>>> getTransactions() {
+        return transactions;
+    }
+
+    /**
+     * Returns the number of player transactions (transaction type and player pairs) in this bundle.
+     *
+     * @return The number of player transactions in this bundle.
+     */
+    public int getTransactionCount() {
+        return transactionCount;
+    }
+}
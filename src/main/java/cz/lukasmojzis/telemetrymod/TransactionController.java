@@ -1,231 +1,243 @@
 package cz.lukasmojzis.telemetrymod;
 
-import com.google.gson.JsonObject;
-import com.google.gson.JsonPrimitive;
-import net.minecraft.item.ItemStack;
-import org.java_websocket.exceptions.WebsocketNotConnectedException;
-
-import java.util.*;
-import java.util.concurrent.ConcurrentLinkedDeque;
-import java.util.concurrent.ConcurrentSkipListMap;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * The TransactionController class manages a queue of transaction data for the Telemetry Mod.
  * The transactions are state updates organized by game tick and player, which can be sent via the WebSocket Client.
+ * <p>
+ * Finished bundles are fanned out to every enabled {@link ITelemetrySink}: the {@link TelemetrySender}, which sends
+ * them to the WebSocket server, the {@link TelemetryRecorder}, which records them into a local file, and the
+ * {@link TelemetryRingSink}, which keeps the latest ones for the overlay. The {@link TelemetryDatagramSink} shares
+ * the lifecycle of the sinks, but sends the latest player state instead of the bundles; with the
+ * {@link TelemetryEventRing} enabled, it reads that state from the ring. Encoding, sending and writing happen on the
+ * threads of the sinks; the game thread only collects transactions and hands finished bundles over.
+ * <p>
+ * The bundles keep going through the outbox even with the event ring enabled: the ring only carries the primitive
+ * properties of players, while a bundle also holds object properties and the other transaction types, and the
+ * sender and the recorder need the transaction IDs and tick boundaries of the bundles for acknowledgements, the
+ * spool and the recording blocks.
  */
 public class TransactionController {
 
-    private static final int MAX_SENT_COUNT_PER_TICK = 2;
-    private static final int DELAY_TICKS_AFTER_FAILURE = 100;
     private static final int MAX_TRANSACTION_COUNT_BEFORE_WARNING = 1000;
     private static final int WARNING_TRANSACTION_COUNT_FREQUENCY = 100;
-    private static final ConcurrentSkipListMap<Long, Map<String, Map<String, Map<PlayerProperty, Object>>>> transactionBundles = new ConcurrentSkipListMap<>();
-    private static final AtomicInteger transactionCount = new AtomicInteger(0);
-    private static Deque<Map.Entry<Long, Map<String, Map<String, Map<PlayerProperty, Object>>>>> transactionQueue = new ConcurrentLinkedDeque<>();
-    private static int delayTicks = 0;
+    private static final TransactionOutbox outbox = new TransactionOutbox();
+    private static final TransactionIdGenerator idGenerator = new TransactionIdGenerator();
+    private static final List<ITelemetrySink> sinks = new CopyOnWriteArrayList<>();
+    private static TelemetrySender sender;
+    private static TelemetryRecorder recorder;
+    private static TelemetryRingSink ringSink;
+    private static TelemetryDatagramSink datagramSink;
+    private static TelemetryEventRing eventRing;
 
     /**
-     * Called every client tick, this method handles the sending of transaction data to the server.
-     * It creates a JSON object from the transaction data and sends it to the server via the WebSocket client.
-     * If the WebSocket client is not open or an exception occurs during sending, it adds a delay and pushes
-     * the transaction back to the front of the queue.
+     * The spool directory used while no world is loaded.
      */
-    public static void onClientTick() {
-        if (delayTicks > 0) {
-            delayTicks--;
-        } else {
-            processTransactions();
-        }
-    }
+    private static final File DEFAULT_SPOOL_DIRECTORY = new File("telemetrymod-spool");
 
     /**
-     * Handles the processing of transactions. It interacts with the WebSocket client to send
-     * transactions from the queue. It also handles exceptions related to the WebSocket connection
-     * and unexpected errors, triggering appropriate logging and user messaging as required.
-     * It monitors the number of sent transactions and stops processing when the maximum limit
-     * per tick is reached or when the queue is empty.
+     * The recording directory used while no world is loaded, e.g. on multiplayer servers.
      */
-    private static void processTransactions() {
-        TelemetryWebSocketClient telemetryClient = TelemetryMod.telemetryClient;
-
-        int sentCount = 0;
-        while (sentCount < MAX_SENT_COUNT_PER_TICK && !transactionQueue.isEmpty()) {
-            Map.Entry<Long, Map<String, Map<String, Map<PlayerProperty, Object>>>> entry = transactionQueue.pollFirst();
+    private static final File DEFAULT_RECORDING_DIRECTORY = new File("telemetrymod-recordings");
 
-            try {
-                if (!telemetryClient.isOpen()) {
-                    handleClientNotOpen(entry);
-                    break;
-                }
-                sendTransactionBundle(entry, telemetryClient);
-                sentCount++;
-            } catch (WebsocketNotConnectedException e) {
-                handleTransactionSendFailure(entry, e);
-
-                break;
-            } catch (Exception e) {
-                TelemetryMod.logger.error("Unexpected error occurred", e);
-                TelemetryMod.sendMessage(String.format("Unexpected error occurred: %s", e), null);
-                TelemetryMod.sendMessage("Please report the above error to the developer!", null);
-                TelemetryMod.sendMessage("Disabling TelemetryMod Websocket output.", null);
-                TelemetryMod.sendMessage("You can re-enable it in Mod Config > TelemetryMod > Websocket.", null);
-                ModConfig.websocket.enabled = false;
-                break;
-            }
-        }
+    /**
+     * The number of bundles kept for the overlay.
+     */
+    private static final int RING_CAPACITY = 64;
 
-        checkAndReportQueueSize();
+    /**
+     * Creates and starts the sinks. Called once the WebSocket client is created. Every sink is started, so it can be
+     * enabled in the config while the game runs; bundles are only fanned out to the sinks enabled at the time.
+     */
+    static void start() {
+        if (ModConfig.eventRing.enabled) eventRing = new TelemetryEventRing(ModConfig.eventRing.capacity);
+        sender = new TelemetrySender(ModConfig.websocket.handoffCapacity);
+        sender.setSpoolDirectory(DEFAULT_SPOOL_DIRECTORY);
+        recorder = new TelemetryRecorder(ModConfig.recording.queueCapacity);
+        recorder.setDirectory(DEFAULT_RECORDING_DIRECTORY);
+        ringSink = new TelemetryRingSink(RING_CAPACITY);
+        datagramSink = new TelemetryDatagramSink(eventRing);
+        addSink(sender);
+        addSink(recorder);
+        addSink(ringSink);
+        addSink(datagramSink);
     }
 
     /**
-     * Private helper method to handle the scenario where the WebSocket client is not open.
-     * It adds a delay and pushes the transaction back to the front of the queue.
+     * Starts a sink and fans the bundles out to it from now on.
      *
-     * @param entry The transaction data that failed to be sent.
+     * @param sink The sink.
+     */
+    static void addSink(ITelemetrySink sink) {
+        sink.start();
+        sinks.add(sink);
+    }
+
+    /**
+     * Stops all sinks.
      */
-    private static void handleClientNotOpen(Map.Entry<Long, Map<String, Map<String, Map<PlayerProperty, Object>>>> entry) {
-        delayTicks += DELAY_TICKS_AFTER_FAILURE;
-        transactionQueue.addFirst(entry);
-        TelemetryMod.logger.error("Failed to send transaction bundle: The Websocket client is not open!");
+    static void stop() {
+        for (ITelemetrySink sink : sinks) {
+            sink.stop();
+        }
+        sinks.clear();
     }
 
     /**
-     * Private helper method to send transaction bundle to the server.
+     * Returns the recording of the latest session.
      *
-     * @param entry           The transaction data to be sent.
-     * @param telemetryClient The WebSocket client to send the transaction data.
+     * @return The recording file, or null if nothing was recorded yet.
      */
-    private static void sendTransactionBundle(Map.Entry<Long, Map<String, Map<String, Map<PlayerProperty, Object>>>> entry, TelemetryWebSocketClient telemetryClient) {
-        String jsonPayload = createJsonPayload(entry);
-        telemetryClient.send(jsonPayload);
-        transactionCount.addAndGet(-calculateTotalTransactions(entry.getValue()));
+    static File getLastRecording() {
+        return recorder != null ? recorder.getLastFile() : null;
     }
 
     /**
-     * Private helper method to handle a WebsocketNotConnectedException.
+     * Moves the spool of unsent telemetry to the given world save directory, or back to the default
+     * spool directory in the game directory, and starts a new recording session there.
      *
-     * @param entry The transaction data that failed to be sent.
-     * @param e     The exception encountered during the send attempt.
+     * @param saveDirectory The save directory of the loaded world, or null if no world is loaded.
      */
-    private static void handleTransactionSendFailure(Map.Entry<Long, Map<String, Map<String, Map<PlayerProperty, Object>>>> entry, WebsocketNotConnectedException e) {
-        delayTicks += DELAY_TICKS_AFTER_FAILURE;
-        transactionQueue.addFirst(entry);
-        TelemetryMod.logger.error("Failed to send transaction bundle", e);
+    static void setSaveDirectory(File saveDirectory) {
+        if (recorder != null) {
+            recorder.setDirectory(saveDirectory != null ? new File(saveDirectory, "telemetrymod/recordings") : DEFAULT_RECORDING_DIRECTORY);
+        }
+        if (sender == null) return;
+        sender.setSpoolDirectory(saveDirectory != null ? new File(saveDirectory, "telemetrymod/spool") : DEFAULT_SPOOL_DIRECTORY);
     }
 
     /**
-     * Private helper method to periodically check and report on the queue size.
+     * Called every client tick, this method hands the bundles collected so far over to the sinks.
      */
-    private static void checkAndReportQueueSize() {
-        if (transactionCount.get() > MAX_TRANSACTION_COUNT_BEFORE_WARNING && WorldCalendar.getTotalWorldTicks() % WARNING_TRANSACTION_COUNT_FREQUENCY == 0) {
-            TelemetryMod.sendMessage(String.format("There are more than %d transaction bundles waiting to be sent.", transactionCount.get()), null);
+    public static void onClientTick() {
+        if (!sinks.isEmpty()) {
+            TransactionBundle bundle;
+            while ((bundle = outbox.poll()) != null) {
+                fanOut(bundle);
+            }
         }
+        checkAndReportQueueSize();
     }
 
     /**
-     * Private helper method to create a JSON payload from the transaction data.
+     * Offers a bundle to every enabled sink. A sink that fails is logged and skipped, so it cannot keep the bundle
+     * from the other sinks.
      *
-     * @param entry The transaction data to be sent.
-     * @return A JSON string representing the transaction data.
-     */
-    private static String createJsonPayload(Map.Entry<Long, Map<String, Map<String, Map<PlayerProperty, Object>>>> entry) {
-        Long gameTick = entry.getKey();
-        Map<String, Map<String, Map<PlayerProperty, Object>>> gameTickTransactionBundles = entry.getValue();
-
-        JsonObject payload = new JsonObject();
-
-        for (Map.Entry<String, Map<String, Map<PlayerProperty, Object>>> transactionBundleEntry : gameTickTransactionBundles.entrySet()) {
-            for (Map.Entry<String, Map<PlayerProperty, Object>> transactionEntry : transactionBundleEntry.getValue().entrySet()) {
-                JsonObject gameTickObject = new JsonObject();
-                gameTickObject.add("tick", new JsonPrimitive(gameTick));
-                JsonObject playerTransactionObject = new JsonObject();
-
-                for (Map.Entry<PlayerProperty, Object> property : transactionEntry.getValue().entrySet()) {
-                    Object propertyValue = property.getValue();
-
-                    if (propertyValue instanceof Number) {
-                        playerTransactionObject.add(property.getKey().toString(), new JsonPrimitive((Number) propertyValue));
-                    } else if (propertyValue instanceof Boolean) {
-                        playerTransactionObject.add(property.getKey().toString(), new JsonPrimitive((Boolean) propertyValue));
-                    } else if (propertyValue instanceof String) {
-                        playerTransactionObject.add(property.getKey().toString(), new JsonPrimitive((String) propertyValue));
-                    } else if (propertyValue instanceof UUID || propertyValue instanceof Collection || propertyValue instanceof ItemStack) {
-                        playerTransactionObject.add(property.getKey().toString(), new JsonPrimitive(String.valueOf(propertyValue)));
-                    } else
-                        throw new Error(String.format("%s %s: %s cannot be converted to JSON", property.getValue().getClass(), property.getKey(), property.getValue()));
-                }
-
-                gameTickObject.add(transactionEntry.getKey(), playerTransactionObject);
-
-                // Add the gameTickObject directly to the payload, no additional nesting
-                JsonObject transactionPayload = new JsonObject();
-                // Generate a unique ID
-                String transactionId = UUID.randomUUID().toString();
-                transactionPayload.add("id", new JsonPrimitive(transactionId));
-                transactionPayload.add("data", gameTickObject);
-
-                payload.add(transactionBundleEntry.getKey(), transactionPayload);
+     * @param bundle The finished bundle.
+     */
+    private static void fanOut(TransactionBundle bundle) {
+        for (ITelemetrySink sink : sinks) {
+            if (!sink.isEnabled()) continue;
+            try {
+                sink.offer(bundle);
+            } catch (RuntimeException e) {
+                TelemetryMetrics.SINK_FAILURES.increment();
+                TelemetryMod.logger.error("The {} telemetry sink failed to take a bundle", sink.getName(), e);
             }
         }
+    }
 
-        return payload.toString();
+    /**
+     * Called every server tick, this method hands the bundles over to the sender thread on a dedicated server,
+     * where there are no client ticks to do it.
+     */
+    public static void onServerTick() {
+        if (TelemetryMod.minecraft == null) {
+            onClientTick();
+        }
     }
 
     /**
-     * Private helper method to calculate the total number of transactions for a given game tick.
-     *
-     * @param gameTickTransactionBundles A map of transaction bundles for a specific game tick.
-     * @return The total number of transactions for the given game tick.
+     * Private helper method to periodically check and report on the queue size.
      */
-    private static int calculateTotalTransactions(Map<String, Map<String, Map<PlayerProperty, Object>>> gameTickTransactionBundles) {
-        return gameTickTransactionBundles.values().stream().mapToInt(Map::size).sum();
+    private static void checkAndReportQueueSize() {
+        int bundleCount = size();
+        if (bundleCount > MAX_TRANSACTION_COUNT_BEFORE_WARNING && WorldCalendar.getTotalWorldTicks() % WARNING_TRANSACTION_COUNT_FREQUENCY == 0) {
+            TelemetryMod.sendMessage(String.format("There are more than %d transaction bundles waiting to be sent.", bundleCount), null);
+        }
     }
 
     /**
-     * Returns the size of the transaction queue.
+     * Returns the size of the transaction queue, including the bundles already handed over to the sinks, as seen by
+     * the sink furthest behind.
      *
      * @return The size of the transaction queue.
      */
     public static int size() {
-        return transactionQueue.size();
+        int queueDepth = 0;
+        for (ITelemetrySink sink : sinks) {
+            if (sink.isEnabled()) queueDepth = Math.max(queueDepth, sink.getQueueDepth());
+        }
+        return outbox.size() + queueDepth;
     }
 
-
     /**
-     * Adds a transaction to the appropriate bundle based on the game tick and the player name.
-     * If the transaction queue already contains an entry for the given game tick, this method removes this entry,
-     * adds the new transaction to the bundle, and adds the updated entry back to the queue.
+     * Returns the generator of the IDs of all transactions sent in this game session.
      *
-     * @param transaction The transaction to be added.
+     * @return The transaction ID generator.
      */
-    public static void addTransactionToBundle(ITransaction transaction) {
-        String playerName = transaction.getPlayer();
-        long gameTick = transaction.getGameTick();
-        PlayerProperty property = transaction.getProperty();
-        Object newValue = transaction.getNewValue();
-
-        Map<String, Map<String, Map<PlayerProperty, Object>>> gameTickTransactions = transactionBundles.computeIfAbsent(gameTick, k -> new HashMap<>());
-
-        Map<String, Map<PlayerProperty, Object>> playerTransactions = gameTickTransactions.computeIfAbsent(transaction.getClass().getSimpleName(), k -> new HashMap<>());
+    static TransactionIdGenerator getIdGenerator() {
+        return idGenerator;
+    }
 
-        Map<PlayerProperty, Object> playerTransaction = playerTransactions.get(playerName);
+    /**
+     * Returns the outbox collecting the transactions of the current game ticks.
+     *
+     * @return The outbox.
+     */
+    static TransactionOutbox getOutbox() {
+        return outbox;
+    }
 
-        if (playerTransaction == null) {
-            playerTransaction = new HashMap<>();
-            playerTransactions.put(playerName, playerTransaction);
-            transactionCount.incrementAndGet();
-        }
+    /**
+     * Returns the background sender, or null if it was not started.
+     *
+     * @return The background sender.
+     */
+    static TelemetrySender getSender() {
+        return sender;
+    }
 
-        playerTransaction.put(property, newValue);
+    /**
+     * Returns the sink keeping the latest bundles for the overlay, or null if it was not started.
+     *
+     * @return The ring sink.
+     */
+    static TelemetryRingSink getRingSink() {
+        return ringSink;
+    }
 
-        Map.Entry<Long, Map<String, Map<String, Map<PlayerProperty, Object>>>> newEntry = new AbstractMap.SimpleEntry<>(gameTick, gameTickTransactions);
+    /**
+     * Returns the sink sending the live state of the player as UDP datagrams, or null if it was not started.
+     *
+     * @return The datagram sink.
+     */
+    static TelemetryDatagramSink getDatagramSink() {
+        return datagramSink;
+    }
 
-        transactionQueue = new ArrayDeque<>(transactionQueue);  // Create a new deque before removing elements
+    /**
+     * Returns the ring buffer the changes of primitive properties are published to, or null if it is disabled.
+     *
+     * @return The event ring.
+     */
+    public static TelemetryEventRing getEventRing() {
+        return eventRing;
+    }
 
-        transactionQueue.removeIf(entry -> entry.getKey().equals(gameTick));
 
-        transactionQueue.addLast(newEntry);
+    /**
+     * Adds a transaction to the bundle of its game tick in the outbox.
+     * Repeated updates of the same property within a tick are coalesced in place, without rebuilding the queue.
+     *
+     * @param transaction The transaction to be added.
+     */
+    public static void addTransactionToBundle(ITransaction transaction) {
+        outbox.enqueue(transaction);
+        TelemetryMetrics.TRANSACTIONS_ENQUEUED.increment();
     }
 
 }
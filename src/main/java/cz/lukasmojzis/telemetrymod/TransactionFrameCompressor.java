@@ -0,0 +1,63 @@
+package cz.lukasmojzis.telemetrymod;
+
+import java.nio.ByteBuffer;
+import java.util.zip.Deflater;
+
+/**
+ * The TransactionFrameCompressor class compresses binary bundle frames into compressed frames of the
+ * {@value TransactionBinaryEncoder#PROTOCOL} format, using a zlib stream with the preset dictionary of
+ * {@link TransactionBinaryEncoder#dictionary()}. Every frame is compressed on its own, so frames stay self-contained.
+ * <p>
+ * A compressor is not thread-safe; every thread that compresses frames needs its own instance.
+ */
+public class TransactionFrameCompressor {
+
+    private final Deflater deflater = new Deflater();
+    private final byte[] dictionary = TransactionBinaryEncoder.dictionary();
+    private final CompressionMetrics metrics;
+    private byte[] input = new byte[1024];
+    private byte[] output = new byte[1024];
+
+    /**
+     * Constructs a compressor.
+     *
+     * @param metrics The metrics to record the compressed frames in.
+     */
+    public TransactionFrameCompressor(CompressionMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Compresses a bundle frame, unless compression would not make it smaller.
+     *
+     * @param frame The bundle frame to compress.
+     * @param level The compression level, from 1 (fastest) to 9 (smallest).
+     * @return The compressed frame, valid until the compressor is used again, or the given frame.
+     */
+    public ByteBuffer compress(ByteBuffer frame, int level) {
+        long startedAt = CompressionMetrics.now();
+        int length = frame.remaining();
+        if (input.length < length) input = new byte[Math.max(input.length * 2, length)];
+        frame.duplicate().get(input, 0, length);
+
+        deflater.reset();
+        deflater.setLevel(level);
+        deflater.setDictionary(dictionary);
+        deflater.setInput(input, 0, length);
+        deflater.finish();
+
+        output[0] = TransactionBinaryEncoder.COMPRESSED_FRAME;
+        int position = 1;
+        while (!deflater.finished()) {
+            if (position == output.length) {
+                byte[] grown = new byte[output.length * 2];
+                System.arraycopy(output, 0, grown, 0, position);
+                output = grown;
+            }
+            position += deflater.deflate(output, position, output.length - position);
+        }
+        metrics.record(length, position, startedAt);
+
+        return position < length ? ByteBuffer.wrap(output, 0, position) : frame;
+    }
+}
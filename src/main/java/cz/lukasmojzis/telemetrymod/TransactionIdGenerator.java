@@ -0,0 +1,97 @@
+package cz.lukasmojzis.telemetrymod;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The TransactionIdGenerator class hands out unique transaction IDs without touching {@link java.security.SecureRandom}
+ * for every transaction.
+ * <p>
+ * A random UUID is drawn once per generator, and every ID is that UUID with a monotonic sequence number in its last
+ * 48 bits. IDs keep the textual UUID format, so the receiving side does not need to tell them apart from random ones.
+ */
+public class TransactionIdGenerator {
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final long SEQUENCE_MASK = 0x0000FFFFFFFFFFFFL;
+
+    private final long mostSigBits;
+    private final long leastSigBits;
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * Constructs a generator with a fresh random session UUID.
+     */
+    public TransactionIdGenerator() {
+        this(UUID.randomUUID());
+    }
+
+    /**
+     * Constructs a generator for a known session UUID, e.g. to rebuild the IDs of received transactions.
+     *
+     * @param session The session UUID. Its last 48 bits are replaced by the sequence numbers.
+     */
+    public TransactionIdGenerator(UUID session) {
+        this.mostSigBits = session.getMostSignificantBits();
+        this.leastSigBits = session.getLeastSignificantBits() & ~SEQUENCE_MASK;
+    }
+
+    /**
+     * Returns the session UUID of this generator, with the bits taken by the sequence numbers cleared.
+     *
+     * @return The session UUID.
+     */
+    public UUID getSessionId() {
+        return new UUID(mostSigBits, leastSigBits);
+    }
+
+    /**
+     * Returns the next sequence number of this generator. Sequence numbers start at 1 and never repeat.
+     *
+     * @return The next sequence number.
+     */
+    public long nextSequence() {
+        return sequence.incrementAndGet();
+    }
+
+    /**
+     * Returns the sequence number handed out last by this generator.
+     *
+     * @return The last sequence number, or 0 if none was handed out yet.
+     */
+    public long lastSequence() {
+        return sequence.get();
+    }
+
+    /**
+     * Appends the ID belonging to the given sequence number to the builder, in the textual UUID format.
+     *
+     * @param builder        The builder to append to.
+     * @param sequenceNumber The sequence number of the transaction.
+     */
+    public void appendId(StringBuilder builder, long sequenceNumber) {
+        long leastSig = leastSigBits | (sequenceNumber & SEQUENCE_MASK);
+        appendHex(builder, mostSigBits >>> 32, 8);
+        builder.append('-');
+        appendHex(builder, mostSigBits >>> 16, 4);
+        builder.append('-');
+        appendHex(builder, mostSigBits, 4);
+        builder.append('-');
+        appendHex(builder, leastSig >>> 48, 4);
+        builder.append('-');
+        appendHex(builder, leastSig, 12);
+    }
+
+    /**
+     * Appends the lowest digits of a value as lowercase hexadecimal digits.
+     *
+     * @param builder The builder to append to.
+     * @param value   The value to append.
+     * @param digits  The number of hexadecimal digits to append.
+     */
+    private static void appendHex(StringBuilder builder, long value, int digits) {
+        for (int shift = (digits - 1) * 4; shift >= 0; shift -= 4) {
+            builder.append(HEX_DIGITS[(int) (value >>> shift) & 0xF]);
+        }
+    }
+}
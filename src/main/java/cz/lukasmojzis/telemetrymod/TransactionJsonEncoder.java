@@ -0,0 +1,164 @@
+package cz.lukasmojzis.telemetrymod;
+
+import net.minecraft.item.ItemStack;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * The TransactionJsonEncoder class writes transaction bundles as JSON straight into a reusable StringBuilder,
+ * without building an intermediate JSON tree.
+ * <p>
+ * The output is the same as the one of a Gson {@code JsonObject}: numbers are written the way their {@code toString()}
+ * writes them, strings are escaped the way Gson escapes them, and property names are taken pre-escaped from
+ * {@link PlayerProperty#getJsonKey()}. All players of a transaction type are written into the same {@code data} object.
+ * <p>
+ * An encoder is not thread-safe; every thread that encodes bundles needs its own instance.
+ */
+public class TransactionJsonEncoder {
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final TransactionIdGenerator idGenerator;
+    private final StringBuilder builder = new StringBuilder(1024);
+
+    /**
+     * Constructs an encoder that draws transaction IDs from the given generator.
+     *
+     * @param idGenerator The generator of transaction IDs.
+     */
+    public TransactionJsonEncoder(TransactionIdGenerator idGenerator) {
+        this.idGenerator = idGenerator;
+    }
+
+    /**
+     * Encodes a transaction bundle as a JSON object.
+     *
+     * @param bundle The bundle to encode.
+     * @return A JSON string representing the transaction data.
+     */
+    public String encode(TransactionBundle bundle) {
+        builder.setLength(0);
+        appendBundle(builder, bundle);
+        return builder.toString();
+    }
+
+    /**
+     * Appends a transaction bundle as a JSON object to the given builder.
+     *
+     * @param out    The builder to append to.
+     * @param bundle The bundle to encode.
+     */
+    public void appendBundle(StringBuilder out, TransactionBundle bundle) {
+        out.append('{');
+        boolean firstType = true;
+        for (Map.Entry<String, Map<String, Map<PlayerProperty, Object>>> typeEntry : bundle.getTransactions().entrySet()) {
+            if (!firstType) out.append(',');
+            firstType = false;
+
+            appendString(out, typeEntry.getKey());
+            out.append(":{\"id\":\"");
+            idGenerator.appendId(out, idGenerator.nextSequence());
+            out.append("\",\"data\":{\"tick\":").append(bundle.getGameTick());
+
+            for (Map.Entry<String, Map<PlayerProperty, Object>> playerEntry : typeEntry.getValue().entrySet()) {
+                out.append(',');
+                appendString(out, playerEntry.getKey());
+                out.append(":{");
+                boolean firstProperty = true;
+                for (Map.Entry<PlayerProperty, Object> property : playerEntry.getValue().entrySet()) {
+                    if (!firstProperty) out.append(',');
+                    firstProperty = false;
+                    out.append(property.getKey().getJsonKey());
+                    appendValue(out, property.getKey(), property.getValue());
+                }
+                out.append('}');
+            }
+            out.append("}}");
+        }
+        out.append('}');
+    }
+
+    /**
+     * Appends a single property value, converted the same way the Gson based encoding converted it.
+     *
+     * @param out           The builder to append to.
+     * @param property      The property the value belongs to.
+     * @param propertyValue The value to append.
+     */
+    static void appendValue(StringBuilder out, PlayerProperty property, Object propertyValue) {
+        if (propertyValue instanceof Integer || propertyValue instanceof Long || propertyValue instanceof Short || propertyValue instanceof Byte) {
+            out.append(((Number) propertyValue).longValue());
+        } else if (propertyValue instanceof Float) {
+            out.append(((Float) propertyValue).floatValue());
+        } else if (propertyValue instanceof Double) {
+            out.append(((Double) propertyValue).doubleValue());
+        } else if (propertyValue instanceof Number) {
+            out.append(propertyValue.toString());
+        } else if (propertyValue instanceof Boolean) {
+            out.append(((Boolean) propertyValue).booleanValue());
+        } else if (propertyValue instanceof String) {
+            appendString(out, (String) propertyValue);
+        } else if (propertyValue instanceof UUID || propertyValue instanceof Collection || propertyValue instanceof ItemStack) {
+            appendString(out, String.valueOf(propertyValue));
+        } else
+            throw new Error(String.format("%s %s: %s cannot be converted to JSON", propertyValue == null ? null : propertyValue.getClass(), property, propertyValue));
+    }
+
+    /**
+     * Returns the given string as a quoted and escaped JSON string.
+     *
+     * @param value The string to quote.
+     * @return The quoted string.
+     */
+    static String quote(String value) {
+        StringBuilder out = new StringBuilder(value.length() + 2);
+        appendString(out, value);
+        return out.toString();
+    }
+
+    /**
+     * Appends the given string as a quoted JSON string, escaped the same way Gson escapes strings.
+     *
+     * @param out   The builder to append to.
+     * @param value The string to append.
+     */
+    static void appendString(StringBuilder out, String value) {
+        out.append('"');
+        int last = 0;
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            String replacement;
+            if (c == '"') {
+                replacement = "\\\"";
+            } else if (c == '\\') {
+                replacement = "\\\\";
+            } else if (c == '\t') {
+                replacement = "\\t";
+            } else if (c == '\b') {
+                replacement = "\\b";
+            } else if (c == '\n') {
+                replacement = "\\n";
+            } else if (c == '\r') {
+                replacement = "\\r";
+            } else if (c == '\f') {
+                replacement = "\\f";
+            } else if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+                replacement = null;
+            } else {
+                continue;
+            }
+            out.append(value, last, i);
+            if (replacement != null) {
+                out.append(replacement);
+            } else {
+                out.append("\\u").append(HEX_DIGITS[(c >> 12) & 0xF]).append(HEX_DIGITS[(c >> 8) & 0xF]).append(HEX_DIGITS[(c >> 4) & 0xF]).append(HEX_DIGITS[c & 0xF]);
+            }
+            last = i + 1;
+        }
+        out.append(value, last, length);
+        out.append('"');
+    }
+}
@@ -0,0 +1,137 @@
+package cz.lukasmojzis.telemetrymod;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * The TransactionOutbox class is an append-only, tick-ordered queue of transaction bundles waiting to be sent.
+ * <p>
+ * Transactions are coalesced in place into the bundle of their game tick. Since transactions nearly always belong
+ * to the most recent tick, enqueueing is O(1) amortized and never copies the queue, regardless of how many bundles
+ * are waiting. Bundles are drained in the order their ticks were first seen, which is tick order within a world.
+ * <p>
+ * All methods are synchronized on the outbox itself, so producers and consumers on different threads never lose
+ * each other's writes.
+ */
+public class TransactionOutbox {
+
+    /**
+     * The bundles waiting to be sent, oldest first.
+     */
+    private final ArrayDeque<TransactionBundle> bundles = new ArrayDeque<>();
+
+    /**
+     * The bundle that received the latest transaction, if it is still waiting in the queue.
+     */
+    private TransactionBundle tail;
+
+    /**
+     * The oldest bundle queued since the ticks last went backwards, e.g. after switching worlds, or null if the ticks
+     * of all queued bundles are in order.
+     */
+    private TransactionBundle timelineHead;
+
+    /**
+     * The total number of player transactions in all queued bundles.
+     */
+    private int transactionCount = 0;
+
+    /**
+     * Adds a transaction to the bundle of its game tick, creating and appending the bundle if it is not queued yet.
+     *
+     * @param transaction The transaction to be added.
+     */
+    public synchronized void enqueue(ITransaction transaction) {
+        long gameTick = transaction.getGameTick();
+        TransactionBundle bundle = tail;
+
+        if (bundle == null || bundle.getGameTick() != gameTick) {
+            bundle = findQueuedBundle(gameTick);
+            if (bundle == null) {
+                TransactionBundle last = bundles.peekLast();
+                bundle = new TransactionBundle(gameTick);
+                if (last != null && gameTick < last.getGameTick()) timelineHead = bundle;
+                bundles.addLast(bundle);
+            }
+            tail = bundle;
+        }
+
+        if (bundle.add(transaction)) {
+            transactionCount++;
+        }
+    }
+
+    /**
+     * Looks up a queued bundle for a tick older than the latest one. This only happens when transactions arrive
+     * out of order, so the backwards scan is usually cut short by the first bundle. A tick older than the oldest
+     * bundle of the current timeline, e.g. the first tick after switching worlds, is not looked up at all.
+     *
+     * @param gameTick The game tick to look for.
+     * @return The queued bundle for the given tick, or null if none is queued.
+     */
+    private TransactionBundle findQueuedBundle(long gameTick) {
+        TransactionBundle oldest = timelineHead != null ? timelineHead : bundles.peekFirst();
+        if (oldest == null || gameTick < oldest.getGameTick()) return null;
+
+        Iterator<TransactionBundle> iterator = bundles.descendingIterator();
+        while (iterator.hasNext()) {
+            TransactionBundle bundle = iterator.next();
+            if (bundle.getGameTick() == gameTick) return bundle;
+            if (bundle.getGameTick() < gameTick) return null;
+        }
+        return null;
+    }
+
+    /**
+     * Removes and returns the oldest bundle. Transactions for the same tick that arrive afterwards start a new bundle,
+     * so the returned bundle is never modified by the outbox again.
+     *
+     * @return The oldest bundle, or null if the outbox is empty.
+     */
+    public synchronized TransactionBundle poll() {
+        TransactionBundle bundle = bundles.pollFirst();
+        if (bundle != null) {
+            if (bundle == tail) tail = null;
+            if (bundle == timelineHead) timelineHead = null;
+            transactionCount -= bundle.getTransactionCount();
+        }
+        return bundle;
+    }
+
+    /**
+     * Puts a previously polled bundle back to the front of the outbox, for example after it failed to be sent.
+     *
+     * @param bundle The bundle to be returned to the outbox.
+     */
+    public synchronized void requeue(TransactionBundle bundle) {
+        bundles.addFirst(bundle);
+        transactionCount += bundle.getTransactionCount();
+    }
+
+    /**
+     * Returns the number of bundles waiting in the outbox.
+     *
+     * @return The number of queued bundles.
+     */
+    public synchronized int size() {
+        return bundles.size();
+    }
+
+    /**
+     * Returns whether the outbox has no bundles waiting.
+     *
+     * @return True if the outbox is empty.
+     */
+    public synchronized boolean isEmpty() {
+        return bundles.isEmpty();
+    }
+
+    /**
+     * Returns the total number of player transactions in all queued bundles.
+     *
+     * @return The number of queued player transactions.
+     */
+    public synchronized int transactionCount() {
+        return transactionCount;
+    }
+}
@@ -0,0 +1,205 @@
+package cz.lukasmojzis.telemetrymod;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.java_websocket.WebSocket;
+import org.java_websocket.drafts.Draft_6455;
+import org.java_websocket.extensions.IExtension;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.protocols.IProtocol;
+import org.java_websocket.protocols.Protocol;
+import org.java_websocket.server.WebSocketServer;
+
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The MockOBSServer class is an in-process WebSocket server speaking just enough of the obs-websocket 5 protocol for
+ * tests: it greets the client without authentication, answers single requests successfully, and answers request
+ * batches with one result per request, in order. Every request and request batch received is recorded. The responses
+ * to request batches can be held back, to be released later in the order the batches arrived.
+ */
+class MockOBSServer extends WebSocketServer {
+
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private static final int OP_HELLO = 0;
+    private static final int OP_IDENTIFY = 1;
+    private static final int OP_IDENTIFIED = 2;
+    private static final int OP_REQUEST = 6;
+    private static final int OP_REQUEST_RESPONSE = 7;
+    private static final int OP_REQUEST_BATCH = 8;
+    private static final int OP_REQUEST_BATCH_RESPONSE = 9;
+
+    private final BlockingQueue<JsonObject> requests = new LinkedBlockingQueue<>();
+    private final BlockingQueue<JsonObject> batches = new LinkedBlockingQueue<>();
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final BlockingQueue<Runnable> heldResponses = new LinkedBlockingQueue<>();
+    private volatile Set<Integer> failingIndexes = Collections.emptySet();
+    private volatile boolean holdResponses = false;
+
+    /**
+     * Constructs a server listening on a free port of the loopback interface.
+     */
+    MockOBSServer() {
+        super(new InetSocketAddress("127.0.0.1", 0), Collections.singletonList(new Draft_6455(
+                Collections.<IExtension>emptyList(),
+                Arrays.<IProtocol>asList(new Protocol("obswebsocket.json"), new Protocol("")))));
+        setReuseAddr(true);
+    }
+
+    /**
+     * Starts the server and waits until it listens.
+     *
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    void startAndWait() throws InterruptedException {
+        start();
+        if (!started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)) throw new IllegalStateException("The server did not start");
+    }
+
+    /**
+     * Makes the requests at the given indexes fail in the next request batch.
+     *
+     * @param indexes The indexes of the requests within the batch.
+     */
+    void failNextBatchAt(Integer... indexes) {
+        failingIndexes = new HashSet<>(Arrays.asList(indexes));
+    }
+
+    /**
+     * Holds back the responses to the request batches received from now on, until they are released.
+     */
+    void holdResponses() {
+        holdResponses = true;
+    }
+
+    /**
+     * Sends the response to the earliest request batch whose response is held back.
+     *
+     * @throws InterruptedException If interrupted while waiting for a held response.
+     */
+    void releaseNextResponse() throws InterruptedException {
+        Runnable response = heldResponses.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        if (response == null) throw new IllegalStateException("No response is held");
+        response.run();
+    }
+
+    /**
+     * Waits for the next request batch received.
+     *
+     * @return The data of the batch, or null if none arrived in time.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    JsonObject nextBatch() throws InterruptedException {
+        return batches.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Waits a short while for a request batch, to check that none is sent.
+     *
+     * @return The data of the batch, or null if none arrived.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    JsonObject pollBatch(long timeout, TimeUnit unit) throws InterruptedException {
+        return batches.poll(timeout, unit);
+    }
+
+    /**
+     * Returns the single requests received and not taken yet.
+     *
+     * @return The queue of the data of the requests.
+     */
+    BlockingQueue<JsonObject> getRequests() {
+        return requests;
+    }
+
+    @Override
+    public void onOpen(WebSocket conn, ClientHandshake handshake) {
+        JsonObject hello = new JsonObject();
+        hello.addProperty("obsWebSocketVersion", "5.0.0");
+        hello.addProperty("rpcVersion", 1);
+        conn.send(message(OP_HELLO, hello));
+    }
+
+    @Override
+    public void onClose(WebSocket conn, int code, String reason, boolean remote) {
+    }
+
+    @Override
+    public void onMessage(WebSocket conn, String message) {
+        JsonObject json = new JsonParser().parse(message).getAsJsonObject();
+        JsonObject data = json.getAsJsonObject("d");
+        switch (json.get("op").getAsInt()) {
+            case OP_IDENTIFY:
+                JsonObject identified = new JsonObject();
+                identified.addProperty("negotiatedRpcVersion", 1);
+                conn.send(message(OP_IDENTIFIED, identified));
+                break;
+            case OP_REQUEST:
+                requests.add(data);
+                JsonObject response = result(data.get("requestType").getAsString(), true);
+                response.addProperty("requestId", data.get("requestId").getAsString());
+                conn.send(message(OP_REQUEST_RESPONSE, response));
+                break;
+            case OP_REQUEST_BATCH:
+                Set<Integer> failing = failingIndexes;
+                failingIndexes = Collections.emptySet();
+                batches.add(data);
+                JsonArray results = new JsonArray();
+                int index = 0;
+                for (JsonElement request : data.getAsJsonArray("requests")) {
+                    results.add(result(request.getAsJsonObject().get("requestType").getAsString(), !failing.contains(index++)));
+                }
+                JsonObject batchResponse = new JsonObject();
+                batchResponse.addProperty("requestId", data.get("requestId").getAsString());
+                batchResponse.add("results", results);
+                String batchMessage = message(OP_REQUEST_BATCH_RESPONSE, batchResponse);
+                if (holdResponses) {
+                    heldResponses.add(() -> conn.send(batchMessage));
+                } else {
+                    conn.send(batchMessage);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static JsonObject result(String requestType, boolean successful) {
+        JsonObject status = new JsonObject();
+        status.addProperty("result", successful);
+        status.addProperty("code", successful ? 100 : 600);
+        JsonObject result = new JsonObject();
+        result.addProperty("requestType", requestType);
+        result.add("requestStatus", status);
+        result.add("responseData", new JsonObject());
+        return result;
+    }
+
+    private static String message(int op, JsonObject data) {
+        JsonObject message = new JsonObject();
+        message.addProperty("op", op);
+        message.add("d", data);
+        return message.toString();
+    }
+
+    @Override
+    public void onError(WebSocket conn, Exception ex) {
+        TelemetryMod.logger.error("Mock OBS server error", ex);
+    }
+
+    @Override
+    public void onStart() {
+        started.countDown();
+    }
+}
@@ -0,0 +1,131 @@
+package cz.lukasmojzis.telemetrymod;
+
+import org.java_websocket.WebSocket;
+import org.java_websocket.drafts.Draft_6455;
+import org.java_websocket.extensions.IExtension;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.protocols.IProtocol;
+import org.java_websocket.protocols.Protocol;
+import org.java_websocket.server.WebSocketServer;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The MockTelemetryServer class is an in-process WebSocket server standing in for the telemetry consumer in tests.
+ * It either negotiates the {@link TelemetryWebSocketClient.WireFormat#BINARY} subprotocol or refuses every
+ * subprotocol, and records every frame it receives, in order: text frames as strings, binary frames as byte buffers.
+ */
+class MockTelemetryServer extends WebSocketServer {
+
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private final BlockingQueue<Object> frames = new LinkedBlockingQueue<>();
+    private final CountDownLatch started = new CountDownLatch(1);
+    private volatile String protocol;
+
+    /**
+     * Constructs a server listening on a free port of the loopback interface.
+     *
+     * @param acceptBinary True to negotiate the binary subprotocol, false to refuse it.
+     */
+    MockTelemetryServer(boolean acceptBinary) {
+        super(new InetSocketAddress("127.0.0.1", 0), Collections.singletonList(new Draft_6455(
+                Collections.<IExtension>emptyList(),
+                Collections.<IProtocol>singletonList(new Protocol(acceptBinary ? TransactionBinaryEncoder.PROTOCOL : "")))));
+        setReuseAddr(true);
+    }
+
+    /**
+     * Starts the server and waits until it listens.
+     *
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    void startAndWait() throws InterruptedException {
+        start();
+        if (!started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)) throw new IllegalStateException("The server did not start");
+    }
+
+    /**
+     * Returns the URI clients connect to.
+     *
+     * @return The URI of the server.
+     */
+    URI getUri() {
+        return URI.create("ws://127.0.0.1:" + getPort());
+    }
+
+    /**
+     * Returns the subprotocol negotiated with the last client.
+     *
+     * @return The subprotocol, empty if none was negotiated, or null if no client connected yet.
+     */
+    String getProtocol() {
+        return protocol;
+    }
+
+    /**
+     * Waits for the next frame received.
+     *
+     * @return The text of a text frame or the content of a binary frame, or null if none arrived in time.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    Object nextFrame() throws InterruptedException {
+        return frames.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Acknowledges a transaction, and every transaction sent before it, to the connected clients.
+     *
+     * @param id The ID of the transaction.
+     */
+    void acknowledge(String id) {
+        broadcast("{\"ack\":\"" + id + "\"}");
+    }
+
+    /**
+     * Closes the connections of all clients, which then reconnect on their own.
+     */
+    void closeConnections() {
+        for (WebSocket connection : getConnections()) {
+            connection.close();
+        }
+    }
+
+    @Override
+    public void onOpen(WebSocket conn, ClientHandshake handshake) {
+        protocol = ((Draft_6455) conn.getDraft()).getProtocol().getProvidedProtocol();
+    }
+
+    @Override
+    public void onClose(WebSocket conn, int code, String reason, boolean remote) {
+    }
+
+    @Override
+    public void onMessage(WebSocket conn, String message) {
+        frames.add(message);
+    }
+
+    @Override
+    public void onMessage(WebSocket conn, ByteBuffer message) {
+        ByteBuffer copy = ByteBuffer.allocate(message.remaining());
+        copy.put(message).flip();
+        frames.add(copy);
+    }
+
+    @Override
+    public void onError(WebSocket conn, Exception ex) {
+        TelemetryMod.logger.error("Mock telemetry server error", ex);
+    }
+
+    @Override
+    public void onStart() {
+        started.countDown();
+    }
+}
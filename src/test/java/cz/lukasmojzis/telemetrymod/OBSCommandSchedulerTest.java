@@ -0,0 +1,176 @@
+package cz.lukasmojzis.telemetrymod;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import io.obswebsocket.community.client.OBSRemoteController;
+import org.apache.logging.log4j.LogManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the request batches the {@link OBSCommandScheduler} sends to a {@link MockOBSServer}, and how it applies the
+ * results of a batch to its {@link OBSTarget}s.
+ */
+public class OBSCommandSchedulerTest {
+
+    private static final long TIMEOUT_MS = 5000;
+
+    /**
+     * A little longer than the scheduler waits for the response to a batch before it gives up on it.
+     */
+    private static final long REQUEST_TIMEOUT_MS = 5500;
+
+    private MockOBSServer server;
+    private OBSRemoteController controller;
+    private OBSCommandScheduler scheduler;
+    private OBSTarget.FilterSettings colorCorrection;
+    private OBSTarget.FilterEnabled blur;
+    private OBSTarget.InputText healthText;
+
+    @BeforeClass
+    public static void setUpLogger() {
+        if (TelemetryMod.logger == null) TelemetryMod.logger = LogManager.getLogger(TelemetryMod.MODID);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockOBSServer();
+        server.startAndWait();
+
+        CountDownLatch ready = new CountDownLatch(1);
+        controller = OBSRemoteController.builder().host("127.0.0.1").port(server.getPort()).connectionTimeout(3)
+                .lifecycle().onReady(ready::countDown).and().autoConnect(false).build();
+        controller.connect();
+        assertTrue("The client did not connect", ready.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        OBSRelay.obsController = controller;
+        OBSRelay.connected = true;
+
+        scheduler = new OBSCommandScheduler();
+        colorCorrection = scheduler.add(new OBSTarget.FilterSettings("Camera", "playerState"));
+        blur = scheduler.add(new OBSTarget.FilterEnabled("Camera", "Blur"));
+        healthText = scheduler.add(new OBSTarget.InputText("Health"));
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        OBSRelay.connected = false;
+        OBSRelay.obsController = null;
+        if (controller != null) controller.disconnect();
+        if (server != null) server.stop(1000);
+    }
+
+    @Test
+    public void sendsOneTickOfChangesAsOneBatch() throws Exception {
+        setDesired(new OBSCommandScheduler.FilterState(true, OBSRelay.RGBA_HURT, false, 0, false), true, "20");
+        scheduler.flush();
+
+        JsonArray requests = server.nextBatch().getAsJsonArray("requests");
+        assertEquals(3, requests.size());
+        assertEquals("SetSourceFilterSettings", requestType(requests, 0));
+        assertEquals("SetSourceFilterEnabled", requestType(requests, 1));
+        assertEquals("SetInputSettings", requestType(requests, 2));
+        assertNull("Only one batch may be sent per tick", server.pollBatch(300, TimeUnit.MILLISECONDS));
+        assertTrue("No single requests may be sent", server.getRequests().isEmpty());
+    }
+
+    @Test
+    public void matchesResultsToTargetsByIndex() throws Exception {
+        OBSCommandScheduler.FilterState hurt = new OBSCommandScheduler.FilterState(true, OBSRelay.RGBA_HURT, false, 0, false);
+        setDesired(hurt, true, "20");
+        scheduler.flush();
+        assertNotNull(server.nextBatch());
+
+        awaitOnScheduler(() -> healthText.getConfirmed() != null);
+        assertEquals(hurt, onScheduler(colorCorrection::getConfirmed));
+        assertEquals(Boolean.TRUE, onScheduler(blur::getConfirmed));
+        assertEquals("20", onScheduler(healthText::getConfirmed));
+    }
+
+    @Test
+    public void failedResultOnlyResendsItsOwnTarget() throws Exception {
+        OBSCommandScheduler.FilterState hurt = new OBSCommandScheduler.FilterState(true, OBSRelay.RGBA_HURT, false, 0, false);
+        server.failNextBatchAt(1);
+        setDesired(hurt, true, "20");
+        scheduler.flush();
+        assertEquals(3, server.nextBatch().getAsJsonArray("requests").size());
+
+        awaitOnScheduler(() -> healthText.getConfirmed() != null);
+        assertEquals(hurt, onScheduler(colorCorrection::getConfirmed));
+        assertNull(onScheduler(blur::getConfirmed));
+        assertTrue(onScheduler(blur::isPending));
+        assertFalse(onScheduler(colorCorrection::isPending));
+        assertFalse(onScheduler(healthText::isPending));
+
+        scheduler.flush();
+        JsonArray requests = server.nextBatch().getAsJsonArray("requests");
+        assertEquals(1, requests.size());
+        assertEquals("SetSourceFilterEnabled", requestType(requests, 0));
+        awaitOnScheduler(() -> blur.getConfirmed() != null);
+        assertEquals(Boolean.TRUE, onScheduler(blur::getConfirmed));
+    }
+
+    @Test
+    public void lateResponseDoesNotReleaseTheNewerBatch() throws Exception {
+        server.holdResponses();
+        setDesired(new OBSCommandScheduler.FilterState(true, OBSRelay.RGBA_HURT, false, 0, false), true, "20");
+        scheduler.flush();
+        assertEquals(3, server.nextBatch().getAsJsonArray("requests").size());
+
+        // The first batch times out, so the next change is sent in a second batch.
+        Thread.sleep(REQUEST_TIMEOUT_MS);
+        healthText.setDesired("19");
+        scheduler.flush();
+        assertEquals(1, server.nextBatch().getAsJsonArray("requests").size());
+
+        // The late response to the first batch must not let a third batch overtake the second one.
+        server.releaseNextResponse();
+        healthText.setDesired("18");
+        scheduler.flush();
+        assertNull("A batch was sent while the second one was in flight", server.pollBatch(300, TimeUnit.MILLISECONDS));
+
+        server.releaseNextResponse();
+        JsonArray requests = server.nextBatch().getAsJsonArray("requests");
+        assertEquals(1, requests.size());
+        assertEquals("SetInputSettings", requestType(requests, 0));
+    }
+
+    /**
+     * Sets the desired values of all targets, like the game thread does within one tick.
+     */
+    private void setDesired(OBSCommandScheduler.FilterState filterState, boolean blurred, String health) {
+        colorCorrection.setDesired(filterState);
+        blur.setDesired(blurred);
+        healthText.setDesired(health);
+    }
+
+    private static String requestType(JsonArray requests, int index) {
+        JsonObject request = requests.get(index).getAsJsonObject();
+        return request.get("requestType").getAsString();
+    }
+
+    /**
+     * Evaluates an expression on the scheduler thread, which the state of the targets is confined to.
+     */
+    private static <T> T onScheduler(Supplier<T> supplier) throws Exception {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        TelemetryScheduler.execute(() -> result.complete(supplier.get()));
+        return result.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private static void awaitOnScheduler(Supplier<Boolean> condition) throws Exception {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (!onScheduler(condition)) {
+            if (System.currentTimeMillis() > deadline) fail("Timed out waiting for the response");
+            Thread.sleep(10);
+        }
+    }
+}
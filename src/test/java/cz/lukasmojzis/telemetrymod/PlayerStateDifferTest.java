@@ -0,0 +1,92 @@
+package cz.lukasmojzis.telemetrymod;
+
+import org.apache.logging.log4j.LogManager;
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that the {@link PlayerStateDiffer} keeps processing frames, and returning them to its pool, after processing
+ * a frame failed.
+ */
+public class PlayerStateDifferTest {
+
+    private static final long TIMEOUT_MS = 5000;
+
+    private PlayerStateDiffer differ;
+
+    @BeforeClass
+    public static void setUpLogger() {
+        if (TelemetryMod.logger == null) TelemetryMod.logger = LogManager.getLogger(TelemetryMod.MODID);
+    }
+
+    @After
+    public void tearDown() {
+        if (differ != null) differ.shutdown();
+    }
+
+    @Test
+    public void keepsProcessingAfterAnError() throws Exception {
+        assertKeepsProcessing(new StackOverflowError("Simulated"));
+    }
+
+    @Test
+    public void keepsProcessingAfterAnException() throws Exception {
+        assertKeepsProcessing(new IllegalStateException("Simulated"));
+    }
+
+    private void assertKeepsProcessing(Throwable failure) throws Exception {
+        FailingTable table = new FailingTable(failure);
+        differ = new PlayerStateDiffer(table, 2);
+
+        // Many more ticks than the differ has frames: every frame has to come back for the next ones.
+        for (int tick = 0; tick < 100; tick++) {
+            PlayerStateFrame frame = acquire();
+            frame.reset(0);
+            differ.submit(frame);
+        }
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (table.processed.get() < 100) {
+            if (System.currentTimeMillis() > deadline) fail("Only " + table.processed.get() + " frames were processed");
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Acquires a frame, waiting for the differ to return one if all of them are in use.
+     */
+    private PlayerStateFrame acquire() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        PlayerStateFrame frame;
+        while ((frame = differ.acquire()) == null) {
+            if (System.currentTimeMillis() > deadline) fail("No frame was returned to the differ");
+            Thread.sleep(1);
+        }
+        return frame;
+    }
+
+    /**
+     * A table failing on the first frame it is asked to diff, and counting the frames.
+     */
+    private static class FailingTable extends PlayerStateTable {
+        final AtomicInteger processed = new AtomicInteger();
+        private final Throwable failure;
+
+        FailingTable(Throwable failure) {
+            super(1);
+            this.failure = failure;
+        }
+
+        @Override
+        void ensurePublishedCapacity(int rows) {
+            if (processed.getAndIncrement() == 0) {
+                if (failure instanceof Error) throw (Error) failure;
+                throw (RuntimeException) failure;
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package cz.lukasmojzis.telemetrymod;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that a recording written by the {@link RecordingWriter} reads back unchanged with the {@link RecordingReader},
+ * across blocks and keyframes.
+ */
+public class RecordingWriterTest {
+
+    private static final int TICKS = 1000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readsBackTheStateAtEveryTick() throws Exception {
+        File file = new File(folder.getRoot(), "session.tmrec");
+        UUID sessionId = UUID.randomUUID();
+        List<Map<String, Map<PlayerProperty, Object>>> expected = new ArrayList<>();
+        Map<String, Map<PlayerProperty, Object>> state = new LinkedHashMap<>();
+
+        try (RecordingWriter writer = new RecordingWriter(file, sessionId, 50, 3)) {
+            for (int tick = 0; tick < TICKS; tick++) {
+                TransactionBundle bundle = new TransactionBundle(tick);
+                add(bundle, state, "Alex", tick, PlayerProperty.HEALTH, 20.0f - (tick % 40) / 2.0f);
+                add(bundle, state, "Alex", tick, PlayerProperty.MAXHEALTH, 20.0f);
+                add(bundle, state, "Alex", tick, PlayerProperty.AIR, 300 - tick % 301);
+                add(bundle, state, "Alex", tick, PlayerProperty.POSX, 100 + tick * 0.2137);
+                add(bundle, state, "Alex", tick, PlayerProperty.ISBURNING, tick % 7 == 0);
+                if (tick % 3 == 0) {
+                    add(bundle, state, "Steve", tick, PlayerProperty.HEALTH, specialFloat(tick));
+                    add(bundle, state, "Steve", tick, PlayerProperty.POSX, tick % 2 == 0 ? -0.0 : Double.MAX_VALUE / (tick + 1));
+                }
+                writer.write(bundle);
+                expected.add(copy(state));
+            }
+        }
+
+        try (RecordingReader reader = new RecordingReader(file)) {
+            assertEquals(sessionId, reader.getSessionId());
+            assertEquals(0, reader.getFirstTick());
+            assertEquals(TICKS - 1, reader.getLastTick());
+            for (int tick = 0; tick < TICKS; tick++) {
+                assertEquals("State at tick " + tick, expected.get(tick), reader.stateAt(tick));
+            }
+        }
+    }
+
+    @Test
+    public void storesNearbyFloatsInFewBytes() {
+        long previous = RecordingWriter.floatingBits(PropertyType.FLOAT, 20.0f);
+        long xor = RecordingWriter.floatingBits(PropertyType.FLOAT, 19.5f) ^ previous;
+        assertTrue(RecordingWriter.reverseBits(PropertyType.FLOAT, xor) < 1 << 14);
+
+        previous = RecordingWriter.floatingBits(PropertyType.DOUBLE, 64.0);
+        xor = RecordingWriter.floatingBits(PropertyType.DOUBLE, 65.0) ^ previous;
+        assertTrue(RecordingWriter.reverseBits(PropertyType.DOUBLE, xor) < 1 << 21);
+        assertEquals(xor, RecordingWriter.reverseBits(PropertyType.DOUBLE, RecordingWriter.reverseBits(PropertyType.DOUBLE, xor)));
+    }
+
+    private static float specialFloat(int tick) {
+        switch (tick % 4) {
+            case 0:
+                return Float.NaN;
+            case 1:
+                return -0.0f;
+            case 2:
+                return Float.MIN_VALUE;
+            default:
+                return tick / 3.0f;
+        }
+    }
+
+    private static void add(TransactionBundle bundle, Map<String, Map<PlayerProperty, Object>> state, String player, long tick, PlayerProperty property, Object value) {
+        bundle.add(new PlayerStateUpdate(player, tick, property, null, value));
+        state.computeIfAbsent(player, name -> new EnumMap<>(PlayerProperty.class)).put(property, value);
+    }
+
+    private static Map<String, Map<PlayerProperty, Object>> copy(Map<String, Map<PlayerProperty, Object>> state) {
+        Map<String, Map<PlayerProperty, Object>> copy = new LinkedHashMap<>();
+        for (Map.Entry<String, Map<PlayerProperty, Object>> player : state.entrySet()) {
+            copy.put(player.getKey(), new LinkedHashMap<>(player.getValue()));
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,134 @@
+package cz.lukasmojzis.telemetrymod;
+
+import org.apache.logging.log4j.LogManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the datagrams the {@link TelemetryDatagramSink} sends while it consumes a {@link TelemetryEventRing}.
+ */
+public class TelemetryDatagramSinkTest {
+
+    private static final long TIMEOUT_MS = 5000;
+
+    private DatagramChannel receiver;
+    private TelemetryEventRing ring;
+    private TelemetryDatagramSink sink;
+
+    private boolean enabled;
+    private String host;
+    private int port;
+
+    @BeforeClass
+    public static void setUpLogger() {
+        if (TelemetryMod.logger == null) TelemetryMod.logger = LogManager.getLogger(TelemetryMod.MODID);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        receiver = DatagramChannel.open();
+        receiver.bind(new InetSocketAddress("127.0.0.1", 0));
+        receiver.configureBlocking(false);
+
+        enabled = ModConfig.datagram.enabled;
+        host = ModConfig.datagram.host;
+        port = ModConfig.datagram.port;
+        ModConfig.datagram.enabled = true;
+        ModConfig.datagram.host = "127.0.0.1";
+        ModConfig.datagram.port = ((InetSocketAddress) receiver.getLocalAddress()).getPort();
+
+        ring = new TelemetryEventRing(64);
+        sink = new TelemetryDatagramSink(ring);
+        sink.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (sink != null) sink.stop();
+        if (receiver != null) receiver.close();
+        ModConfig.datagram.enabled = enabled;
+        ModConfig.datagram.host = host;
+        ModConfig.datagram.port = port;
+    }
+
+    @Test
+    public void sendsOneDatagramPerTickOfChanges() throws Exception {
+        assertTrue(sink.isConsumingEvents());
+        int alex = ring.registerPlayer("Alex");
+
+        stage(alex, 10, PlayerProperty.HEALTH, Double.doubleToLongBits(15.5));
+        stage(alex, 10, PlayerProperty.MAXHEALTH, Double.doubleToLongBits(20.0));
+        stage(alex, 10, PlayerProperty.AIR, 300);
+        stage(alex, 10, PlayerProperty.ISHURT, 1);
+        stage(alex, 10, PlayerProperty.POSX, Double.doubleToLongBits(1.5));
+        stage(alex, 10, PlayerProperty.POSY, Double.doubleToLongBits(64.0));
+        stage(alex, 10, PlayerProperty.POSZ, Double.doubleToLongBits(-3.25));
+        ring.commit();
+
+        ByteBuffer datagram = receive();
+        assertEquals(TelemetryDatagramSink.MAGIC, datagram.getInt(0));
+        assertEquals(TelemetryDatagramSink.FLAG_HURT | TelemetryDatagramSink.FLAG_POSITION, datagram.get(5));
+        assertEquals(300, datagram.getShort(6));
+        assertEquals(10, datagram.getLong(16));
+        assertEquals(1.5, datagram.getDouble(24), 0);
+        assertEquals(64.0, datagram.getDouble(32), 0);
+        assertEquals(-3.25, datagram.getDouble(40), 0);
+        assertEquals(15.5f, datagram.getFloat(48), 0);
+        assertEquals(20.0f, datagram.getFloat(52), 0);
+        assertEquals("Alex", nameOf(datagram));
+        long firstSequence = datagram.getLong(8);
+
+        // Only the changes are published, committed together like the tracker does; the rest of the state carries
+        // over from the previous tick.
+        stage(alex, 11, PlayerProperty.HEALTH, Double.doubleToLongBits(14.0));
+        stage(alex, 11, PlayerProperty.ISHURT, 0);
+        ring.commit();
+
+        datagram = receive();
+        assertEquals(firstSequence + 1, datagram.getLong(8));
+        assertEquals(TelemetryDatagramSink.FLAG_POSITION, datagram.get(5));
+        assertEquals(11, datagram.getLong(16));
+        assertEquals(14.0f, datagram.getFloat(48), 0);
+        assertEquals(20.0f, datagram.getFloat(52), 0);
+        assertEquals(64.0, datagram.getDouble(32), 0);
+        assertNull("Only one datagram may be sent per tick", receive(300));
+    }
+
+    private void stage(int playerIndex, long gameTick, PlayerProperty property, long value) {
+        assertTrue(ring.stage(playerIndex, gameTick, property.ordinal(), value));
+    }
+
+    private ByteBuffer receive() throws Exception {
+        ByteBuffer datagram = receive(TIMEOUT_MS);
+        assertNotNull("No datagram was received", datagram);
+        return datagram;
+    }
+
+    private ByteBuffer receive(long timeoutMs) throws Exception {
+        ByteBuffer datagram = ByteBuffer.allocate(TelemetryDatagramSink.DATAGRAM_BYTES);
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (receiver.receive(datagram) == null) {
+            if (System.currentTimeMillis() > deadline) return null;
+            Thread.sleep(1);
+        }
+        assertEquals(TelemetryDatagramSink.DATAGRAM_BYTES, datagram.position());
+        return datagram;
+    }
+
+    private static String nameOf(ByteBuffer datagram) {
+        byte[] name = new byte[TelemetryDatagramSink.NAME_BYTES];
+        for (int i = 0; i < name.length; i++) {
+            name[i] = datagram.get(56 + i);
+        }
+        return new String(name, StandardCharsets.US_ASCII).trim();
+    }
+}
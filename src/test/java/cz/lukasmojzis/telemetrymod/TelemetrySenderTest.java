@@ -0,0 +1,230 @@
+package cz.lukasmojzis.telemetrymod;
+
+import org.apache.logging.log4j.LogManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests how the {@link TelemetrySender} sends the frames in flight again after reconnecting to a
+ * {@link MockTelemetryServer}, with acknowledgements enabled, in the JSON format with the spool and in the binary
+ * format, and how it counts the bytes sent.
+ */
+public class TelemetrySenderTest {
+
+    private static final long TIMEOUT_MS = 10000;
+    private static final Pattern ID_PATTERN = Pattern.compile("\"id\":\"([0-9a-f-]{36})\"");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MockTelemetryServer server;
+    private TelemetryWebSocketClient client;
+    private TelemetrySender sender;
+
+    private TelemetryWebSocketClient.WireFormat wireFormat;
+    private boolean acknowledgements;
+    private boolean spoolEnabled;
+    private boolean batchFrames;
+    private int metricsIntervalSeconds;
+
+    @BeforeClass
+    public static void setUpLogger() {
+        if (TelemetryMod.logger == null) TelemetryMod.logger = LogManager.getLogger(TelemetryMod.MODID);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        wireFormat = ModConfig.websocket.wireFormat;
+        acknowledgements = ModConfig.websocket.acknowledgements;
+        spoolEnabled = ModConfig.websocket.spoolEnabled;
+        batchFrames = ModConfig.websocket.batchFrames;
+        metricsIntervalSeconds = ModConfig.websocket.metricsIntervalSeconds;
+        ModConfig.websocket.wireFormat = TelemetryWebSocketClient.WireFormat.JSON;
+        ModConfig.websocket.acknowledgements = true;
+        ModConfig.websocket.spoolEnabled = true;
+        ModConfig.websocket.batchFrames = false;
+        ModConfig.websocket.metricsIntervalSeconds = 0;
+    }
+
+    /**
+     * Starts the server, connects a client to it and starts the sender.
+     */
+    private void start(boolean binary) throws Exception {
+        server = new MockTelemetryServer(binary);
+        server.startAndWait();
+        client = new TelemetryWebSocketClient(server.getUri());
+        TelemetryMod.telemetryClient = client;
+        assertTrue("The client did not connect", client.connectBlocking(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        await(client::isReadyToSend);
+
+        sender = new TelemetrySender(64);
+        sender.setSpoolDirectory(folder.newFolder("spool"));
+        sender.start();
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        if (sender != null) sender.stop();
+        if (client != null) client.shutdown();
+        TelemetryMod.telemetryClient = null;
+        if (server != null) server.stop(1000);
+        ModConfig.websocket.wireFormat = wireFormat;
+        ModConfig.websocket.acknowledgements = acknowledgements;
+        ModConfig.websocket.spoolEnabled = spoolEnabled;
+        ModConfig.websocket.batchFrames = batchFrames;
+        ModConfig.websocket.metricsIntervalSeconds = metricsIntervalSeconds;
+    }
+
+    @Test
+    public void resendsFramesInFlightInOrderAfterReconnecting() throws Exception {
+        start(false);
+        List<TransactionBundle> bundles = TelemetryWebSocketClientTest.sampleBundles(10);
+
+        // Sent from memory while connected, and never acknowledged.
+        for (TransactionBundle bundle : bundles.subList(0, 5)) {
+            sender.offer(bundle);
+        }
+        List<String> first = receive(5);
+        assertAscending(first);
+
+        // Spooled while disconnected, so the spool and the window both hold frames on the next connection.
+        reconnect(() -> {
+            for (TransactionBundle bundle : bundles.subList(5, 10)) {
+                sender.offer(bundle);
+            }
+        });
+        List<String> second = receive(10);
+        assertEquals(first, second.subList(0, 5));
+        assertAscending(second);
+
+        // Neither the frames from memory nor the frames from the spool were acknowledged.
+        reconnect(() -> {
+        });
+        assertEquals(second, receive(10));
+
+        server.acknowledge(second.get(second.size() - 1));
+        await(() -> sender.getFramesInFlight() == 0 && sender.getQueueDepth() == 0);
+    }
+
+    @Test
+    public void resendsBinaryFramesInFlightUnchangedAfterReconnecting() throws Exception {
+        ModConfig.websocket.wireFormat = TelemetryWebSocketClient.WireFormat.BINARY;
+        ModConfig.websocket.spoolEnabled = false;
+        start(true);
+        assertTrue(client.isBinaryProtocol());
+
+        for (TransactionBundle bundle : TelemetryWebSocketClientTest.sampleBundles(5)) {
+            sender.offer(bundle);
+        }
+        List<ByteBuffer> first = receiveBinary(5);
+
+        reconnect(() -> {
+        });
+        List<ByteBuffer> second = receiveBinary(5);
+        for (int i = 0; i < first.size(); i++) {
+            assertTrue("Frame " + i + " was sent again empty", second.get(i).remaining() > 1);
+            assertEquals("Frame " + i + " was not sent again unchanged", first.get(i), second.get(i));
+        }
+
+        StringBuilder lastId = new StringBuilder();
+        TransactionIdGenerator idGenerator = TransactionController.getIdGenerator();
+        idGenerator.appendId(lastId, idGenerator.lastSequence());
+        server.acknowledge(lastId.toString());
+        await(() -> sender.getFramesInFlight() == 0 && sender.getQueueDepth() == 0);
+    }
+
+    @Test
+    public void countsTextFramesInUtf8Bytes() {
+        for (String text : new String[]{"", "{\"player\":\"Alex\"}", "Žluťoučký kůň", "€ 20", "\uD83D\uDE00 ok", "lone \uD800 \uDC00"}) {
+            assertEquals(text, text.getBytes(StandardCharsets.UTF_8).length, TelemetrySender.utf8Length(text));
+        }
+    }
+
+    /**
+     * Closes the connection from the server, runs the action while the client is disconnected, and waits until the
+     * client has reconnected.
+     */
+    private void reconnect(Runnable whileDisconnected) throws InterruptedException {
+        int connections = client.getConnectionCount();
+        server.closeConnections();
+        await(() -> !client.isReadyToSend());
+        whileDisconnected.run();
+        await(() -> client.getConnectionCount() > connections && client.isReadyToSend());
+    }
+
+    /**
+     * Receives text frames and returns the ID of the last transaction of every frame.
+     */
+    private List<String> receive(int frames) throws InterruptedException {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < frames; i++) {
+            Object frame = server.nextFrame();
+            assertTrue("Expected a text frame, got " + frame, frame instanceof String);
+            Matcher matcher = ID_PATTERN.matcher((String) frame);
+            String id = null;
+            while (matcher.find()) id = matcher.group(1);
+            assertNotNull("No transaction ID in " + frame, id);
+            ids.add(id);
+        }
+        return ids;
+    }
+
+    /**
+     * Receives the schema and dictionary frames of a connection, then the given number of bundle frames, and returns
+     * the bundle frames.
+     */
+    private List<ByteBuffer> receiveBinary(int frames) throws InterruptedException {
+        assertFrameType(TransactionBinaryEncoder.SCHEMA_FRAME, server.nextFrame());
+        assertFrameType(TransactionBinaryEncoder.DICTIONARY_FRAME, server.nextFrame());
+        List<ByteBuffer> bundleFrames = new ArrayList<>();
+        for (int i = 0; i < frames; i++) {
+            Object frame = server.nextFrame();
+            assertFrameType(TransactionBinaryEncoder.BUNDLE_FRAME, frame);
+            bundleFrames.add((ByteBuffer) frame);
+        }
+        return bundleFrames;
+    }
+
+    private static void assertFrameType(byte type, Object frame) {
+        assertTrue("Expected a binary frame, got " + frame, frame instanceof ByteBuffer);
+        ByteBuffer bytes = (ByteBuffer) frame;
+        assertTrue("Expected a frame of type " + type + ", got an empty frame", bytes.hasRemaining());
+        assertEquals(type, bytes.get(bytes.position()));
+    }
+
+    private static void assertAscending(List<String> ids) {
+        for (int i = 1; i < ids.size(); i++) {
+            assertTrue("Frames out of order: " + ids, sequenceOf(ids.get(i)) > sequenceOf(ids.get(i - 1)));
+        }
+    }
+
+    /**
+     * Returns the sequence number in the last 48 bits of a transaction ID.
+     */
+    private static long sequenceOf(String id) {
+        return Long.parseLong(id.substring(24), 16);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) fail("Timed out");
+            Thread.sleep(10);
+        }
+    }
+}
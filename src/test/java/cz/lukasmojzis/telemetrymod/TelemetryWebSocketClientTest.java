@@ -0,0 +1,226 @@
+package cz.lukasmojzis.telemetrymod;
+
+import org.apache.logging.log4j.LogManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the frames the {@link TelemetryWebSocketClient} and the {@link TelemetrySender} send to a
+ * {@link MockTelemetryServer}: the binary format when the server negotiates it, and the JSON format when the server
+ * refuses the subprotocol.
+ */
+public class TelemetryWebSocketClientTest {
+
+    private static final long CONNECT_TIMEOUT_MS = 5000;
+
+    private MockTelemetryServer server;
+    private TelemetryWebSocketClient client;
+    private TelemetrySender sender;
+
+    private TelemetryWebSocketClient.WireFormat wireFormat;
+    private boolean batchFrames;
+    private boolean compressBatchedFrames;
+    private int compressionMinFrameBytes;
+    private int metricsIntervalSeconds;
+
+    @BeforeClass
+    public static void setUpLogger() {
+        if (TelemetryMod.logger == null) TelemetryMod.logger = LogManager.getLogger(TelemetryMod.MODID);
+    }
+
+    @Before
+    public void setUp() {
+        wireFormat = ModConfig.websocket.wireFormat;
+        batchFrames = ModConfig.websocket.batchFrames;
+        compressBatchedFrames = ModConfig.websocket.compressBatchedFrames;
+        compressionMinFrameBytes = ModConfig.websocket.compressionMinFrameBytes;
+        metricsIntervalSeconds = ModConfig.websocket.metricsIntervalSeconds;
+        ModConfig.websocket.wireFormat = TelemetryWebSocketClient.WireFormat.BINARY;
+        ModConfig.websocket.metricsIntervalSeconds = 0;
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        if (sender != null) sender.stop();
+        if (client != null) client.shutdown();
+        TelemetryMod.telemetryClient = null;
+        if (server != null) server.stop(1000);
+        ModConfig.websocket.wireFormat = wireFormat;
+        ModConfig.websocket.batchFrames = batchFrames;
+        ModConfig.websocket.compressBatchedFrames = compressBatchedFrames;
+        ModConfig.websocket.compressionMinFrameBytes = compressionMinFrameBytes;
+        ModConfig.websocket.metricsIntervalSeconds = metricsIntervalSeconds;
+    }
+
+    @Test
+    public void sendsSchemaAndDictionaryBeforeBundleFrames() throws Exception {
+        ModConfig.websocket.batchFrames = false;
+        connect(true);
+        assertEquals(TransactionBinaryEncoder.PROTOCOL, server.getProtocol());
+        assertTrue(client.isBinaryProtocol());
+
+        TransactionBinaryDecoder decoder = readPreamble();
+        List<TransactionBundle> bundles = sampleBundles(5);
+        String expected = expectedJson(bundles);
+        send(bundles);
+
+        assertEquals(expected, decodeFrames(decoder, expected.length(), TransactionBinaryEncoder.BUNDLE_FRAME));
+    }
+
+    @Test
+    public void sendsCompressedFramesAfterDictionary() throws Exception {
+        ModConfig.websocket.batchFrames = true;
+        ModConfig.websocket.compressBatchedFrames = true;
+        ModConfig.websocket.compressionMinFrameBytes = 0;
+        connect(true);
+
+        TransactionBinaryDecoder decoder = readPreamble();
+        List<TransactionBundle> bundles = sampleBundles(20);
+        String expected = expectedJson(bundles);
+        send(bundles);
+
+        assertEquals(expected, decodeFrames(decoder, expected.length(), TransactionBinaryEncoder.COMPRESSED_FRAME));
+    }
+
+    @Test
+    public void fallsBackToJsonWhenSubprotocolIsRefused() throws Exception {
+        ModConfig.websocket.batchFrames = false;
+        connect(false);
+        assertEquals("", server.getProtocol());
+        assertFalse(client.isBinaryProtocol());
+
+        List<TransactionBundle> bundles = sampleBundles(5);
+        List<String> expected = new ArrayList<>();
+        TransactionJsonEncoder encoder = new TransactionJsonEncoder(alignedIdGenerator());
+        for (TransactionBundle bundle : bundles) {
+            expected.add(encoder.encode(bundle));
+        }
+        send(bundles);
+
+        for (String json : expected) {
+            Object frame = server.nextFrame();
+            assertTrue("Expected a text frame, got " + frame, frame instanceof String);
+            assertEquals(json, frame);
+        }
+    }
+
+    /**
+     * Starts the server and connects a client to it, like {@link TelemetryMod} does.
+     */
+    private void connect(boolean acceptBinary) throws Exception {
+        server = new MockTelemetryServer(acceptBinary);
+        server.startAndWait();
+        client = new TelemetryWebSocketClient(server.getUri());
+        TelemetryMod.telemetryClient = client;
+        assertTrue("The client did not connect", client.connectBlocking(CONNECT_TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        long deadline = System.currentTimeMillis() + CONNECT_TIMEOUT_MS;
+        while (!client.isReadyToSend() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue("The client is not ready to send", client.isReadyToSend());
+    }
+
+    /**
+     * Reads the schema frame and the dictionary frame, which must be the first two frames of a binary connection.
+     */
+    private TransactionBinaryDecoder readPreamble() throws InterruptedException {
+        TransactionBinaryDecoder decoder = new TransactionBinaryDecoder();
+        ByteBuffer schema = nextBinaryFrame();
+        assertEquals(TransactionBinaryEncoder.SCHEMA_FRAME, schema.get(schema.position()));
+        decoder.readSchema(schema);
+        ByteBuffer dictionary = nextBinaryFrame();
+        assertEquals(TransactionBinaryEncoder.DICTIONARY_FRAME, dictionary.get(dictionary.position()));
+        decoder.readDictionary(dictionary);
+        return decoder;
+    }
+
+    /**
+     * Decodes the bundle frames received until the decoded bundles reach the expected length, checking the type of
+     * every frame.
+     *
+     * @return The decoded bundles, separated by commas.
+     */
+    private String decodeFrames(TransactionBinaryDecoder decoder, int length, byte frameType) throws InterruptedException {
+        StringBuilder decoded = new StringBuilder();
+        while (decoded.length() < length) {
+            ByteBuffer frame = nextBinaryFrame();
+            assertEquals(frameType, frame.get(frame.position()));
+            String bundles = decoder.decode(frame);
+            if (bundles.startsWith("[")) bundles = bundles.substring(1, bundles.length() - 1);
+            if (decoded.length() > 0) decoded.append(',');
+            decoded.append(bundles);
+        }
+        return decoded.toString();
+    }
+
+    private ByteBuffer nextBinaryFrame() throws InterruptedException {
+        Object frame = server.nextFrame();
+        assertTrue("Expected a binary frame, got " + frame, frame instanceof ByteBuffer);
+        return (ByteBuffer) frame;
+    }
+
+    /**
+     * Hands the bundles to a new sender, which encodes them with the shared ID generator.
+     */
+    private void send(List<TransactionBundle> bundles) {
+        sender = new TelemetrySender(bundles.size());
+        for (TransactionBundle bundle : bundles) {
+            sender.offer(bundle);
+        }
+        sender.start();
+    }
+
+    /**
+     * Encodes the bundles as JSON, with the IDs the sender is going to give them, separated by commas.
+     */
+    private static String expectedJson(List<TransactionBundle> bundles) {
+        TransactionJsonEncoder encoder = new TransactionJsonEncoder(alignedIdGenerator());
+        StringBuilder json = new StringBuilder();
+        for (TransactionBundle bundle : bundles) {
+            if (json.length() > 0) json.append(',');
+            json.append(encoder.encode(bundle));
+        }
+        return json.toString();
+    }
+
+    /**
+     * Returns a generator of the same session as the shared one, continuing from its last sequence number.
+     */
+    private static TransactionIdGenerator alignedIdGenerator() {
+        TransactionIdGenerator shared = TransactionController.getIdGenerator();
+        TransactionIdGenerator generator = new TransactionIdGenerator(shared.getSessionId());
+        while (generator.lastSequence() < shared.lastSequence()) {
+            generator.nextSequence();
+        }
+        return generator;
+    }
+
+    /**
+     * Builds bundles of consecutive ticks in which a few properties of two players changed.
+     */
+    static List<TransactionBundle> sampleBundles(int count) {
+        List<TransactionBundle> bundles = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            TransactionBundle bundle = new TransactionBundle(1000L + i);
+            for (String player : new String[]{"Alex", "Steve"}) {
+                bundle.add(new PlayerStateUpdate(player, bundle.getGameTick(), PlayerProperty.HEALTH, null, 20.0f - i / 2.0f));
+                bundle.add(new PlayerStateUpdate(player, bundle.getGameTick(), PlayerProperty.AIR, null, 300 - i * 15));
+                bundle.add(new PlayerStateUpdate(player, bundle.getGameTick(), PlayerProperty.POSX, null, 12.5 + i * 0.3));
+                bundle.add(new PlayerStateUpdate(player, bundle.getGameTick(), PlayerProperty.ISBURNING, null, i % 2 == 0));
+                bundle.add(new PlayerStateUpdate(player, bundle.getGameTick(), PlayerProperty.UNIQUEID, null, UUID.nameUUIDFromBytes(player.getBytes())));
+            }
+            bundles.add(bundle);
+        }
+        return bundles;
+    }
+}
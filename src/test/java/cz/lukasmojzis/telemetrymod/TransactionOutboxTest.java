@@ -0,0 +1,65 @@
+package cz.lukasmojzis.telemetrymod;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests how the {@link TransactionOutbox} coalesces transactions into the bundles of their ticks, also when the
+ * transactions arrive out of order or the ticks go backwards.
+ */
+public class TransactionOutboxTest {
+
+    @Test
+    public void coalescesLateTransactionsIntoTheirBundle() {
+        TransactionOutbox outbox = new TransactionOutbox();
+        outbox.enqueue(update("Alex", 10, PlayerProperty.HEALTH));
+        outbox.enqueue(update("Alex", 11, PlayerProperty.HEALTH));
+        outbox.enqueue(update("Steve", 10, PlayerProperty.HEALTH));
+
+        assertEquals(2, outbox.size());
+        assertBundle(outbox.poll(), 10, 2);
+        assertBundle(outbox.poll(), 11, 1);
+    }
+
+    @Test
+    public void startsANewTimelineWhenTheTicksGoBackwards() {
+        TransactionOutbox outbox = new TransactionOutbox();
+        for (int tick = 1000; tick < 2000; tick++) {
+            outbox.enqueue(update("Alex", tick, PlayerProperty.HEALTH));
+        }
+
+        // The calendar was reset, e.g. by switching worlds, while the old bundles are still waiting.
+        outbox.enqueue(update("Alex", 5, PlayerProperty.HEALTH));
+        outbox.enqueue(update("Alex", 6, PlayerProperty.HEALTH));
+        outbox.enqueue(update("Steve", 5, PlayerProperty.HEALTH));
+        outbox.enqueue(update("Alex", 4, PlayerProperty.HEALTH));
+        assertEquals(1003, outbox.size());
+        assertEquals(1004, outbox.transactionCount());
+
+        for (int tick = 1000; tick < 2000; tick++) {
+            assertBundle(outbox.poll(), tick, 1);
+        }
+        assertBundle(outbox.poll(), 5, 2);
+        assertBundle(outbox.poll(), 6, 1);
+        assertBundle(outbox.poll(), 4, 1);
+
+        // Once the old timeline is drained, late transactions join their bundles again.
+        outbox.enqueue(update("Alex", 7, PlayerProperty.HEALTH));
+        outbox.enqueue(update("Alex", 8, PlayerProperty.HEALTH));
+        outbox.enqueue(update("Steve", 7, PlayerProperty.HEALTH));
+        assertBundle(outbox.poll(), 7, 2);
+        assertBundle(outbox.poll(), 8, 1);
+        assertTrue(outbox.isEmpty());
+    }
+
+    private static PlayerStateUpdate update(String player, long tick, PlayerProperty property) {
+        return new PlayerStateUpdate(player, tick, property, null, 20.0f);
+    }
+
+    private static void assertBundle(TransactionBundle bundle, long tick, int transactions) {
+        assertNotNull("No bundle for tick " + tick, bundle);
+        assertEquals(tick, bundle.getGameTick());
+        assertEquals("Transactions of tick " + tick, transactions, bundle.getTransactionCount());
+    }
+}